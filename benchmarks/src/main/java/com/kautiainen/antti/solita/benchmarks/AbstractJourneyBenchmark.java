@@ -0,0 +1,60 @@
+package com.kautiainen.antti.solita.benchmarks;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.kautiainen.antti.solita.storage.JourneyStore;
+
+/**
+ * Journey store filled with random journeys resembling the journey dataset.
+ * The journeys depart during three months from and to a few hundred
+ * stations.
+ */
+@State(Scope.Benchmark)
+public abstract class AbstractJourneyBenchmark {
+
+    protected static final int STATION_COUNT = 500;
+
+    private static final long FIRST_DEPARTURE = LocalDateTime.of(2021, 5, 1, 0, 0).toEpochSecond(ZoneOffset.UTC);
+
+    @Param({ "1000000", "10000000" })
+    public int journeyCount;
+
+    protected JourneyStore store;
+
+    protected Random random;
+
+    @Setup
+    public void fillStore() {
+        store = new JourneyStore();
+        random = new Random(42);
+        final int batch = 1 << 20;
+        int[] ids = new int[batch];
+        int[] departureStations = new int[batch];
+        int[] returnStations = new int[batch];
+        int[] distances = new int[batch];
+        int[] durations = new int[batch];
+        long[] departureTimes = new long[batch];
+        long[] returnTimes = new long[batch];
+        for (int first = 0; first < journeyCount; first += batch) {
+            final int count = Math.min(batch, journeyCount - first);
+            for (int i = 0; i < count; i++) {
+                ids[i] = first + i + 1;
+                departureStations[i] = 1 + random.nextInt(STATION_COUNT);
+                returnStations[i] = 1 + random.nextInt(STATION_COUNT);
+                distances[i] = 10 + random.nextInt(10000);
+                durations[i] = 10 + random.nextInt(3600);
+                departureTimes[i] = FIRST_DEPARTURE + random.nextInt(90 * 24 * 3600);
+                returnTimes[i] = departureTimes[i] + durations[i];
+            }
+            store.restore(count, ids, departureStations, returnStations, distances, durations, departureTimes,
+                    returnTimes);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.kautiainen.antti.solita.benchmarks;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The main class of the benchmark jar.
+ * 
+ * The benchmarks are run with the JMH command line, and unless the result
+ * format is given, the results are written as JSON into a file named after
+ * the start time of the run, so that the results of the runs can be compared
+ * over time.
+ */
+public class BenchmarkMain {
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-rf") && !options.contains("-h") && !options.contains("-l")) {
+            options.add("-rf");
+            options.add("json");
+            if (!options.contains("-rff")) {
+                options.add("-rff");
+                options.add("jmh-result-" + LocalDateTime.now().format(TIMESTAMP) + ".json");
+            }
+        }
+        org.openjdk.jmh.Main.main(options.toArray(new String[options.size()]));
+    }
+}
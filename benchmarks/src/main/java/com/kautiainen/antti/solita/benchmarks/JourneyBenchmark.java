@@ -0,0 +1,62 @@
+package com.kautiainen.antti.solita.benchmarks;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kautiainen.antti.solita.exceptions.InvalidFieldsException;
+import com.kautiainen.antti.solita.model.Journey;
+import com.kautiainen.antti.solita.model.Station;
+import com.kautiainen.antti.solita.storage.JourneyStore;
+
+/**
+ * Benchmark of reading, creating and scanning the stored journeys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx6g" })
+public class JourneyBenchmark extends AbstractJourneyBenchmark {
+
+    private static final LocalDateTime DEPARTURE = LocalDateTime.of(2021, 7, 1, 12, 0);
+
+    @Benchmark
+    public Journey readJourney() throws InvalidFieldsException {
+        final int id = 1 + random.nextInt(journeyCount);
+        return new Journey(id, store.get(id));
+    }
+
+    @Benchmark
+    public Journey readJourneyView() {
+        return store.get(1 + random.nextInt(journeyCount));
+    }
+
+    @Benchmark
+    public Journey createJourney() throws InvalidFieldsException {
+        return store.add(new Journey(null, new Station(1 + random.nextInt(STATION_COUNT), null, (String) null),
+                new Station(1 + random.nextInt(STATION_COUNT), null, (String) null), 1200, 300, DEPARTURE,
+                DEPARTURE.plusSeconds(300)));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long scanDistances() {
+        JourneyStore.Columns columns = store.getColumns();
+        long total = 0;
+        for (int row = columns.nextRow(0); row < columns.size(); row = columns.nextRow(row + 1)) {
+            total += columns.getDistance(row);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,74 @@
+package com.kautiainen.antti.solita.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.kautiainen.antti.solita.model.Journey;
+import com.kautiainen.antti.solita.query.JourneyQuery;
+import com.kautiainen.antti.solita.query.JourneyQueryEngine;
+import com.kautiainen.antti.solita.query.Page;
+
+/**
+ * Benchmark of reading the first page of the filtered and sorted journeys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx6g" })
+public class JourneyQueryBenchmark extends AbstractJourneyBenchmark {
+
+    /**
+     * The number of journeys of a page.
+     */
+    private static final int PAGE_SIZE = 1000;
+
+    /**
+     * The filter of the queried journeys.
+     */
+    @Param({ "departureStation=42", "distance=8000..",
+            "duration=600..900,departureTime=2021-06-01T00:00..2021-06-15T00:00" })
+    public String filter;
+
+    /**
+     * The sort of the queried journeys, or an empty string for the row order.
+     */
+    @Param({ "", "-departureTime" })
+    public String sort;
+
+    private JourneyQueryEngine queries;
+
+    private JourneyQuery query;
+
+    @Setup
+    public void setupQuery() {
+        queries = new JourneyQueryEngine(store);
+        query = JourneyQuery.parse(filter, sort);
+        // Merging the appended rows into the range indexes before measuring.
+        Page<Journey> page = queries.query(query, 0, PAGE_SIZE);
+        for (int i = 0; i < PAGE_SIZE && page.hasNext(); i++) {
+            page.next();
+        }
+    }
+
+    @Benchmark
+    public void queryFirstPage(Blackhole blackhole) {
+        Page<Journey> page = queries.query(query, 0, PAGE_SIZE);
+        for (int i = 0; i < PAGE_SIZE && page.hasNext(); i++) {
+            blackhole.consume(page.next());
+        }
+    }
+}
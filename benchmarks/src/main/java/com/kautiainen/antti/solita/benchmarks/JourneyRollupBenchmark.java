@@ -0,0 +1,89 @@
+package com.kautiainen.antti.solita.benchmarks;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.kautiainen.antti.solita.statistics.JourneyRollups;
+import com.kautiainen.antti.solita.statistics.JourneyRollups.Direction;
+import com.kautiainen.antti.solita.statistics.JourneyRollups.Interval;
+import com.kautiainen.antti.solita.storage.JourneyStore;
+
+/**
+ * Benchmark of the aggregates of the journeys of a month from the time buckets
+ * compared with scanning the journey columns, and of building the buckets.
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx6g" })
+public class JourneyRollupBenchmark extends AbstractJourneyBenchmark {
+
+    private static final LocalDateTime FROM = LocalDateTime.of(2021, 6, 1, 0, 0);
+
+    private static final LocalDateTime TO = LocalDateTime.of(2021, 7, 1, 0, 0);
+
+    private static final int STATION = 42;
+
+    private JourneyRollups rollups;
+
+    @Setup
+    public void setupRollups() {
+        rollups = new JourneyRollups(store);
+    }
+
+    @Benchmark
+    public void dailyNetwork(Blackhole blackhole) {
+        blackhole.consume(rollups.query(Interval.DAY, null, Direction.DEPARTURE, FROM, TO));
+    }
+
+    @Benchmark
+    public void hourlyNetworkTotal(Blackhole blackhole) {
+        blackhole.consume(rollups.total(Interval.HOUR, null, Direction.DEPARTURE, FROM, TO));
+    }
+
+    @Benchmark
+    public void dailyStationTotal(Blackhole blackhole) {
+        blackhole.consume(rollups.total(Interval.DAY, STATION, Direction.DEPARTURE, FROM, TO));
+    }
+
+    /**
+     * The total of the journeys of the station scanned from the columns.
+     */
+    @Benchmark
+    public void scanStationTotal(Blackhole blackhole) {
+        final JourneyStore.Columns columns = store.getColumns();
+        final long from = FROM.toEpochSecond(ZoneOffset.UTC);
+        final long to = TO.toEpochSecond(ZoneOffset.UTC);
+        long journeys = 0, distanceSum = 0;
+        for (int row = 0; row < columns.size(); row++) {
+            final long time = columns.getDepartureTime(row);
+            if (!columns.isDeleted(row) && columns.getDepartureStation(row) == STATION && time >= from
+                    && time < to) {
+                journeys++;
+                distanceSum += columns.getDistance(row);
+            }
+        }
+        blackhole.consume(journeys);
+        blackhole.consume(distanceSum);
+    }
+
+    @Benchmark
+    @Measurement(iterations = 3, time = 1)
+    public JourneyRollups build() {
+        return new JourneyRollups(store);
+    }
+}
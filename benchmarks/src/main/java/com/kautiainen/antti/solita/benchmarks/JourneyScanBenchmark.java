@@ -0,0 +1,116 @@
+package com.kautiainen.antti.solita.benchmarks;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.kautiainen.antti.solita.model.Journey;
+import com.kautiainen.antti.solita.query.JourneyAggregate;
+import com.kautiainen.antti.solita.query.JourneyQuery;
+import com.kautiainen.antti.solita.query.JourneyQueryEngine;
+import com.kautiainen.antti.solita.query.JourneyScanner;
+import com.kautiainen.antti.solita.query.Page;
+
+/**
+ * Benchmark of the sequential and the parallel scans of the journeys filtered
+ * by the unindexed return time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx6g" })
+public class JourneyScanBenchmark extends AbstractJourneyBenchmark {
+
+    /**
+     * The number of journeys of a page.
+     */
+    private static final int PAGE_SIZE = 1000;
+
+    /**
+     * The parallelism of the scan pool, or 1 for the sequential scans.
+     */
+    @Param({ "1", "4" })
+    public int parallelism;
+
+    private ForkJoinPool pool;
+
+    private JourneyQueryEngine queries;
+
+    private JourneyQuery firstWeeks;
+
+    private JourneyQuery lastDay;
+
+    private JourneyQuery sorted;
+
+    @Setup
+    public void setupScanner() {
+        pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        queries = new JourneyQueryEngine(store, new JourneyScanner(pool));
+        firstWeeks = JourneyQuery.parse("returnTime=2021-05-01T00:00..2021-05-15T00:00", null);
+        lastDay = JourneyQuery.parse("returnTime=2021-07-29T00:00..2021-07-30T00:00", null);
+        sorted = JourneyQuery.parse("returnTime=2021-05-01T00:00..2021-05-15T00:00", "-returnTime");
+    }
+
+    @TearDown
+    public void shutdownPool() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Aggregate the journeys of two weeks scanning all journeys.
+     */
+    @Benchmark
+    public JourneyAggregate aggregate() {
+        return queries.aggregate(firstWeeks);
+    }
+
+    /**
+     * Read the first page of the journeys of the last day, whose matches are
+     * spread over all journeys.
+     */
+    @Benchmark
+    public void firstPageSparse(Blackhole blackhole) {
+        consume(queries.query(lastDay, 0, PAGE_SIZE), blackhole);
+    }
+
+    /**
+     * Read the first page of the journeys of two weeks, whose first matches
+     * are found early.
+     */
+    @Benchmark
+    public void firstPageDense(Blackhole blackhole) {
+        consume(queries.query(firstWeeks, 0, PAGE_SIZE), blackhole);
+    }
+
+    /**
+     * Read the first page of the journeys of two weeks sorted by the
+     * unindexed return time, which collects all matches.
+     */
+    @Benchmark
+    public void firstPageSorted(Blackhole blackhole) {
+        consume(queries.query(sorted, 0, PAGE_SIZE), blackhole);
+    }
+
+    private static void consume(Page<Journey> page, Blackhole blackhole) {
+        for (int i = 0; i < PAGE_SIZE && page.hasNext(); i++) {
+            blackhole.consume(page.next());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.kautiainen.antti.solita.benchmarks;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.restexpress.serialization.json.JacksonJsonProcessor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.kautiainen.antti.solita.exceptions.InvalidFieldsException;
+import com.kautiainen.antti.solita.model.Journey;
+import com.kautiainen.antti.solita.model.Station;
+import com.kautiainen.antti.solita.serialization.JsonSerializationProcessor;
+import com.kautiainen.antti.solita.serialization.SerializationProvider;
+
+/**
+ * Benchmark of the JSON codecs of the stations and the journeys.
+ * 
+ * The reflective mode serializes with the default RestExpress processor, the
+ * streaming mode with the serializers of the service writing objects, and the
+ * tuple mode with the same serializers writing tuples. The reflective mode
+ * cannot read the models back, so it parses the station and journey lists as
+ * generic trees for comparison. The reflective mode reflects on the times of
+ * the JDK, which have to be opened to it on newer JDKs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-opens=java.base/java.time=ALL-UNNAMED" })
+public class JsonCodecBenchmark {
+
+    @Param({ "10000" })
+    public int listSize;
+
+    @Param({ "reflective", "streaming", "tuples" })
+    public String mode;
+
+    private ObjectWriter writer;
+
+    private ObjectReader stationReader;
+
+    private ObjectReader journeyReader;
+
+    private List<Station> stations;
+
+    private List<Journey> journeys;
+
+    private byte[] serializedStations;
+
+    private byte[] serializedJourneys;
+
+    @Setup
+    public void setup() throws InvalidFieldsException, IOException {
+        ObjectMapper mapper;
+        if ("reflective".equals(mode)) {
+            mapper = new ReflectiveProcessor().getMapper();
+            stationReader = mapper.readerFor(Object.class);
+            journeyReader = stationReader;
+        } else {
+            mapper = ((JsonSerializationProcessor) SerializationProvider.json()).getMapper();
+            stationReader = mapper.readerFor(Station[].class);
+            journeyReader = mapper.readerFor(Journey[].class);
+        }
+        writer = mapper.writer().withAttribute(JsonSerializationProcessor.TUPLES, "tuples".equals(mode));
+        stations = new ArrayList<>(listSize);
+        journeys = new ArrayList<>(listSize);
+        LocalDateTime departure = LocalDateTime.of(2021, 5, 1, 0, 0);
+        for (int i = 0; i < listSize; i++) {
+            Station station = new Station(i + 1, "Station " + (i + 1));
+            stations.add(station);
+            journeys.add(new Journey(i + 1, new Station(i + 1, null, (String) null),
+                    new Station((i * 7) % listSize + 1, null, (String) null), 1000 + i % 5000, 60 + i % 3600,
+                    departure.plusSeconds(i), departure.plusSeconds(i + 600)));
+        }
+        serializedStations = writer.writeValueAsBytes(stations);
+        serializedJourneys = writer.writeValueAsBytes(journeys);
+    }
+
+    @Benchmark
+    public byte[] serializeStations() throws IOException {
+        return writer.writeValueAsBytes(stations);
+    }
+
+    @Benchmark
+    public byte[] serializeJourneys() throws IOException {
+        return writer.writeValueAsBytes(journeys);
+    }
+
+    @Benchmark
+    public Object deserializeStations() throws IOException {
+        return stationReader.readValue(serializedStations);
+    }
+
+    @Benchmark
+    public Object deserializeJourneys() throws IOException {
+        return journeyReader.readValue(serializedJourneys);
+    }
+
+    /**
+     * The default RestExpress processor exposing its reflective mapper.
+     */
+    private static final class ReflectiveProcessor extends JacksonJsonProcessor {
+        private ObjectMapper mapper;
+
+        @Override
+        protected void initializeMapper(ObjectMapper mapper) {
+            super.initializeMapper(mapper);
+            this.mapper = mapper;
+        }
+
+        ObjectMapper getMapper() {
+            return mapper;
+        }
+    }
+}
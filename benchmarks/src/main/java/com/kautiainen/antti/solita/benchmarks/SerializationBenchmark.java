@@ -0,0 +1,77 @@
+package com.kautiainen.antti.solita.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.restexpress.serialization.SerializationProcessor;
+
+import com.kautiainen.antti.solita.exceptions.InvalidFieldsException;
+import com.kautiainen.antti.solita.model.Journey;
+import com.kautiainen.antti.solita.model.Station;
+import com.kautiainen.antti.solita.serialization.SerializationProvider;
+
+/**
+ * Benchmark of serializing large lists of stations and journeys into JSON and
+ * XML with the serialization processors of the service. The XML serializer
+ * reflects on the collections and the times of the JDK, which have to be
+ * opened to it on newer JDKs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-opens=java.base/java.util=ALL-UNNAMED",
+        "--add-opens=java.base/java.time=ALL-UNNAMED" })
+public class SerializationBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int listSize;
+
+    @Param({ "json", "xml" })
+    public String format;
+
+    private SerializationProcessor processor;
+
+    private List<Station> stations;
+
+    private List<Journey> journeys;
+
+    @Setup
+    public void setup() throws InvalidFieldsException {
+        processor = "xml".equals(format) ? SerializationProvider.xml() : SerializationProvider.json();
+        stations = new ArrayList<>(listSize);
+        journeys = new ArrayList<>(listSize);
+        LocalDateTime departure = LocalDateTime.of(2021, 5, 1, 0, 0);
+        for (int i = 0; i < listSize; i++) {
+            Station station = new Station(i + 1, "Station " + (i + 1));
+            stations.add(station);
+            journeys.add(new Journey(i + 1, station, new Station((i * 7) % listSize + 1, null, (String) null),
+                    1000 + i % 5000, 60 + i % 3600, departure.plusSeconds(i), departure.plusSeconds(i + 600)));
+        }
+    }
+
+    @Benchmark
+    public ByteBuffer serializeStations() {
+        return processor.serialize(stations);
+    }
+
+    @Benchmark
+    public ByteBuffer serializeJourneys() {
+        return processor.serialize(journeys);
+    }
+}
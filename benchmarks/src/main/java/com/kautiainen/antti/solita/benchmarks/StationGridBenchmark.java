@@ -0,0 +1,86 @@
+package com.kautiainen.antti.solita.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kautiainen.antti.solita.model.Station;
+import com.kautiainen.antti.solita.storage.StationGrid;
+import com.kautiainen.antti.solita.storage.StationRegistry;
+
+/**
+ * Benchmark of the spatial queries of the stations.
+ * 
+ * The stations are spread uniformly over an area of the size of the Helsinki
+ * region, and the queries are centered on random locations of the area. The
+ * index build shows the cost of the first query after the stations change.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StationGridBenchmark {
+
+    private static final double SOUTH = 60.15;
+    private static final double WEST = 24.7;
+    private static final double HEIGHT = 0.15;
+    private static final double WIDTH = 0.4;
+
+    @Param({ "500", "50000" })
+    public int stationCount;
+
+    private StationRegistry registry;
+
+    private StationGrid grid;
+
+    private final Random random = new Random(1);
+
+    @Setup
+    public void setup() {
+        registry = new StationRegistry();
+        for (int id = 1; id <= stationCount; id++) {
+            Station station = new Station(id, "Station " + id);
+            station.setLocation(SOUTH + random.nextDouble() * HEIGHT, WEST + random.nextDouble() * WIDTH);
+            registry.put(station);
+        }
+        registry.commit();
+        grid = new StationGrid(registry.snapshot());
+    }
+
+    @Benchmark
+    public List<Station> nearest() {
+        return grid.nearest(SOUTH + random.nextDouble() * HEIGHT, WEST + random.nextDouble() * WIDTH, 10,
+                Double.POSITIVE_INFINITY);
+    }
+
+    @Benchmark
+    public List<Station> withinRadius() {
+        return grid.nearest(SOUTH + random.nextDouble() * HEIGHT, WEST + random.nextDouble() * WIDTH,
+                Integer.MAX_VALUE, 500);
+    }
+
+    @Benchmark
+    public List<Station> withinBox() {
+        final double south = SOUTH + random.nextDouble() * HEIGHT, west = WEST + random.nextDouble() * WIDTH;
+        return grid.within(south, west, south + 0.01, west + 0.02, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public StationGrid build() {
+        return new StationGrid(registry.snapshot());
+    }
+}
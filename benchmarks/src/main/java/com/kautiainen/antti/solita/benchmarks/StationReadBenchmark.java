@@ -0,0 +1,105 @@
+package com.kautiainen.antti.solita.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kautiainen.antti.solita.controllers.StationController;
+import com.kautiainen.antti.solita.model.Station;
+import com.kautiainen.antti.solita.storage.StationRegistry;
+
+/**
+ * Benchmark of the station reads.
+ * 
+ * The throughput of the single threaded reads compared with the throughput of
+ * the reads on all cores shows how the reads scale, and the read-write group
+ * shows the reads are not blocked by a concurrent writer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StationReadBenchmark {
+
+    @Param({ "500" })
+    public int stationCount;
+
+    private StationController controller;
+
+    private StationRegistry registry;
+
+    /**
+     * The cursor of the identifiers read by a thread.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = 0;
+
+        int nextId(int count) {
+            next = (next + 1) % count;
+            return next + 1;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        List<Station> stations = new ArrayList<>(stationCount);
+        for (int id = 1; id <= stationCount; id++) {
+            stations.add(new Station(id, "Station " + id));
+        }
+        controller = new StationController(stations);
+        registry = controller.getRegistry();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Station readSingleThread(Cursor cursor) {
+        return controller.getStation(cursor.nextId(stationCount));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Station readAllCores(Cursor cursor) {
+        return controller.getStation(cursor.nextId(stationCount));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public List<Station> readAllStationsAllCores() {
+        return registry.snapshot().getStations();
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(3)
+    public Station reader(Cursor cursor) {
+        return controller.getStation(cursor.nextId(stationCount));
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(1)
+    public StationRegistry.Snapshot writer(Cursor cursor) {
+        synchronized (controller) {
+            registry.put(registry.get(cursor.nextId(stationCount)));
+            return registry.commit();
+        }
+    }
+}
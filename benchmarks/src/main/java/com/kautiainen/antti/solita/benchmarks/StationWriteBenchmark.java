@@ -0,0 +1,102 @@
+package com.kautiainen.antti.solita.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.restexpress.Request;
+import org.restexpress.Response;
+
+import com.kautiainen.antti.solita.controllers.StationController;
+import com.kautiainen.antti.solita.model.Station;
+import com.kautiainen.antti.solita.serialization.SerializationProvider;
+
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+
+/**
+ * Benchmark of adding and listing the stations through the station
+ * controller. The stations are reset before each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StationWriteBenchmark {
+
+    @Param({ "500", "50000" })
+    public int stationCount;
+
+    /**
+     * The controller exposing the station insertion.
+     */
+    private static final class Controller extends StationController {
+
+        Controller(List<Station> stations) {
+            super(stations);
+        }
+
+        boolean insert(Station station) {
+            return addStation(station);
+        }
+
+        boolean insertAll(List<Station> stations) {
+            return addStations(stations, false);
+        }
+    }
+
+    private Controller controller;
+
+    private final SerializationProvider serialization = new SerializationProvider();
+
+    /**
+     * The stations added at once.
+     */
+    private List<Station> batch;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        List<Station> stations = new ArrayList<>(stationCount);
+        for (int id = 1; id <= stationCount; id++) {
+            stations.add(new Station(id, "Station " + id));
+        }
+        controller = new Controller(stations);
+        batch = new ArrayList<>(100);
+        for (int i = 0; i < 100; i++) {
+            batch.add(new Station(null, "Added station " + i));
+        }
+    }
+
+    @Benchmark
+    public boolean insertStation() {
+        return controller.insert(new Station(null, "Added station"));
+    }
+
+    @Benchmark
+    public boolean insertHundredStations() {
+        return controller.insertAll(batch);
+    }
+
+    @Benchmark
+    public List<Station> readAllStations() {
+        Request request = new Request(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET,
+                "/stations.json"), null, serialization);
+        return controller.readAll(request, new Response());
+    }
+}
@@ -1,43 +1,374 @@
 package com.kautiainen.antti.solita;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Locale;
 import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.restexpress.common.exception.ConfigurationException;
 
 import org.restexpress.RestExpress;
 import org.restexpress.util.Environment;
 
+import com.kautiainen.antti.solita.controllers.ImportJobController;
 import com.kautiainen.antti.solita.controllers.JourneyController;
+import com.kautiainen.antti.solita.controllers.MetricsController;
 import com.kautiainen.antti.solita.controllers.StationController;
+import com.kautiainen.antti.solita.execution.ExecutionMode;
+import com.kautiainen.antti.solita.execution.RateLimiter;
+import com.kautiainen.antti.solita.execution.RequestBodies;
+import com.kautiainen.antti.solita.importer.ImportJobs;
+import com.kautiainen.antti.solita.importer.JourneyCsvImporter;
+import com.kautiainen.antti.solita.importer.JourneyValidator;
+import com.kautiainen.antti.solita.importer.StationCsvImporter;
+import com.kautiainen.antti.solita.metrics.Metrics;
+import com.kautiainen.antti.solita.persistence.Persistence;
+import com.kautiainen.antti.solita.serialization.SerializationCache;
+import com.kautiainen.antti.solita.serialization.SerializationProvider;
 
 public class Configuration
 extends Environment
 {
 	private static final String DEFAULT_EXECUTOR_THREAD_POOL_SIZE = "20";
+	private static final String DEFAULT_EXECUTOR_ROUTE_CONCURRENCY = "256";
+	private static final String DEFAULT_EXECUTOR_ROUTE_WAIT = "1000";
+	private static final String DEFAULT_ADMISSION_RETRY_AFTER = "1";
+	private static final String DEFAULT_VALIDATION_MIN_DISTANCE = "10";
+	private static final String DEFAULT_VALIDATION_MIN_DURATION = "10";
+	private static final String DEFAULT_PERSISTENCE_SNAPSHOT_INTERVAL = "3600";
+	private static final String DEFAULT_BODY_SPOOL_MAX_SIZE = String.valueOf(1L << 30);
+	private static final String DEFAULT_BODY_BULK_MAX_SIZE = String.valueOf(64 << 20);
 
 	private static final String PORT_PROPERTY = "port";
 	private static final String BASE_URL_PROPERTY = "base.url";
 	private static final String EXECUTOR_THREAD_POOL_SIZE = "executor.threadPool.size";
+	private static final String EXECUTOR_MODE_PROPERTY = "executor.mode";
+	private static final String EXECUTOR_ROUTE_CONCURRENCY_PROPERTY = "executor.route.concurrency";
+	private static final String EXECUTOR_ROUTE_WAIT_PROPERTY = "executor.route.wait.millis";
+	private static final String RATE_LIMIT_RATE_PROPERTY = "ratelimit.rate";
+	private static final String RATE_LIMIT_BURST_PROPERTY = "ratelimit.burst";
+	private static final String RATE_LIMIT_ROUTE_PREFIX = "ratelimit.route.";
+	private static final String RATE_LIMIT_RATE_SUFFIX = ".rate";
+	private static final String RATE_LIMIT_BURST_SUFFIX = ".burst";
+	private static final String ADMISSION_MAX_IN_FLIGHT_PROPERTY = "admission.maxInFlight";
+	private static final String ADMISSION_RETRY_AFTER_PROPERTY = "admission.retryAfter";
+	private static final String VALIDATION_MIN_DISTANCE_PROPERTY = "validation.journey.minDistance";
+	private static final String VALIDATION_MIN_DURATION_PROPERTY = "validation.journey.minDuration";
+	private static final String VALIDATION_STATIONS_PROPERTY = "validation.journey.stations";
+	private static final String VALIDATION_DUPLICATES_PROPERTY = "validation.journey.duplicates";
+	private static final String IMPORT_WORKERS_PROPERTY = "import.workers";
+	private static final String IMPORT_QUEUE_PROPERTY = "import.queue";
+	private static final String IMPORT_RETAINED_PROPERTY = "import.retained";
+	private static final String IMPORT_JOURNEYS_PROPERTY = "import.journeys";
+	private static final String IMPORT_STATIONS_PROPERTY = "import.stations";
+	private static final String PERSISTENCE_DIRECTORY_PROPERTY = "persistence.directory";
+	private static final String PERSISTENCE_SNAPSHOT_BYTES_PROPERTY = "persistence.snapshot.bytes";
+	private static final String PERSISTENCE_SYNC_PROPERTY = "persistence.sync";
+	private static final String PERSISTENCE_SNAPSHOT_INTERVAL_PROPERTY = "persistence.snapshot.interval";
+	private static final String ACCESS_LOG_PROPERTY = "access.log";
+	private static final String SERIALIZATION_CACHE_BYTES_PROPERTY = "serialization.cache.bytes";
+	private static final String COMPRESSION_THRESHOLD_BYTES_PROPERTY = "compression.threshold.bytes";
+	private static final String SCAN_PARALLELISM_PROPERTY = "scan.parallelism";
+	private static final String BODY_MAX_SIZE_PROPERTY = "body.maxSize";
+	private static final String BODY_SPOOL_MAX_SIZE_PROPERTY = "body.spool.maxSize";
+	private static final String BODY_BULK_MAX_SIZE_PROPERTY = "body.bulk.maxSize";
+	private static final String BODY_SPOOL_DIRECTORY_PROPERTY = "body.spool.directory";
 
 	private int port;
 	private String baseUrl;
 	private int executorThreadPoolSize;
+	private ExecutionMode executionMode;
+	private int routeConcurrency;
+	private long routeWaitMillis;
+	private RateLimiter rateLimiter;
+	private int maxInFlight;
+	private long admissionRetryAfter;
+	private int minJourneyDistance;
+	private int minJourneyDuration;
+	private boolean validatesStations;
+	private boolean detectsDuplicates;
+	private int importWorkers;
+	private int importQueueCapacity;
+	private int importRetained;
+	private String[] importedJourneyFiles;
+	private String[] importedStationFiles;
+	private String persistenceDirectory;
+	private long snapshotBytes;
+	private boolean persistenceSync;
+	private long snapshotInterval;
+	private String accessLog;
+	private int scanParallelism;
+	private RequestBodies requestBodies;
+	private long spooledBodyMaxSize;
+	private long bulkBodyMaxSize;
 
 	private JourneyController journeyController;
 
 	private StationController stationController; 
 
+	private Persistence persistence;
+
+	private MetricsController metricsController;
+
+	private ImportJobController importJobController;
+
 	@Override
 	protected void fillValues(Properties p)
 	{
 		this.port = Integer.parseInt(p.getProperty(PORT_PROPERTY, String.valueOf(RestExpress.DEFAULT_PORT)));
 		this.baseUrl = p.getProperty(BASE_URL_PROPERTY, "http://localhost:" + String.valueOf(port));
 		this.executorThreadPoolSize = Integer.parseInt(p.getProperty(EXECUTOR_THREAD_POOL_SIZE, DEFAULT_EXECUTOR_THREAD_POOL_SIZE));
+		this.executionMode = parseExecutionMode(p.getProperty(EXECUTOR_MODE_PROPERTY, ExecutionMode.PLATFORM.name()));
+		this.routeConcurrency = Integer.parseInt(p.getProperty(EXECUTOR_ROUTE_CONCURRENCY_PROPERTY, DEFAULT_EXECUTOR_ROUTE_CONCURRENCY));
+		this.routeWaitMillis = Long.parseLong(p.getProperty(EXECUTOR_ROUTE_WAIT_PROPERTY, DEFAULT_EXECUTOR_ROUTE_WAIT));
+		this.rateLimiter = parseRateLimiter(p);
+		this.maxInFlight = Integer.parseInt(p.getProperty(ADMISSION_MAX_IN_FLIGHT_PROPERTY, "0"));
+		this.admissionRetryAfter = Long.parseLong(p.getProperty(ADMISSION_RETRY_AFTER_PROPERTY, DEFAULT_ADMISSION_RETRY_AFTER));
+		this.minJourneyDistance = Integer.parseInt(p.getProperty(VALIDATION_MIN_DISTANCE_PROPERTY, DEFAULT_VALIDATION_MIN_DISTANCE));
+		this.minJourneyDuration = Integer.parseInt(p.getProperty(VALIDATION_MIN_DURATION_PROPERTY, DEFAULT_VALIDATION_MIN_DURATION));
+		this.validatesStations = Boolean.parseBoolean(p.getProperty(VALIDATION_STATIONS_PROPERTY, "false"));
+		this.detectsDuplicates = Boolean.parseBoolean(p.getProperty(VALIDATION_DUPLICATES_PROPERTY, "true"));
+		this.importWorkers = Integer.parseInt(p.getProperty(IMPORT_WORKERS_PROPERTY, String.valueOf(ImportJobs.DEFAULT_WORKERS)));
+		this.importQueueCapacity = Integer.parseInt(p.getProperty(IMPORT_QUEUE_PROPERTY, String.valueOf(ImportJobs.DEFAULT_QUEUE_CAPACITY)));
+		this.importRetained = Integer.parseInt(p.getProperty(IMPORT_RETAINED_PROPERTY, String.valueOf(ImportJobs.DEFAULT_RETAINED)));
+		this.importedJourneyFiles = p.getProperty(IMPORT_JOURNEYS_PROPERTY, "").trim().split("\\s*,\\s*");
+		this.importedStationFiles = p.getProperty(IMPORT_STATIONS_PROPERTY, "").trim().split("\\s*,\\s*");
+		this.persistenceDirectory = p.getProperty(PERSISTENCE_DIRECTORY_PROPERTY, "").trim();
+		this.snapshotBytes = Long.parseLong(p.getProperty(PERSISTENCE_SNAPSHOT_BYTES_PROPERTY, String.valueOf(Persistence.DEFAULT_SNAPSHOT_THRESHOLD)));
+		this.persistenceSync = Boolean.parseBoolean(p.getProperty(PERSISTENCE_SYNC_PROPERTY, "true"));
+		this.snapshotInterval = Long.parseLong(p.getProperty(PERSISTENCE_SNAPSHOT_INTERVAL_PROPERTY, DEFAULT_PERSISTENCE_SNAPSHOT_INTERVAL));
+		this.accessLog = p.getProperty(ACCESS_LOG_PROPERTY, "").trim();
+		this.scanParallelism = Integer.parseInt(p.getProperty(SCAN_PARALLELISM_PROPERTY, String.valueOf(Runtime.getRuntime().availableProcessors())));
+		this.requestBodies = newRequestBodies(p);
+		this.spooledBodyMaxSize = Long.parseLong(p.getProperty(BODY_SPOOL_MAX_SIZE_PROPERTY, DEFAULT_BODY_SPOOL_MAX_SIZE));
+		this.bulkBodyMaxSize = Long.parseLong(p.getProperty(BODY_BULK_MAX_SIZE_PROPERTY, DEFAULT_BODY_BULK_MAX_SIZE));
+		SerializationProvider.cache().setCapacity(Long.parseLong(p.getProperty(SERIALIZATION_CACHE_BYTES_PROPERTY, String.valueOf(SerializationCache.DEFAULT_CAPACITY))));
+		SerializationProvider.cache().setCompressionThreshold(Integer.parseInt(p.getProperty(COMPRESSION_THRESHOLD_BYTES_PROPERTY, String.valueOf(SerializationCache.DEFAULT_COMPRESSION_THRESHOLD))));
 		initialize();
 	}
 
+	/**
+	 * Parse the execution mode ignoring its case.
+	 * 
+	 * @param value The name of the mode.
+	 * @return The execution mode.
+	 */
+	private static ExecutionMode parseExecutionMode(String value)
+	{
+		try
+		{
+			return ExecutionMode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new ConfigurationException("Invalid " + EXECUTOR_MODE_PROPERTY + " " + value, e);
+		}
+	}
+
+	/**
+	 * Parse the rate limits. The default limit is given with the rate and
+	 * the burst, and the limit of a named route with the rate and the burst
+	 * prefixed with the route name. A rate of 0 leaves the routes unlimited.
+	 * 
+	 * @param p The properties.
+	 * @return The rate limiter, or an undefined value, if no route is
+	 *         limited.
+	 */
+	private static RateLimiter parseRateLimiter(Properties p)
+	{
+		RateLimiter.Limit defaultLimit = parseLimit(p, RATE_LIMIT_RATE_PROPERTY, RATE_LIMIT_BURST_PROPERTY);
+		RateLimiter result = new RateLimiter(defaultLimit);
+		boolean limited = defaultLimit != null;
+		for (String name : p.stringPropertyNames())
+		{
+			if (name.startsWith(RATE_LIMIT_ROUTE_PREFIX) && name.endsWith(RATE_LIMIT_RATE_SUFFIX))
+			{
+				String route = name.substring(RATE_LIMIT_ROUTE_PREFIX.length(), name.length() - RATE_LIMIT_RATE_SUFFIX.length());
+				RateLimiter.Limit limit = parseLimit(p, name, RATE_LIMIT_ROUTE_PREFIX + route + RATE_LIMIT_BURST_SUFFIX);
+				if (limit != null)
+				{
+					result.setLimit(route, limit);
+					limited = true;
+				}
+			}
+		}
+		return limited ? result : null;
+	}
+
+	/**
+	 * Parse a rate limit. The burst defaults to the rate rounded up.
+	 * 
+	 * @param p The properties.
+	 * @param rateProperty The property of the requests per second.
+	 * @param burstProperty The property of the burst.
+	 * @return The limit, or an undefined value, if the rate is 0.
+	 */
+	private static RateLimiter.Limit parseLimit(Properties p, String rateProperty, String burstProperty)
+	{
+		// The property being parsed is reported with an invalid value.
+		String property = rateProperty;
+		try
+		{
+			double rate = Double.parseDouble(p.getProperty(rateProperty, "0"));
+			if (rate == 0)
+			{
+				return null;
+			}
+			else if (!(rate > 0))
+			{
+				throw new IllegalArgumentException("Invalid rate");
+			}
+			property = burstProperty;
+			int burst = Integer.parseInt(p.getProperty(burstProperty, String.valueOf((int) Math.ceil(rate))));
+			return new RateLimiter.Limit(rate, burst);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new ConfigurationException("Invalid " + property + " " + p.getProperty(property), e);
+		}
+	}
+
+	/**
+	 * Create the limits of the request bodies. The limits of the routes are
+	 * given by the routes.
+	 * 
+	 * @param p The properties.
+	 * @return The limits with the default limit and the spool directory.
+	 * @see Routes#limitBodies(Configuration, RequestBodies)
+	 */
+	private static RequestBodies newRequestBodies(Properties p)
+	{
+		String directory = p.getProperty(BODY_SPOOL_DIRECTORY_PROPERTY, System.getProperty("java.io.tmpdir")).trim();
+		try
+		{
+			return new RequestBodies(Long.parseLong(p.getProperty(BODY_MAX_SIZE_PROPERTY, String.valueOf(RequestBodies.DEFAULT_MAX_SIZE))),
+			    Paths.get(directory));
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new ConfigurationException("Invalid " + BODY_MAX_SIZE_PROPERTY + " " + p.getProperty(BODY_MAX_SIZE_PROPERTY), e);
+		}
+	}
+
+	/**
+	 * Create the validator of the created and the imported journeys.
+	 * 
+	 * @return The validator of the configured thresholds checking the
+	 *         stations against the station controller, if the stations are
+	 *         validated.
+	 */
+	private JourneyValidator newJourneyValidator()
+	{
+		try
+		{
+			return new JourneyValidator(minJourneyDistance, minJourneyDuration,
+			    validatesStations ? stationController::hasStation : null, detectsDuplicates);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new ConfigurationException("Invalid journey validation", e);
+		}
+	}
+
 	private void initialize()
 	{
-		this.journeyController = new JourneyController();
-		this.stationController = new StationController();
+		// The scans have a pool of their own, so the long scans do not hold
+		// the request threads.
+		this.journeyController = new JourneyController(scanParallelism > 1 ? new ForkJoinPool(scanParallelism) : null);
+		this.stationController = new StationController(journeyController.getStatistics());
+		this.journeyController.setValidator(newJourneyValidator());
+		this.journeyController.setRequestBodies(requestBodies);
+		this.metricsController = new MetricsController(new Metrics());
+		this.importJobController = new ImportJobController(journeyController, stationController,
+		    new ImportJobs(importWorkers, importQueueCapacity, importRetained));
+		this.importJobController.setRequestBodies(requestBodies);
+		recover();
+
+		// The stations are imported only into an empty registry, as the
+		// recovered registry already contains the imported stations.
+		if (stationController.getRegistry().snapshot().size() == 0)
+		{
+			importStations();
+		}
+
+		// The journeys are imported only into an empty store, as the recovered
+		// store already contains the imported journeys.
+		if (journeyController.getJourneys().size() == 0)
+		{
+			importJourneys();
+		}
+	}
+
+	/**
+	 * Recover the stations and the journeys from the persistence directory,
+	 * and journal their later changes.
+	 */
+	private void recover()
+	{
+		if (persistenceDirectory.isEmpty()) return;
+
+		this.persistence = new Persistence(Paths.get(persistenceDirectory), stationController.getRegistry(),
+		    journeyController.getJourneys(), snapshotBytes, persistenceSync);
+
+		try
+		{
+			persistence.recover();
+		}
+		catch (IOException e)
+		{
+			throw new ConfigurationException("Could not recover from " + persistenceDirectory, e);
+		}
+
+		stationController.reserveIdentifiers();
+
+		if (snapshotInterval > 0)
+		{
+			persistence.scheduleSnapshots(snapshotInterval, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Import the station CSV files given with the import property.
+	 */
+	private void importStations()
+	{
+		StationCsvImporter importer = new StationCsvImporter(stationController::putStations);
+		for (String file : importedStationFiles)
+		{
+			if (file.isEmpty()) continue;
+
+			try
+			{
+				importer.importFrom(Paths.get(file));
+			}
+			catch (IOException e)
+			{
+				throw new ConfigurationException("Could not import stations from " + file, e);
+			}
+		}
+	}
+
+	/**
+	 * Import the journey CSV files given with the import property.
+	 */
+	private void importJourneys()
+	{
+		JourneyCsvImporter importer = new JourneyCsvImporter(journeyController::addJourneys, journeyController.getValidator());
+		for (String file : importedJourneyFiles)
+		{
+			if (file.isEmpty()) continue;
+
+			try
+			{
+				importer.importFrom(Paths.get(file));
+			}
+			catch (IOException e)
+			{
+				throw new ConfigurationException("Could not import journeys from " + file, e);
+			}
+		}
 	}
 
 	public int getPort()
@@ -55,6 +386,111 @@ extends Environment
 		return executorThreadPoolSize;
 	}
 
+	/**
+	 * Get the parallelism of the journey scans.
+	 * 
+	 * @return The number of the threads of the scan pool, or at most one for
+	 *         sequential scans.
+	 */
+	public int getScanParallelism()
+	{
+		return scanParallelism;
+	}
+
+	/**
+	 * Get the threads invoking the controllers.
+	 * 
+	 * @return The execution mode.
+	 */
+	public ExecutionMode getExecutionMode()
+	{
+		return executionMode;
+	}
+
+	/**
+	 * Get the maximal number of the concurrent requests of a route.
+	 * 
+	 * @return The limit of the concurrent requests, or 0 for no limit.
+	 */
+	public int getRouteConcurrency()
+	{
+		return routeConcurrency;
+	}
+
+	/**
+	 * Get the maximal time a request waits for its route in the virtual
+	 * execution mode. The requests on the platform threads do not wait.
+	 * 
+	 * @return The time in milliseconds, after which a request over the limit
+	 *         of its route is rejected.
+	 */
+	public long getRouteWaitMillis()
+	{
+		return routeWaitMillis;
+	}
+
+	/**
+	 * Get the rate limits of the clients.
+	 * 
+	 * @return The rate limiter, or an undefined value, if the rates are not
+	 *         limited.
+	 */
+	public RateLimiter getRateLimiter()
+	{
+		return rateLimiter;
+	}
+
+	/**
+	 * Get the maximal number of the requests in flight.
+	 * 
+	 * @return The number of the requests served at a time, above which the
+	 *         requests are shed, or 0 for no limit.
+	 */
+	public int getMaxInFlight()
+	{
+		return maxInFlight;
+	}
+
+	/**
+	 * Get the time after which a shed request may be retried.
+	 * 
+	 * @return The time in seconds.
+	 */
+	public long getAdmissionRetryAfter()
+	{
+		return admissionRetryAfter;
+	}
+
+	/**
+	 * Get the limits of the request bodies.
+	 * 
+	 * @return The limits of the bodies without the limits of the routes.
+	 */
+	public RequestBodies getRequestBodies()
+	{
+		return requestBodies;
+	}
+
+	/**
+	 * Get the maximal size of a spooled request body.
+	 * 
+	 * @return The size in bytes.
+	 */
+	public long getSpooledBodyMaxSize()
+	{
+		return spooledBodyMaxSize;
+	}
+
+	/**
+	 * Get the maximal size of a bulk request body read into memory.
+	 * 
+	 * @return The size in bytes.
+	 */
+	public long getBulkBodyMaxSize()
+	{
+		return bulkBodyMaxSize;
+	}
+
 	public JourneyController getJourneyController()
 	{
 		return journeyController;
@@ -64,4 +500,36 @@ extends Environment
 	{
 		return stationController;
 	}
+
+	public MetricsController getMetricsController()
+	{
+		return metricsController;
+	}
+
+	public ImportJobController getImportJobController()
+	{
+		return importJobController;
+	}
+
+	/**
+	 * Get the access log file.
+	 * 
+	 * @return The path of the access log file, "off" for no access log, or an
+	 *         empty string for the standard output.
+	 */
+	public String getAccessLog()
+	{
+		return accessLog;
+	}
+
+	/**
+	 * Get the persistence of the stations and the journeys.
+	 * 
+	 * @return The persistence, or an undefined value, if the data is not
+	 *         persisted.
+	 */
+	public Persistence getPersistence()
+	{
+		return persistence;
+	}
 }
@@ -17,12 +17,92 @@ public class Constants
 		 */
 		public static final String JOURNEY_FILTER = "journeyFilter";
 
+		/**
+		 * The journey sort parameter.
+		 */
+		public static final String JOURNEY_SORT = "journeySort";
+
 
 		/**
 		 * The station identifier. 
 		 */
 		public static final String STATION_ID = "stationId";
 
+		/**
+		 * The import job identifier.
+		 */
+		public static final String JOB_ID = "jobId";
+
+		/**
+		 * The expanded details of a resource.
+		 */
+		public static final String EXPAND = "expand";
+
+		/**
+		 * The latitude of a location in degrees.
+		 */
+		public static final String LATITUDE = "lat";
+
+		/**
+		 * The longitude of a location in degrees.
+		 */
+		public static final String LONGITUDE = "lon";
+
+		/**
+		 * The radius of a search in metres.
+		 */
+		public static final String RADIUS = "radius";
+
+		/**
+		 * The maximal number of the nearest results.
+		 */
+		public static final String NEAREST = "k";
+
+		/**
+		 * The bounding box of a search as the western longitude, the southern
+		 * latitude, the eastern longitude and the northern latitude.
+		 */
+		public static final String BOUNDING_BOX = "bbox";
+
+		/**
+		 * The searched name.
+		 */
+		public static final String SEARCH = "q";
+
+		/**
+		 * The language of the names.
+		 */
+		public static final String LANGUAGE = "lang";
+
+		/**
+		 * The length of the time buckets.
+		 */
+		public static final String INTERVAL = "interval";
+
+		/**
+		 * The start of a time range.
+		 */
+		public static final String FROM = "from";
+
+		/**
+		 * The exclusive end of a time range.
+		 */
+		public static final String TO = "to";
+
+		/**
+		 * The station of the aggregated journeys.
+		 */
+		public static final String STATION = "station";
+
+		/**
+		 * The end of the journeys aggregated for a station.
+		 */
+		public static final String DIRECTION = "direction";
+
+		/**
+		 * Does the aggregate include only the total of the range.
+		 */
+		public static final String TOTAL = "total";
 
 	}
 
@@ -34,7 +114,18 @@ public class Constants
 	{
 		public static final String SINGLE_JOURNEY = "journey";
 		public static final String JOURNEY_COLLECTION = "journeys";
+		public static final String JOURNEY_IMPORT = "journeys.import";
+		public static final String JOURNEY_BATCH = "journeys.batch";
+		public static final String JOURNEY_ROLLUP = "journeys.rollup";
+		public static final String JOURNEY_AGGREGATE = "journeys.aggregate";
 		public static final String SINGLE_STATION = "station";
 		public static final String STATION_CONNECTION = "stations";
+		public static final String STATION_BATCH = "stations.batch";
+		public static final String STATIONS_NEAR = "stations.near";
+		public static final String STATION_SEARCH = "stations.search";
+		public static final String IMPORT_JOB = "job";
+		public static final String JOURNEY_IMPORT_JOBS = "jobs.journeys";
+		public static final String STATION_IMPORT_JOBS = "jobs.stations";
+		public static final String METRICS = "metrics";
 	}
 }
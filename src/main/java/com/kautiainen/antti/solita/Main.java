@@ -8,6 +8,7 @@ public class Main
 	{
 		Configuration config = Environment.load(args, Configuration.class);
 		Server server = new Server(config);
+		Runtime.getRuntime().addShutdownHook(new Thread(server::shutdown, "shutdown"));
 		server.start().awaitShutdown();
 	}
 }
@@ -1,6 +1,7 @@
 package com.kautiainen.antti.solita;
 
 import com.kautiainen.antti.solita.controllers.*;
+import com.kautiainen.antti.solita.execution.RequestBodies;
 
 import io.netty.handler.codec.http.HttpMethod;
 
@@ -11,6 +12,27 @@ import org.restexpress.RestExpress;
  */
 public abstract class Routes
 {
+	/**
+	 * Limit the request bodies of the routes. The CSV bodies of the imports
+	 * are spooled to files instead of being read into memory, and the other
+	 * bodies of the import jobs, the batches and the bulk creations of the
+	 * journeys are limited by the bulk limit.
+	 * @param config The configuration of the server.
+	 * @param bodies The limits of the bodies.
+	 * @return The limits of the bodies.
+	 */
+	public static RequestBodies limitBodies(Configuration config, RequestBodies bodies)
+	{
+		return bodies
+			.spool("/journeys/import", null, config.getSpooledBodyMaxSize())
+			.spool("/jobs/journeys.", ImportJobController.CSV_CONTENT_TYPE, config.getSpooledBodyMaxSize())
+			.spool("/jobs/stations.", ImportJobController.CSV_CONTENT_TYPE, config.getSpooledBodyMaxSize())
+			.limit("/jobs/", config.getBulkBodyMaxSize())
+			.limit("/journeys/batch.", config.getBulkBodyMaxSize())
+			.limit("/stations/batch.", config.getBulkBodyMaxSize())
+			.limit("/journeys/all.", config.getBulkBodyMaxSize());
+	}
+
 	/**
 	 * Define the routes of the server.
 	 * @param config The configuration of the server.
@@ -28,15 +50,58 @@ public abstract class Routes
 			.method(HttpMethod.POST)
 			.name(Constants.Routes.JOURNEY_COLLECTION);
 
+		server.uri("/journeys/batch.{format}", config.getJourneyController())
+			.action("batch", HttpMethod.POST)
+			.name(Constants.Routes.JOURNEY_BATCH);
+
+		server.uri("/journeys/import", config.getJourneyController())
+			.action("importCsv", HttpMethod.POST)
+			.name(Constants.Routes.JOURNEY_IMPORT);
+
+		server.uri("/journeys/rollup.{format}", config.getJourneyController())
+			.action("rollup", HttpMethod.GET)
+			.name(Constants.Routes.JOURNEY_ROLLUP);
+
+		server.uri("/journeys/aggregate.{format}", config.getJourneyController())
+			.action("aggregate", HttpMethod.GET)
+			.name(Constants.Routes.JOURNEY_AGGREGATE);
 
 		server.uri("/station/{stationId}.{format}", config.getStationController())
 		.method(HttpMethod.GET, HttpMethod.PUT, HttpMethod.DELETE)
 		.name(Constants.Routes.SINGLE_STATION);
 
-		server.uri("stations/{format}", config.getStationController())
+		server.uri("/stations.{format}", config.getStationController())
 		.action("readAll", HttpMethod.GET)
 		.method(HttpMethod.POST)
-		.name(Constants.Routes.JOURNEY_COLLECTION);
+		.name(Constants.Routes.STATION_CONNECTION);
+
+		server.uri("/stations/batch.{format}", config.getStationController())
+		.action("batch", HttpMethod.POST)
+		.name(Constants.Routes.STATION_BATCH);
+
+		server.uri("/stations/near.{format}", config.getStationController())
+		.action("near", HttpMethod.GET)
+		.name(Constants.Routes.STATIONS_NEAR);
+
+		server.uri("/stations/search.{format}", config.getStationController())
+		.action("search", HttpMethod.GET)
+		.name(Constants.Routes.STATION_SEARCH);
+
+		server.uri("/jobs/journeys.{format}", config.getImportJobController())
+		.action("createJourneys", HttpMethod.POST)
+		.name(Constants.Routes.JOURNEY_IMPORT_JOBS);
+
+		server.uri("/jobs/stations.{format}", config.getImportJobController())
+		.action("createStations", HttpMethod.POST)
+		.name(Constants.Routes.STATION_IMPORT_JOBS);
+
+		server.uri("/jobs/{jobId}.{format}", config.getImportJobController())
+		.action("read", HttpMethod.GET)
+		.name(Constants.Routes.IMPORT_JOB);
+
+		server.uri("/metrics.{format}", config.getMetricsController())
+		.action("read", HttpMethod.GET)
+		.name(Constants.Routes.METRICS);
 // or...
 //		server.regex("/some.regex", config.getRouteController());
     }
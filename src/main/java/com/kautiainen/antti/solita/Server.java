@@ -1,15 +1,34 @@
 package com.kautiainen.antti.solita;
 
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 import org.restexpress.RestExpress;
-import org.restexpress.pipeline.SimpleConsoleLogMessageObserver;
+import org.restexpress.common.exception.ConfigurationException;
+
+import com.kautiainen.antti.solita.caching.ContentEncodings;
+import com.kautiainen.antti.solita.execution.ExecutionMode;
+import com.kautiainen.antti.solita.execution.ExecutorRestExpress;
+import com.kautiainen.antti.solita.execution.LoadShedder;
+import com.kautiainen.antti.solita.execution.RouteConcurrencyLimiter;
+import com.kautiainen.antti.solita.metrics.AccessLogObserver;
+import com.kautiainen.antti.solita.metrics.MetricsObserver;
 import com.kautiainen.antti.solita.serialization.SerializationProvider;
 
 public class Server
 {
 	private static final String SERVICE_NAME = "TODO: Enter service name";
+	private static final String ACCESS_LOG_OFF = "off";
+	private static final Logger LOGGER = Logger.getLogger(Server.class.getName());
 
 	private RestExpress server;
 	private Configuration config;
+	private AccessLogObserver accessLog;
 	private boolean isStarted = false;
 
 	public Server(Configuration config)
@@ -17,15 +36,86 @@ public class Server
 		this.config = config;
 		RestExpress.setDefaultSerializationProvider(new SerializationProvider());
 
-		this.server = new RestExpress()
+		this.server = newServer(config)
 				.setName(SERVICE_NAME)
 				.setBaseUrl(config.getBaseUrl())
-				.setExecutorThreadCount(config.getExecutorThreadPoolSize())
-				.addMessageObserver(new SimpleConsoleLogMessageObserver());
+				.addMessageObserver(new MetricsObserver(config.getMetricsController().getMetrics()))
+				.addPostprocessor(ContentEncodings::vary);
+
+		// The cheap rejections come first: a shed request is rejected before
+		// it is dispatched, and a client over its rate before it waits for its
+		// route.
+		if (config.getRateLimiter() != null)
+		{
+			server.addPreprocessor(config.getRateLimiter());
+		}
+
+		if (config.getRouteConcurrency() > 0)
+		{
+			// Only a virtual thread may wait for a permit: a waiting platform
+			// thread would hold up the requests queued behind it.
+			long wait = config.getExecutionMode() == ExecutionMode.VIRTUAL ? config.getRouteWaitMillis() : 0;
+			RouteConcurrencyLimiter limiter = new RouteConcurrencyLimiter(config.getRouteConcurrency(), wait);
+			server.addPreprocessor(limiter);
+			server.addFinallyProcessor(limiter);
+		}
+
+		if (!ACCESS_LOG_OFF.equals(config.getAccessLog()))
+		{
+			this.accessLog = new AccessLogObserver(openAccessLog(config.getAccessLog()), AccessLogObserver.DEFAULT_CAPACITY);
+			server.addMessageObserver(accessLog);
+		}
 
 		Routes.define(config, server);
 	}
 
+	/**
+	 * Create the server invoking the controllers in the execution mode of the
+	 * configuration: on the fixed pool of platform threads, or on a new
+	 * virtual thread for each request, so a blocking controller parks its
+	 * virtual thread instead of holding a pooled thread.
+	 * 
+	 * The requests above the maximal number of the requests in flight are
+	 * shed before they are dispatched to the threads, and the request bodies
+	 * are limited by their routes.
+	 * 
+	 * @param config The configuration.
+	 * @return The server.
+	 */
+	private static RestExpress newServer(Configuration config)
+	{
+		ExecutorRestExpress result = new ExecutorRestExpress(config.getExecutionMode().newExecutor(config.getExecutorThreadPoolSize()));
+
+		if (config.getMaxInFlight() > 0)
+		{
+			result.setLoadShedder(new LoadShedder(config.getMaxInFlight(), config.getAdmissionRetryAfter()));
+		}
+
+		result.setRequestBodies(Routes.limitBodies(config, config.getRequestBodies()));
+		return result;
+	}
+
+	/**
+	 * Open the writer of the access log.
+	 * 
+	 * @param file The access log file, or an empty string for the standard
+	 *             output.
+	 * @return The writer of the access log.
+	 */
+	private static Writer openAccessLog(String file)
+	{
+		if (file.isEmpty()) return new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+
+		try
+		{
+			return new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8);
+		}
+		catch (IOException e)
+		{
+			throw new ConfigurationException("Could not open the access log " + file, e);
+		}
+	}
+
 	public Server start()
 	{
 		if (!isStarted)
@@ -42,8 +132,32 @@ public class Server
 		if (isStarted) server.awaitShutdown();
 	}
 
+	/**
+	 * Shut down the server. The requests and the import jobs are completed
+	 * before the persistence is closed, so their changes are journaled.
+	 */
 	public void shutdown()
 	{
 		if (isStarted) server.shutdown();
+		config.getImportJobController().getJobs().shutdown();
+		closePersistence();
+		if (accessLog != null) accessLog.close();
+	}
+
+	/**
+	 * Close the persistence writing the snapshots of the latest changes.
+	 */
+	private void closePersistence()
+	{
+		if (config.getPersistence() == null) return;
+
+		try
+		{
+			config.getPersistence().close();
+		}
+		catch (IOException | RuntimeException e)
+		{
+			LOGGER.log(Level.WARNING, "Could not close the persistence", e);
+		}
 	}
 }
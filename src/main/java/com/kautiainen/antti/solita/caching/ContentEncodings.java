@@ -0,0 +1,182 @@
+package com.kautiainen.antti.solita.caching;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.restexpress.Request;
+import org.restexpress.Response;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * Negotiation of the content encodings with {@value #ACCEPT_ENCODING}, and
+ * the compression of the response bodies.
+ * 
+ * The supported encodings are {@value #GZIP} and {@value #DEFLATE}, which are
+ * written with the best compression, as the encoded bodies are cached and
+ * compressed only once per version.
+ */
+public final class ContentEncodings {
+
+    public static final String ACCEPT_ENCODING = "Accept-Encoding";
+
+    public static final String CONTENT_ENCODING = "Content-Encoding";
+
+    public static final String VARY = "Vary";
+
+    public static final String GZIP = "gzip";
+
+    public static final String DEFLATE = "deflate";
+
+    /**
+     * The index of the identity encoding.
+     */
+    public static final int IDENTITY = -1;
+
+    /**
+     * The supported encodings in the order of preference.
+     */
+    private static final String[] ENCODINGS = { GZIP, DEFLATE };
+
+    private ContentEncodings() {
+    }
+
+    /**
+     * Get the number of the supported encodings.
+     * 
+     * @return The number of the supported encodings excluding the identity.
+     */
+    public static int count() {
+        return ENCODINGS.length;
+    }
+
+    /**
+     * Get the name of an encoding.
+     * 
+     * @param encoding The index of a supported encoding.
+     * @return The name of the encoding.
+     */
+    public static String nameOf(int encoding) {
+        return ENCODINGS[encoding];
+    }
+
+    /**
+     * Choose the encoding of the response of a request. The supported encoding
+     * with the highest quality in the {@value #ACCEPT_ENCODING} header is
+     * chosen, and the more preferred one of equal qualities.
+     * 
+     * @param request The request.
+     * @return The index of the chosen encoding, or {@link #IDENTITY}, if the
+     *         request accepts no supported encoding.
+     */
+    public static int negotiate(Request request) {
+        final String header = request.getHeader(ACCEPT_ENCODING);
+        if (header == null) {
+            return IDENTITY;
+        }
+        int result = IDENTITY;
+        double best = 0;
+        double wildcard = 0;
+        final double[] qualities = new double[ENCODINGS.length];
+        final boolean[] listed = new boolean[ENCODINGS.length];
+        for (String coding : header.split(",")) {
+            final int separator = coding.indexOf(';');
+            final String name = (separator < 0 ? coding : coding.substring(0, separator)).trim();
+            final double quality = separator < 0 ? 1 : qualityOf(coding.substring(separator + 1));
+            if (name.equals("*")) {
+                wildcard = quality;
+            }
+            for (int i = 0; i < ENCODINGS.length; i++) {
+                if (ENCODINGS[i].equalsIgnoreCase(name)) {
+                    qualities[i] = quality;
+                    listed[i] = true;
+                }
+            }
+        }
+        for (int i = 0; i < ENCODINGS.length; i++) {
+            final double quality = listed[i] ? qualities[i] : wildcard;
+            if (quality > best) {
+                best = quality;
+                result = i;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parse the quality of a coding.
+     * 
+     * @param parameters The parameters of the coding.
+     * @return The quality, or zero, if the quality is invalid.
+     */
+    private static double qualityOf(String parameters) {
+        for (String parameter : parameters.split(";")) {
+            final String trimmed = parameter.trim();
+            if (trimmed.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(trimmed.substring(2));
+                } catch (NumberFormatException nfe) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Declare that a response varies by the {@value #ACCEPT_ENCODING} of the
+     * request, as any response may be compressed on the way out.
+     * 
+     * @param request  The request.
+     * @param response The response.
+     */
+    public static void vary(Request request, Response response) {
+        if (!response.hasHeader(VARY)) {
+            response.addHeader(VARY, ACCEPT_ENCODING);
+        }
+    }
+
+    /**
+     * Compress a body.
+     * 
+     * @param body     The body, whose readable bytes are compressed without
+     *                 reading them.
+     * @param encoding The index of the encoding.
+     * @return The compressed body in a pooled direct buffer.
+     */
+    public static ByteBuf encode(ByteBuf body, int encoding) {
+        final ByteBuf result = PooledByteBufAllocator.DEFAULT.directBuffer(body.readableBytes() / 4 + 64);
+        try (OutputStream out = open(new ByteBufOutputStream(result), encoding)) {
+            body.getBytes(body.readerIndex(), out, body.readableBytes());
+        } catch (IOException | RuntimeException e) {
+            result.release();
+            throw new IllegalStateException("Compressing the body failed", e);
+        }
+        return result.capacity(result.writerIndex());
+    }
+
+    private static OutputStream open(OutputStream out, int encoding) throws IOException {
+        if (GZIP.equals(ENCODINGS[encoding])) {
+            return new GZIPOutputStream(out) {
+                {
+                    def.setLevel(Deflater.BEST_COMPRESSION);
+                }
+            };
+        }
+        return new DeflaterOutputStream(out, new Deflater(Deflater.BEST_COMPRESSION)) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    def.end();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,104 @@
+package com.kautiainen.antti.solita.caching;
+
+import org.restexpress.Request;
+import org.restexpress.Response;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+/**
+ * Weak entity tags of the versioned resources, and the conditional requests
+ * with {@value #IF_NONE_MATCH}.
+ * 
+ * The tag of a response consists of the epoch of the service, the versions of
+ * the resource, and the hash of the request path including the format and the
+ * query parameters. The epoch is the start time of the service, so the tags of
+ * the versions reset by a restart do not match the tags issued before the
+ * restart. The tags are weak, as the identity and the compressed content
+ * encodings of a version share the tag, and thus the tag does not identify
+ * the exact bytes of the response.
+ */
+public final class EntityTags {
+
+    public static final String ETAG = "ETag";
+
+    public static final String IF_NONE_MATCH = "If-None-Match";
+
+    /**
+     * The prefix of a weak tag.
+     */
+    private static final String WEAK = "W/";
+
+    /**
+     * The epoch of the issued tags.
+     */
+    private static final String EPOCH = Long.toString(System.currentTimeMillis(), 36);
+
+    private EntityTags() {
+    }
+
+    /**
+     * Get the tag of the response of a request.
+     * 
+     * @param request  The request.
+     * @param versions The versions of the requested resource.
+     * @return The weak entity tag.
+     */
+    public static String of(Request request, long... versions) {
+        StringBuilder result = new StringBuilder().append(WEAK).append('"').append(EPOCH);
+        for (long version : versions) {
+            result.append('-').append(Long.toString(version, 36));
+        }
+        return result.append('-').append(Integer.toHexString(request.getPath().hashCode())).append('"').toString();
+    }
+
+    /**
+     * Tag a response, and respond with {@link HttpResponseStatus#NOT_MODIFIED},
+     * if the request has a matching {@value #IF_NONE_MATCH} header.
+     * 
+     * @param request  The request.
+     * @param response The response.
+     * @param tag      The tag of the response.
+     * @return True, if and only if the response was not modified and has no
+     *         body.
+     */
+    public static boolean isNotModified(Request request, Response response, String tag) {
+        response.addHeader(ETAG, tag);
+        if (matches(request.getHeader(IF_NONE_MATCH), tag)) {
+            response.setResponseStatus(HttpResponseStatus.NOT_MODIFIED);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Does an {@value #IF_NONE_MATCH} header match a tag. The tags are
+     * compared weakly as required of the header.
+     * 
+     * @param header The header, or an undefined value.
+     * @param tag    The tag.
+     * @return True, if and only if the header lists the tag or any tag.
+     */
+    static boolean matches(String header, String tag) {
+        if (header == null) {
+            return false;
+        }
+        final String opaque = opaqueOf(tag);
+        for (String listed : header.split(",")) {
+            String candidate = opaqueOf(listed.trim());
+            if (candidate.equals(opaque) || candidate.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the opaque part of a tag.
+     * 
+     * @param tag The tag.
+     * @return The quoted tag without the weakness prefix.
+     */
+    private static String opaqueOf(String tag) {
+        return tag.startsWith(WEAK) ? tag.substring(WEAK.length()) : tag;
+    }
+}
@@ -0,0 +1,293 @@
+package com.kautiainen.antti.solita.controllers;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.restexpress.Request;
+import org.restexpress.Response;
+import org.restexpress.exception.BadRequestException;
+import org.restexpress.exception.ServiceException;
+
+import com.kautiainen.antti.solita.Constants;
+import com.kautiainen.antti.solita.execution.RateLimiter;
+import com.kautiainen.antti.solita.execution.RequestBodies;
+import com.kautiainen.antti.solita.importer.ImportJob;
+import com.kautiainen.antti.solita.importer.ImportJobs;
+import com.kautiainen.antti.solita.importer.ImportResult;
+import com.kautiainen.antti.solita.importer.JourneyCsvImporter;
+import com.kautiainen.antti.solita.importer.ListImporter;
+import com.kautiainen.antti.solita.importer.StationCsvImporter;
+import com.kautiainen.antti.solita.importer.ValidationReport;
+import com.kautiainen.antti.solita.model.Journey;
+import com.kautiainen.antti.solita.model.Station;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+/**
+ * Import job controller serves the asynchronous imports of journeys and
+ * stations. A job is created with the imported data as its body, either as
+ * CSV rows with the content type {@value #CSV_CONTENT_TYPE} or as a list of
+ * models in the format of the request, and is answered with "202 Accepted"
+ * and the job. The job is imported by a worker of the {@link ImportJobs} in
+ * batches, and its progress is polled from the location of the job.
+ * 
+ * A spooled CSV body is claimed by its job, which imports the rows from the
+ * spool file and deletes the file once it is done.
+ */
+public class ImportJobController {
+
+    /**
+     * The content type of the CSV rows.
+     */
+    public static final String CSV_CONTENT_TYPE = "text/csv";
+
+    /**
+     * The header of the content type.
+     */
+    private static final String CONTENT_TYPE = "Content-Type";
+
+    /**
+     * The seconds after which a refused job may be submitted again.
+     */
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private static final String JOURNEYS = "journeys";
+
+    private static final String STATIONS = "stations";
+
+    private final JourneyController journeys;
+
+    private final StationController stations;
+
+    private final ImportJobs jobs;
+
+    /**
+     * The limits of the request bodies holding the spooled bodies, or an
+     * undefined value, if the bodies are not spooled.
+     */
+    private volatile RequestBodies bodies = null;
+
+    /**
+     * The import of CSV rows.
+     */
+    @FunctionalInterface
+    private static interface CsvImport {
+
+        /**
+         * Import the rows.
+         * 
+         * @param rows   The channel of the rows.
+         * @param result The result updated with the progress of the import.
+         * @throws Exception The import failed.
+         */
+        void run(ReadableByteChannel rows, ImportResult result) throws Exception;
+    }
+
+    /**
+     * Create a new controller.
+     * 
+     * @param journeys The controller of the imported journeys.
+     * @param stations The controller of the imported stations.
+     * @param jobs     The pool running the jobs.
+     */
+    public ImportJobController(JourneyController journeys, StationController stations, ImportJobs jobs) {
+        this.journeys = journeys;
+        this.stations = stations;
+        this.jobs = jobs;
+    }
+
+    /**
+     * Serves the creation of a journey import job.
+     * 
+     * @param request  The request with the imported journeys as its body.
+     * @param response The response.
+     * @return The queued job.
+     * @throws ServiceException The queue of the jobs was full.
+     */
+    public ImportJob createJourneys(Request request, Response response) throws ServiceException {
+        final ImportJobs.Task task;
+        if (isCsv(request)) {
+            task = csvTask(request, (rows, result) -> new JourneyCsvImporter(journeys::addJourneys,
+                    journeys.getValidator()).importFrom(rows, result));
+        } else {
+            final List<Journey> models = Arrays
+                    .asList(request.getBodyAs(Journey[].class, "Journey details not provided"));
+            task = result -> new ListImporter<Journey>(journeys::addJourneys, journeys.getValidator().newStage(),
+                    JourneyCsvImporter.DEFAULT_BATCH_SIZE).importFrom(models, result);
+        }
+        return submit(request, response, JOURNEYS, task);
+    }
+
+    /**
+     * Serves the creation of a station import job. The imported stations
+     * replace the existing stations with the same identifiers.
+     * 
+     * @param request  The request with the imported stations as its body.
+     * @param response The response.
+     * @return The queued job.
+     * @throws ServiceException The queue of the jobs was full.
+     */
+    public ImportJob createStations(Request request, Response response) throws ServiceException {
+        final ImportJobs.Task task;
+        if (isCsv(request)) {
+            task = csvTask(request, (rows, result) -> new StationCsvImporter(stations::putStations)
+                    .importFrom(rows, result));
+        } else {
+            final List<Station> models = Arrays
+                    .asList(request.getBodyAs(Station[].class, "Station details not provided"));
+            task = result -> new ListImporter<Station>((List<Station> batch) -> {
+                stations.addStations(batch, true);
+                return batch.size();
+            }, ValidationReport.filter(Station::isValid), JourneyCsvImporter.DEFAULT_BATCH_SIZE)
+                    .importFrom(models, result);
+        }
+        return submit(request, response, STATIONS, task);
+    }
+
+    /**
+     * Serves the progress of a job.
+     * 
+     * @param request  The request.
+     * @param response The response.
+     * @return The job, or an undefined value, if no such job is known.
+     * @throws BadRequestException The job identifier was invalid.
+     */
+    public ImportJob read(Request request, Response response) throws BadRequestException {
+        final ImportJob job = jobs.get(getJobId(request));
+        if (job == null) {
+            response.setResponseStatus(HttpResponseStatus.NOT_FOUND);
+        }
+        return job;
+    }
+
+    /**
+     * Get the jobs.
+     * 
+     * @return The pool running the jobs.
+     */
+    public ImportJobs getJobs() {
+        return jobs;
+    }
+
+    /**
+     * Set the limits of the request bodies holding the spooled bodies.
+     * 
+     * @param bodies The limits of the bodies, or an undefined value, if the
+     *               bodies are not spooled.
+     */
+    public void setRequestBodies(RequestBodies bodies) {
+        this.bodies = bodies;
+    }
+
+    /**
+     * Create the task importing the CSV body of a request. A spooled body is
+     * read from its spool file, which the task deletes, and any other body is
+     * copied.
+     * 
+     * @param request   The request.
+     * @param csvImport The import of the rows.
+     * @return The task of the job.
+     */
+    private ImportJobs.Task csvTask(Request request, CsvImport csvImport) {
+        final Path spooled = bodies == null ? null : bodies.claimSpooledBody(request);
+        if (spooled == null) {
+            final byte[] data = copyBody(request);
+            return result -> csvImport.run(Channels.newChannel(new ByteArrayInputStream(data)), result);
+        }
+        return new ImportJobs.Task() {
+            @Override
+            public void run(ImportResult result) throws Exception {
+                try (ReadableByteChannel rows = FileChannel.open(spooled)) {
+                    csvImport.run(rows, result);
+                } finally {
+                    RequestBodies.delete(spooled);
+                }
+            }
+
+            @Override
+            public void cancel() {
+                RequestBodies.delete(spooled);
+            }
+        };
+    }
+
+    /**
+     * Queue a job and answer with the job and its location.
+     * 
+     * @param request  The request.
+     * @param response The response.
+     * @param type     The type of the imported models.
+     * @param task     The work of the job.
+     * @return The queued job.
+     * @throws ServiceException The queue of the jobs was full.
+     */
+    private ImportJob submit(Request request, Response response, String type, ImportJobs.Task task)
+            throws ServiceException {
+        final ImportJob job;
+        try {
+            job = jobs.submit(type, task);
+        } catch (RejectedExecutionException ree) {
+            ServiceException rejection = new ServiceException(HttpResponseStatus.SERVICE_UNAVAILABLE,
+                    "Too many queued import jobs");
+            rejection.setHeader(RateLimiter.RETRY_AFTER, RETRY_AFTER_SECONDS);
+            throw rejection;
+        }
+        final String location = request.getNamedUrl(HttpMethod.GET, Constants.Routes.IMPORT_JOB);
+        if (location != null) {
+            response.addLocationHeader(
+                    location.replace("{" + Constants.Url.JOB_ID + "}", String.valueOf(job.getId())));
+        }
+        response.setResponseStatus(HttpResponseStatus.ACCEPTED);
+        return job;
+    }
+
+    /**
+     * Is the body of the request CSV rows.
+     * 
+     * @param request The request.
+     * @return True, if and only if the content type of the request is
+     *         {@value #CSV_CONTENT_TYPE}.
+     */
+    private static boolean isCsv(Request request) {
+        final String contentType = request.getHeader(CONTENT_TYPE);
+        return contentType != null && contentType.trim().toLowerCase(Locale.ROOT).startsWith(CSV_CONTENT_TYPE);
+    }
+
+    /**
+     * Copy the body of the request. The body is released once the request has
+     * been answered, whereas the job reads it later.
+     * 
+     * @param request The request.
+     * @return The bytes of the body.
+     */
+    private static byte[] copyBody(Request request) {
+        final ByteBuf body = request.getBody();
+        final byte[] result = new byte[body.readableBytes()];
+        body.getBytes(body.readerIndex(), result);
+        return result;
+    }
+
+    /**
+     * Get the job identifier of a request.
+     * 
+     * @param request The request.
+     * @return The job identifier.
+     * @throws BadRequestException The identifier was invalid.
+     */
+    private static long getJobId(Request request) throws BadRequestException {
+        try {
+            return Long.parseLong(request.getHeader(Constants.Url.JOB_ID, "No Job ID supplied"));
+        } catch (NumberFormatException nfe) {
+            throw new BadRequestException("Invalid job identifier", nfe);
+        }
+    }
+}
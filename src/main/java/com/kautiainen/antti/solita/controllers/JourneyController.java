@@ -1,71 +1,529 @@
 package com.kautiainen.antti.solita.controllers;
 
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import org.restexpress.Request;
 import org.restexpress.Response;
+import org.restexpress.exception.BadRequestException;
 
 import com.kautiainen.antti.solita.Constants;
+import com.kautiainen.antti.solita.caching.EntityTags;
 import com.kautiainen.antti.solita.exceptions.InvalidFieldsException;
+import com.kautiainen.antti.solita.execution.RequestBodies;
+import com.kautiainen.antti.solita.importer.ImportResult;
+import com.kautiainen.antti.solita.importer.JourneyCsvImporter;
+import com.kautiainen.antti.solita.importer.JourneyValidator;
+import com.kautiainen.antti.solita.importer.ValidationReport;
+import com.kautiainen.antti.solita.model.Batch;
+import com.kautiainen.antti.solita.model.BatchResult;
 import com.kautiainen.antti.solita.model.Journey;
+import com.kautiainen.antti.solita.query.JourneyAggregate;
+import com.kautiainen.antti.solita.query.JourneyQuery;
+import com.kautiainen.antti.solita.query.JourneyQueryEngine;
+import com.kautiainen.antti.solita.query.JourneyScanner;
+import com.kautiainen.antti.solita.query.PageRequest;
+import com.kautiainen.antti.solita.serialization.BinarySerializationProcessor;
+import com.kautiainen.antti.solita.serialization.SerializationCache;
+import com.kautiainen.antti.solita.serialization.SerializationProvider;
+import com.kautiainen.antti.solita.statistics.JourneyRollups;
+import com.kautiainen.antti.solita.statistics.StationStatisticsAggregator;
+import com.kautiainen.antti.solita.storage.IntIndex;
+import com.kautiainen.antti.solita.storage.JourneyStore;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
 
 public class JourneyController {
 
-    private List<Journey> journeys = Collections.synchronizedList(new ArrayList<Journey>());
+    /**
+     * The stored journeys.
+     */
+    private final JourneyStore journeys = new JourneyStore();
+
+    /**
+     * The engine of the journey queries.
+     */
+    private final JourneyQueryEngine queries;
+
+    /**
+     * The statistics of the stations updated as the journeys change.
+     */
+    private final StationStatisticsAggregator statistics = new StationStatisticsAggregator(journeys);
+
+    /**
+     * The rollups of the journeys in time buckets updated as the journeys
+     * change.
+     */
+    private final JourneyRollups rollups = new JourneyRollups(journeys);
+
+    /**
+     * The type of the journeys in the serialization cache.
+     */
+    private static final String JOURNEY_TYPE = "journey";
+
+    /**
+     * The cache of the serialized journeys.
+     */
+    private final SerializationCache cache = SerializationProvider.cache();
+
+    /**
+     * The validator of the created and the imported journeys.
+     */
+    private volatile JourneyValidator validator = new JourneyValidator();
+
+    /**
+     * The limits of the request bodies holding the spooled imports, or an
+     * undefined value, if the bodies are not spooled.
+     */
+    private volatile RequestBodies bodies = null;
+
+    /**
+     * The default number of journeys of an unstreamed page.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    /**
+     * Create a new controller scanning the journeys sequentially.
+     */
+    public JourneyController() {
+        this(null);
+    }
+
+    /**
+     * Create a new controller.
+     * 
+     * @param scanPool The pool of the parallel scans of the journey queries, or
+     *                 an undefined value for sequential scans.
+     */
+    public JourneyController(ForkJoinPool scanPool) {
+        this.queries = new JourneyQueryEngine(journeys, new JourneyScanner(scanPool));
+    }
+
+    /**
+     * Add journeys. The journeys without identifier are given a new identifier.
+     * Either all or none of the journeys are added.
+     * 
+     * @param added The added journeys.
+     * @return The number of added journeys.
+     * @throws InvalidFieldsException Any journey had a reserved identifier.
+     */
+    public int addJourneys(List<Journey> added) throws InvalidFieldsException {
+        return journeys.addAll(added);
+    }
 
-    public Journey create(Request request, Response response) {
+    /**
+     * Serves creation of a journey. A body in the binary format may hold any
+     * number of journeys, which are created in bulk.
+     * 
+     * @param request  The request.
+     * @param response The response.
+     * @return The created journey, or an undefined value, if the journeys were
+     *         created in bulk.
+     * @throws BadRequestException The journey was rejected by the validator or
+     *                             had a reserved identifier.
+     */
+    public Journey create(Request request, Response response) throws BadRequestException {
+        if (BinarySerializationProcessor.accepts(request)) {
+            createAll(request, response);
+            return null;
+        }
+        Journey journey = request.getBodyAs(Journey.class, "Journey details not provided");
+        ValidationReport<Journey> report = validator.validate(Collections.singletonList(journey), null);
+        if (report.getRejected() > 0) {
+            throw new BadRequestException("Invalid journey", invalidJourneys(report, "journey"));
+        }
         try {
-            Journey journey = request.getBodyAs(Journey.class, "Journey details not provided");
-            if (!journey.isValid()) {
-                // Invalid journey.
-            }
-            if (!journey.isNewJourney()) {
-                // Checking if there is a journey with given identifier.
-                final Integer id = journey.getId().orElse(null);
-                if (journeys.stream().anyMatch((Journey oldJourney) -> {
-                    return (oldJourney.getId().orElse(null)) == id;
-                })) {
-                    // The id is reserved.
-                    throw new InvalidFieldsException("Identifier not unique",
-                            null,
-                            new InvalidFieldsException.FieldError(Journey.Fields.ID.toString(), 
-                            "Reserved identifier"));
-                }
-            }
+            Journey added = journeys.add(journey);
             response.setResponseCreated();
-            return journey;
-        } catch (Exception ife) {
-            response.setException(ife);
-            return null;
-        } 
+            // The stored flyweight is copied for serialization.
+            return new Journey(added.getId().get(), added);
+        } catch (InvalidFieldsException ife) {
+            throw new BadRequestException("Invalid journey", ife);
+        }
     }
 
-    public Journey read(Request request, Response response) {
-        String id = request.getHeader(Constants.Url.JOURNEY_ID, "No Journey ID supplied");
+    /**
+     * Serves bulk creation of journeys. Either all or none of the journeys are
+     * created.
+     * 
+     * @param request  The request with the journeys as its body.
+     * @param response The response.
+     * @throws BadRequestException Any journey was invalid, a duplicate, or had
+     *                             a reserved identifier.
+     */
+    private void createAll(Request request, Response response) throws BadRequestException {
+        Journey[] added = request.getBodyAs(Journey[].class, "Journey details not provided");
+        ValidationReport<Journey> report = validator.newStage().apply(Arrays.asList(added));
+        if (report.getRejected() > 0) {
+            throw new BadRequestException("Invalid journeys", invalidJourneys(report, "journeys"));
+        }
+        try {
+            addJourneys(report.getAccepted());
+        } catch (InvalidFieldsException ife) {
+            throw new BadRequestException("Invalid journeys", ife);
+        }
+        response.setResponseCreated();
+    }
+
+    /**
+     * Serves a batch of journey changes. The journeys of the
+     * {@value Batch#UPSERT} field are added or replace the journeys with the
+     * same identifier, and the journeys with the identifiers of the
+     * {@value Batch#DELETE} field are removed. The whole batch is validated
+     * before taking the lock of the store, and the changes are journaled and
+     * published at once: either all or none of them are applied.
+     * 
+     * @param request  The request with the batch as its body.
+     * @param response The response.
+     * @return The result of the batch.
+     * @throws BadRequestException The batch was invalid.
+     */
+    public BatchResult batch(Request request, Response response) throws BadRequestException {
+        Batch.Journeys batch = request.getBodyAs(Batch.Journeys.class, "Journey batch not provided");
+        // The upserted journeys are validated at once by a single stage.
+        ValidationReport<Journey> report = validator.newStage().apply(batch.getUpsert());
+        List<InvalidFieldsException.FieldError> errors = new ArrayList<>(
+                report.getErrors(Batch.UPSERT, (int index) -> index));
+        errors.addAll(batch.validateIdentifiers(report::isAccepted,
+                (Journey journey) -> journey.getId().orElse(null)));
         try {
-            int idValue = Integer.parseInt(id);
-            return journeys.get(idValue);
-        } catch(NumberFormatException nfe) {
-            response.setException(nfe);
+            if (!errors.isEmpty()) {
+                throw new InvalidFieldsException("Invalid journey batch", null,
+                        errors.toArray(new InvalidFieldsException.FieldError[0]));
+            }
+            return journeys.apply(batch.getUpsert(), batch.getDelete());
+        } catch (InvalidFieldsException ife) {
+            throw new BadRequestException("Invalid journey batch", ife);
         }
-        return null;
     }
 
+    /**
+     * Serves import of journeys from CSV journey data. A spooled body is read
+     * from its spool file, so the rows are not held in memory.
+     * 
+     * @param request  The request with the CSV rows as its body.
+     * @param response The response.
+     * @return The result of the import.
+     */
+    public ImportResult importCsv(Request request, Response response) {
+        Path spooled = bodies == null ? null : bodies.getSpooledBody(request);
+        try (ReadableByteChannel channel = spooled == null ? Channels.newChannel(request.getBodyAsStream())
+                : FileChannel.open(spooled)) {
+            ImportResult result = new JourneyCsvImporter(this::addJourneys, validator).importFrom(channel);
+            response.setResponseCreated();
+            return result;
+        } catch (IOException ioe) {
+            throw new BadRequestException("Invalid journey data", ioe);
+        }
+    }
+
+    /**
+     * Create the exception of the rejected journeys of a validation report.
+     * 
+     * @param report The report.
+     * @param prefix The prefix of the invalid fields.
+     * @return The exception listing the invalid fields of the rejected
+     *         journeys.
+     */
+    private static InvalidFieldsException invalidJourneys(ValidationReport<Journey> report, String prefix) {
+        return new InvalidFieldsException("Invalid journeys", null,
+                report.getErrors(prefix, (int index) -> index).toArray(new InvalidFieldsException.FieldError[0]));
+    }
+
+    /**
+     * Serves a journey. The journey is tagged with the sequence number of its
+     * row, which changes when the journey is replaced, and the serialized
+     * journey is cached with the sequence number as the version.
+     * 
+     * @param request  The request.
+     * @param response The response.
+     * @return The journey, or an undefined value, if no such journey exists or
+     *         the journey was not modified.
+     * @throws BadRequestException The identifier was invalid.
+     */
+    public Journey read(Request request, Response response) throws BadRequestException {
+        final int id = getJourneyId(request);
+        // The row and the columns are read from the same generation.
+        final JourneyStore.Generation generation = journeys.getGeneration();
+        final int row = generation.getRow(id);
+        if (row == IntIndex.MISSING) {
+            response.setResponseStatus(HttpResponseStatus.NOT_FOUND);
+            return null;
+        }
+        final JourneyStore.Columns columns = generation.getColumns();
+        final long sequence = columns.getSequence(row);
+        if (EntityTags.isNotModified(request, response, EntityTags.of(request, sequence))) {
+            return null;
+        }
+        // The stored flyweight is copied for serialization.
+        if (cache.write(request, response, JOURNEY_TYPE, id, sequence, () -> columns.copyJourney(row))) {
+            return null;
+        }
+        return columns.copyJourney(row);
+    }
+
+    /**
+     * Serves the listing of the journeys. The journeys are filtered and sorted
+     * with a {@link JourneyQuery} given with the {@link Constants.Url#JOURNEY_FILTER}
+     * and {@link Constants.Url#JOURNEY_SORT} parameters, and are listed in the
+     * order they were stored by default. The journeys are paged with the
+     * parameters of {@link PageRequest}. An unstreamed page has at most
+     * {@link #DEFAULT_PAGE_SIZE} journeys unless a limit is given, whereas a
+     * streamed page lists all journeys. The listing is tagged with the version
+     * of the journeys.
+     * 
+     * @param request  The request.
+     * @param response The response.
+     * @return The journeys of the page, or an undefined value, if the page was
+     *         streamed or not modified.
+     */
     public List<Journey> readAll(Request request, Response response) {
-        // TODO: Your 'GET collection' logic here...
-        return Collections.emptyList();
+        // The version is read first, so the listed journeys are at least of the
+        // tagged version.
+        if (EntityTags.isNotModified(request, response, EntityTags.of(request, journeys.getVersion()))) {
+            return null;
+        }
+        final JourneyQuery query = JourneyQuery.parse(request.getHeader(Constants.Url.JOURNEY_FILTER),
+                request.getHeader(Constants.Url.JOURNEY_SORT));
+        final PageRequest page = PageRequest.parseFrom(request, Constants.Routes.JOURNEY_COLLECTION,
+                DEFAULT_PAGE_SIZE);
+        return page.respond(request, response,
+                queries.query(query, page.getCursor(), page.getOffset() + page.getLimit()));
+    }
+
+    /**
+     * Serves the aggregate of the journeys matching the
+     * {@value Constants.Url#JOURNEY_FILTER} parameter: the number of the
+     * journeys and the average, the smallest and the largest distance and
+     * duration. The filter is evaluated by scanning the candidate journeys in
+     * parallel partitions. The aggregate is tagged with the version of the
+     * journeys.
+     * 
+     * @param request  The request.
+     * @param response The response.
+     * @return The aggregate, or an undefined value, if the aggregate was not
+     *         modified.
+     * @throws BadRequestException The filter was invalid.
+     */
+    public JourneyAggregate aggregate(Request request, Response response) throws BadRequestException {
+        final JourneyQuery query = JourneyQuery.parse(request.getHeader(Constants.Url.JOURNEY_FILTER), null);
+        if (EntityTags.isNotModified(request, response, EntityTags.of(request, journeys.getVersion()))) {
+            return null;
+        }
+        return queries.aggregate(query);
+    }
+
+    /**
+     * Serves the aggregates of the journeys in time buckets. The
+     * {@value Constants.Url#INTERVAL} parameter selects the hourly, daily or
+     * monthly buckets, daily by default, and the buckets overlapping the range
+     * from the {@value Constants.Url#FROM} time until the
+     * {@value Constants.Url#TO} time are listed. The journeys of the network
+     * are aggregated by their departure time, and with the
+     * {@value Constants.Url#STATION} parameter the journeys departing from the
+     * station, or the journeys returning to the station, if the
+     * {@value Constants.Url#DIRECTION} is "return". The stations have no hourly
+     * buckets. With the {@value Constants.Url#TOTAL} parameter the buckets of
+     * the range are summed into a single aggregate. The aggregates are tagged
+     * with the version of the journeys.
+     * 
+     * @param request  The request.
+     * @param response The response.
+     * @return The aggregates of the buckets with journeys, the total aggregate,
+     *         or an undefined value, if the aggregates were not modified.
+     * @throws BadRequestException The parameters were invalid.
+     */
+    public Object rollup(Request request, Response response) throws BadRequestException {
+        final JourneyRollups.Interval interval = parseEnum(request, Constants.Url.INTERVAL,
+                JourneyRollups.Interval.class, JourneyRollups.Interval.DAY);
+        final JourneyRollups.Direction direction = parseEnum(request, Constants.Url.DIRECTION,
+                JourneyRollups.Direction.class, JourneyRollups.Direction.DEPARTURE);
+        final LocalDateTime from = parseTime(request, Constants.Url.FROM);
+        final LocalDateTime to = parseTime(request, Constants.Url.TO);
+        final String stationValue = request.getHeader(Constants.Url.STATION);
+        Integer station = null;
+        if (stationValue != null) {
+            try {
+                station = Integer.valueOf(stationValue);
+            } catch (NumberFormatException nfe) {
+                throw new BadRequestException("Invalid " + Constants.Url.STATION, nfe);
+            }
+        }
+        if (!JourneyRollups.isSupported(interval, station)) {
+            throw new BadRequestException("No " + interval.toString().toLowerCase() + " aggregates of stations");
+        }
+        if (EntityTags.isNotModified(request, response, EntityTags.of(request, journeys.getVersion()))) {
+            return null;
+        }
+        if ("true".equals(request.getHeader(Constants.Url.TOTAL))) {
+            return rollups.total(interval, station, direction, from, to);
+        }
+        return rollups.query(interval, station, direction, from, to);
+    }
+
+    /**
+     * Parse an enumerated parameter ignoring its case.
+     * 
+     * @param <E>          The type of the values.
+     * @param request      The request.
+     * @param name         The name of the parameter.
+     * @param type         The class of the values.
+     * @param defaultValue The value of a missing parameter.
+     * @return The value of the parameter.
+     * @throws BadRequestException The value was invalid.
+     */
+    private static <E extends Enum<E>> E parseEnum(Request request, String name, Class<E> type, E defaultValue)
+            throws BadRequestException {
+        final String value = request.getHeader(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        for (E constant : type.getEnumConstants()) {
+            if (constant.name().equalsIgnoreCase(value)) {
+                return constant;
+            }
+        }
+        throw new BadRequestException("Invalid " + name);
+    }
+
+    /**
+     * Parse a time parameter given as an ISO local date time or date.
+     * 
+     * @param request The request.
+     * @param name    The name of the parameter.
+     * @return The time, or an undefined value, if the parameter is missing.
+     * @throws BadRequestException The time was invalid.
+     */
+    private static LocalDateTime parseTime(Request request, String name) throws BadRequestException {
+        final String value = request.getHeader(name);
+        try {
+            if (value == null) {
+                return null;
+            } else if (value.length() == 10) {
+                return LocalDate.parse(value).atStartOfDay();
+            } else {
+                return LocalDateTime.parse(value);
+            }
+        } catch (DateTimeException dte) {
+            throw new BadRequestException("Invalid " + name, dte);
+        }
     }
 
-    public void update(Request request, Response response) {
-        // TODO: Your 'PUT' logic here...
-        response.setResponseNoContent();
+    /**
+     * Serves replacing of a journey. The identifier of the journey is given by
+     * the URL.
+     * 
+     * @param request  The request.
+     * @param response The response.
+     * @throws BadRequestException The journey was rejected by the validator.
+     */
+    public void update(Request request, Response response) throws BadRequestException {
+        final int id = getJourneyId(request);
+        Journey journey = request.getBodyAs(Journey.class, "Journey details not provided");
+        ValidationReport<Journey> report = validator.validate(Collections.singletonList(journey), null);
+        if (report.getRejected() > 0) {
+            throw new BadRequestException("Invalid journey", invalidJourneys(report, "journey"));
+        }
+        if (journeys.replace(new Journey(id, journey)) != null) {
+            response.setResponseNoContent();
+        } else {
+            response.setResponseStatus(HttpResponseStatus.NOT_FOUND);
+        }
     }
 
+    /**
+     * Serves removal of a journey.
+     * 
+     * @param request  The request.
+     * @param response The response.
+     */
     public void delete(Request request, Response response) {
-        // TODO: Your 'DELETE' logic here...
-        response.setResponseNoContent();
+        if (journeys.remove(getJourneyId(request)) != null) {
+            response.setResponseNoContent();
+        } else {
+            response.setResponseStatus(HttpResponseStatus.NOT_FOUND);
+        }
+    }
+
+    /**
+     * Get the journey identifier of a request.
+     * 
+     * @param request The request.
+     * @return The journey identifier.
+     * @throws BadRequestException The identifier was invalid.
+     */
+    private static int getJourneyId(Request request) throws BadRequestException {
+        try {
+            return Integer.parseInt(request.getHeader(Constants.Url.JOURNEY_ID, "No Journey ID supplied"));
+        } catch (NumberFormatException nfe) {
+            throw new BadRequestException("Invalid journey identifier", nfe);
+        }
+    }
+
+    /**
+     * Get the validator of the created and the imported journeys.
+     * 
+     * @return The journey validator.
+     */
+    public JourneyValidator getValidator() {
+        return validator;
+    }
+
+    /**
+     * Set the validator of the created and the imported journeys.
+     * 
+     * @param validator The journey validator.
+     */
+    public void setValidator(JourneyValidator validator) {
+        this.validator = validator;
+    }
+
+    /**
+     * Set the limits of the request bodies holding the spooled imports.
+     *
+     * @param bodies The limits of the bodies, or an undefined value, if the
+     *               bodies are not spooled.
+     */
+    public void setRequestBodies(RequestBodies bodies) {
+        this.bodies = bodies;
+    }
+
+    /**
+     * Get the store of the journeys.
+     * 
+     * @return The journey store.
+     */
+    public JourneyStore getJourneys() {
+        return journeys;
+    }
+
+    /**
+     * Get the statistics of the stations.
+     * 
+     * @return The station statistics aggregated from the journeys.
+     */
+    public StationStatisticsAggregator getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Get the rollups of the journeys.
+     * 
+     * @return The journeys aggregated in time buckets.
+     */
+    public JourneyRollups getRollups() {
+        return rollups;
     }
 
 }
@@ -0,0 +1,46 @@
+package com.kautiainen.antti.solita.controllers;
+
+import java.util.List;
+
+import org.restexpress.Request;
+import org.restexpress.Response;
+
+import com.kautiainen.antti.solita.metrics.Metrics;
+import com.kautiainen.antti.solita.metrics.RouteMetrics;
+
+/**
+ * Metrics controller serves the request metrics of the routes.
+ */
+public class MetricsController {
+
+    private final Metrics metrics;
+
+    /**
+     * Create a new controller.
+     * 
+     * @param metrics The served metrics.
+     */
+    public MetricsController(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Serves the metrics of the routes.
+     * 
+     * @param request  The request.
+     * @param response The response.
+     * @return The summaries of the metrics of the routes.
+     */
+    public List<RouteMetrics.Summary> read(Request request, Response response) {
+        return metrics.summarize();
+    }
+
+    /**
+     * Get the served metrics.
+     * 
+     * @return The metrics.
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+}
@@ -1,21 +1,32 @@
 package com.kautiainen.antti.solita.controllers;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
-import java.util.function.BiConsumer;
+import java.util.Locale;
+import java.util.concurrent.locks.Lock;
 
 import org.restexpress.Request;
 import org.restexpress.Response;
 import org.restexpress.exception.BadRequestException;
 
 import com.kautiainen.antti.solita.Constants;
+import com.kautiainen.antti.solita.caching.ContentEncodings;
+import com.kautiainen.antti.solita.caching.EntityTags;
 import com.kautiainen.antti.solita.exceptions.InvalidFieldsException;
+import com.kautiainen.antti.solita.model.Batch;
+import com.kautiainen.antti.solita.model.BatchResult;
 import com.kautiainen.antti.solita.model.Station;
+import com.kautiainen.antti.solita.model.StationDetails;
+import com.kautiainen.antti.solita.query.Page;
+import com.kautiainen.antti.solita.query.PageRequest;
+import com.kautiainen.antti.solita.serialization.SerializationCache;
+import com.kautiainen.antti.solita.serialization.SerializationProvider;
+import com.kautiainen.antti.solita.statistics.StationStatisticsAggregator;
+import com.kautiainen.antti.solita.storage.StationGrid;
+import com.kautiainen.antti.solita.storage.StationIdAllocator;
+import com.kautiainen.antti.solita.storage.StationNameIndex;
+import com.kautiainen.antti.solita.storage.StationRegistry;
 
 import io.netty.handler.codec.http.HttpResponseStatus;
 
@@ -24,121 +35,329 @@ import io.netty.handler.codec.http.HttpResponseStatus;
  */
 public class StationController {
 
-    private volatile java.util.ArrayList<Station> stations;
+    /**
+     * The registry of the stations. The published stations are read without
+     * locking, and the writers hold the lock of the registry while they have
+     * pending changes.
+     */
+    private final StationRegistry registry = new StationRegistry();
+
+    /**
+     * The lock of the writers of the registry.
+     */
+    private final Lock lock = registry.getLock();
+
+    /**
+     * The allocator of the identifiers of the stations added without
+     * identifier.
+     */
+    private final StationIdAllocator identifiers = new StationIdAllocator();
+
+    /**
+     * The expansion of the station statistics.
+     */
+    public static final String STATISTICS_EXPANSION = "stats";
+
+    /**
+     * The statistics of the stations, or an undefined value, if the statistics
+     * are not available.
+     */
+    private StationStatisticsAggregator statistics = null;
+
+    /**
+     * The type of the stations in the serialization cache.
+     */
+    private static final String STATION_TYPE = "station";
+
+    /**
+     * The type of the station listings in the serialization cache. The listing
+     * of all stations is cached with the identifier {@link #ALL_STATIONS}.
+     */
+    private static final String LISTING_TYPE = "stations";
+
+    private static final long ALL_STATIONS = 0;
+
+    /**
+     * The cache of the serialized stations and station listings.
+     */
+    private final SerializationCache cache = SerializationProvider.cache();
+
+    /**
+     * The default number of the nearest stations.
+     */
+    public static final int DEFAULT_NEAREST = 10;
+
+    /**
+     * The spatial index of the latest indexed snapshot, or an undefined value,
+     * if no snapshot has been indexed. The index is built on demand once the
+     * stations have changed.
+     */
+    private volatile StationGrid grid = null;
+
+    /**
+     * The default number of the found stations of a name search.
+     */
+    public static final int DEFAULT_SEARCH_LIMIT = 10;
 
     /**
-     * The station identifier index map from station identifeir to its index in the
-     * stations
-     * map.
+     * The search index of the station names, which is updated as the changes
+     * of the stations are committed.
      */
-    private volatile transient java.util.HashMap<Integer, Integer> idIndex = new java.util.HashMap<>();
+    private final StationNameIndex names = new StationNameIndex();
 
-    protected synchronized boolean addStation(Station station) throws InvalidFieldsException {
-        LinkedList<BiConsumer<Map<Integer, Integer>, List<Station>>> undos = new LinkedList<>();
+    /**
+     * The header of the preferred languages of the station names.
+     */
+    public static final String ACCEPT_LANGUAGE = "Accept-Language";
+
+    /**
+     * The headers varying the station responses.
+     */
+    private static final String VARY_HEADERS = ContentEncodings.ACCEPT_ENCODING + ", " + ACCEPT_LANGUAGE;
+
+    protected boolean addStation(Station station) throws InvalidFieldsException {
+        lock.lock();
         try {
-            return this.addStation(station, false, undos);
-        } catch (Exception e) {
-            while (undos.size() > 0) {
-                undos.pop().accept(this.idIndex, this.stations);
-            }
+            return insertStation(station) != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add a station and publish it.
+     * 
+     * @param station The added station.
+     * @return The added station.
+     * @throws InvalidFieldsException The station identifier was reserved.
+     */
+    private Station insertStation(Station station) throws InvalidFieldsException {
+        lock.lock();
+        try {
+            Station result = this.addStation(station, false);
+            registry.commit();
+            return result;
+        } catch (RuntimeException e) {
+            registry.rollback();
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replace a station and publish it.
+     * 
+     * @param station The replacing station.
+     */
+    private void replaceStation(Station station) {
+        lock.lock();
+        try {
+            registry.put(station);
+            registry.commit();
+        } catch (RuntimeException e) {
+            registry.rollback();
             throw e;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reserve the identifiers of the registered stations. The identifiers of
+     * the stations put directly into the registry, such as the restored
+     * stations, are reserved before adding new stations.
+     */
+    public void reserveIdentifiers() {
+        lock.lock();
+        try {
+            for (Station station : registry.snapshot()) {
+                identifiers.reserve(station.getId());
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
-    protected synchronized boolean addStation(
+    /**
+     * Add a station as a pending change of the registry.
+     * 
+     * @param station           The added station.
+     * @param allowDupliateIds  Does the station replace the existing station with
+     *                          same identifier.
+     * @return The added station.
+     * @throws InvalidFieldsException The station identifier was reserved.
+     */
+    protected Station addStation(
             Station station,
-            boolean allowDupliateIds,
-            LinkedList<BiConsumer<Map<Integer, Integer>, List<Station>>> undos) throws InvalidFieldsException {
-        Integer id = station.getId();
-        Station added = station;
-        if (id == null) {
-            // Station does not have identifier, thus generating an ide.
-            do {
-                id = StationController.this.getNewIdentifier();
-            } while (idIndex.containsKey(id));
-            final int newId = id;
-            idIndex.put(newId, stations.size());
-            undos.add((ids, list) -> {
-                ids.remove(newId);
-            });
-            added = new Station(station);
-            added.setId(newId);
-            final int size = stations.size();
-            stations.add(added);
-            undos.add((ids, list) -> {
-                stations.remove(size);
-            });
-            return true;
-        } else if (idIndex.containsKey(id)) {
-            // Invalid value to add.
-            if (allowDupliateIds) {
-                final int setId = id;
-                final Station oldValue = stations.set(idIndex.get(setId), added);
-                undos.add((ids, list) -> {
-                    stations.set(idIndex.get(setId), oldValue);
-                });
-                return true;
+            boolean allowDupliateIds) throws InvalidFieldsException {
+        lock.lock();
+        try {
+            Integer id = station.getId();
+            Station added = station;
+            if (id == null) {
+                // Station does not have identifier, thus generating an ide.
+                // The identifiers of the removed stations still referenced by
+                // journeys are skipped, and not reused.
+                do {
+                    id = StationController.this.getNewIdentifier();
+                } while (registry.getPending(id) != null || isReferenced(id));
+                added = new Station(station);
+                added.setId(id);
+                registry.put(added);
+                return added;
+            } else if (registry.getPending(id) != null) {
+                // Invalid value to add.
+                if (allowDupliateIds) {
+                    registry.put(added);
+                    return added;
+                } else {
+                    throw new InvalidFieldsException(Station.Fields.IDENTIFIER.toString(), (Throwable) null,
+                            new InvalidFieldsException.FieldError(Station.Fields.IDENTIFIER.toString(),
+                                    "Invalid identifier"));
+                }
             } else {
-                throw new InvalidFieldsException(Station.Fields.IDENTIFIER.toString(), (Throwable) null,
-                        new InvalidFieldsException.FieldError(Station.Fields.IDENTIFIER.toString(),
-                                "Invalid identifier"));
+                identifiers.reserve(id);
+                registry.put(added);
+                return added;
             }
-        } else {
-            final int index = stations.size();
-            final int newId = id;
-            idIndex.put(id, index);
-            undos.add((ids, list) -> {
-                idIndex.remove(newId);
-            });
-            stations.add(added);
-            undos.add((ids, list) -> {
-                list.remove(index);
-            });
-            return true;
+        } finally {
+            lock.unlock();
         }
     }
 
-    protected synchronized boolean addStations(
+    /**
+     * Add stations and publish them at once. Either all or none of the stations
+     * are added.
+     * 
+     * @param stations           The added stations.
+     * @param allowsDuplicateIds Do the stations replace the existing stations.
+     * @return True, if and only if any station was added.
+     * @throws InvalidFieldsException A station identifier was reserved, and
+     *                                the stations do not replace the existing
+     *                                stations.
+     */
+    protected boolean addStations(
             List<Station> stations,
-            boolean allowsDuplicateIds,
-            LinkedList<BiConsumer<Map<Integer, Integer>, List<Station>>> undos) {
-        int undoCount = (undos != null ? undos.size() : 0);
-        if (undos == null) {
-            return addStations(stations, allowsDuplicateIds, new LinkedList<>());
-        } else {
+            boolean allowsDuplicateIds) throws InvalidFieldsException {
+        lock.lock();
+        try {
+            if (stations == null) {
+                return false;
+            }
+            BatchResult result = applyStations(stations, allowsDuplicateIds, Collections.emptyList());
+            return result.getIds().size() > 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add, replace and remove stations, and publish the changes at once.
+     * Either all or none of the changes are published. The identifiers given
+     * to the added stations are released, if the changes are rolled back.
+     * 
+     * @param upserts            The added or replacing stations.
+     * @param allowsDuplicateIds Do the stations replace the existing stations.
+     * @param deletes            The identifiers of the removed stations.
+     * @return The result of the changes.
+     * @throws InvalidFieldsException A station identifier was reserved, and
+     *                                the stations do not replace the existing
+     *                                stations.
+     */
+    private BatchResult applyStations(List<Station> upserts, boolean allowsDuplicateIds,
+            List<Integer> deletes) throws InvalidFieldsException {
+        lock.lock();
+        try {
+            final BatchResult result = new BatchResult();
+            final List<Integer> allocated = new ArrayList<>();
+            final List<Integer> removed = new ArrayList<>();
             try {
-                // Starting operation.
-                final List<Boolean> result = Arrays.asList(false);
-                if (stations != null) {
-                    stations.stream().forEachOrdered(
-                            (station) -> {
-                                result.set(0, addStation(station, false, undos));
-                            });
+                for (Station station : upserts) {
+                    final boolean replaced = station.getId() != null && registry.getPending(station.getId()) != null;
+                    final Station added = addStation(station, allowsDuplicateIds);
+                    if (station.getId() == null) {
+                        allocated.add(added.getId());
+                    }
+                    result.addPut(added.getId(), replaced);
+                }
+                for (Integer id : deletes) {
+                    if (registry.remove(id) != null) {
+                        removed.add(id);
+                        result.addDeleted();
+                    }
                 }
-                return result.get(0);
-            } catch (Exception e) {
-                // Rollback.
-                while (undos.size() > undoCount) {
-                    undos.pop().accept(this.idIndex, this.stations);
+                registry.commit();
+            } catch (RuntimeException e) {
+                registry.rollback();
+                for (Integer id : allocated) {
+                    identifiers.release(id);
                 }
                 throw e;
             }
+            for (Integer id : removed) {
+                identifiers.release(id);
+                cache.remove(STATION_TYPE, id);
+            }
+            return result;
+        } finally {
+            lock.unlock();
         }
     }
 
     /**
+     * Add or replace stations and publish them at once. Either all or none of
+     * the stations are put.
      * 
-     * 
-     * @param stations The initial station list.
-     * 
+     * @param stations The stations with identifiers.
+     * @return The number of the put stations.
+     * @throws IllegalArgumentException A station had no identifier.
      */
-    public StationController(java.util.List<Station> stations) {
-        addStations(stations, false,
-                (LinkedList<BiConsumer<Map<Integer, Integer>, List<Station>>>) null);
+    public int putStations(List<Station> stations) throws IllegalArgumentException {
+        lock.lock();
+        try {
+            try {
+                for (Station station : stations) {
+                    registry.put(station);
+                    identifiers.reserve(station.getId());
+                }
+                registry.commit();
+            } catch (RuntimeException e) {
+                registry.rollback();
+                throw e;
+            }
+            return stations.size();
+        } finally {
+            lock.unlock();
+        }
     }
 
+    /**
+     * Create a controller without stations.
+     */
     public StationController() {
-        this(java.util.Collections.synchronizedList(new ArrayList<Station>()));
+        registry.addListener(names);
+    }
+
+    /**
+     * Create a controller with initial stations.
+     * 
+     * @param stations The initial stations.
+     */
+    public StationController(List<Station> stations) {
+        this();
+        addStations(stations, false);
+    }
+
+    /**
+     * Create a controller without stations serving the statistics of the
+     * stations.
+     * 
+     * @param statistics The statistics of the stations.
+     */
+    public StationController(StationStatisticsAggregator statistics) {
+        this();
+        this.statistics = statistics;
     }
 
     /**
@@ -146,10 +365,24 @@ public class StationController {
      * 
      * @return The new identifier for the stations.
      */
-    protected synchronized Integer getNewIdentifier() {
-        Optional<Integer> max = idIndex.keySet().stream().max(Comparator.naturalOrder());
-        Integer result = max.orElse(0) +1;
-        return result;
+    protected Integer getNewIdentifier() {
+        lock.lock();
+        try {
+            return identifiers.allocate();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Is a station identifier referenced by any journey.
+     * 
+     * @param id The station identifier.
+     * @return True, if and only if the statistics are available, and a journey
+     *         departs from or returns to the station.
+     */
+    private boolean isReferenced(int id) {
+        return statistics != null && statistics.isReferenced(id);
     }
 
     /**
@@ -158,37 +391,350 @@ public class StationController {
      * @param request  The request.
      * @param response The response.
      */
-    public synchronized Station create(Request request, Response response) {
+    public Station create(Request request, Response response) {
         Station station = request.getBodyAs(Station.class, "Station details not provided");
-        if (!station.isValid()) {
-            // Invalid station.
-            response.setResponseStatus(HttpResponseStatus.BAD_REQUEST);
-        } else if (idIndex.containsKey(station.getId())) {
-            // Duplicate identifier.
-            throw new BadRequestException("Identifier already reserved", null);
-        }
-        if (addStation(station)) {
-            response.setResponseStatus(HttpResponseStatus.CREATED);
-            return this.stations.get(stations.size() - 1);
-        } else {
-            response.setResponseStatus(HttpResponseStatus.NOT_MODIFIED);
-            return station;
+        lock.lock();
+        try {
+            if (!station.isValid()) {
+                // Invalid station.
+                response.setResponseStatus(HttpResponseStatus.BAD_REQUEST);
+                return null;
+            } else if (registry.getPending(station.getId()) != null) {
+                // Duplicate identifier.
+                throw new BadRequestException("Identifier already reserved", null);
+            }
+            Station added = insertStation(station);
+            if (added != null) {
+                response.setResponseStatus(HttpResponseStatus.CREATED);
+                return added;
+            } else {
+                response.setResponseStatus(HttpResponseStatus.NOT_MODIFIED);
+                return station;
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
-    public synchronized Station read(Request request, Response response) {
+    /**
+     * Is a station registered. The station is looked up without locking.
+     * 
+     * @param id The station identifier.
+     * @return True, if and only if the published stations have a station with
+     *         the identifier.
+     */
+    public boolean hasStation(int id) {
+        return registry.get(id) != null;
+    }
+
+    /**
+     * Get a station without locking.
+     * 
+     * @param id The station identifier.
+     * @return The station with given identifier, or an undefined value, if no
+     *         such station exists.
+     */
+    public Station getStation(Integer id) {
+        return registry.get(id);
+    }
+
+    /**
+     * Get the registry of the published stations.
+     * 
+     * @return The station registry.
+     */
+    public StationRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Serves a station. The statistics of the station are included with the
+     * {@value #STATISTICS_EXPANSION} expansion.
+     * 
+     * The station is tagged with its version, and the serialized station is
+     * cached until the station changes. The station is named in the first
+     * language of the {@value #ACCEPT_LANGUAGE} header it has a name in, and
+     * is cached separately for each order of the preferred languages.
+     * 
+     * @param request  The request.
+     * @param response The response.
+     * @return The station, or an undefined value, if no such station exists or
+     *         the cached station was written.
+     */
+    public Station read(Request request, Response response) {
         Integer id = Integer.parseInt(request.getHeader(Constants.Url.STATION_ID, "No Station ID supplied"));
-        if (idIndex.containsKey(id)) {
-            return stations.get(idIndex.get(id));
-        } else {
+        final long sequence = registry.getSequence(id);
+        final List<String> languages = getLanguages(request, response);
+        final String variant = String.join(",", languages);
+        final Station station = registry.get(id);
+        if (station == null) {
             response.setResponseStatus(HttpResponseStatus.NOT_FOUND);
             return null;
         }
+        final Station localized = station.localize(languages);
+        if (statistics != null && isExpanded(request, STATISTICS_EXPANSION)) {
+            // The statistics change with the journeys, and are not cached.
+            return new StationDetails(localized, statistics.getStatistics(id));
+        } else if (sequence == registry.getSequence(id)
+                && (EntityTags.isNotModified(request, response, tagOf(request, sequence, variant))
+                        || cache.write(request, response, STATION_TYPE, id, sequence, variant, () -> localized))) {
+            return null;
+        }
+        return localized;
+    }
+
+    /**
+     * Get the preferred languages of the station names. The languages of the
+     * {@value #ACCEPT_LANGUAGE} header are matched with the languages of the
+     * published stations, and an invalid header is ignored. The response is marked
+     * to vary by the header.
+     * 
+     * @param request  The request.
+     * @param response The response.
+     * @return The known languages in the order of preference.
+     */
+    private List<String> getLanguages(Request request, Response response) {
+        response.addHeader(ContentEncodings.VARY, VARY_HEADERS);
+        final String header = request.getHeader(ACCEPT_LANGUAGE);
+        if (header == null || header.isBlank()) {
+            return List.of();
+        }
+        try {
+            return Locale.filterTags(Locale.LanguageRange.parse(header), registry.snapshot().getLanguages());
+        } catch (IllegalArgumentException iae) {
+            return List.of();
+        }
+    }
+
+    /**
+     * Get the tag of a response in the preferred languages.
+     * 
+     * @param request The request.
+     * @param version The version of the response.
+     * @param variant The preferred languages of the response.
+     * @return The tag of the response.
+     */
+    private static String tagOf(Request request, long version, String variant) {
+        return variant.isEmpty() ? EntityTags.of(request, version)
+                : EntityTags.of(request, version, Integer.toUnsignedLong(variant.hashCode()));
+    }
+
+    /**
+     * Name stations in the preferred languages.
+     * 
+     * @param stations  The stations.
+     * @param languages The preferred languages.
+     * @return The localized stations.
+     */
+    private static List<Station> localize(List<Station> stations, List<String> languages) {
+        if (languages.isEmpty()) {
+            return stations;
+        }
+        List<Station> result = new ArrayList<>(stations.size());
+        for (Station station : stations) {
+            result.add(station.localize(languages));
+        }
+        return result;
+    }
+
+    /**
+     * Does a request expand a detail.
+     * 
+     * @param request   The request.
+     * @param expansion The expanded detail.
+     * @return True, if and only if the expansions of the request contain the
+     *         detail.
+     */
+    private static boolean isExpanded(Request request, String expansion) {
+        String expansions = request.getHeader(Constants.Url.EXPAND);
+        if (expansions != null) {
+            for (String expanded : expansions.split(",")) {
+                if (expanded.trim().equals(expansion)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Serves the listing of the stations. The stations are paged with the
+     * parameters of {@link PageRequest}, and are listed in the order they were
+     * added. The listing is tagged with the version of the stations, and the
+     * serialized listing of all stations is cached. The stations are named in
+     * the preferred languages of the request.
+     * 
+     * @param request  The request.
+     * @param response The response.
+     * @return The stations of the page, or an undefined value, if the page was
+     *         streamed, cached or not modified.
+     */
+    public List<Station> readAll(Request request, Response response) {
+        final StationRegistry.Snapshot snapshot = registry.snapshot();
+        final PageRequest page = PageRequest.parseFrom(request, Constants.Routes.STATION_CONNECTION,
+                PageRequest.UNLIMITED);
+        final List<String> languages = getLanguages(request, response);
+        final String variant = String.join(",", languages);
+        final String tag = tagOf(request, snapshot.getVersion(), variant);
+        if (page.isStream() || page.isTuples() || page.getCursor() != 0 || page.getOffset() != 0
+                || page.getLimit() != PageRequest.UNLIMITED) {
+            if (EntityTags.isNotModified(request, response, tag)) {
+                return null;
+            }
+        } else if (EntityTags.isNotModified(request, response, tag) || cache.write(request, response, LISTING_TYPE,
+                ALL_STATIONS, snapshot.getVersion(), variant, () -> localize(snapshot.getStations(), languages))) {
+            // The listing of all stations is cached until the stations change.
+            return null;
+        }
+        return page.respond(request, response, new Page<Station>(page.getCursor()) {
+
+            @Override
+            protected long seek(long position) {
+                return snapshot.seek(position);
+            }
+
+            @Override
+            protected Station get(long position) {
+                return snapshot.getStation(position).localize(languages);
+            }
+        });
+    }
+
+    /**
+     * Serves the stations near a location, or the stations within a bounding
+     * box. The nearest stations of the {@value Constants.Url#LATITUDE} and
+     * {@value Constants.Url#LONGITUDE} parameters are listed in the order of
+     * their distance. At most {@value Constants.Url#NEAREST} stations, by
+     * default {@value #DEFAULT_NEAREST}, are listed, and only the stations
+     * within {@value Constants.Url#RADIUS} metres, if the radius is given. The
+     * {@value Constants.Url#BOUNDING_BOX} parameter of the western longitude,
+     * the southern latitude, the eastern longitude and the northern latitude
+     * lists the stations within the box instead, all of them unless a limit is
+     * given. The listing is tagged with the version of the stations, and the
+     * stations are named in the preferred languages of the request.
+     * 
+     * @param request  The request.
+     * @param response The response.
+     * @return The found stations, or an undefined value, if the listing was not
+     *         modified.
+     * @throws BadRequestException The parameters were invalid.
+     */
+    public List<Station> near(Request request, Response response) throws BadRequestException {
+        final StationRegistry.Snapshot snapshot = registry.snapshot();
+        final String box = request.getHeader(Constants.Url.BOUNDING_BOX);
+        final int limit = (int) parseNumber(request, Constants.Url.NEAREST, 1, Integer.MAX_VALUE,
+                box == null ? DEFAULT_NEAREST : Integer.MAX_VALUE);
+        double[] bounds = null;
+        double latitude = 0, longitude = 0, radius = 0;
+        if (box == null) {
+            latitude = parseNumber(request, Constants.Url.LATITUDE, -90, 90, Double.NaN);
+            longitude = parseNumber(request, Constants.Url.LONGITUDE, -180, 180, Double.NaN);
+            radius = parseNumber(request, Constants.Url.RADIUS, 0, Double.MAX_VALUE, Double.POSITIVE_INFINITY);
+        } else {
+            String[] values = box.split(",");
+            bounds = new double[values.length];
+            try {
+                for (int i = 0; i < values.length; i++) {
+                    bounds[i] = Double.parseDouble(values[i].trim());
+                }
+            } catch (NumberFormatException nfe) {
+                throw new BadRequestException("Invalid bounding box", nfe);
+            }
+            if (bounds.length != 4 || !(bounds[0] >= -180 && bounds[0] <= bounds[2] && bounds[2] <= 180
+                    && bounds[1] >= -90 && bounds[1] <= bounds[3] && bounds[3] <= 90)) {
+                throw new BadRequestException("Invalid bounding box");
+            }
+        }
+        final List<String> languages = getLanguages(request, response);
+        if (EntityTags.isNotModified(request, response,
+                tagOf(request, snapshot.getVersion(), String.join(",", languages)))) {
+            return null;
+        }
+        final StationGrid index = getGrid(snapshot);
+        return localize(bounds == null ? index.nearest(latitude, longitude, limit, radius)
+                : index.within(bounds[1], bounds[0], bounds[3], bounds[2], limit), languages);
+    }
+
+    /**
+     * Serves the search of the stations by name. The stations whose name
+     * matches the {@value Constants.Url#SEARCH} parameter exactly or by a
+     * prefix of the name or of a word of the name are listed first, followed by
+     * the stations with similar names. At most {@value PageRequest#LIMIT}
+     * stations, by default {@value #DEFAULT_SEARCH_LIMIT}, are listed, and only
+     * the stations with a matching name in the {@value Constants.Url#LANGUAGE}
+     * language, if the language is given. The names in all languages are
+     * searched, and the found stations are named in the searched language or
+     * in the preferred languages of the request. The listing is tagged with
+     * the version of the stations.
+     * 
+     * @param request  The request.
+     * @param response The response.
+     * @return The found stations in the order of their rank, or an undefined
+     *         value, if the listing was not modified.
+     * @throws BadRequestException The parameters were invalid.
+     */
+    public List<Station> search(Request request, Response response) throws BadRequestException {
+        final StationRegistry.Snapshot snapshot = registry.snapshot();
+        final String query = request.getHeader(Constants.Url.SEARCH, "No search query supplied");
+        final int limit = (int) parseNumber(request, PageRequest.LIMIT, 1, Integer.MAX_VALUE, DEFAULT_SEARCH_LIMIT);
+        final String language = request.getHeader(Constants.Url.LANGUAGE);
+        List<String> languages = getLanguages(request, response);
+        if (EntityTags.isNotModified(request, response,
+                tagOf(request, snapshot.getVersion(), String.join(",", languages)))) {
+            return null;
+        }
+        if (language != null) {
+            languages = new ArrayList<>(languages);
+            languages.add(0, language);
+        }
+        return localize(names.search(query, language, limit), languages);
+    }
+
+    /**
+     * Parse a numeric parameter.
+     * 
+     * @param request      The request.
+     * @param name         The name of the parameter.
+     * @param min          The smallest valid value.
+     * @param max          The largest valid value.
+     * @param defaultValue The value of a missing parameter, or NaN, if the
+     *                     parameter is required.
+     * @return The value of the parameter.
+     * @throws BadRequestException The parameter was missing or invalid.
+     */
+    private static double parseNumber(Request request, String name, double min, double max, double defaultValue)
+            throws BadRequestException {
+        String value = request.getHeader(name);
+        if (value == null) {
+            if (Double.isNaN(defaultValue)) {
+                throw new BadRequestException("Missing " + name);
+            }
+            return defaultValue;
+        }
+        try {
+            double result = Double.parseDouble(value);
+            if (result >= min && result <= max) {
+                return result;
+            }
+        } catch (NumberFormatException nfe) {
+            throw new BadRequestException("Invalid " + name, nfe);
+        }
+        throw new BadRequestException("Invalid " + name);
     }
 
-    public synchronized List<Station> readAll(Request request, Response response) {
-        ArrayList<Station> result = new ArrayList<>();
-        result.addAll(new ArrayList<Station>(this.stations));
+    /**
+     * Get the spatial index of a snapshot. The index is rebuilt, if the
+     * stations have changed since the latest indexed snapshot.
+     * 
+     * @param snapshot The snapshot.
+     * @return The index of the snapshot or of a newer snapshot.
+     */
+    private StationGrid getGrid(StationRegistry.Snapshot snapshot) {
+        StationGrid result = grid;
+        if (result == null || result.getVersion() < snapshot.getVersion()) {
+            result = new StationGrid(snapshot);
+            grid = result;
+        }
         return result;
     }
 
@@ -203,54 +749,108 @@ public class StationController {
      * @param request  The request.
      * @param response The response.
      */
-    public synchronized void update(Request request, Response response) {
+    public void update(Request request, Response response) {
         Station station = request.getBodyAs(Station.class, "Station details not provided");
-        if (station.isIncomplete()) {
-            // Partial update.
-            // - Partial update does not allow incomplete keys.
-            // - Target
-            if (station.isNew()) {
-                // Incomplete value.
-                response.setResponseStatus(HttpResponseStatus.BAD_REQUEST);
-                return;
-            } else if (idIndex.containsKey(station.getId())) {
-                Station target = stations.get(idIndex.get(station.getId()));
+        lock.lock();
+        try {
+            if (station.isIncomplete()) {
+                // Partial update.
+                // - Partial update does not allow incomplete keys.
+                // - Target
+                if (station.isNew()) {
+                    // Incomplete value.
+                    response.setResponseStatus(HttpResponseStatus.BAD_REQUEST);
+                    return;
+                } else if (registry.getPending(station.getId()) != null) {
+                    // The published station is not altered, but replaced with an
+                    // updated copy.
+                    Station target = new Station(registry.getPending(station.getId()));
 
-                if (station.getLang() != null) {
-                    target.setLang(station.getLang());
-                }
-                if (station.getName() != null) {
-                    target.setName(station.getName());
+                    if (station.getName() != null) {
+                        // The name is set in its language keeping the other names.
+                        target.setName(station.getLang(), station.getName());
+                    } else if (station.getLang() != null) {
+                        if (target.getNames().get(station.getLang()) != null) {
+                            target = target.localize(List.of(station.getLang()));
+                        } else {
+                            target.setLang(station.getLang());
+                        }
+                    }
+                    for (int i = 0; i < station.getNames().size(); i++) {
+                        target.setName(station.getNames().getLanguage(i), station.getNames().getName(i));
+                    }
+                    if (station.getAddress() != null) {
+                        target.setAddress(station.getAddress());
+                    }
+                    if (station.getCapacity() != null) {
+                        target.setCapacity(station.getCapacity());
+                    }
+                    if (station.getLatitude() != null) {
+                        target.setLatitude(station.getLatitude());
+                    }
+                    if (station.getLongitude() != null) {
+                        target.setLongitude(station.getLongitude());
+                    }
+                    if (!target.isValid()) {
+                        response.setResponseStatus(HttpResponseStatus.BAD_REQUEST);
+                        return;
+                    }
+                    replaceStation(target);
+                } else {
+                    // Missing station to update.
+                    response.setResponseStatus(HttpResponseStatus.NOT_FOUND);
                 }
-            } else {
-                // Missing station to update.
-                response.setResponseStatus(HttpResponseStatus.NOT_FOUND);
-            }
 
-        } else if (station.isNew()) {
-            // Creating a new idetnifier.
-            // TODO: Logger for adding a new station.
-            if (addStation(station)) {
-                response.setResponseStatus(HttpResponseStatus.CREATED);
-            } else {
-                response.setResponseStatus(HttpResponseStatus.NOT_MODIFIED);
-            }
-        } else {
-            // Checking if there is a journey with given identifier.
-            final Integer id = station.getId();
-            if (idIndex.containsKey(id)) {
-                // TODO: Logger for replacing station.
-                stations.set(idIndex.get(id), station);
-            } else {
-                // TODO: Logger for adding new station.
+            } else if (station.isNew()) {
+                // Creating a new idetnifier.
+                // TODO: Logger for adding a new station.
                 if (addStation(station)) {
                     response.setResponseStatus(HttpResponseStatus.CREATED);
                 } else {
                     response.setResponseStatus(HttpResponseStatus.NOT_MODIFIED);
                 }
+            } else {
+                // Checking if there is a journey with given identifier.
+                final Integer id = station.getId();
+                if (registry.getPending(id) != null) {
+                    // TODO: Logger for replacing station.
+                    replaceStation(station);
+                } else {
+                    // TODO: Logger for adding new station.
+                    if (addStation(station)) {
+                        response.setResponseStatus(HttpResponseStatus.CREATED);
+                    } else {
+                        response.setResponseStatus(HttpResponseStatus.NOT_MODIFIED);
+                    }
+                }
+
             }
+        } finally {
+            lock.unlock();
+        }
+    }
 
+    /**
+     * Serves a batch of station changes. The stations of the
+     * {@value Batch#UPSERT} field are added or replace the stations with the
+     * same identifier, and the stations with the identifiers of the
+     * {@value Batch#DELETE} field are removed. The whole batch is validated
+     * before taking the lock of the writers, and the changes are published at
+     * once: either all or none of them are applied.
+     * 
+     * @param request  The request with the batch as its body.
+     * @param response The response.
+     * @return The result of the batch.
+     * @throws BadRequestException The batch was invalid.
+     */
+    public BatchResult batch(Request request, Response response) throws BadRequestException {
+        Batch.Stations batch = request.getBodyAs(Batch.Stations.class, "Station batch not provided");
+        List<InvalidFieldsException.FieldError> errors = batch.validate(Station::isValid, Station::getId);
+        if (!errors.isEmpty()) {
+            throw new BadRequestException("Invalid station batch", new InvalidFieldsException("Invalid station batch",
+                    null, errors.toArray(new InvalidFieldsException.FieldError[0])));
         }
+        return applyStations(batch.getUpsert(), true, batch.getDelete());
     }
 
     /**
@@ -259,18 +859,29 @@ public class StationController {
      * @param request  The request.
      * @param response The response.
      */
-    public synchronized void delete(Request request, Response response) {
+    public void delete(Request request, Response response) {
+        lock.lock();
         try {
-            Integer id = Integer.parseInt(request.getHeader(Constants.Url.STATION_ID, "No Station ID supplied"));
-            if (idIndex.containsKey(id)) {
-                stations.remove(idIndex.get(id));
-                idIndex.remove(id);
-                response.setResponseNoContent();
-            } else {
-                response.setResponseStatus(HttpResponseStatus.NOT_FOUND);
+            try {
+                Integer id = Integer.parseInt(request.getHeader(Constants.Url.STATION_ID, "No Station ID supplied"));
+                if (registry.remove(id) != null) {
+                    try {
+                        registry.commit();
+                    } catch (RuntimeException e) {
+                        registry.rollback();
+                        throw e;
+                    }
+                    identifiers.release(id);
+                    cache.remove(STATION_TYPE, id);
+                    response.setResponseNoContent();
+                } else {
+                    response.setResponseStatus(HttpResponseStatus.NOT_FOUND);
+                }
+            } catch (NumberFormatException nfe) {
+                throw new BadRequestException("Invalid station identifier", nfe);
             }
-        } catch (NumberFormatException nfe) {
-            throw new BadRequestException("Invalid station identifier", nfe);
+        } finally {
+            lock.unlock();
         }
     }
 
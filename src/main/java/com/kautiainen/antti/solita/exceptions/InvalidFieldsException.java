@@ -3,6 +3,7 @@ package com.kautiainen.antti.solita.exceptions;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -50,6 +51,15 @@ public class InvalidFieldsException extends IllegalArgumentException {
             this.errors.addAll(Arrays.asList(errors));
     }
 
+    /**
+     * Get the errors of the fields.
+     *
+     * @return The unmodifiable list of the field errors.
+     */
+    public List<FieldError> getFieldErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
     public List<String> getErrors(String fieldName) {
         return errors.stream().filter((FieldError error) -> (error.fieldName == fieldName)).map(
                 (FieldError entry) -> (entry.description)).toList();
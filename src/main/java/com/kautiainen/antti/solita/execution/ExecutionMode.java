@@ -0,0 +1,44 @@
+package com.kautiainen.antti.solita.execution;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The threads invoking the controllers.
+ */
+public enum ExecutionMode {
+
+    /**
+     * The fixed pool of platform threads.
+     */
+    PLATFORM {
+        @Override
+        public ExecutorService newExecutor(int threadCount) {
+            return Executors.newFixedThreadPool(threadCount, Thread.ofPlatform().name(THREAD_PREFIX, 0).factory());
+        }
+    },
+
+    /**
+     * A new virtual thread for each request.
+     */
+    VIRTUAL {
+        @Override
+        public ExecutorService newExecutor(int threadCount) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(THREAD_PREFIX, 0).factory());
+        }
+    };
+
+    /**
+     * The prefix of the thread names followed by a counter.
+     */
+    private static final String THREAD_PREFIX = "executor-";
+
+    /**
+     * Create the executor of the requests.
+     * 
+     * @param threadCount The number of the pooled threads. The virtual threads
+     *                    are not pooled.
+     * @return The executor invoking the controllers.
+     */
+    public abstract ExecutorService newExecutor(int threadCount);
+}
@@ -0,0 +1,109 @@
+package com.kautiainen.antti.solita.execution;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.restexpress.RestExpress;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInboundHandler;
+
+/**
+ * RestExpress server invoking the controllers on an executor instead of the
+ * event executors of RestExpress.
+ * 
+ * The server is bound by RestExpress without an execution handler, so the
+ * requests are decoded on the IO threads, and the request handler of
+ * RestExpress is wrapped into a {@link RequestDispatcher} handing each request
+ * to the executor. The executor is shut down with the server.
+ * 
+ * With {@link RequestBodies} the aggregator of the requests is sized for the
+ * largest aggregated body, and the bodies are limited by their routes.
+ */
+public class ExecutorRestExpress extends RestExpress {
+
+    /**
+     * The time the shutdown waits for the running requests in seconds.
+     */
+    private static final long SHUTDOWN_WAIT_SECONDS = 10;
+
+    private final ExecutorService executor;
+
+    /**
+     * The admission of the requests, or an undefined value, if the requests
+     * are not shed.
+     */
+    private LoadShedder shedder = null;
+
+    /**
+     * The limits of the request bodies, or an undefined value, if the bodies
+     * are limited by the maximal content size alone.
+     */
+    private RequestBodies bodies = null;
+
+    /**
+     * Create a new server.
+     * 
+     * @param executor The executor invoking the controllers.
+     */
+    public ExecutorRestExpress(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Set the admission of the requests. The requests are admitted before
+     * they are dispatched to the executor.
+     * 
+     * @param shedder The load shedder, or an undefined value for no shedding.
+     * @return This server.
+     */
+    public ExecutorRestExpress setLoadShedder(LoadShedder shedder) {
+        this.shedder = shedder;
+        return this;
+    }
+
+    /**
+     * Set the limits of the request bodies. The maximal content size of the
+     * server is set to the largest aggregated body, and the spooled bodies
+     * not claimed by the controllers are deleted once their requests have
+     * been handled.
+     * 
+     * @param bodies The limits of the bodies.
+     * @return This server.
+     */
+    public ExecutorRestExpress setRequestBodies(RequestBodies bodies) {
+        this.bodies = bodies;
+        setMaxContentSize(bodies.getMaxAggregatedSize());
+        addFinallyProcessor(bodies);
+        return this;
+    }
+
+    /**
+     * Get the number of the event executors of RestExpress.
+     * 
+     * @return Always zero, as the requests are dispatched to the executor of
+     *         the server.
+     */
+    @Override
+    public int getExecutorThreadCount() {
+        return 0;
+    }
+
+    @Override
+    public ChannelHandler buildRequestHandler() {
+        return new RequestDispatcher((ChannelInboundHandler) super.buildRequestHandler(), executor, shedder, bodies);
+    }
+
+    @Override
+    public void shutdown(boolean shouldWait) {
+        super.shutdown(shouldWait);
+        executor.shutdown();
+        if (shouldWait) {
+            try {
+                executor.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.kautiainen.antti.solita.execution;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Global admission control shedding the requests above the maximal number of
+ * the requests in flight. A shed request is rejected at once with "503 Service
+ * Unavailable" and a "Retry-After" header instead of queueing for the
+ * executors.
+ * 
+ * The shedder is consulted by the {@link RequestDispatcher} on the IO thread
+ * before the request is handed to the executor, so the requests waiting for
+ * an executor thread are in flight, and the shed requests never wait. The
+ * requests in flight are a single atomic counter, so the admission never
+ * blocks. An admitted request is released once the request handler has
+ * returned.
+ */
+public class LoadShedder {
+
+    private final int maxInFlight;
+
+    private final long retryAfterSeconds;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Create a new load shedder.
+     * 
+     * @param maxInFlight       The maximal number of the requests in flight.
+     * @param retryAfterSeconds The seconds after which a shed request may be
+     *                          retried.
+     * @throws IllegalArgumentException The maximum or the retry time was not
+     *                                  positive.
+     */
+    public LoadShedder(int maxInFlight, long retryAfterSeconds) throws IllegalArgumentException {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("Invalid maximal number of requests in flight");
+        }
+        if (retryAfterSeconds <= 0) {
+            throw new IllegalArgumentException("Invalid retry time");
+        }
+        this.maxInFlight = maxInFlight;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Get the number of the requests in flight.
+     * 
+     * @return The number of the admitted requests, which have not completed.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Get the retry time of the shed requests.
+     * 
+     * @return The seconds after which a shed request may be retried.
+     */
+    public long getRetryAfter() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * Admit a request.
+     * 
+     * @return True, if the request was admitted, and has to be released once
+     *         it has completed, or false, if the request has to be shed.
+     */
+    public boolean tryAdmit() {
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Release a completed admitted request.
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+}
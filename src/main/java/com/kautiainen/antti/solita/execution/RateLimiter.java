@@ -0,0 +1,217 @@
+package com.kautiainen.antti.solita.execution;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.restexpress.Request;
+import org.restexpress.exception.ServiceException;
+import org.restexpress.pipeline.Preprocessor;
+import org.restexpress.route.Route;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+/**
+ * Preprocessor limiting the request rate of each client on each route. Every
+ * client has a {@link TokenBucket} of each named route, and a request without
+ * a token is rejected with "429 Too Many Requests" and a "Retry-After" header
+ * of the seconds until the next token.
+ * 
+ * The routes have a default limit, which may be replaced for the named routes
+ * of {@link com.kautiainen.antti.solita.Constants.Routes}. The clients are
+ * identified by their remote addresses. The buckets are looked up without
+ * locking. Once a route has {@link #MAX_BUCKETS} buckets, the buckets of the
+ * least recently active half of its clients are evicted at once, so the
+ * buckets stay bounded, and the cost of the eviction is spread over the
+ * clients added until the next eviction. The bucket of a client becoming
+ * active again is full.
+ */
+public class RateLimiter implements Preprocessor {
+
+    /**
+     * The header of the seconds after which the request may be retried.
+     */
+    public static final String RETRY_AFTER = "Retry-After";
+
+    /**
+     * The number of the buckets of a route, at which the buckets of the least
+     * recently active clients are evicted.
+     */
+    public static final int MAX_BUCKETS = 1 << 16;
+
+    /**
+     * The limit of a route.
+     */
+    public static final class Limit {
+        private final double rate;
+        private final int burst;
+
+        /**
+         * Create a new limit.
+         * 
+         * @param rate  The number of the requests per second.
+         * @param burst The number of the requests, which may be made at once.
+         * @throws IllegalArgumentException The rate or the burst was not
+         *                                  positive.
+         */
+        public Limit(double rate, int burst) throws IllegalArgumentException {
+            if (!(rate > 0) || burst <= 0) {
+                throw new IllegalArgumentException("Invalid rate limit");
+            }
+            this.rate = rate;
+            this.burst = burst;
+        }
+
+        public double getRate() {
+            return rate;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+    }
+
+    /**
+     * The default limit, or an undefined value, if the routes without a limit
+     * of their own are not limited.
+     */
+    private final Limit defaultLimit;
+
+    /**
+     * The limits of the routes by their names.
+     */
+    private final Map<String, Limit> limits = new ConcurrentHashMap<>();
+
+    /**
+     * The buckets of the clients by the route names.
+     */
+    private final Map<String, Map<InetAddress, TokenBucket>> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * Is an eviction running.
+     */
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+
+    /**
+     * Create a new limiter.
+     * 
+     * @param defaultLimit The limit of the routes without a limit of their own,
+     *                     or an undefined value for no default limit.
+     */
+    public RateLimiter(Limit defaultLimit) {
+        this.defaultLimit = defaultLimit;
+    }
+
+    /**
+     * Set the limit of a route.
+     * 
+     * @param route The name of the route.
+     * @param limit The limit of the route.
+     * @return This limiter.
+     */
+    public RateLimiter setLimit(String route, Limit limit) {
+        limits.put(route, limit);
+        return this;
+    }
+
+    /**
+     * Get the limit of a route.
+     * 
+     * @param route The name of the route.
+     * @return The limit of the route, or an undefined value, if the route is
+     *         not limited.
+     */
+    public Limit getLimit(String route) {
+        Limit result = limits.get(route);
+        return result == null ? defaultLimit : result;
+    }
+
+    @Override
+    public void process(Request request) {
+        Route route = request.getResolvedRoute();
+        InetSocketAddress client = request.getRemoteAddress();
+        if (route == null || !route.hasName() || client == null) {
+            return;
+        }
+        final String name = route.getName();
+        final Limit limit = getLimit(name);
+        if (limit == null) {
+            return;
+        }
+        final long now = System.nanoTime();
+        long wait = bucket(name, client.getAddress(), limit, now).tryTake(now);
+        if (wait > 0) {
+            ServiceException rejection = new ServiceException(HttpResponseStatus.TOO_MANY_REQUESTS,
+                    "Rate limit of " + name + " exceeded");
+            rejection.setHeader(RETRY_AFTER, String.valueOf(retryAfter(wait)));
+            throw rejection;
+        }
+    }
+
+    /**
+     * Get the seconds to wait.
+     * 
+     * @param nanos The wait in nanoseconds.
+     * @return The wait rounded up to whole seconds, at least one second.
+     */
+    static long retryAfter(long nanos) {
+        return Math.max(1, (nanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private TokenBucket bucket(String route, InetAddress client, Limit limit, long now) {
+        Map<InetAddress, TokenBucket> clients = buckets.get(route);
+        if (clients == null) {
+            clients = buckets.computeIfAbsent(route, (String key) -> new ConcurrentHashMap<>());
+        }
+        TokenBucket result = clients.get(client);
+        if (result == null) {
+            if (clients.size() >= MAX_BUCKETS) {
+                evict(clients, now);
+            }
+            result = clients.computeIfAbsent(client,
+                    (InetAddress key) -> new TokenBucket(limit.getRate(), limit.getBurst()));
+        }
+        return result;
+    }
+
+    /**
+     * Evict the full buckets and the buckets of the least recently active half
+     * of the clients. The activity of a client is the time its bucket would be
+     * full again, which each taken token advances. An evicted bucket is
+     * replaced with a new full bucket. Only one eviction runs at a time, and
+     * the clients added during the eviction are not evicted.
+     * 
+     * @param clients The buckets of the clients.
+     * @param now     The current time.
+     */
+    private void evict(Map<InetAddress, TokenBucket> clients, long now) {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long[] times = new long[clients.size()];
+            int size = 0;
+            for (TokenBucket bucket : clients.values()) {
+                if (size == times.length) {
+                    break;
+                }
+                times[size++] = bucket.getFullTime() - now;
+            }
+            if (size == 0) {
+                return;
+            }
+            Arrays.sort(times, 0, size);
+            final long median = times[(size - 1) / 2];
+            clients.values().removeIf((TokenBucket bucket) -> {
+                final long fullTime = bucket.getFullTime() - now;
+                return fullTime <= 0 || fullTime <= median;
+            });
+        } finally {
+            evicting.set(false);
+        }
+    }
+}
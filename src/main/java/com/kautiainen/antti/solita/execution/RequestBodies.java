@@ -0,0 +1,268 @@
+package com.kautiainen.antti.solita.execution;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.restexpress.Request;
+import org.restexpress.Response;
+import org.restexpress.pipeline.Postprocessor;
+
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.QueryStringDecoder;
+
+/**
+ * The size limits of the request bodies. The limit of a request is given by
+ * the first rule matching its path and its content type, and the requests
+ * without a matching rule are limited by the default limit. A body above its
+ * limit is answered with "413 Request Entity Too Large" as soon as its size is
+ * known, before the rest of it is read.
+ * 
+ * The body of a request matching a spooling rule is not aggregated on the
+ * heap: it is written to a file of the spool directory as it arrives, and the
+ * request reaches the controller with an empty body and a token of the file,
+ * so the controller reads the body from the file with
+ * {@link #getSpooledBody(Request)}. The token refers to a file known to the
+ * server, so a client cannot make the server read a file of its choice. The
+ * spool file is deleted once the request has been handled unless the
+ * controller claimed it with {@link #claimSpooledBody(Request)}.
+ * 
+ * The limits are enforced by a {@link RequestBodyHandler} of each connection,
+ * and the spool files are deleted by registering the limits as a finally
+ * processor.
+ */
+public class RequestBodies implements Postprocessor {
+
+    /**
+     * The default limit of RestExpress in bytes.
+     */
+    public static final long DEFAULT_MAX_SIZE = 25600;
+
+    /**
+     * The header of the token of the spooled body.
+     */
+    public static final String SPOOLED_BODY = "X-Spooled-Body";
+
+    /**
+     * A rule of the limits.
+     */
+    static final class Rule {
+        private final String pathPrefix;
+        private final String contentType;
+        private final long maxSize;
+        private final boolean spooled;
+
+        Rule(String pathPrefix, String contentType, long maxSize, boolean spooled) {
+            this.pathPrefix = pathPrefix;
+            this.contentType = contentType == null ? null : contentType.toLowerCase(Locale.ROOT);
+            this.maxSize = maxSize;
+            this.spooled = spooled;
+        }
+
+        /**
+         * Test whether the rule applies to a request.
+         * 
+         * @param path        The path of the request.
+         * @param contentType The content type of the request, or an undefined
+         *                    value.
+         * @return True, if the rule applies to the request.
+         */
+        boolean matches(String path, String contentType) {
+            return path.startsWith(pathPrefix) && (this.contentType == null
+                    || (contentType != null && contentType.toLowerCase(Locale.ROOT).startsWith(this.contentType)));
+        }
+
+        long getMaxSize() {
+            return maxSize;
+        }
+
+        boolean isSpooled() {
+            return spooled;
+        }
+    }
+
+    private final Rule defaultRule;
+
+    private final Path spoolDirectory;
+
+    private final List<Rule> rules = new ArrayList<>();
+
+    /**
+     * The spool files of the requests being handled by their tokens.
+     */
+    private final Map<String, Path> spooled = new ConcurrentHashMap<>();
+
+    /**
+     * Create new limits.
+     * 
+     * @param defaultMaxSize The limit of the requests without a rule in bytes.
+     * @param spoolDirectory The directory of the spool files.
+     * @throws IllegalArgumentException The limit was not positive.
+     */
+    public RequestBodies(long defaultMaxSize, Path spoolDirectory) throws IllegalArgumentException {
+        if (defaultMaxSize <= 0) {
+            throw new IllegalArgumentException("Invalid maximal size");
+        }
+        this.defaultRule = new Rule("", null, defaultMaxSize, false);
+        this.spoolDirectory = spoolDirectory;
+    }
+
+    /**
+     * Limit the aggregated bodies of the requests of a path.
+     * 
+     * @param pathPrefix The prefix of the limited paths.
+     * @param maxSize    The limit in bytes.
+     * @return These limits.
+     * @throws IllegalArgumentException The limit was invalid, as an aggregated
+     *                                  body is at most 2 GiB.
+     */
+    public RequestBodies limit(String pathPrefix, long maxSize) throws IllegalArgumentException {
+        if (maxSize <= 0 || maxSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid maximal size");
+        }
+        rules.add(new Rule(pathPrefix, null, maxSize, false));
+        return this;
+    }
+
+    /**
+     * Spool the bodies of the requests of a path.
+     * 
+     * @param pathPrefix  The prefix of the spooled paths.
+     * @param contentType The prefix of the spooled content types, or an
+     *                    undefined value for any content type.
+     * @param maxSize     The limit in bytes.
+     * @return These limits.
+     * @throws IllegalArgumentException The limit was not positive.
+     */
+    public RequestBodies spool(String pathPrefix, String contentType, long maxSize)
+            throws IllegalArgumentException {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Invalid maximal size");
+        }
+        rules.add(new Rule(pathPrefix, contentType, maxSize, true));
+        return this;
+    }
+
+    /**
+     * Get the rule of a request.
+     * 
+     * @param uri         The URI of the request.
+     * @param contentType The content type of the request, or an undefined
+     *                    value.
+     * @return The first matching rule, or the default rule.
+     */
+    Rule getRule(String uri, String contentType) {
+        String path = new QueryStringDecoder(uri).path();
+        for (Rule rule : rules) {
+            if (rule.matches(path, contentType)) {
+                return rule;
+            }
+        }
+        return defaultRule;
+    }
+
+    /**
+     * Get the largest aggregated body.
+     * 
+     * @return The largest limit of the bodies aggregated on the heap in bytes.
+     */
+    public int getMaxAggregatedSize() {
+        long result = defaultRule.getMaxSize();
+        for (Rule rule : rules) {
+            if (!rule.isSpooled()) {
+                result = Math.max(result, rule.getMaxSize());
+            }
+        }
+        return (int) Math.min(result, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Create a new spool file.
+     * 
+     * @return The created empty file.
+     * @throws IOException The file could not be created.
+     */
+    Path createSpoolFile() throws IOException {
+        return Files.createTempFile(spoolDirectory, "body-", ".tmp");
+    }
+
+    /**
+     * Register a complete spool file.
+     * 
+     * @param file The spool file.
+     * @return The token of the file.
+     */
+    String register(Path file) {
+        String token = UUID.randomUUID().toString();
+        spooled.put(token, file);
+        return token;
+    }
+
+    /**
+     * Get the spooled body of a request.
+     * 
+     * @param request The request.
+     * @return The file of the body, or an undefined value, if the body was not
+     *         spooled.
+     */
+    public Path getSpooledBody(Request request) {
+        String token = request.getHeader(SPOOLED_BODY);
+        return token == null ? null : spooled.get(token);
+    }
+
+    /**
+     * Take the ownership of the spooled body of a request. The file is not
+     * deleted with the request, and the caller deletes it once it is done.
+     * 
+     * @param request The request.
+     * @return The file of the body, or an undefined value, if the body was not
+     *         spooled.
+     */
+    public Path claimSpooledBody(Request request) {
+        String token = request.getHeader(SPOOLED_BODY);
+        return token == null ? null : spooled.remove(token);
+    }
+
+    /**
+     * Delete the unclaimed spooled body of a handled request.
+     */
+    @Override
+    public void process(Request request, Response response) {
+        delete(claimSpooledBody(request));
+    }
+
+    /**
+     * Delete the spooled body of a request, which is not handled.
+     * 
+     * @param request The request.
+     */
+    void discard(HttpRequest request) {
+        String token = request.headers().get(SPOOLED_BODY);
+        if (token != null) {
+            delete(spooled.remove(token));
+        }
+    }
+
+    /**
+     * Delete a spool file ignoring the failures. A file which could not be
+     * deleted is deleted on exit.
+     * 
+     * @param file The deleted file, or an undefined value.
+     */
+    public static void delete(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            file.toFile().deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.kautiainen.antti.solita.execution;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Handler enforcing the {@link RequestBodies} of a connection. The handler
+ * precedes the aggregator of the requests, so a body is counted as it arrives
+ * and rejected before it is aggregated, and a spooled body is written to its
+ * spool file instead of being aggregated. The spool files are written on the
+ * IO thread of the connection.
+ * 
+ * A rejected request is answered with "413 Request Entity Too Large" after the
+ * responses of the earlier requests of the connection, and the connection is
+ * closed, as the rest of its body is not read.
+ */
+public class RequestBodyHandler extends ChannelInboundHandlerAdapter {
+
+    private static final Logger LOGGER = Logger.getLogger(RequestBodyHandler.class.getName());
+
+    /**
+     * The handling of the body of the current request.
+     */
+    private static enum State {
+        /**
+         * The body is passed to the aggregator.
+         */
+        FORWARDING,
+        /**
+         * The body is written to the spool file.
+         */
+        SPOOLING,
+        /**
+         * The request was rejected, and the rest of the connection is
+         * discarded.
+         */
+        DISCARDING
+    }
+
+    private final RequestBodies bodies;
+
+    private State state = State.FORWARDING;
+
+    /**
+     * The limit of the current body in bytes.
+     */
+    private long maxSize;
+
+    /**
+     * The size of the current body in bytes.
+     */
+    private long size;
+
+    /**
+     * The spooled request passed on once its body is complete.
+     */
+    private HttpRequest spooledRequest;
+
+    private Path spoolFile;
+
+    private FileChannel spoolChannel;
+
+    /**
+     * Create a new handler of a connection.
+     * 
+     * @param bodies The limits of the bodies.
+     */
+    public RequestBodyHandler(RequestBodies bodies) {
+        this.bodies = bodies;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (state != State.DISCARDING && msg instanceof HttpRequest) {
+            begin(ctx, (HttpRequest) msg);
+        }
+        switch (state) {
+            case DISCARDING:
+                ReferenceCountUtil.release(msg);
+                break;
+            case SPOOLING:
+                if (msg instanceof HttpContent) {
+                    spool(ctx, (HttpContent) msg);
+                } else {
+                    ReferenceCountUtil.release(msg);
+                }
+                break;
+            default:
+                if (msg instanceof HttpContent && count(ctx, ((HttpContent) msg).content())) {
+                    ReferenceCountUtil.release(msg);
+                } else {
+                    ctx.fireChannelRead(msg);
+                }
+        }
+    }
+
+    /**
+     * Start a request choosing the handling of its body.
+     * 
+     * @param ctx     The context of the handler.
+     * @param request The request.
+     */
+    private void begin(ChannelHandlerContext ctx, HttpRequest request) {
+        // Only the server refers to a spooled body.
+        request.headers().remove(RequestBodies.SPOOLED_BODY);
+        RequestBodies.Rule rule = bodies.getRule(request.getUri(), request.headers().get(HttpHeaders.Names.CONTENT_TYPE));
+        maxSize = rule.getMaxSize();
+        size = 0;
+        state = State.FORWARDING;
+        if (HttpHeaders.getContentLength(request, -1) > maxSize) {
+            reject(ctx, request.getProtocolVersion(), HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+        } else if (rule.isSpooled() && request.getDecoderResult().isSuccess()) {
+            try {
+                spoolFile = bodies.createSpoolFile();
+                spoolChannel = FileChannel.open(spoolFile, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not create a spool file", e);
+                reject(ctx, request.getProtocolVersion(), HttpResponseStatus.INTERNAL_SERVER_ERROR);
+                return;
+            }
+            if (HttpHeaders.is100ContinueExpected(request)) {
+                // The aggregator answering the expectation is passed by.
+                ctx.writeAndFlush(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE));
+                request.headers().remove(HttpHeaders.Names.EXPECT);
+            }
+            spooledRequest = new DefaultHttpRequest(request.getProtocolVersion(), request.getMethod(), request.getUri());
+            spooledRequest.headers().set(request.headers());
+            state = State.SPOOLING;
+        }
+    }
+
+    /**
+     * Count the content of a forwarded body.
+     * 
+     * @param ctx     The context of the handler.
+     * @param content The content.
+     * @return True, if the body exceeded its limit and was rejected.
+     */
+    private boolean count(ChannelHandlerContext ctx, ByteBuf content) {
+        size += content.readableBytes();
+        if (size > maxSize) {
+            reject(ctx, HttpVersion.HTTP_1_1, HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Write the content of a spooled body to its file, and pass the request on
+     * once the body is complete.
+     * 
+     * @param ctx     The context of the handler.
+     * @param content The content, which is released.
+     */
+    private void spool(ChannelHandlerContext ctx, HttpContent content) {
+        try {
+            ByteBuf buffer = content.content();
+            if (count(ctx, buffer)) {
+                return;
+            }
+            while (buffer.isReadable()) {
+                buffer.readBytes(spoolChannel, buffer.readableBytes());
+            }
+            if (content instanceof LastHttpContent) {
+                finish(ctx);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not spool a request body", e);
+            reject(ctx, spooledRequest.getProtocolVersion(), HttpResponseStatus.INTERNAL_SERVER_ERROR);
+        } finally {
+            content.release();
+        }
+    }
+
+    /**
+     * Pass on a request with a complete spooled body. The request is passed
+     * with an empty body and the token of its spool file.
+     * 
+     * @param ctx The context of the handler.
+     * @throws IOException The spool file could not be closed.
+     */
+    private void finish(ChannelHandlerContext ctx) throws IOException {
+        spoolChannel.close();
+        spoolChannel = null;
+        HttpRequest request = spooledRequest;
+        spooledRequest = null;
+        request.headers().set(RequestBodies.SPOOLED_BODY, bodies.register(spoolFile));
+        spoolFile = null;
+        request.headers().remove(HttpHeaders.Names.TRANSFER_ENCODING);
+        HttpHeaders.setContentLength(request, 0);
+        state = State.FORWARDING;
+        ctx.fireChannelRead(request);
+        ctx.fireChannelRead(LastHttpContent.EMPTY_LAST_CONTENT);
+    }
+
+    /**
+     * Reject the current request, and close the connection once the response
+     * is written. The response follows the responses of the earlier requests
+     * dispatched by the {@link RequestDispatcher} of the connection.
+     * 
+     * @param ctx     The context of the handler.
+     * @param version The version of the request.
+     * @param status  The status of the response.
+     */
+    private void reject(ChannelHandlerContext ctx, HttpVersion version, HttpResponseStatus status) {
+        state = State.DISCARDING;
+        discardSpool();
+        FullHttpResponse response = new DefaultFullHttpResponse(version, status);
+        HttpHeaders.setContentLength(response, 0);
+        response.headers().set(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.CLOSE);
+        RequestDispatcher.afterResponses(ctx.channel(),
+                () -> ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE));
+    }
+
+    /**
+     * Delete the spool file of an incomplete body.
+     */
+    private void discardSpool() {
+        if (spoolChannel != null) {
+            try {
+                spoolChannel.close();
+            } catch (IOException e) {
+                // The file is deleted regardless.
+            }
+            spoolChannel = null;
+        }
+        RequestBodies.delete(spoolFile);
+        spoolFile = null;
+        spooledRequest = null;
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        discardSpool();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        discardSpool();
+    }
+}
@@ -0,0 +1,298 @@
+package com.kautiainen.antti.solita.execution;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandler;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+/**
+ * Handler dispatching the requests to an executor. The requests are read on
+ * the IO threads, and each request is passed to the request handler on a
+ * thread of the executor, so with an executor creating a virtual thread for
+ * each task every request runs on a virtual thread of its own.
+ * 
+ * The requests of a connection are handled one at a time in the order they
+ * arrived, as their responses are written in that order: the handling of a
+ * request is chained after the handling of the previous request of the
+ * connection. The requests of different connections are handled concurrently.
+ * The responses are flushed once the request handler returns.
+ * 
+ * With a {@link LoadShedder} each request is admitted on the IO thread before
+ * it is dispatched, and a shed request is answered with "503 Service
+ * Unavailable" without reaching the executor. A request rejected by the
+ * executor is answered likewise, and its connection is closed.
+ * 
+ * With {@link RequestBodies} a {@link RequestBodyHandler} is added to each
+ * connection in front of the aggregator of the requests.
+ */
+@Sharable
+public class RequestDispatcher extends ChannelInboundHandlerAdapter {
+
+    private static final Logger LOGGER = Logger.getLogger(RequestDispatcher.class.getName());
+
+    /**
+     * The handling of the latest request of a connection.
+     */
+    private static final AttributeKey<CompletableFuture<Void>> TAIL = AttributeKey
+            .valueOf(RequestDispatcher.class.getName() + ".tail");
+
+    /**
+     * A call of the request handler.
+     */
+    @FunctionalInterface
+    private static interface Call {
+        void run() throws Exception;
+    }
+
+    /**
+     * The name of the aggregator of the requests in the pipeline of
+     * RestExpress.
+     */
+    private static final String AGGREGATOR = "aggregator";
+
+    /**
+     * The name of the handler of the request bodies.
+     */
+    private static final String BODIES = "bodies";
+
+    private final ChannelInboundHandler delegate;
+
+    private final Executor executor;
+
+    /**
+     * The admission of the requests, or an undefined value, if the requests
+     * are not shed.
+     */
+    private final LoadShedder shedder;
+
+    /**
+     * The limits of the request bodies, or an undefined value, if the bodies
+     * are limited by the aggregator alone.
+     */
+    private final RequestBodies bodies;
+
+    /**
+     * Create a new dispatcher.
+     * 
+     * @param delegate The request handler called on the executor. The handler
+     *                 must be sharable.
+     * @param executor The executor of the requests.
+     */
+    public RequestDispatcher(ChannelInboundHandler delegate, Executor executor) {
+        this(delegate, executor, null);
+    }
+
+    /**
+     * Create a new dispatcher shedding the requests.
+     * 
+     * @param delegate The request handler called on the executor. The handler
+     *                 must be sharable.
+     * @param executor The executor of the requests.
+     * @param shedder  The admission of the requests, or an undefined value for
+     *                 no shedding.
+     */
+    public RequestDispatcher(ChannelInboundHandler delegate, Executor executor, LoadShedder shedder) {
+        this(delegate, executor, shedder, null);
+    }
+
+    /**
+     * Create a new dispatcher shedding the requests and limiting their bodies.
+     * 
+     * @param delegate The request handler called on the executor. The handler
+     *                 must be sharable.
+     * @param executor The executor of the requests.
+     * @param shedder  The admission of the requests, or an undefined value for
+     *                 no shedding.
+     * @param bodies   The limits of the request bodies, or an undefined value
+     *                 for the limit of the aggregator alone.
+     */
+    public RequestDispatcher(ChannelInboundHandler delegate, Executor executor, LoadShedder shedder,
+            RequestBodies bodies) {
+        this.delegate = delegate;
+        this.executor = executor;
+        this.shedder = shedder;
+        this.bodies = bodies;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        if (bodies != null) {
+            ChannelPipeline pipeline = ctx.pipeline();
+            String next = pipeline.get(AGGREGATOR) == null ? ctx.name() : AGGREGATOR;
+            pipeline.addBefore(next, BODIES, new RequestBodyHandler(bodies));
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (!(msg instanceof FullHttpRequest)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        final FullHttpRequest request = (FullHttpRequest) msg;
+        if (shedder == null) {
+            dispatch(ctx, () -> delegate.channelRead(ctx, request), request, () -> discard(request));
+        } else if (!shedder.tryAdmit()) {
+            discard(request);
+            shed(ctx, request);
+        } else {
+            dispatch(ctx, () -> {
+                try {
+                    delegate.channelRead(ctx, request);
+                } finally {
+                    shedder.release();
+                }
+            }, request, () -> {
+                discard(request);
+                shedder.release();
+            });
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        dispatch(ctx, () -> delegate.exceptionCaught(ctx, cause), null, null);
+    }
+
+    /**
+     * Delete the spooled body of a request, which is not handled.
+     * 
+     * @param request The request.
+     */
+    private void discard(FullHttpRequest request) {
+        if (bodies != null) {
+            bodies.discard(request);
+        }
+    }
+
+    /**
+     * Chain a call after the calls of the earlier requests of the connection.
+     * Called on the IO thread of the connection.
+     * 
+     * @param ctx      The context of the dispatcher.
+     * @param call     The call of the request handler.
+     * @param request  The request of the call, or an undefined value.
+     * @param rejected The cleanup of the request, if the executor rejects the
+     *                 call, or an undefined value.
+     */
+    private void dispatch(ChannelHandlerContext ctx, Call call, FullHttpRequest request, Runnable rejected) {
+        Runnable task = () -> {
+            try {
+                call.run();
+            } catch (Exception | Error e) {
+                LOGGER.log(Level.WARNING, "Request handling failed", e);
+                ctx.close();
+            } finally {
+                ctx.flush();
+            }
+        };
+        Attribute<CompletableFuture<Void>> tail = ctx.channel().attr(TAIL);
+        CompletableFuture<Void> previous = tail.get();
+        if (previous == null || previous.isDone()) {
+            tail.set(submit(ctx, task, request, rejected));
+        } else {
+            // The executor may reject the task only once the previous call
+            // has completed.
+            tail.set(previous.thenCompose(done -> submit(ctx, task, request, rejected)));
+        }
+    }
+
+    /**
+     * Submit a call to the executor. A rejected request is answered with "503
+     * Service Unavailable", and the connection is closed.
+     * 
+     * @param ctx      The context of the dispatcher.
+     * @param task     The task of the call.
+     * @param request  The request of the call, or an undefined value.
+     * @param rejected The cleanup of the request, if the executor rejects the
+     *                 call, or an undefined value.
+     * @return The completion of the call.
+     */
+    private CompletableFuture<Void> submit(ChannelHandlerContext ctx, Runnable task, FullHttpRequest request,
+            Runnable rejected) {
+        try {
+            return CompletableFuture.runAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            // The server is shutting down or the executor is saturated.
+            if (request == null) {
+                ctx.close();
+            } else {
+                rejected.run();
+                ctx.writeAndFlush(unavailable(request, false)).addListener(ChannelFutureListener.CLOSE);
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * Create the "503 Service Unavailable" response of a request.
+     * 
+     * @param request   The request, which is released.
+     * @param keepAlive Is the connection kept alive.
+     * @return The response.
+     */
+    private FullHttpResponse unavailable(FullHttpRequest request, boolean keepAlive) {
+        FullHttpResponse response = new DefaultFullHttpResponse(request.getProtocolVersion(),
+                HttpResponseStatus.SERVICE_UNAVAILABLE);
+        request.release();
+        if (shedder != null) {
+            response.headers().set(RateLimiter.RETRY_AFTER, shedder.getRetryAfter());
+        }
+        HttpHeaders.setContentLength(response, 0);
+        HttpHeaders.setKeepAlive(response, keepAlive);
+        return response;
+    }
+
+    /**
+     * Answer a shed request. The response follows the responses of the
+     * earlier requests of the connection. Called on the IO thread of the
+     * connection.
+     * 
+     * @param ctx     The context of the dispatcher.
+     * @param request The shed request, which is released.
+     */
+    private void shed(ChannelHandlerContext ctx, FullHttpRequest request) {
+        final boolean keepAlive = HttpHeaders.isKeepAlive(request);
+        FullHttpResponse response = unavailable(request, keepAlive);
+        afterResponses(ctx.channel(), () -> {
+            if (keepAlive) {
+                ctx.writeAndFlush(response);
+            } else {
+                ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+            }
+        });
+    }
+
+    /**
+     * Run a write after the responses of the earlier requests of a connection
+     * have been written. Called on the IO thread of the connection.
+     * 
+     * @param channel The connection.
+     * @param write   The write of a response.
+     */
+    static void afterResponses(Channel channel, Runnable write) {
+        Attribute<CompletableFuture<Void>> tail = channel.attr(TAIL);
+        CompletableFuture<Void> previous = tail.get();
+        if (previous == null || previous.isDone()) {
+            write.run();
+        } else {
+            tail.set(previous.thenRun(write));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.kautiainen.antti.solita.execution;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.restexpress.Request;
+import org.restexpress.Response;
+import org.restexpress.exception.ServiceException;
+import org.restexpress.pipeline.Postprocessor;
+import org.restexpress.pipeline.Preprocessor;
+import org.restexpress.route.Route;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+/**
+ * Limiter of the concurrent requests of each route. A request takes a permit
+ * of its route before its controller is invoked, and waits for a permit at
+ * most the given time before it is rejected with "503 Service Unavailable" and
+ * a "Retry-After" header of one second. Without a wait the request is rejected
+ * at once, which suits the pooled threads, as a waiting pooled thread holds up
+ * the requests queued behind it. The permit is released by the finally
+ * processor once the response has been serialized, also when the request
+ * failed.
+ * 
+ * The limiter is registered both as a preprocessor and as a finally
+ * processor. The taken permit is kept as an attachment of the request, so the
+ * permit is released once even if the finally processors run twice.
+ */
+public class RouteConcurrencyLimiter implements Preprocessor, Postprocessor {
+
+    private static final String PERMIT_ATTACHMENT = RouteConcurrencyLimiter.class.getName() + ".permit";
+
+    /**
+     * The name of the unnamed routes sharing their permits.
+     */
+    private static final String UNNAMED = "";
+
+    private final int limit;
+
+    private final long waitMillis;
+
+    /**
+     * The permits by the route names.
+     */
+    private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new limiter.
+     * 
+     * @param limit      The maximal number of the concurrent requests of a
+     *                   route.
+     * @param waitMillis The maximal time a request waits for a permit in
+     *                   milliseconds, or zero for no wait.
+     * @throws IllegalArgumentException The limit was not positive, or the wait
+     *                                  was negative.
+     */
+    public RouteConcurrencyLimiter(int limit, long waitMillis) throws IllegalArgumentException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Invalid concurrency limit");
+        }
+        if (waitMillis < 0) {
+            throw new IllegalArgumentException("Invalid wait");
+        }
+        this.limit = limit;
+        this.waitMillis = waitMillis;
+    }
+
+    /**
+     * Get the number of the available permits of a route.
+     * 
+     * @param route The route name.
+     * @return The number of the requests of the route, which may start
+     *         without waiting.
+     */
+    public int available(String route) {
+        Semaphore semaphore = permits.get(route);
+        return semaphore == null ? limit : semaphore.availablePermits();
+    }
+
+    @Override
+    public void process(Request request) {
+        Route route = request.getResolvedRoute();
+        String name = route != null && route.hasName() ? route.getName() : UNNAMED;
+        Semaphore semaphore = permits.computeIfAbsent(name, (String key) -> new Semaphore(limit));
+        boolean acquired = semaphore.tryAcquire();
+        if (!acquired && waitMillis > 0) {
+            try {
+                acquired = semaphore.tryAcquire(waitMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!acquired) {
+            ServiceException rejection = new ServiceException(HttpResponseStatus.SERVICE_UNAVAILABLE,
+                    "Too many concurrent requests");
+            rejection.setHeader(RateLimiter.RETRY_AFTER, "1");
+            throw rejection;
+        }
+        request.putAttachment(PERMIT_ATTACHMENT, semaphore);
+    }
+
+    @Override
+    public void process(Request request, Response response) {
+        Object semaphore = request.getAttachment(PERMIT_ATTACHMENT);
+        if (semaphore != null) {
+            request.putAttachment(PERMIT_ATTACHMENT, null);
+            ((Semaphore) semaphore).release();
+        }
+    }
+}
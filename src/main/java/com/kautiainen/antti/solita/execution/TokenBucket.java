@@ -0,0 +1,83 @@
+package com.kautiainen.antti.solita.execution;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket refilled at a constant rate up to its burst size.
+ * 
+ * The bucket is kept as the theoretical arrival time of the next request: the
+ * time at which the bucket would be full again. A request takes a token by
+ * advancing the time by the interval of a token, and is admitted, if the time
+ * stays within the burst from the current time. The whole state is a single
+ * atomic long updated with a compare-and-set, so the concurrent requests
+ * never block each other.
+ */
+public final class TokenBucket {
+
+    private final long interval;
+
+    private final long tolerance;
+
+    /**
+     * The theoretical arrival time in nanoseconds.
+     */
+    private final AtomicLong arrival;
+
+    /**
+     * Create a new full bucket.
+     * 
+     * @param rate  The number of the tokens added per second.
+     * @param burst The maximal number of the tokens of the bucket.
+     * @throws IllegalArgumentException The rate or the burst was not positive.
+     */
+    public TokenBucket(double rate, int burst) throws IllegalArgumentException {
+        if (!(rate > 0) || burst <= 0) {
+            throw new IllegalArgumentException("Invalid rate limit");
+        }
+        this.interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+        this.tolerance = interval * (burst - 1);
+        this.arrival = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Take a token.
+     * 
+     * @param now The current time in nanoseconds of {@link System#nanoTime()}.
+     * @return Zero, if a token was taken, or the time in nanoseconds until the
+     *         next token is available.
+     */
+    public long tryTake(long now) {
+        while (true) {
+            final long current = arrival.get();
+            final long start = current - now > 0 ? current : now;
+            final long wait = start - now - tolerance;
+            if (wait > 0) {
+                return wait;
+            }
+            if (arrival.compareAndSet(current, start + interval)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Get the time at which the bucket is full.
+     * 
+     * @return The time in nanoseconds of {@link System#nanoTime()}, at which
+     *         no token is missing from the bucket.
+     */
+    public long getFullTime() {
+        return arrival.get();
+    }
+
+    /**
+     * Is the bucket full.
+     * 
+     * @param now The current time in nanoseconds of {@link System#nanoTime()}.
+     * @return True, if and only if no token is missing from the bucket.
+     */
+    public boolean isFull(long now) {
+        return arrival.get() - now <= 0;
+    }
+}
@@ -0,0 +1,371 @@
+package com.kautiainen.antti.solita.importer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+/**
+ * Streaming CSV reader reading the rows of a channel in fixed size chunks.
+ * 
+ * The reader keeps only the current row in memory, and the fields of the row
+ * are accessed without creating intermediate strings for numeric fields.
+ * Quoted fields with doubled quote escapes are supported.
+ */
+public class CsvReader implements Closeable {
+
+    /**
+     * The default size of the chunk read from the channel at once.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The maximal length of a single row in bytes.
+     */
+    public static final int MAX_ROW_LENGTH = 1024 * 1024;
+
+    private static final byte SEPARATOR = ',';
+
+    private static final byte QUOTE = '"';
+
+    private final ReadableByteChannel channel;
+
+    private final ByteBuffer chunk;
+
+    private boolean endOfInput = false;
+
+    /**
+     * The bytes of the current row without separators and quotes.
+     */
+    private byte[] row = new byte[256];
+
+    private int rowLength = 0;
+
+    /**
+     * The field start offsets within the row.
+     */
+    private int[] fieldStarts = new int[16];
+
+    /**
+     * The field end offsets within the row.
+     */
+    private int[] fieldEnds = new int[16];
+
+    private int fieldCount = 0;
+
+    private long lineNumber = 0;
+
+    /**
+     * Create a new reader with default chunk size.
+     * 
+     * @param channel The channel from which the rows are read.
+     */
+    public CsvReader(ReadableByteChannel channel) {
+        this(channel, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Create a new reader.
+     * 
+     * @param channel   The channel from which the rows are read.
+     * @param chunkSize The number of bytes read from the channel at once.
+     * @throws IllegalArgumentException The chunk size is not positive.
+     */
+    public CsvReader(ReadableByteChannel channel, int chunkSize) throws IllegalArgumentException {
+        if (channel == null) {
+            throw new IllegalArgumentException("Undefined channel");
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Invalid chunk size");
+        }
+        this.channel = channel;
+        this.chunk = ByteBuffer.allocate(chunkSize);
+        this.chunk.flip();
+    }
+
+    /**
+     * Read the next row.
+     * 
+     * @return True, if and only if a row was read. False, if the input has
+     *         ended.
+     * @throws IOException The reading of the channel failed, or the row was too
+     *                     long.
+     */
+    public boolean next() throws IOException {
+        rowLength = 0;
+        fieldCount = 0;
+        boolean quoted = false;
+        boolean quoteSeen = false;
+        boolean rowStarted = false;
+        int fieldStart = 0;
+        while (true) {
+            if (!chunk.hasRemaining()) {
+                if (!fill()) {
+                    if (!rowStarted) {
+                        return false;
+                    }
+                    endField(fieldStart);
+                    lineNumber++;
+                    return true;
+                }
+            }
+            final byte[] data = chunk.array();
+            int position = chunk.position();
+            final int limit = chunk.limit();
+            while (position < limit) {
+                final byte current = data[position++];
+                rowStarted = true;
+                if (quoted) {
+                    if (quoteSeen) {
+                        quoteSeen = false;
+                        if (current == QUOTE) {
+                            // Escaped quote.
+                            append(current);
+                            continue;
+                        }
+                        // The quoted section has ended.
+                        quoted = false;
+                    } else if (current == QUOTE) {
+                        quoteSeen = true;
+                        continue;
+                    } else {
+                        append(current);
+                        continue;
+                    }
+                }
+                switch (current) {
+                    case SEPARATOR:
+                        endField(fieldStart);
+                        fieldStart = rowLength;
+                        break;
+                    case QUOTE:
+                        quoted = true;
+                        break;
+                    case '\r':
+                        break;
+                    case '\n':
+                        chunk.position(position);
+                        endField(fieldStart);
+                        lineNumber++;
+                        return true;
+                    default:
+                        append(current);
+                }
+            }
+            chunk.position(position);
+        }
+    }
+
+    /**
+     * Fill the chunk with the next bytes of the channel.
+     * 
+     * @return True, if and only if the chunk has remaining bytes.
+     * @throws IOException The read failed.
+     */
+    private boolean fill() throws IOException {
+        if (endOfInput) {
+            return false;
+        }
+        chunk.clear();
+        int count;
+        do {
+            count = channel.read(chunk);
+        } while (count == 0);
+        chunk.flip();
+        if (count < 0) {
+            endOfInput = true;
+            return false;
+        }
+        return true;
+    }
+
+    private void append(byte value) throws IOException {
+        if (rowLength == row.length) {
+            if (row.length >= MAX_ROW_LENGTH) {
+                throw new IOException("Row " + (lineNumber + 1) + " is too long");
+            }
+            row = Arrays.copyOf(row, Math.min(MAX_ROW_LENGTH, row.length * 2));
+        }
+        row[rowLength++] = value;
+    }
+
+    private void endField(int fieldStart) {
+        if (fieldCount == fieldStarts.length) {
+            fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+        }
+        fieldStarts[fieldCount] = fieldStart;
+        fieldEnds[fieldCount] = rowLength;
+        fieldCount++;
+    }
+
+    /**
+     * Get the line number of the current row.
+     * 
+     * @return The line number of the current row starting from 1.
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Get the number of fields of the current row.
+     * 
+     * @return The number of fields of the current row.
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Is the field of the current row empty.
+     * 
+     * @param index The field index.
+     * @return True, if and only if the field is empty or missing.
+     */
+    public boolean isEmpty(int index) {
+        return index < 0 || index >= fieldCount || fieldStarts[index] == fieldEnds[index];
+    }
+
+    /**
+     * Get the string value of the field of the current row.
+     * 
+     * @param index The field index.
+     * @return The value of the field, or an undefined value, if the field does
+     *         not exist.
+     */
+    public String getString(int index) {
+        if (index < 0 || index >= fieldCount) {
+            return null;
+        }
+        return new String(row, fieldStarts[index], fieldEnds[index] - fieldStarts[index],
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the integer value of the field of the current row. A decimal value is
+     * rounded to the nearest integer.
+     * 
+     * @param index The field index.
+     * @return The integer value of the field.
+     * @throws NumberFormatException The field is missing or not a number.
+     */
+    public int getInt(int index) throws NumberFormatException {
+        long value = getLong(index);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Field " + index + " out of range");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Get the long value of the field of the current row. A decimal value is
+     * rounded to the nearest integer.
+     * 
+     * @param index The field index.
+     * @return The long value of the field.
+     * @throws NumberFormatException The field is missing or not a number.
+     */
+    public long getLong(int index) throws NumberFormatException {
+        if (isEmpty(index)) {
+            throw new NumberFormatException("Field " + index + " is empty");
+        }
+        int position = fieldStarts[index];
+        final int end = fieldEnds[index];
+        boolean negative = false;
+        if (row[position] == '-' || row[position] == '+') {
+            negative = row[position] == '-';
+            position++;
+        }
+        if (position == end) {
+            throw new NumberFormatException("Field " + index + " is not a number");
+        }
+        long result = 0;
+        while (position < end && row[position] != '.') {
+            final int digit = row[position++] - '0';
+            if (digit < 0 || digit > 9 || result > (Long.MAX_VALUE - digit) / 10) {
+                throw new NumberFormatException("Field " + index + " is not a number");
+            }
+            result = result * 10 + digit;
+        }
+        if (position < end) {
+            // Decimal part determines the rounding.
+            position++;
+            boolean roundUp = position < end && row[position] >= '5' && row[position] <= '9';
+            for (; position < end; position++) {
+                if (row[position] < '0' || row[position] > '9') {
+                    throw new NumberFormatException("Field " + index + " is not a number");
+                }
+            }
+            if (roundUp) {
+                result++;
+            }
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Get the decimal value of the field of the current row.
+     * 
+     * @param index The field index.
+     * @return The decimal value of the field.
+     * @throws NumberFormatException The field is missing or not a number.
+     */
+    public double getDouble(int index) throws NumberFormatException {
+        if (isEmpty(index)) {
+            throw new NumberFormatException("Field " + index + " is empty");
+        }
+        return Double.parseDouble(getString(index).trim());
+    }
+
+    /**
+     * Get the local date time value of the field of the current row. The value
+     * is in ISO local date time format with optional fractions of seconds.
+     * 
+     * @param index The field index.
+     * @return The local date time value of the field.
+     * @throws NumberFormatException The field is missing or not a valid local
+     *                               date time.
+     */
+    public LocalDateTime getLocalDateTime(int index) throws NumberFormatException {
+        if (isEmpty(index)) {
+            throw new NumberFormatException("Field " + index + " is empty");
+        }
+        final int start = fieldStarts[index];
+        final int length = fieldEnds[index] - start;
+        if (length < 19 || row[start + 4] != '-' || row[start + 7] != '-'
+                || (row[start + 10] != 'T' && row[start + 10] != ' ')
+                || row[start + 13] != ':' || row[start + 16] != ':'
+                || (length > 19 && row[start + 19] != '.')) {
+            throw new NumberFormatException("Field " + index + " is not a local date time");
+        }
+        try {
+            return LocalDateTime.of(digits(index, start, 4), digits(index, start + 5, 2),
+                    digits(index, start + 8, 2), digits(index, start + 11, 2),
+                    digits(index, start + 14, 2), digits(index, start + 17, 2));
+        } catch (DateTimeException dte) {
+            throw new NumberFormatException("Field " + index + " is not a local date time");
+        }
+    }
+
+    private int digits(int index, int offset, int count) throws NumberFormatException {
+        int result = 0;
+        for (int i = offset; i < offset + count; i++) {
+            final int digit = row[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Field " + index + " is not a local date time");
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
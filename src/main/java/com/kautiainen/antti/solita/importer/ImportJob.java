@@ -0,0 +1,117 @@
+package com.kautiainen.antti.solita.importer;
+
+/**
+ * An asynchronous import. The job is queued when it is created, and its result
+ * is updated by the worker running it, so the progress of the job is seen by
+ * the readers of the job while the import runs.
+ */
+public class ImportJob {
+
+    /**
+     * The state of a job.
+     */
+    public enum Status {
+        /**
+         * The job waits for a worker.
+         */
+        QUEUED,
+        /**
+         * The job is run by a worker.
+         */
+        RUNNING,
+        /**
+         * The job has imported all of its data.
+         */
+        COMPLETED,
+        /**
+         * The job was stopped by an error.
+         */
+        FAILED
+    }
+
+    /**
+     * The identifier of the job.
+     */
+    private final long id;
+
+    /**
+     * The type of the imported models.
+     */
+    private final String type;
+
+    private volatile Status status = Status.QUEUED;
+
+    /**
+     * The error message of a failed job, or an undefined value.
+     */
+    private volatile String error = null;
+
+    /**
+     * The progress of the import.
+     */
+    private final ImportResult result = new ImportResult();
+
+    /**
+     * Create a new queued job.
+     * 
+     * @param id   The identifier of the job.
+     * @param type The type of the imported models.
+     */
+    ImportJob(long id, String type) {
+        this.id = id;
+        this.type = type;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Get the error of a failed job.
+     * 
+     * @return The error message, or an undefined value, if the job has not
+     *         failed.
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Get the progress of the import.
+     * 
+     * @return The result updated as the job runs.
+     */
+    public ImportResult getResult() {
+        return result;
+    }
+
+    /**
+     * Has the job finished.
+     * 
+     * @return True, if and only if the job has completed or failed.
+     */
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    void start() {
+        status = Status.RUNNING;
+    }
+
+    void complete() {
+        status = Status.COMPLETED;
+    }
+
+    void fail(String message) {
+        error = message;
+        status = Status.FAILED;
+    }
+}
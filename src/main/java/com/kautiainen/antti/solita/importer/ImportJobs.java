@@ -0,0 +1,255 @@
+package com.kautiainen.antti.solita.importer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The import jobs run on a bounded pool of workers. The jobs waiting for a
+ * worker are kept in a bounded queue, and a job is refused once the queue is
+ * full, so the clients submitting jobs are held back instead of the jobs
+ * buffering their data without limit.
+ * 
+ * The finished jobs are kept for reading their results until more than the
+ * retained number of jobs have finished after them.
+ * 
+ * On shutdown the queued and the running jobs are given a while to finish,
+ * and the jobs still queued after it fail instead of disappearing.
+ */
+public class ImportJobs {
+
+    /**
+     * The default number of the workers.
+     */
+    public static final int DEFAULT_WORKERS = 2;
+
+    /**
+     * The default number of the jobs waiting for a worker.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    /**
+     * The default number of the retained finished jobs.
+     */
+    public static final int DEFAULT_RETAINED = 256;
+
+    /**
+     * The default time the shutdown waits for the jobs in seconds.
+     */
+    public static final long DEFAULT_SHUTDOWN_WAIT = 10;
+
+    private static final Logger LOGGER = Logger.getLogger(ImportJobs.class.getName());
+
+    /**
+     * The work of a job.
+     */
+    @FunctionalInterface
+    public interface Task {
+
+        /**
+         * Run the import.
+         * 
+         * @param result The result updated with the progress of the import.
+         * @throws Exception The import failed.
+         */
+        void run(ImportResult result) throws Exception;
+
+        /**
+         * Release the resources of a job which is not run, as it was refused
+         * or the pool was shut down before it started.
+         */
+        default void cancel() {
+        }
+    }
+
+    /**
+     * A queued job.
+     */
+    private final class Work implements Runnable {
+        private final ImportJob job;
+        private final Task task;
+
+        Work(ImportJob job, Task task) {
+            this.job = job;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            ImportJobs.this.run(job, task);
+        }
+
+        /**
+         * Fail the job, which is not run.
+         */
+        void cancel() {
+            task.cancel();
+            job.fail("The import was shut down");
+            retire(job);
+        }
+    }
+
+    private final ThreadPoolExecutor workers;
+
+    private final int retained;
+
+    private final AtomicLong identifiers = new AtomicLong();
+
+    /**
+     * The known jobs by their identifiers.
+     */
+    private final Map<Long, ImportJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * The identifiers of the finished jobs in the order they finished.
+     */
+    private final Queue<Long> finished = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger finishedCount = new AtomicInteger();
+
+    /**
+     * Create a new pool with the default limits.
+     */
+    public ImportJobs() {
+        this(DEFAULT_WORKERS, DEFAULT_QUEUE_CAPACITY, DEFAULT_RETAINED);
+    }
+
+    /**
+     * Create a new pool.
+     * 
+     * @param workers       The number of the workers.
+     * @param queueCapacity The maximal number of the jobs waiting for a
+     *                      worker.
+     * @param retained      The number of the retained finished jobs.
+     * @throws IllegalArgumentException Any limit was not positive.
+     */
+    public ImportJobs(int workers, int queueCapacity, int retained) throws IllegalArgumentException {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Invalid number of workers");
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Invalid queue capacity");
+        }
+        if (retained <= 0) {
+            throw new IllegalArgumentException("Invalid number of retained jobs");
+        }
+        this.retained = retained;
+        this.workers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread result = new Thread(runnable, "import-" + count.incrementAndGet());
+                        result.setDaemon(true);
+                        return result;
+                    }
+                });
+    }
+
+    /**
+     * Queue a job.
+     * 
+     * @param type The type of the imported models.
+     * @param task The work of the job.
+     * @return The queued job.
+     * @throws RejectedExecutionException The queue of the jobs was full.
+     */
+    public ImportJob submit(String type, Task task) throws RejectedExecutionException {
+        final ImportJob job = new ImportJob(identifiers.incrementAndGet(), type);
+        jobs.put(job.getId(), job);
+        try {
+            workers.execute(new Work(job, task));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            task.cancel();
+            throw e;
+        }
+        return job;
+    }
+
+    /**
+     * Get a job.
+     * 
+     * @param id The identifier of the job.
+     * @return The job, or an undefined value, if no such job is known.
+     */
+    public ImportJob get(long id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * Stop the workers waiting for the jobs the default time.
+     * 
+     * @see #shutdown(long, TimeUnit)
+     */
+    public void shutdown() {
+        shutdown(DEFAULT_SHUTDOWN_WAIT, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop the workers. No more jobs are accepted, and the queued and the
+     * running jobs are given the wait time to finish. After it the running
+     * jobs are interrupted, and the jobs still queued fail without being run.
+     * 
+     * @param wait The time the shutdown waits for the jobs.
+     * @param unit The unit of the wait time.
+     */
+    public void shutdown(long wait, TimeUnit unit) {
+        workers.shutdown();
+        try {
+            if (workers.awaitTermination(wait, unit)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Runnable> queued = workers.shutdownNow();
+        for (Runnable work : queued) {
+            ((Work) work).cancel();
+        }
+        if (!queued.isEmpty()) {
+            LOGGER.log(Level.WARNING, "{0} queued import jobs failed on shutdown", queued.size());
+        }
+    }
+
+    private void run(ImportJob job, Task task) {
+        job.start();
+        try {
+            task.run(job.getResult());
+            job.complete();
+        } catch (Exception e) {
+            job.fail(e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+        } finally {
+            retire(job);
+        }
+    }
+
+    /**
+     * Retain a finished job, and forget the oldest finished jobs above the
+     * retained number.
+     * 
+     * @param job The finished job.
+     */
+    private void retire(ImportJob job) {
+        finished.add(job.getId());
+        if (finishedCount.incrementAndGet() > retained) {
+            Long oldest = finished.poll();
+            if (oldest != null) {
+                finishedCount.decrementAndGet();
+                jobs.remove(oldest);
+            }
+        }
+    }
+}
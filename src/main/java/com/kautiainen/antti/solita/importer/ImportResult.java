@@ -0,0 +1,139 @@
+package com.kautiainen.antti.solita.importer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.kautiainen.antti.solita.exceptions.InvalidFieldsException;
+
+/**
+ * The result of an import. The result is updated by the importing thread, and
+ * may be read by other threads as the progress of the import.
+ */
+public class ImportResult {
+
+    /**
+     * The maximal number of the reported errors of the rejected rows.
+     */
+    public static final int MAX_ERRORS = 1000;
+
+    /**
+     * The prefix of the errors of the rejected rows.
+     */
+    static final String ROW = "row";
+
+    /**
+     * The number of data rows read.
+     */
+    private volatile long rows = 0;
+
+    /**
+     * The number of rows parsed into valid models.
+     */
+    private volatile long validated = 0;
+
+    /**
+     * The number of rows imported.
+     */
+    private volatile long imported = 0;
+
+    /**
+     * The number of rows rejected.
+     */
+    private volatile long rejected = 0;
+
+    /**
+     * The errors of the first rejected rows. The list is replaced instead of
+     * altered, so the readers see the errors without locking.
+     */
+    private volatile List<InvalidFieldsException.FieldError> errors = new ArrayList<>();
+
+    /**
+     * Get the number of read data rows.
+     * 
+     * @return The number of read data rows excluding the header row.
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Get the number of validated rows.
+     * 
+     * @return The number of rows parsed into valid models and passed to the
+     *         storage.
+     */
+    public long getValidated() {
+        return validated;
+    }
+
+    /**
+     * Get the number of imported rows.
+     * 
+     * @return The number of rows added to the storage.
+     */
+    public long getImported() {
+        return imported;
+    }
+
+    /**
+     * Get the number of rejected rows.
+     * 
+     * @return The number of rows which were not imported.
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Get the errors of the rejected rows. The errors are named
+     * "row[number]" or "row[number].field" with the number of the data row
+     * counting from one.
+     * 
+     * @return The errors of the first rejected rows, at most
+     *         {@value #MAX_ERRORS} errors.
+     */
+    public List<InvalidFieldsException.FieldError> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    void addRow() {
+        rows++;
+    }
+
+    void addValidated(long count) {
+        validated += count;
+    }
+
+    void addImported(long count) {
+        imported += count;
+    }
+
+    void addRejected(long count) {
+        rejected += count;
+    }
+
+    /**
+     * Get the number of the errors, which may still be reported.
+     * 
+     * @return The number of the errors below {@value #MAX_ERRORS} errors.
+     */
+    int getErrorRoom() {
+        return Math.max(0, MAX_ERRORS - errors.size());
+    }
+
+    /**
+     * Report errors of the rejected rows. The errors above
+     * {@value #MAX_ERRORS} errors are dropped.
+     * 
+     * @param added The errors of the rejected rows.
+     */
+    void addErrors(List<InvalidFieldsException.FieldError> added) {
+        final int room = getErrorRoom();
+        if (room > 0 && !added.isEmpty()) {
+            List<InvalidFieldsException.FieldError> result = new ArrayList<>(errors);
+            result.addAll(added.size() > room ? added.subList(0, room) : added);
+            errors = result;
+        }
+    }
+}
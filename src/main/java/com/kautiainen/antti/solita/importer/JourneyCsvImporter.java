@@ -0,0 +1,231 @@
+package com.kautiainen.antti.solita.importer;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import com.kautiainen.antti.solita.exceptions.InvalidFieldsException;
+import com.kautiainen.antti.solita.model.Journey;
+import com.kautiainen.antti.solita.model.Station;
+
+/**
+ * Importer reading journeys from the CSV journey dumps.
+ * 
+ * The rows are read in chunks, and passed to the journey sink in batches of
+ * bounded size. The batches are validated by a stage of the
+ * {@link JourneyValidator} given to the importer before they are passed to the
+ * sink, and the errors of the rejected rows are reported in the result of the
+ * import. The duplicates are detected over all imports of an importer.
+ * 
+ * The columns of the rows are: departure time, return time, departure station
+ * identifier, departure station name, return station identifier, return
+ * station name, covered distance in metres, and duration in seconds.
+ */
+public class JourneyCsvImporter {
+
+    /**
+     * The default number of journeys passed to the sink at once.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 10_000;
+
+    public static final int DEPARTURE_TIME_COLUMN = 0;
+    public static final int RETURN_TIME_COLUMN = 1;
+    public static final int DEPARTURE_STATION_ID_COLUMN = 2;
+    public static final int DEPARTURE_STATION_NAME_COLUMN = 3;
+    public static final int RETURN_STATION_ID_COLUMN = 4;
+    public static final int RETURN_STATION_NAME_COLUMN = 5;
+    public static final int DISTANCE_COLUMN = 6;
+    public static final int DURATION_COLUMN = 7;
+
+    /**
+     * The sink receiving the batches of valid journeys. The sink returns the
+     * number of journeys it added.
+     */
+    private final ToIntFunction<List<Journey>> sink;
+
+    /**
+     * The validation stage of the imported batches.
+     */
+    private final Function<List<Journey>, ValidationReport<Journey>> validation;
+
+    private final int batchSize;
+
+    private final boolean hasHeader;
+
+    /**
+     * The stations referred by the imported journeys. The journeys of the
+     * dataset refer to a few hundred stations, and the references are shared
+     * between the journeys.
+     */
+    private final Map<Integer, Station> stations = new HashMap<>();
+
+    /**
+     * Create a new importer of CSV files with a header row.
+     * 
+     * @param sink      The sink receiving the imported journeys.
+     * @param validator The validator of the imported journeys.
+     */
+    public JourneyCsvImporter(ToIntFunction<List<Journey>> sink, JourneyValidator validator) {
+        this(sink, validator, DEFAULT_BATCH_SIZE, true);
+    }
+
+    /**
+     * Create a new importer.
+     * 
+     * @param sink      The sink receiving the imported journeys.
+     * @param validator The validator of the imported journeys.
+     * @param batchSize The maximal number of journeys passed to the sink at
+     *                  once.
+     * @param hasHeader Does the imported data start with a header row.
+     * @throws IllegalArgumentException Either sink, validator or batch size was
+     *                                  invalid.
+     */
+    public JourneyCsvImporter(ToIntFunction<List<Journey>> sink, JourneyValidator validator, int batchSize,
+            boolean hasHeader) throws IllegalArgumentException {
+        if (sink == null) {
+            throw new IllegalArgumentException("Undefined sink");
+        }
+        if (validator == null) {
+            throw new IllegalArgumentException("Undefined validator");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Invalid batch size");
+        }
+        this.sink = sink;
+        this.validation = validator.newStage();
+        this.batchSize = batchSize;
+        this.hasHeader = hasHeader;
+    }
+
+    /**
+     * Import journeys from a file.
+     * 
+     * @param file The imported file.
+     * @return The result of the import.
+     * @throws IOException The reading of the file failed.
+     */
+    public ImportResult importFrom(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return importFrom(channel);
+        }
+    }
+
+    /**
+     * Import journeys from a channel.
+     * 
+     * @param channel The channel from which the journeys are read.
+     * @return The result of the import.
+     * @throws IOException The reading of the channel failed.
+     */
+    public ImportResult importFrom(ReadableByteChannel channel) throws IOException {
+        return importFrom(channel, new ImportResult());
+    }
+
+    /**
+     * Import journeys from a channel updating the given result as the rows are
+     * read, so other threads may follow the progress of the import.
+     * 
+     * @param channel The channel from which the journeys are read.
+     * @param result  The result of the import.
+     * @return The result of the import.
+     * @throws IOException The reading of the channel failed.
+     */
+    public ImportResult importFrom(ReadableByteChannel channel, ImportResult result) throws IOException {
+        CsvReader reader = new CsvReader(channel);
+        List<Journey> batch = new ArrayList<>(batchSize);
+        long[] rows = new long[batchSize];
+        if (hasHeader) {
+            reader.next();
+        }
+        while (reader.next()) {
+            if (reader.getFieldCount() == 1 && reader.isEmpty(0)) {
+                // Skipping empty lines.
+                continue;
+            }
+            result.addRow();
+            Journey journey = parse(reader);
+            if (journey == null) {
+                result.addRejected(1);
+                result.addErrors(Collections.singletonList(
+                        new InvalidFieldsException.FieldError(ImportResult.ROW + "[" + result.getRows() + "]", "Invalid row")));
+                continue;
+            }
+            rows[batch.size()] = result.getRows();
+            batch.add(journey);
+            if (batch.size() == batchSize) {
+                flush(batch, rows, result);
+            }
+        }
+        flush(batch, rows, result);
+        return result;
+    }
+
+    /**
+     * Validate the batch, pass its valid journeys to the sink, and clear it.
+     * 
+     * @param batch  The passed batch.
+     * @param rows   The row numbers of the journeys of the batch.
+     * @param result The result updated with the outcome of the batch.
+     */
+    private void flush(List<Journey> batch, long[] rows, ImportResult result) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        ValidationReport<Journey> report = validation.apply(batch);
+        result.addRejected(report.getRejected());
+        result.addErrors(report.getErrors(ImportResult.ROW, (int index) -> rows[index], result.getErrorRoom()));
+        ListImporter.pass(sink, batch, report, (int index) -> rows[index], result);
+        batch.clear();
+    }
+
+    /**
+     * Parse the current row of the reader.
+     * 
+     * @param reader The reader.
+     * @return The journey of the row, or an undefined value, if the row could not
+     *         be parsed.
+     */
+    private Journey parse(CsvReader reader) {
+        try {
+            return new Journey(null,
+                    getStation(reader, DEPARTURE_STATION_ID_COLUMN, DEPARTURE_STATION_NAME_COLUMN),
+                    getStation(reader, RETURN_STATION_ID_COLUMN, RETURN_STATION_NAME_COLUMN),
+                    reader.getInt(DISTANCE_COLUMN), reader.getInt(DURATION_COLUMN),
+                    reader.getLocalDateTime(DEPARTURE_TIME_COLUMN), reader.getLocalDateTime(RETURN_TIME_COLUMN));
+        } catch (NumberFormatException | InvalidFieldsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the station of the current row.
+     * 
+     * @param reader       The reader.
+     * @param idColumn     The column of the station identifier.
+     * @param nameColumn   The column of the station name.
+     * @return The station of the row, or an undefined value, if the row has no
+     *         station.
+     * @throws NumberFormatException The station identifier was invalid.
+     */
+    private Station getStation(CsvReader reader, int idColumn, int nameColumn) throws NumberFormatException {
+        if (reader.isEmpty(idColumn)) {
+            return null;
+        }
+        Integer id = reader.getInt(idColumn);
+        Station result = stations.get(id);
+        if (result == null) {
+            result = new Station(id, reader.getString(nameColumn));
+            stations.put(id, result);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,375 @@
+package com.kautiainen.antti.solita.importer;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+
+import com.kautiainen.antti.solita.model.Journey;
+import com.kautiainen.antti.solita.model.Station;
+
+/**
+ * Validator of the ingested journeys. The journeys are validated in batches:
+ * the fields of a batch are first read into primitive columns, and each rule
+ * is then checked over the whole column, so the checks are tight loops over
+ * arrays instead of a chain of checks for each journey. The failed rules of a
+ * journey are collected into the reason mask of the journey, and reported in
+ * bulk by the {@link ValidationReport} of the batch.
+ * 
+ * A journey is valid, if it satisfies the rules of {@link Journey#isValid()},
+ * its distance and duration are at least the minimal distance and duration,
+ * its stations are known, if the stations are checked, and it does not repeat
+ * a journey of the same validation stage.
+ */
+public class JourneyValidator {
+
+    /**
+     * The station identifier of a missing station.
+     */
+    private static final int NO_STATION = Integer.MIN_VALUE;
+
+    /**
+     * The station identifier of a station without identifier.
+     */
+    private static final int UNIDENTIFIED_STATION = Integer.MIN_VALUE + 1;
+
+    /**
+     * The value of a missing distance or duration.
+     */
+    private static final int NO_VALUE = Integer.MIN_VALUE;
+
+    private static final int MISSING_DEPARTURE_STATION = 1;
+    private static final int UNKNOWN_DEPARTURE_STATION = 1 << 1;
+    private static final int UNKNOWN_RETURN_STATION = 1 << 2;
+    private static final int MISSING_DISTANCE = 1 << 3;
+    private static final int SHORT_DISTANCE = 1 << 4;
+    private static final int MISSING_DURATION = 1 << 5;
+    private static final int SHORT_DURATION = 1 << 6;
+    private static final int DUPLICATE = 1 << 7;
+    private static final int MISSING_JOURNEY = 1 << 8;
+
+    private final int minDistance;
+
+    private final int minDuration;
+
+    /**
+     * The predicate of the known station identifiers, or an undefined value,
+     * if the stations are not checked.
+     */
+    private final IntPredicate stations;
+
+    private final boolean detectsDuplicates;
+
+    /**
+     * The reasons of the bits of the reason masks.
+     */
+    private final ValidationReport.Reason[] reasons;
+
+    /**
+     * Create a new validator with the rules of {@link Journey#isValid()}
+     * detecting the duplicates.
+     */
+    public JourneyValidator() {
+        this(0, 0, null, true);
+    }
+
+    /**
+     * Create a new validator.
+     * 
+     * @param minDistance       The minimal distance in metres.
+     * @param minDuration       The minimal duration in seconds.
+     * @param stations          The predicate of the known station identifiers,
+     *                          or an undefined value, if the stations are not
+     *                          checked.
+     * @param detectsDuplicates Do the validation stages reject the repeated
+     *                          journeys.
+     * @throws IllegalArgumentException The minimal distance or duration was
+     *                                  negative.
+     */
+    public JourneyValidator(int minDistance, int minDuration, IntPredicate stations, boolean detectsDuplicates)
+            throws IllegalArgumentException {
+        if (minDistance < 0) {
+            throw new IllegalArgumentException("Invalid minimal distance");
+        }
+        if (minDuration < 0) {
+            throw new IllegalArgumentException("Invalid minimal duration");
+        }
+        this.minDistance = minDistance;
+        this.minDuration = minDuration;
+        this.stations = stations;
+        this.detectsDuplicates = detectsDuplicates;
+        this.reasons = new ValidationReport.Reason[] {
+                new ValidationReport.Reason(Journey.Fields.DEPARTURE_STATION.toString(), "Missing value"),
+                new ValidationReport.Reason(Journey.Fields.DEPARTURE_STATION.toString(), "Unknown station"),
+                new ValidationReport.Reason(Journey.Fields.RETURN_STATION.toString(), "Unknown station"),
+                new ValidationReport.Reason(Journey.Fields.DISTANCE.toString(), "Missing value"),
+                new ValidationReport.Reason(Journey.Fields.DISTANCE.toString(), "Less than " + minDistance),
+                new ValidationReport.Reason(Journey.Fields.DURATION.toString(), "Missing value"),
+                new ValidationReport.Reason(Journey.Fields.DURATION.toString(), "Less than " + minDuration),
+                new ValidationReport.Reason(null, "Duplicate journey"),
+                new ValidationReport.Reason(null, "Missing value") };
+    }
+
+    public int getMinDistance() {
+        return minDistance;
+    }
+
+    public int getMinDuration() {
+        return minDuration;
+    }
+
+    /**
+     * Are the stations of the journeys checked.
+     * 
+     * @return True, if and only if the journeys of unknown stations are
+     *         rejected.
+     */
+    public boolean checksStations() {
+        return stations != null;
+    }
+
+    /**
+     * Create a validation stage. The stage remembers the journeys it has
+     * accepted, and rejects their duplicates in the later batches, if the
+     * validator detects duplicates.
+     * 
+     * @return The validation stage of the batches of an ingestion.
+     */
+    public Function<List<Journey>, ValidationReport<Journey>> newStage() {
+        final Duplicates duplicates = detectsDuplicates ? new Duplicates() : null;
+        return (List<Journey> batch) -> validate(batch, duplicates);
+    }
+
+    /**
+     * Is a single journey valid. The duplicates are not detected.
+     * 
+     * @param journey The journey.
+     * @return True, if and only if the journey is valid.
+     */
+    public boolean isValid(Journey journey) {
+        return validate(Collections.singletonList(journey), null).getRejected() == 0;
+    }
+
+    /**
+     * Validate a batch of journeys.
+     * 
+     * @param batch      The journeys.
+     * @param duplicates The journeys accepted earlier, which are updated with
+     *                   the accepted journeys of the batch, or an undefined
+     *                   value, if the duplicates are not detected.
+     * @return The report of the batch.
+     */
+    public ValidationReport<Journey> validate(List<Journey> batch, Duplicates duplicates) {
+        final int size = batch.size();
+        final int[] departures = new int[size];
+        final int[] returns = new int[size];
+        final int[] distances = new int[size];
+        final int[] durations = new int[size];
+        final int[] masks = new int[size];
+        for (int i = 0; i < size; i++) {
+            final Journey journey = batch.get(i);
+            if (journey == null) {
+                departures[i] = NO_STATION;
+                returns[i] = NO_STATION;
+                distances[i] = NO_VALUE;
+                durations[i] = NO_VALUE;
+                continue;
+            }
+            departures[i] = stationOf(journey.getDepartureStation());
+            returns[i] = stationOf(journey.getReturnStation());
+            distances[i] = journey.getDistance().orElse(NO_VALUE);
+            durations[i] = journey.getDuration().orElse(NO_VALUE);
+        }
+
+        for (int i = 0; i < size; i++) {
+            masks[i] |= departures[i] == NO_STATION ? MISSING_DEPARTURE_STATION : 0;
+        }
+        checkMinimum(distances, minDistance, MISSING_DISTANCE, SHORT_DISTANCE, masks);
+        checkMinimum(durations, minDuration, MISSING_DURATION, SHORT_DURATION, masks);
+        if (stations != null) {
+            checkStations(departures, UNKNOWN_DEPARTURE_STATION, masks);
+            checkStations(returns, UNKNOWN_RETURN_STATION, masks);
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (batch.get(i) == null) {
+                masks[i] = MISSING_JOURNEY;
+            }
+        }
+
+        // Only the otherwise valid journeys are remembered, so an invalid
+        // journey does not reject its valid duplicate.
+        if (duplicates != null) {
+            for (int i = 0; i < size; i++) {
+                if (masks[i] == 0 && !duplicates.add(fingerprint(batch.get(i), departures[i], returns[i],
+                        distances[i], durations[i]))) {
+                    masks[i] = DUPLICATE;
+                }
+            }
+        }
+        return new ValidationReport<>(batch, masks, reasons);
+    }
+
+    private static int stationOf(Optional<Station> station) {
+        if (!station.isPresent()) {
+            return NO_STATION;
+        }
+        final Integer id = station.get().getId();
+        return id == null ? UNIDENTIFIED_STATION : id;
+    }
+
+    /**
+     * Check the values of a column against a minimum.
+     * 
+     * @param values  The values, where {@link #NO_VALUE} is a missing value.
+     * @param minimum The minimal value.
+     * @param missing The reason of a missing value.
+     * @param small   The reason of a value below the minimum.
+     * @param masks   The reason masks updated with the failed checks.
+     */
+    private static void checkMinimum(int[] values, int minimum, int missing, int small, int[] masks) {
+        for (int i = 0; i < values.length; i++) {
+            final int value = values[i];
+            masks[i] |= value == NO_VALUE ? missing : (value < minimum ? small : 0);
+        }
+    }
+
+    /**
+     * Check the stations of a column are known.
+     * 
+     * @param ids     The station identifiers.
+     * @param unknown The reason of an unknown station.
+     * @param masks   The reason masks updated with the failed checks.
+     */
+    private void checkStations(int[] ids, int unknown, int[] masks) {
+        // The journeys of a batch refer to a few hundred stations, and the
+        // consecutive journeys often share their stations.
+        int knownId = NO_STATION;
+        for (int i = 0; i < ids.length; i++) {
+            final int id = ids[i];
+            if (id == NO_STATION || id == knownId) {
+                continue;
+            }
+            if (id != UNIDENTIFIED_STATION && stations.test(id)) {
+                knownId = id;
+            } else {
+                masks[i] |= unknown;
+            }
+        }
+    }
+
+    /**
+     * Get the fingerprint of the fields of a journey. The identifier of the
+     * journey is not part of the fingerprint.
+     * 
+     * @param journey   The journey.
+     * @param departure The departure station identifier.
+     * @param ret       The return station identifier.
+     * @param distance  The distance.
+     * @param duration  The duration.
+     * @return The 64-bit hash of the fields.
+     */
+    private static long fingerprint(Journey journey, int departure, int ret, int distance, int duration) {
+        long result = mix(0, departure);
+        result = mix(result, ret);
+        result = mix(result, distance);
+        result = mix(result, duration);
+        result = mix(result, timeOf(journey.getDepartureTime()));
+        result = mix(result, timeOf(journey.getReturnTime()));
+        result ^= result >>> 33;
+        result *= 0xFF51AFD7ED558CCDL;
+        return result ^ (result >>> 33);
+    }
+
+    private static long timeOf(Optional<LocalDateTime> time) {
+        if (!time.isPresent()) {
+            return Long.MIN_VALUE;
+        }
+        return time.get().toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + time.get().getNano();
+    }
+
+    private static long mix(long hash, long value) {
+        return Long.rotateLeft(hash ^ (value * 0x9E3779B97F4A7C15L), 31) * 0xBF58476D1CE4E5B9L;
+    }
+
+    /**
+     * The set of the fingerprints of the accepted journeys. The fingerprints
+     * are kept in a primitive open addressing table, so the set of the
+     * journeys of a whole dataset costs eight to sixteen bytes a journey. Two
+     * distinct journeys share a fingerprint with a negligible probability of
+     * the order of the square of the journeys divided by 2^64.
+     * 
+     * The set is not synchronized.
+     */
+    public static final class Duplicates {
+
+        private static final int MIN_CAPACITY = 1024;
+
+        /**
+         * The fingerprint of an empty bucket. The fingerprint is stored as
+         * the fingerprint {@link #ZERO}.
+         */
+        private static final long EMPTY = 0;
+
+        private static final long ZERO = 1;
+
+        private long[] table = new long[MIN_CAPACITY];
+
+        private int size = 0;
+
+        /**
+         * Get the number of the fingerprints.
+         * 
+         * @return The number of the remembered journeys.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Add a fingerprint.
+         * 
+         * @param fingerprint The fingerprint.
+         * @return True, if and only if the fingerprint was not in the set.
+         */
+        boolean add(long fingerprint) {
+            final long key = fingerprint == EMPTY ? ZERO : fingerprint;
+            final int mask = table.length - 1;
+            int bucket = (int) (key ^ (key >>> 32)) & mask;
+            while (true) {
+                final long stored = table[bucket];
+                if (stored == key) {
+                    return false;
+                } else if (stored == EMPTY) {
+                    table[bucket] = key;
+                    if (++size > (table.length / 4) * 3) {
+                        grow();
+                    }
+                    return true;
+                }
+                bucket = (bucket + 1) & mask;
+            }
+        }
+
+        private void grow() {
+            if (table.length >= 1 << 30) {
+                throw new IllegalStateException("Duplicate detector capacity exceeded");
+            }
+            final long[] old = table;
+            table = new long[old.length << 1];
+            final int mask = table.length - 1;
+            for (long key : old) {
+                if (key != EMPTY) {
+                    int bucket = (int) (key ^ (key >>> 32)) & mask;
+                    while (table[bucket] != EMPTY) {
+                        bucket = (bucket + 1) & mask;
+                    }
+                    table[bucket] = key;
+                }
+            }
+        }
+    }
+}
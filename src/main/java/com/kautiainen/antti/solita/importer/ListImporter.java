@@ -0,0 +1,160 @@
+package com.kautiainen.antti.solita.importer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntToLongFunction;
+import java.util.function.ToIntFunction;
+
+import com.kautiainen.antti.solita.exceptions.InvalidFieldsException;
+
+/**
+ * Importer of already deserialized models. The models are passed to the sink in
+ * batches of bounded size like the rows of the CSV importers, and each batch is
+ * validated by a validation stage before it is passed to the sink. The errors
+ * of the rejected models, including the models refused by the sink, are
+ * reported as the errors of the rows numbered from one.
+ * 
+ * @param <T> The type of the imported models.
+ */
+public class ListImporter<T> {
+
+    /**
+     * The sink receiving the batches of valid models. The sink returns the
+     * number of models it added.
+     */
+    private final ToIntFunction<List<T>> sink;
+
+    /**
+     * The validation stage of the imported batches.
+     */
+    private final Function<List<T>, ValidationReport<T>> validation;
+
+    private final int batchSize;
+
+    /**
+     * Create a new importer.
+     * 
+     * @param sink       The sink receiving the imported models.
+     * @param validation The validation stage of the batches.
+     * @param batchSize  The maximal number of models passed to the sink at
+     *                   once.
+     * @throws IllegalArgumentException Either sink, validation or batch size
+     *                                  was invalid.
+     */
+    public ListImporter(ToIntFunction<List<T>> sink, Function<List<T>, ValidationReport<T>> validation,
+            int batchSize)
+            throws IllegalArgumentException {
+        if (sink == null) {
+            throw new IllegalArgumentException("Undefined sink");
+        }
+        if (validation == null) {
+            throw new IllegalArgumentException("Undefined validation");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Invalid batch size");
+        }
+        this.sink = sink;
+        this.validation = validation;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Import models updating the given result as the models are imported.
+     * 
+     * @param models The imported models.
+     * @param result The result of the import.
+     * @return The result of the import.
+     */
+    public ImportResult importFrom(List<? extends T> models, ImportResult result) {
+        List<T> batch = new ArrayList<>(Math.min(batchSize, models.size()));
+        for (T model : models) {
+            result.addRow();
+            batch.add(model);
+            if (batch.size() == batchSize) {
+                flush(batch, result);
+            }
+        }
+        flush(batch, result);
+        return result;
+    }
+
+    /**
+     * Validate the batch, pass its valid models to the sink, and clear it.
+     * 
+     * @param batch  The passed batch.
+     * @param result The result updated with the outcome of the batch.
+     */
+    private void flush(List<T> batch, ImportResult result) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        // The batch holds the rows preceding the current row.
+        final long first = result.getRows() - batch.size() + 1;
+        ValidationReport<T> report = validation.apply(batch);
+        result.addRejected(report.getRejected());
+        result.addErrors(report.getErrors(ImportResult.ROW, (int index) -> first + index, result.getErrorRoom()));
+        pass(sink, batch, report, (int index) -> first + index, result);
+        batch.clear();
+    }
+
+    /**
+     * Pass the accepted models of a validated batch to a sink. A batch refused
+     * by the sink is passed again one model at a time, so the valid models are
+     * imported and the errors of the refused models are reported by row.
+     * 
+     * @param <T>    The type of the models.
+     * @param sink   The sink.
+     * @param batch  The validated batch.
+     * @param report The validation report of the batch.
+     * @param row    The function from the position in the batch to the row
+     *               number of the model.
+     * @param result The result updated with the outcome of the batch.
+     */
+    static <T> void pass(ToIntFunction<List<T>> sink, List<T> batch, ValidationReport<T> report,
+            IntToLongFunction row, ImportResult result) {
+        List<T> accepted = report.getAccepted();
+        result.addValidated(accepted.size());
+        if (accepted.isEmpty()) {
+            return;
+        }
+        int added;
+        try {
+            added = sink.applyAsInt(accepted);
+        } catch (InvalidFieldsException ife) {
+            added = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                if (report.isAccepted(i)) {
+                    try {
+                        added += sink.applyAsInt(Collections.singletonList(batch.get(i)));
+                    } catch (InvalidFieldsException refused) {
+                        result.addErrors(errorsOf(refused, row.applyAsLong(i)));
+                    }
+                }
+            }
+        }
+        result.addImported(added);
+        result.addRejected(accepted.size() - added);
+    }
+
+    /**
+     * Get the errors of a model refused by the sink named by its row.
+     * 
+     * @param refused The exception of the sink.
+     * @param row     The row number of the model.
+     * @return The errors named "row[number].field", or "row[number]" for an
+     *         exception without field errors.
+     */
+    private static List<InvalidFieldsException.FieldError> errorsOf(InvalidFieldsException refused, long row) {
+        final String name = ImportResult.ROW + "[" + row + "]";
+        if (refused.getFieldErrors().isEmpty()) {
+            return Collections.singletonList(new InvalidFieldsException.FieldError(name, refused.getMessage()));
+        }
+        List<InvalidFieldsException.FieldError> result = new ArrayList<>(refused.getFieldErrors().size());
+        for (InvalidFieldsException.FieldError error : refused.getFieldErrors()) {
+            result.add(new InvalidFieldsException.FieldError(name + "." + error.fieldName, error.description));
+        }
+        return result;
+    }
+}
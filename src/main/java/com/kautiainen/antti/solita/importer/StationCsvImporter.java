@@ -0,0 +1,173 @@
+package com.kautiainen.antti.solita.importer;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+import com.kautiainen.antti.solita.exceptions.InvalidFieldsException;
+import com.kautiainen.antti.solita.model.Station;
+
+/**
+ * Importer reading stations from the CSV station dumps.
+ * 
+ * The valid stations are passed to the station sink at once. The stations are
+ * named in Finnish, and the Swedish and the English names are stored as
+ * translations. The columns of the rows are: feature identifier, station
+ * identifier, Finnish, Swedish and English names, Finnish and Swedish
+ * addresses, Finnish and Swedish city names, operator, capacity, and the
+ * longitude and the latitude in WGS84 degrees.
+ */
+public class StationCsvImporter {
+
+    public static final int ID_COLUMN = 1;
+    public static final int NAME_COLUMN = 2;
+    public static final int SWEDISH_NAME_COLUMN = 3;
+    public static final int ENGLISH_NAME_COLUMN = 4;
+    public static final int ADDRESS_COLUMN = 5;
+    public static final int CAPACITY_COLUMN = 10;
+    public static final int LONGITUDE_COLUMN = 11;
+    public static final int LATITUDE_COLUMN = 12;
+
+    /**
+     * The language of the station names.
+     */
+    public static final String LANGUAGE = "fi";
+
+    /**
+     * The languages of the translated names.
+     */
+    public static final String SWEDISH = "sv", ENGLISH = "en";
+
+    /**
+     * The sink receiving the valid stations. The sink returns the number of
+     * stations it added.
+     */
+    private final ToIntFunction<List<Station>> sink;
+
+    private final boolean hasHeader;
+
+    /**
+     * Create a new importer of CSV files with a header row.
+     * 
+     * @param sink The sink receiving the imported stations.
+     */
+    public StationCsvImporter(ToIntFunction<List<Station>> sink) {
+        this(sink, true);
+    }
+
+    /**
+     * Create a new importer.
+     * 
+     * @param sink      The sink receiving the imported stations.
+     * @param hasHeader Does the imported data start with a header row.
+     * @throws IllegalArgumentException The sink was undefined.
+     */
+    public StationCsvImporter(ToIntFunction<List<Station>> sink, boolean hasHeader)
+            throws IllegalArgumentException {
+        if (sink == null) {
+            throw new IllegalArgumentException("Undefined sink");
+        }
+        this.sink = sink;
+        this.hasHeader = hasHeader;
+    }
+
+    /**
+     * Import stations from a file.
+     * 
+     * @param file The imported file.
+     * @return The result of the import.
+     * @throws IOException The reading of the file failed.
+     */
+    public ImportResult importFrom(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return importFrom(channel);
+        }
+    }
+
+    /**
+     * Import stations from a channel.
+     * 
+     * @param channel The channel from which the stations are read.
+     * @return The result of the import.
+     * @throws IOException The reading of the channel failed.
+     */
+    public ImportResult importFrom(ReadableByteChannel channel) throws IOException {
+        return importFrom(channel, new ImportResult());
+    }
+
+    /**
+     * Import stations from a channel updating the given result as the rows are
+     * read, so other threads may follow the progress of the import.
+     * 
+     * @param channel The channel from which the stations are read.
+     * @param result  The result of the import.
+     * @return The result of the import.
+     * @throws IOException The reading of the channel failed.
+     */
+    public ImportResult importFrom(ReadableByteChannel channel, ImportResult result) throws IOException {
+        CsvReader reader = new CsvReader(channel);
+        List<Station> stations = new ArrayList<>();
+        if (hasHeader) {
+            reader.next();
+        }
+        while (reader.next()) {
+            if (reader.getFieldCount() == 1 && reader.isEmpty(0)) {
+                // Skipping empty lines.
+                continue;
+            }
+            result.addRow();
+            Station station = parse(reader);
+            if (station == null || !station.isValid()) {
+                result.addRejected(1);
+                result.addErrors(Collections.singletonList(new InvalidFieldsException.FieldError(
+                        ImportResult.ROW + "[" + result.getRows() + "]", "Invalid row")));
+                continue;
+            }
+            result.addValidated(1);
+            stations.add(station);
+        }
+        if (!stations.isEmpty()) {
+            int added = sink.applyAsInt(stations);
+            result.addImported(added);
+            result.addRejected(stations.size() - added);
+        }
+        return result;
+    }
+
+    /**
+     * Parse the current row of the reader.
+     * 
+     * @param reader The reader.
+     * @return The station of the row, or an undefined value, if the row could
+     *         not be parsed.
+     */
+    private Station parse(CsvReader reader) {
+        try {
+            Station result = new Station(reader.getInt(ID_COLUMN), reader.getString(NAME_COLUMN), LANGUAGE);
+            if (!reader.isEmpty(SWEDISH_NAME_COLUMN)) {
+                result.setName(SWEDISH, reader.getString(SWEDISH_NAME_COLUMN));
+            }
+            if (!reader.isEmpty(ENGLISH_NAME_COLUMN)) {
+                result.setName(ENGLISH, reader.getString(ENGLISH_NAME_COLUMN));
+            }
+            if (!reader.isEmpty(ADDRESS_COLUMN)) {
+                result.setAddress(reader.getString(ADDRESS_COLUMN));
+            }
+            if (!reader.isEmpty(CAPACITY_COLUMN)) {
+                result.setCapacity(reader.getInt(CAPACITY_COLUMN));
+            }
+            if (!reader.isEmpty(LATITUDE_COLUMN) && !reader.isEmpty(LONGITUDE_COLUMN)) {
+                result.setLocation(reader.getDouble(LATITUDE_COLUMN), reader.getDouble(LONGITUDE_COLUMN));
+            }
+            return result;
+        } catch (NumberFormatException nfe) {
+            return null;
+        }
+    }
+}
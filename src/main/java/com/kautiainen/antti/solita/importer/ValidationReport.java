@@ -0,0 +1,195 @@
+package com.kautiainen.antti.solita.importer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntToLongFunction;
+import java.util.function.Predicate;
+
+import com.kautiainen.antti.solita.exceptions.InvalidFieldsException;
+
+/**
+ * The outcome of validating a batch of models. The accepted models are kept
+ * in the order of the batch, and the rejected models are kept as their
+ * positions in the batch and the bit masks of their reasons, so a batch is
+ * validated without creating an error for each rejected model until the
+ * errors are reported.
+ * 
+ * @param <T> The type of the validated models.
+ */
+public final class ValidationReport<T> {
+
+    /**
+     * A reason of the rejection of a model.
+     */
+    public static final class Reason {
+        private final String field;
+        private final String description;
+
+        /**
+         * Create a new reason.
+         * 
+         * @param field       The name of the invalid field, or an undefined
+         *                    value, if the whole model was invalid.
+         * @param description The description of the error.
+         */
+        public Reason(String field, String description) {
+            this.field = field;
+            this.description = description;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    /**
+     * The reason of the models rejected by a predicate.
+     */
+    private static final Reason[] INVALID = { new Reason(null, "Invalid value") };
+
+    private final List<T> accepted;
+
+    /**
+     * The reasons of the bits of the reason masks.
+     */
+    private final Reason[] reasons;
+
+    /**
+     * The positions of the rejected models in the batch.
+     */
+    private final int[] rejected;
+
+    /**
+     * The reason masks of the rejected models.
+     */
+    private final int[] masks;
+
+    private final int rejectedCount;
+
+    /**
+     * Create a report of a batch.
+     * 
+     * @param batch   The validated batch.
+     * @param masks   The reason masks of the models of the batch, where zero
+     *                accepts the model.
+     * @param reasons The reasons of the bits of the masks.
+     */
+    ValidationReport(List<? extends T> batch, int[] masks, Reason[] reasons) {
+        int count = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            if (masks[i] != 0) {
+                count++;
+            }
+        }
+        this.reasons = reasons;
+        this.rejectedCount = count;
+        this.rejected = new int[count];
+        this.masks = new int[count];
+        this.accepted = new ArrayList<>(batch.size() - count);
+        for (int i = 0, j = 0; i < batch.size(); i++) {
+            if (masks[i] == 0) {
+                accepted.add(batch.get(i));
+            } else {
+                rejected[j] = i;
+                this.masks[j++] = masks[i];
+            }
+        }
+    }
+
+    /**
+     * Create a validation stage accepting the models of a predicate.
+     * 
+     * @param <T>       The type of the validated models.
+     * @param predicate The predicate of the valid models.
+     * @return The stage rejecting the undefined models and the models failing
+     *         the predicate.
+     */
+    public static <T> Function<List<T>, ValidationReport<T>> filter(Predicate<? super T> predicate) {
+        return (List<T> batch) -> {
+            int[] masks = new int[batch.size()];
+            for (int i = 0; i < masks.length; i++) {
+                T model = batch.get(i);
+                masks[i] = model == null || !predicate.test(model) ? 1 : 0;
+            }
+            return new ValidationReport<>(batch, masks, INVALID);
+        };
+    }
+
+    /**
+     * Get the accepted models.
+     * 
+     * @return The valid models in the order of the batch.
+     */
+    public List<T> getAccepted() {
+        return accepted;
+    }
+
+    /**
+     * Is a model of the batch accepted.
+     * 
+     * @param index The position of the model in the batch.
+     * @return True, if and only if the model was accepted.
+     */
+    public boolean isAccepted(int index) {
+        return Arrays.binarySearch(rejected, 0, rejectedCount, index) < 0;
+    }
+
+    /**
+     * Get the number of the rejected models.
+     * 
+     * @return The number of the invalid models of the batch.
+     */
+    public int getRejected() {
+        return rejectedCount;
+    }
+
+    /**
+     * Get the errors of the rejected models. The error of a field is named
+     * "prefix[index].field", and the error of a whole model "prefix[index]".
+     * 
+     * @param prefix The prefix of the field names.
+     * @param index  The function from the position in the batch to the index
+     *               reported for the model.
+     * @return The errors of the rejected models.
+     */
+    public List<InvalidFieldsException.FieldError> getErrors(String prefix, IntToLongFunction index) {
+        return getErrors(prefix, index, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get the errors of the first rejected models.
+     * 
+     * @param prefix The prefix of the field names.
+     * @param index  The function from the position in the batch to the index
+     *               reported for the model.
+     * @param limit  The maximal number of the errors.
+     * @return The errors of the first rejected models, at most the limit.
+     * @see #getErrors(String, IntToLongFunction)
+     */
+    public List<InvalidFieldsException.FieldError> getErrors(String prefix, IntToLongFunction index, int limit) {
+        List<InvalidFieldsException.FieldError> result = new ArrayList<>(Math.min(rejectedCount, limit));
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < rejectedCount && result.size() < limit; i++) {
+            name.setLength(0);
+            name.append(prefix).append('[').append(index.applyAsLong(rejected[i])).append(']');
+            final int length = name.length();
+            for (int mask = masks[i], bit = 0; mask != 0 && result.size() < limit; mask >>>= 1, bit++) {
+                if ((mask & 1) != 0) {
+                    final Reason reason = reasons[bit];
+                    name.setLength(length);
+                    if (reason.getField() != null) {
+                        name.append('.').append(reason.getField());
+                    }
+                    result.add(new InvalidFieldsException.FieldError(name.toString(), reason.getDescription()));
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,163 @@
+package com.kautiainen.antti.solita.metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.restexpress.Request;
+import org.restexpress.Response;
+import org.restexpress.pipeline.MessageObserver;
+
+/**
+ * Message observer writing an access log asynchronously.
+ * 
+ * The completed requests are queued without blocking, and a background thread
+ * formats and writes the queued entries in batches. If the queue is full, the
+ * entries are dropped and counted rather than slowing down the requests. A
+ * log line consists of the completion time, the remote address, the method,
+ * the URL, the status code and the latency in microseconds.
+ */
+public class AccessLogObserver extends MessageObserver implements Closeable {
+
+    /**
+     * The default maximal number of queued entries.
+     */
+    public static final int DEFAULT_CAPACITY = 65536;
+
+    private static final String START_ATTACHMENT = AccessLogObserver.class.getName() + ".start";
+
+    /**
+     * The maximal number of entries written at once.
+     */
+    private static final int BATCH_SIZE = 1024;
+
+    /**
+     * A completed request.
+     */
+    private static final class Entry {
+        final long time;
+        final String remote;
+        final String method;
+        final String url;
+        final int status;
+        final long micros;
+
+        Entry(long time, String remote, String method, String url, int status, long micros) {
+            this.time = time;
+            this.remote = remote;
+            this.method = method;
+            this.url = url;
+            this.status = status;
+            this.micros = micros;
+        }
+    }
+
+    private final BlockingQueue<Entry> entries;
+
+    private final Writer out;
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final Thread writer;
+
+    private volatile boolean closed = false;
+
+    /**
+     * Create a new access log.
+     * 
+     * @param out      The writer of the log lines.
+     * @param capacity The maximal number of queued entries.
+     */
+    public AccessLogObserver(Writer out, int capacity) {
+        this.out = out;
+        this.entries = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::writeEntries, "access-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    protected void onReceived(Request request, Response response) {
+        request.putAttachment(START_ATTACHMENT, System.nanoTime());
+    }
+
+    @Override
+    protected void onComplete(Request request, Response response) {
+        Object start = request.getAttachment(START_ATTACHMENT);
+        final long micros = start == null ? -1 : (System.nanoTime() - (Long) start) / 1000;
+        InetSocketAddress remote = request.getRemoteAddress();
+        Entry entry = new Entry(System.currentTimeMillis(), remote == null ? "-" : remote.getHostString(),
+                request.getEffectiveHttpMethod().name(), request.getUrl(), MetricsObserver.status(response),
+                micros);
+        if (closed || !entries.offer(entry)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Get the number of the dropped entries.
+     * 
+     * @return The number of the entries dropped as the queue was full.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Write the queued entries until the log is closed.
+     */
+    private void writeEntries() {
+        List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+        StringBuilder lines = new StringBuilder();
+        while (!closed || !entries.isEmpty()) {
+            try {
+                Entry first = entries.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                // Writing the remaining entries before closing.
+                closed = true;
+            }
+            entries.drainTo(batch, BATCH_SIZE - batch.size());
+            for (Entry entry : batch) {
+                lines.append(Instant.ofEpochMilli(entry.time)).append(' ')
+                        .append(entry.remote).append(' ')
+                        .append(entry.method).append(' ')
+                        .append(entry.url).append(' ')
+                        .append(entry.status).append(' ')
+                        .append(entry.micros).append("us").append(System.lineSeparator());
+            }
+            try {
+                out.write(lines.toString());
+                out.flush();
+            } catch (IOException e) {
+                dropped.add(batch.size());
+            }
+            batch.clear();
+            lines.setLength(0);
+        }
+    }
+
+    /**
+     * Close the log after writing the queued entries.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.kautiainen.antti.solita.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in microseconds.
+ * 
+ * The buckets are log-linear like the buckets of HdrHistogram: each power of
+ * two range is divided into {@value #SUB_BUCKET_COUNT} buckets of equal width,
+ * so the recorded values are reported with relative error below 1/32. The
+ * latencies are recorded with an atomic increment of a bucket without
+ * locking, and the latencies above about 38 hours are recorded into the last
+ * bucket.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The largest shift of the recorded values.
+     */
+    private static final int MAX_SHIFT = 31;
+
+    /**
+     * The largest recorded value.
+     */
+    private static final long MAX_VALUE = (2L * SUB_BUCKET_COUNT << MAX_SHIFT) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKET_COUNT * (MAX_SHIFT + 2));
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder total = new LongAdder();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Get the bucket of a value.
+     * 
+     * @param value The non-negative value.
+     * @return The index of the bucket.
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) (value >>> shift) - SUB_BUCKET_COUNT;
+    }
+
+    /**
+     * Get the largest value of a bucket.
+     * 
+     * @param bucket The index of the bucket.
+     * @return The largest value recorded into the bucket.
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        final int shift = bucket / SUB_BUCKET_COUNT - 1;
+        final long lowest = (long) (bucket % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Record a latency.
+     * 
+     * @param micros The latency in microseconds.
+     */
+    public void record(long micros) {
+        final long value = Math.max(0, Math.min(micros, MAX_VALUE));
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        total.add(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Get the number of the recorded latencies.
+     * 
+     * @return The number of the recorded latencies.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Get the mean of the recorded latencies.
+     * 
+     * @return The mean latency in microseconds, or zero, if no latency was
+     *         recorded.
+     */
+    public double getMean() {
+        final long recorded = count.sum();
+        return recorded == 0 ? 0.0 : (double) total.sum() / recorded;
+    }
+
+    /**
+     * Get the largest recorded latency.
+     * 
+     * @return The largest latency in microseconds.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get the latencies at percentiles. The percentiles are read from a single
+     * pass over the buckets, and the latencies recorded during the pass may or
+     * may not be included.
+     * 
+     * @param percentiles The percentiles in ascending order.
+     * @return The latencies in microseconds below which the percentiles of the
+     *         recorded latencies are.
+     */
+    public long[] getValuesAtPercentiles(double... percentiles) {
+        final int length = counts.length();
+        long[] snapshot = new long[length];
+        long recorded = 0;
+        for (int i = 0; i < length; i++) {
+            snapshot[i] = counts.get(i);
+            recorded += snapshot[i];
+        }
+        long[] result = new long[percentiles.length];
+        long seen = 0;
+        int bucket = -1;
+        for (int i = 0; i < percentiles.length; i++) {
+            final long wanted = Math.max(1, (long) Math.ceil(percentiles[i] / 100.0 * recorded));
+            while (seen < wanted && bucket < length - 1) {
+                seen += snapshot[++bucket];
+            }
+            result[i] = recorded == 0 ? 0 : Math.min(highestValueOf(bucket), getMax());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,45 @@
+package com.kautiainen.antti.solita.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The request metrics of the routes.
+ */
+public class Metrics {
+
+    /**
+     * The route name of the requests without a named route.
+     */
+    public static final String UNROUTED = "unrouted";
+
+    private final ConcurrentMap<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+
+    /**
+     * Get the metrics of a route. The metrics are created on the first
+     * request of the route.
+     * 
+     * @param route The name of the route.
+     * @return The metrics of the route.
+     */
+    public RouteMetrics getRoute(String route) {
+        RouteMetrics result = routes.get(route);
+        return result != null ? result : routes.computeIfAbsent(route, RouteMetrics::new);
+    }
+
+    /**
+     * Summarize the metrics of the routes.
+     * 
+     * @return The summaries of the routes in route name order.
+     */
+    public List<RouteMetrics.Summary> summarize() {
+        List<RouteMetrics.Summary> result = new ArrayList<>(routes.size());
+        for (RouteMetrics route : routes.values()) {
+            result.add(route.summarize());
+        }
+        result.sort((a, b) -> a.getRoute().compareTo(b.getRoute()));
+        return result;
+    }
+}
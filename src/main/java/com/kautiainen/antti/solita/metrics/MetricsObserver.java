@@ -0,0 +1,57 @@
+package com.kautiainen.antti.solita.metrics;
+
+import org.restexpress.Request;
+import org.restexpress.Response;
+import org.restexpress.pipeline.MessageObserver;
+import org.restexpress.route.Route;
+
+/**
+ * Message observer recording the request counts, the error counts and the
+ * latencies of the routes. The start time of a request is kept as an
+ * attachment of the request, so the observer shares no state between the
+ * requests apart from the metrics.
+ */
+public class MetricsObserver extends MessageObserver {
+
+    private static final String START_ATTACHMENT = MetricsObserver.class.getName() + ".start";
+
+    private final Metrics metrics;
+
+    /**
+     * Create a new observer.
+     * 
+     * @param metrics The metrics of the observed requests.
+     */
+    public MetricsObserver(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected void onReceived(Request request, Response response) {
+        request.putAttachment(START_ATTACHMENT, System.nanoTime());
+    }
+
+    @Override
+    protected void onComplete(Request request, Response response) {
+        Object start = request.getAttachment(START_ATTACHMENT);
+        if (start == null) {
+            return;
+        }
+        final long micros = (System.nanoTime() - (Long) start) / 1000;
+        Route route = request.getResolvedRoute();
+        String name = route != null && route.hasName() ? route.getName() : Metrics.UNROUTED;
+        metrics.getRoute(name).record(status(response), micros);
+    }
+
+    /**
+     * Get the status code of a response. A response with an exception but
+     * without an error status is counted as a server error.
+     * 
+     * @param response The response.
+     * @return The status code of the response.
+     */
+    static int status(Response response) {
+        final int status = response.getResponseStatus() == null ? 200 : response.getResponseStatus().code();
+        return response.hasException() && status < 400 ? 500 : status;
+    }
+}
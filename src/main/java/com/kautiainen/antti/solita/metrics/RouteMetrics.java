@@ -0,0 +1,143 @@
+package com.kautiainen.antti.solita.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of the requests of a route.
+ */
+public class RouteMetrics {
+
+    /**
+     * The summary of the metrics of a route.
+     */
+    public static class Summary {
+        private String route;
+        private long requests;
+        private long clientErrors;
+        private long serverErrors;
+        private double errorRate;
+        private double meanMicros;
+        private long p50Micros;
+        private long p90Micros;
+        private long p99Micros;
+        private long p999Micros;
+        private long maxMicros;
+
+        public String getRoute() {
+            return route;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getClientErrors() {
+            return clientErrors;
+        }
+
+        public long getServerErrors() {
+            return serverErrors;
+        }
+
+        public double getErrorRate() {
+            return errorRate;
+        }
+
+        public double getMeanMicros() {
+            return meanMicros;
+        }
+
+        public long getP50Micros() {
+            return p50Micros;
+        }
+
+        public long getP90Micros() {
+            return p90Micros;
+        }
+
+        public long getP99Micros() {
+            return p99Micros;
+        }
+
+        public long getP999Micros() {
+            return p999Micros;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+    }
+
+    private final String route;
+
+    private final LongAdder clientErrors = new LongAdder();
+
+    private final LongAdder serverErrors = new LongAdder();
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    /**
+     * Create new metrics of a route.
+     * 
+     * @param route The name of the route.
+     */
+    public RouteMetrics(String route) {
+        this.route = route;
+    }
+
+    /**
+     * Record a completed request.
+     * 
+     * @param status The status code of the response.
+     * @param micros The latency of the request in microseconds.
+     */
+    public void record(int status, long micros) {
+        if (status >= 500) {
+            serverErrors.increment();
+        } else if (status >= 400) {
+            clientErrors.increment();
+        }
+        latencies.record(micros);
+    }
+
+    /**
+     * Get the name of the route.
+     * 
+     * @return The route name.
+     */
+    public String getRoute() {
+        return route;
+    }
+
+    /**
+     * Get the latencies of the requests.
+     * 
+     * @return The histogram of the latencies.
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Summarize the metrics.
+     * 
+     * @return The summary of the current metrics.
+     */
+    public Summary summarize() {
+        Summary result = new Summary();
+        result.route = route;
+        result.requests = latencies.getCount();
+        result.clientErrors = clientErrors.sum();
+        result.serverErrors = serverErrors.sum();
+        result.errorRate = result.requests == 0 ? 0.0
+                : (double) (result.clientErrors + result.serverErrors) / result.requests;
+        result.meanMicros = latencies.getMean();
+        long[] percentiles = latencies.getValuesAtPercentiles(50.0, 90.0, 99.0, 99.9);
+        result.p50Micros = percentiles[0];
+        result.p90Micros = percentiles[1];
+        result.p99Micros = percentiles[2];
+        result.p999Micros = percentiles[3];
+        result.maxMicros = latencies.getMax();
+        return result;
+    }
+}
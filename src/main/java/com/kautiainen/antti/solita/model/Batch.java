@@ -0,0 +1,143 @@
+package com.kautiainen.antti.solita.model;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+import com.kautiainen.antti.solita.exceptions.InvalidFieldsException;
+
+/**
+ * A batch of changes applied at once: the added or replaced models, and the
+ * identifiers of the removed models. Either all or none of the changes are
+ * applied.
+ * 
+ * @param <T> The type of the models.
+ */
+public abstract class Batch<T> {
+
+    /**
+     * The field of the added or replaced models.
+     */
+    public static final String UPSERT = "upsert";
+
+    /**
+     * The field of the identifiers of the removed models.
+     */
+    public static final String DELETE = "delete";
+
+    /**
+     * A batch of station changes.
+     */
+    public static class Stations extends Batch<Station> {
+    }
+
+    /**
+     * A batch of journey changes.
+     */
+    public static class Journeys extends Batch<Journey> {
+    }
+
+    private List<T> upsert = new ArrayList<>();
+
+    private List<Integer> delete = new ArrayList<>();
+
+    /**
+     * Get the added or replaced models. The models without identifier are
+     * added with a new identifier, and the other models replace the models
+     * with the same identifier.
+     * 
+     * @return The added or replaced models in their order.
+     */
+    public List<T> getUpsert() {
+        return upsert;
+    }
+
+    public void setUpsert(List<T> upsert) {
+        this.upsert = upsert == null ? new ArrayList<>() : upsert;
+    }
+
+    /**
+     * Get the identifiers of the removed models. The identifiers without a
+     * model are ignored.
+     * 
+     * @return The identifiers of the removed models.
+     */
+    public List<Integer> getDelete() {
+        return delete;
+    }
+
+    public void setDelete(List<Integer> delete) {
+        this.delete = delete == null ? new ArrayList<>() : delete;
+    }
+
+    /**
+     * Validate the batch. The models have to be valid, and an identifier may
+     * be changed only once.
+     * 
+     * @param valid      The validity of a model.
+     * @param identifier The identifier of a model, or an undefined value for a
+     *                   new model.
+     * @return The errors of the fields "upsert[index]" and "delete[index]" of
+     *         the invalid changes.
+     */
+    public List<InvalidFieldsException.FieldError> validate(Predicate<? super T> valid,
+            Function<? super T, Integer> identifier) {
+        List<InvalidFieldsException.FieldError> result = new ArrayList<>();
+        Set<Integer> changed = new HashSet<>();
+        for (int i = 0; i < upsert.size(); i++) {
+            T model = upsert.get(i);
+            if (model == null || !valid.test(model)) {
+                result.add(new InvalidFieldsException.FieldError(UPSERT + "[" + i + "]", "Invalid value"));
+            } else if (identifier.apply(model) != null && !changed.add(identifier.apply(model))) {
+                result.add(new InvalidFieldsException.FieldError(UPSERT + "[" + i + "]", "Duplicate identifier"));
+            }
+        }
+        for (int i = 0; i < delete.size(); i++) {
+            if (delete.get(i) == null) {
+                result.add(new InvalidFieldsException.FieldError(DELETE + "[" + i + "]", "Missing identifier"));
+            } else if (!changed.add(delete.get(i))) {
+                result.add(new InvalidFieldsException.FieldError(DELETE + "[" + i + "]", "Duplicate identifier"));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Validate the identifiers of the batch. An identifier may be changed only
+     * once. The models are validated separately, and the identifiers of the
+     * invalid models are not checked.
+     * 
+     * @param accepted   The predicate of the positions of the valid models of
+     *                   {@link #getUpsert()}.
+     * @param identifier The identifier of a model, or an undefined value for a
+     *                   new model.
+     * @return The errors of the fields "upsert[index]" and "delete[index]" of
+     *         the changed identifiers.
+     */
+    public List<InvalidFieldsException.FieldError> validateIdentifiers(IntPredicate accepted,
+            Function<? super T, Integer> identifier) {
+        List<InvalidFieldsException.FieldError> result = new ArrayList<>();
+        Set<Integer> changed = new HashSet<>();
+        for (int i = 0; i < upsert.size(); i++) {
+            if (!accepted.test(i)) {
+                continue;
+            }
+            Integer id = identifier.apply(upsert.get(i));
+            if (id != null && !changed.add(id)) {
+                result.add(new InvalidFieldsException.FieldError(UPSERT + "[" + i + "]", "Duplicate identifier"));
+            }
+        }
+        for (int i = 0; i < delete.size(); i++) {
+            if (delete.get(i) == null) {
+                result.add(new InvalidFieldsException.FieldError(DELETE + "[" + i + "]", "Missing identifier"));
+            } else if (!changed.add(delete.get(i))) {
+                result.add(new InvalidFieldsException.FieldError(DELETE + "[" + i + "]", "Duplicate identifier"));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,89 @@
+package com.kautiainen.antti.solita.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The result of an applied batch.
+ */
+public class BatchResult {
+
+    /**
+     * The number of the added models.
+     */
+    private int created = 0;
+
+    /**
+     * The number of the replaced models.
+     */
+    private int replaced = 0;
+
+    /**
+     * The number of the removed models.
+     */
+    private int deleted = 0;
+
+    /**
+     * The identifiers of the added or replaced models.
+     */
+    private final List<Integer> ids = new ArrayList<>();
+
+    /**
+     * Get the number of the added models.
+     * 
+     * @return The number of the models added by the batch.
+     */
+    public int getCreated() {
+        return created;
+    }
+
+    /**
+     * Get the number of the replaced models.
+     * 
+     * @return The number of the existing models replaced by the batch.
+     */
+    public int getReplaced() {
+        return replaced;
+    }
+
+    /**
+     * Get the number of the removed models.
+     * 
+     * @return The number of the existing models removed by the batch.
+     */
+    public int getDeleted() {
+        return deleted;
+    }
+
+    /**
+     * Get the identifiers of the added or replaced models.
+     * 
+     * @return The identifiers in the order of the changes, including the
+     *         identifiers given to the new models.
+     */
+    public List<Integer> getIds() {
+        return ids;
+    }
+
+    /**
+     * Record an added or a replaced model.
+     * 
+     * @param id       The identifier of the model.
+     * @param replaced Was an existing model replaced.
+     */
+    public void addPut(int id, boolean replaced) {
+        ids.add(id);
+        if (replaced) {
+            this.replaced++;
+        } else {
+            this.created++;
+        }
+    }
+
+    /**
+     * Record a removed model.
+     */
+    public void addDeleted() {
+        deleted++;
+    }
+}
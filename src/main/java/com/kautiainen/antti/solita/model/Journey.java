@@ -1,25 +1,78 @@
 package com.kautiainen.antti.solita.model;
 
+import java.time.LocalDateTime;
+import java.util.EnumMap;
 import java.util.Map;
 import java.util.Optional;
-import java.util.HashMap;
 
 import com.kautiainen.antti.solita.exceptions.InvalidFieldsException;
 
 public class Journey {
     public static enum Fields {
-        ID, RETURN_STATION, DEPARTURE_STATION, DISTANCE, DURATION;
+        ID, RETURN_STATION, DEPARTURE_STATION, DISTANCE, DURATION, DEPARTURE_TIME, RETURN_TIME;
     }
 
-    private Map<Fields, Object> data = new HashMap<>();
+    /**
+     * The field values of the journey. Subclasses providing the values
+     * by other means do not have the map.
+     */
+    private final Map<Fields, Object> data;
+
+    /**
+     * Create a journey whose field values are provided by the subclass
+     * overriding the getters.
+     */
+    protected Journey() {
+        this.data = null;
+    }
 
     public Journey(Integer id, PartialModel departureStation, PartialModel returStation, Integer distance, Integer duration)
             throws InvalidFieldsException {
+        this(id, departureStation, returStation, distance, duration, null, null);
+    }
 
+    public Journey(Integer id, PartialModel departureStation, PartialModel returStation, Integer distance, Integer duration,
+            LocalDateTime departureTime, LocalDateTime returnTime)
+            throws InvalidFieldsException {
+        this.data = new EnumMap<>(Fields.class);
+        setValue(Fields.ID, id);
+        setValue(Fields.DEPARTURE_STATION, departureStation);
+        setValue(Fields.RETURN_STATION, returStation);
+        setValue(Fields.DISTANCE, distance);
+        setValue(Fields.DURATION, duration);
+        setValue(Fields.DEPARTURE_TIME, departureTime);
+        setValue(Fields.RETURN_TIME, returnTime);
+    }
+
+    /**
+     * Create a copy of a journey with a new identifier.
+     * 
+     * @param id      The identifier of the created journey.
+     * @param another The journey whose other fields are copied.
+     * @throws InvalidFieldsException The created journey would be invalid.
+     */
+    public Journey(Integer id, Journey another) throws InvalidFieldsException {
+        this(id, another.getDepartureStation().orElse(null), another.getReturnStation().orElse(null),
+                another.getDistance().orElse(null), another.getDuration().orElse(null),
+                another.getDepartureTime().orElse(null), another.getReturnTime().orElse(null));
+    }
+
+    /**
+     * Set the value of a field. The undefined value removes the field.
+     * 
+     * @param field The altered field.
+     * @param value The new value of the field.
+     */
+    private void setValue(Fields field, Object value) {
+        if (value == null) {
+            data.remove(field);
+        } else {
+            data.put(field, value);
+        }
     }
 
     public boolean isNewJourney() {
-        return !data.containsKey(Fields.ID);
+        return !getId().isPresent();
     }
 
     public Optional<Integer> getId() {
@@ -31,7 +84,7 @@ public class Journey {
     }
 
     public Optional<Station> getReturnStation() {
-        return Optional.ofNullable((Station) data.get(Fields.DEPARTURE_STATION));
+        return Optional.ofNullable((Station) data.get(Fields.RETURN_STATION));
     }
 
     public Optional<Integer> getDistance() {
@@ -42,6 +95,14 @@ public class Journey {
         return Optional.ofNullable((Integer) data.get(Fields.DURATION));
     }
 
+    public Optional<LocalDateTime> getDepartureTime() {
+        return Optional.ofNullable((LocalDateTime) data.get(Fields.DEPARTURE_TIME));
+    }
+
+    public Optional<LocalDateTime> getReturnTime() {
+        return Optional.ofNullable((LocalDateTime) data.get(Fields.RETURN_TIME));
+    }
+
     /**
      * Is the journey valid.
      * 
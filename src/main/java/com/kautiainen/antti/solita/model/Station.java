@@ -1,5 +1,6 @@
 package com.kautiainen.antti.solita.model;
 
+import java.util.List;
 import java.util.Locale;
 
 /**
@@ -13,7 +14,7 @@ public class Station implements PartialModel {
      * Fields of the station.
      */
     public static enum Fields {
-        IDENTIFIER, NAME, LANGUAGE;
+        IDENTIFIER, NAME, LANGUAGE, NAMES, ADDRESS, CAPACITY, LATITUDE, LONGITUDE;
     }
 
     private Integer id;
@@ -41,8 +42,14 @@ public class Station implements PartialModel {
         return lang;
     }
 
+    /**
+     * Set the language of the station name. The language is normalized to
+     * lower case as the languages of the translated names.
+     *
+     * @param lang The language code.
+     */
     public void setLang(String lang) {
-        this.lang = lang;
+        this.lang = StationNames.normalize(lang);
     }
 
     private String name;
@@ -52,8 +59,38 @@ public class Station implements PartialModel {
      */
     private String lang;
 
+    /**
+     * The street address of the station.
+     */
+    private String address;
+
+    /**
+     * The number of bicycle slots of the station.
+     */
+    private Integer capacity;
+
+    /**
+     * The latitude of the station in WGS84 degrees.
+     */
+    private Double latitude;
+
+    /**
+     * The longitude of the station in WGS84 degrees.
+     */
+    private Double longitude;
+
+    /**
+     * The names of the station in the other languages than the language of the
+     * name.
+     */
+    private StationNames names = StationNames.EMPTY;
+
     public Station(Station another) {
         this(another.getId(), another.getName(), another.getLang());
+        setNames(another.getNames());
+        setAddress(another.getAddress());
+        setCapacity(another.getCapacity());
+        setLocation(another.getLatitude(), another.getLongitude());
     }
 
 
@@ -71,14 +108,176 @@ public class Station implements PartialModel {
         this(id, name, Locale.forLanguageTag("fi"));
     }
 
+    public String getAddress() {
+        return address;
+    }
+
+    public void setAddress(String address) {
+        this.address = address;
+    }
+
+    public Integer getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(Integer capacity) {
+        this.capacity = capacity;
+    }
+
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(Double latitude) {
+        this.latitude = latitude;
+    }
+
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(Double longitude) {
+        this.longitude = longitude;
+    }
+
+    /**
+     * Set the location of the station.
+     * 
+     * @param latitude  The latitude in WGS84 degrees.
+     * @param longitude The longitude in WGS84 degrees.
+     */
+    public void setLocation(Double latitude, Double longitude) {
+        setLatitude(latitude);
+        setLongitude(longitude);
+    }
+
+    /**
+     * Does the station have a location.
+     * 
+     * @return True, if and only if both the latitude and the longitude are
+     *         defined.
+     */
+    public boolean hasLocation() {
+        return getLatitude() != null && getLongitude() != null;
+    }
+
+    /**
+     * Get the names of the station in the other languages than the language of
+     * the name.
+     *
+     * @return The translated names.
+     */
+    public StationNames getNames() {
+        return names;
+    }
+
+    public void setNames(StationNames names) {
+        this.names = names == null ? StationNames.EMPTY : names;
+    }
+
+    /**
+     * Get the name of the station in a language.
+     *
+     * @param language The language.
+     * @return The name in the language, or an undefined value, if the station
+     *         has no name in the language.
+     */
+    public String getName(String language) {
+        return language != null && StationNames.normalize(language).equals(getLang()) ? getName()
+                : names.get(language);
+    }
+
+    /**
+     * Set the name of the station in a language. The name in the language of
+     * the name, or in any language, if the station has no language, replaces
+     * the name of the station. The other names are stored as translations.
+     *
+     * @param language The language, or an undefined value for the language of
+     *                 the name.
+     * @param name     The name in the language.
+     */
+    public void setName(String language, String name) {
+        if (language == null || getLang() == null || StationNames.normalize(language).equals(getLang())) {
+            setName(name);
+            if (language != null) {
+                setLang(language);
+            }
+        } else {
+            setNames(names.with(language, name));
+        }
+    }
+
+    /**
+     * Get the languages of the station names.
+     *
+     * @return The language of the name followed by the languages of the
+     *         translations.
+     */
+    public List<String> getLanguages() {
+        List<String> result = names.getLanguages();
+        if (getLang() != null) {
+            result.add(0, getLang());
+        }
+        return result;
+    }
+
+    /**
+     * Get the station named in the first preferred language of the station.
+     *
+     * @param preferences The preferred languages in the order of preference.
+     * @return The station, if it is named in the first preferred language
+     *         available or in none of the preferred languages, or a copy of the
+     *         station with the name in the first preferred language available
+     *         and the former name as a translation.
+     */
+    public Station localize(List<String> preferences) {
+        if (names.size() == 0) {
+            return this;
+        }
+        for (String language : preferences) {
+            if (language.equals(getLang())) {
+                return this;
+            }
+            final String name = names.get(language);
+            if (name != null) {
+                Station result = new Station(this);
+                result.setNames(names.with(language, null).with(getLang(), getName()));
+                result.setName(name);
+                result.setLang(language);
+                return result;
+            }
+        }
+        return this;
+    }
+
     @Override
     public boolean isNew() {
         return getId() == null;
     }
 
+    /**
+     * Is the station valid. The address, the capacity and the location are
+     * optional, but a defined capacity may not be negative, and a location
+     * requires both a latitude and a longitude within their ranges. The
+     * translations may not be blank or in the language of the name.
+     */
     @Override
     public boolean isValid() {
         String name = getName(), lang = getLang();
-        return name != null && !name.isBlank() && lang  != null && !lang.isBlank();
+        return name != null && !name.isBlank() && lang  != null && !lang.isBlank()
+                && (getCapacity() == null || getCapacity() >= 0)
+                && (getLatitude() == null) == (getLongitude() == null)
+                && (!hasLocation() || (Math.abs(getLatitude()) <= 90 && Math.abs(getLongitude()) <= 180))
+                && validNames();
+    }
+
+    private boolean validNames() {
+        for (int i = 0; i < names.size(); i++) {
+            if (names.getLanguage(i).isBlank() || names.getLanguage(i).equalsIgnoreCase(getLang())
+                    || names.getName(i) == null || names.getName(i).isBlank()) {
+                return false;
+            }
+        }
+        return true;
     }
 }
\ No newline at end of file
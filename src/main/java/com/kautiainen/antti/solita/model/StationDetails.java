@@ -0,0 +1,27 @@
+package com.kautiainen.antti.solita.model;
+
+import com.kautiainen.antti.solita.statistics.StationStatistics;
+
+/**
+ * Model representing a station with its expanded details.
+ */
+public class StationDetails extends Station {
+
+    /**
+     * The statistics of the journeys of the station.
+     */
+    private StationStatistics stats;
+
+    public StationDetails(Station station, StationStatistics statistics) {
+        super(station);
+        this.stats = statistics;
+    }
+
+    public StationStatistics getStats() {
+        return stats;
+    }
+
+    public void setStats(StationStatistics stats) {
+        this.stats = stats;
+    }
+}
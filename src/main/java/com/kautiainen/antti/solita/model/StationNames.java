@@ -0,0 +1,167 @@
+package com.kautiainen.antti.solita.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Immutable names of a station in several languages.
+ * 
+ * The names are kept in arrays ordered by their language, and the languages
+ * are normalized to lower case. The names and the languages of the stored
+ * stations may be interned, so the equal names of the stations, such as the
+ * Finnish and the Swedish name of a station with the same name in both
+ * languages, share a single string.
+ */
+public final class StationNames {
+
+    /**
+     * The names without any name.
+     */
+    public static final StationNames EMPTY = new StationNames(new String[0], new String[0]);
+
+    private final String[] languages;
+
+    private final String[] names;
+
+    private StationNames(String[] languages, String[] names) {
+        this.languages = languages;
+        this.names = names;
+    }
+
+    /**
+     * Normalize a language code to lower case.
+     * 
+     * @param language The language code.
+     * @return The normalized language code, or an undefined value, if the
+     *         language is undefined.
+     */
+    public static String normalize(String language) {
+        return language == null ? null : language.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Get the number of the names.
+     * 
+     * @return The number of the languages with a name.
+     */
+    public int size() {
+        return languages.length;
+    }
+
+    /**
+     * Get the language of a name.
+     * 
+     * @param index The index of the name.
+     * @return The language of the name.
+     */
+    public String getLanguage(int index) {
+        return languages[index];
+    }
+
+    /**
+     * Get a name by its index.
+     * 
+     * @param index The index of the name.
+     * @return The name.
+     */
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * Get the name in a language.
+     * 
+     * @param language The language.
+     * @return The name in the language, or an undefined value, if there is no
+     *         name in the language.
+     */
+    public String get(String language) {
+        final int index = language == null ? -1 : Arrays.binarySearch(languages, normalize(language));
+        return index < 0 ? null : names[index];
+    }
+
+    /**
+     * Get the names with a name in a language.
+     * 
+     * @param language The language.
+     * @param name     The name, or an undefined value to remove the name of the
+     *                 language.
+     * @return The names with the name.
+     */
+    public StationNames with(String language, String name) {
+        language = normalize(language);
+        final int index = Arrays.binarySearch(languages, language);
+        if (name == null) {
+            if (index < 0) {
+                return this;
+            }
+            String[] resultLanguages = new String[languages.length - 1];
+            String[] resultNames = new String[names.length - 1];
+            System.arraycopy(languages, 0, resultLanguages, 0, index);
+            System.arraycopy(languages, index + 1, resultLanguages, index, languages.length - index - 1);
+            System.arraycopy(names, 0, resultNames, 0, index);
+            System.arraycopy(names, index + 1, resultNames, index, names.length - index - 1);
+            return resultLanguages.length == 0 ? EMPTY : new StationNames(resultLanguages, resultNames);
+        } else if (index >= 0) {
+            String[] resultNames = names.clone();
+            resultNames[index] = name;
+            return new StationNames(languages, resultNames);
+        }
+        final int position = -index - 1;
+        String[] resultLanguages = new String[languages.length + 1];
+        String[] resultNames = new String[names.length + 1];
+        System.arraycopy(languages, 0, resultLanguages, 0, position);
+        System.arraycopy(languages, position, resultLanguages, position + 1, languages.length - position);
+        System.arraycopy(names, 0, resultNames, 0, position);
+        System.arraycopy(names, position, resultNames, position + 1, names.length - position);
+        resultLanguages[position] = language;
+        resultNames[position] = name;
+        return new StationNames(resultLanguages, resultNames);
+    }
+
+    /**
+     * Get the interned names.
+     * 
+     * @param pool The pool returning the interned string equal to a string.
+     * @return The names with interned names and languages.
+     */
+    public StationNames intern(UnaryOperator<String> pool) {
+        if (size() == 0) {
+            return EMPTY;
+        }
+        String[] resultLanguages = new String[languages.length];
+        String[] resultNames = new String[names.length];
+        for (int i = 0; i < languages.length; i++) {
+            resultLanguages[i] = pool.apply(languages[i]);
+            resultNames[i] = pool.apply(names[i]);
+        }
+        return new StationNames(resultLanguages, resultNames);
+    }
+
+    /**
+     * Get the languages of the names.
+     * 
+     * @return The list of the languages in their order.
+     */
+    public List<String> getLanguages() {
+        return new ArrayList<>(Arrays.asList(languages));
+    }
+
+    /**
+     * Get the names by language.
+     * 
+     * @return The map from the languages to the names in their order.
+     */
+    public Map<String, String> toMap() {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (int i = 0; i < languages.length; i++) {
+            result.put(languages[i], names[i]);
+        }
+        return result;
+    }
+}
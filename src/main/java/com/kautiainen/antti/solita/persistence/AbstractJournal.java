@@ -0,0 +1,500 @@
+package com.kautiainen.antti.solita.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only write-ahead log with periodic snapshots.
+ * 
+ * The journal is kept in generations. The log of a generation
+ * {@code <name>-<generation>.log} holds the records written during the
+ * generation, and the snapshot {@code <name>-<generation>.snapshot} holds the
+ * state before the log of the generation. A record consists of its length,
+ * the CRC32C checksum of its payload, and the payload. A torn or corrupted
+ * record ends the log.
+ * 
+ * Once the log exceeds the snapshot threshold, the log is rotated and the
+ * state is captured under the lock of the journaled store, and the snapshot is
+ * written in the background. The snapshot is written into a temporary file
+ * moved in place once the snapshot is complete, after which the older logs and
+ * snapshots are deleted.
+ * 
+ * The records are written by the writer of the journaled store holding the
+ * lock of the store.
+ * 
+ * @param <S> The type of the captured state.
+ */
+public abstract class AbstractJournal<S> implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(AbstractJournal.class.getName());
+
+    /**
+     * The length of the record header.
+     */
+    private static final int HEADER_LENGTH = 8;
+
+    private static final String LOG_SUFFIX = ".log";
+
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final Path directory;
+
+    private final String name;
+
+    /**
+     * The log size triggering a snapshot.
+     */
+    private final long snapshotThreshold;
+
+    /**
+     * Are the committed records forced to the storage device.
+     */
+    private final boolean sync;
+
+    /**
+     * The executor writing the snapshots.
+     */
+    private final Executor snapshotExecutor;
+
+    /**
+     * The lock of the snapshot writers.
+     */
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+
+    /**
+     * Is a snapshot scheduled or being written.
+     */
+    private final AtomicBoolean snapshotScheduled = new AtomicBoolean(false);
+
+    /**
+     * The current generation.
+     */
+    private long generation = 0;
+
+    /**
+     * The log of the current generation.
+     */
+    private FileChannel log = null;
+
+    /**
+     * The number of committed bytes of the log.
+     */
+    private long logSize = 0;
+
+    /**
+     * The uncommitted records.
+     */
+    private ByteBuffer records = ByteBuffer.allocate(4096);
+
+    /**
+     * The start of the record being written, or a negative value.
+     */
+    private int recordStart = -1;
+
+    /**
+     * Create a new journal.
+     * 
+     * @param directory         The directory of the journal files.
+     * @param name              The name prefix of the journal files.
+     * @param snapshotThreshold The log size in bytes triggering a snapshot.
+     * @param sync              Are the committed records forced to the storage
+     *                          device.
+     * @param snapshotExecutor  The executor writing the snapshots.
+     */
+    protected AbstractJournal(Path directory, String name, long snapshotThreshold, boolean sync,
+            Executor snapshotExecutor) {
+        this.directory = directory;
+        this.name = name;
+        this.snapshotThreshold = snapshotThreshold;
+        this.sync = sync;
+        this.snapshotExecutor = snapshotExecutor;
+    }
+
+    /**
+     * Get the lock of the journaled store. The lock is held while the log is
+     * rotated and the state is captured.
+     * 
+     * @return The lock the writers of the store hold.
+     */
+    protected abstract Lock lock();
+
+    /**
+     * Capture the state of the store. Called holding the lock of the store.
+     * 
+     * @return The state which is not changed by the later writes.
+     */
+    protected abstract S capture();
+
+    /**
+     * Write a snapshot of a captured state.
+     * 
+     * @param state   The captured state.
+     * @param channel The channel of the snapshot file.
+     * @throws IOException The snapshot could not be written.
+     */
+    protected abstract void writeSnapshot(S state, FileChannel channel) throws IOException;
+
+    /**
+     * Load the state of a snapshot into the store.
+     * 
+     * @param channel The channel of the snapshot file.
+     * @throws IOException The snapshot could not be read.
+     */
+    protected abstract void loadSnapshot(FileChannel channel) throws IOException;
+
+    /**
+     * Replay a record into the store.
+     * 
+     * @param record The payload of the record.
+     */
+    protected abstract void replay(ByteBuffer record);
+
+    /**
+     * Complete the replay of the records. The journals buffering the replayed
+     * changes apply the remaining changes.
+     */
+    protected void replayed() {
+    }
+
+    /**
+     * Begin a record.
+     * 
+     * @param capacity The maximal length of the payload.
+     * @return The buffer into which the payload is written.
+     */
+    protected ByteBuffer begin(int capacity) {
+        if (records.remaining() < HEADER_LENGTH + capacity) {
+            long required = (long) records.position() + HEADER_LENGTH + capacity;
+            ByteBuffer grown = ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE - 8,
+                    Math.max(required, records.capacity() * 2L)));
+            records.flip();
+            grown.put(records);
+            records = grown;
+        }
+        recordStart = records.position();
+        records.position(recordStart + HEADER_LENGTH);
+        return records;
+    }
+
+    /**
+     * End the record begun with {@link #begin(int)}.
+     */
+    protected void end() {
+        final int length = records.position() - recordStart - HEADER_LENGTH;
+        CRC32C checksum = new CRC32C();
+        checksum.update(records.array(), records.arrayOffset() + recordStart + HEADER_LENGTH, length);
+        records.putInt(recordStart, length);
+        records.putInt(recordStart + 4, (int) checksum.getValue());
+        recordStart = -1;
+    }
+
+    /**
+     * Write the records to the log. The records are durable once the method
+     * returns, if the journal syncs. On failure the records are discarded.
+     * 
+     * @throws UncheckedIOException The records could not be written.
+     */
+    public void commit() throws UncheckedIOException {
+        if (records.position() == 0) {
+            return;
+        }
+        records.flip();
+        try {
+            while (records.hasRemaining()) {
+                log.write(records);
+            }
+            if (sync) {
+                log.force(false);
+            }
+            logSize = log.position();
+        } catch (IOException e) {
+            try {
+                // Dropping the partially written records.
+                log.truncate(logSize);
+                log.position(logSize);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw new UncheckedIOException("Could not write the journal " + name, e);
+        } finally {
+            records.clear();
+        }
+        if (logSize >= snapshotThreshold && snapshotScheduled.compareAndSet(false, true)) {
+            try {
+                snapshotExecutor.execute(() -> {
+                    try {
+                        snapshot();
+                    } catch (IOException | RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Could not write the snapshot of " + name, e);
+                    } finally {
+                        snapshotScheduled.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // The journal is being closed, and the records are committed.
+                snapshotScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Recover the store from the latest snapshot and the logs written after it,
+     * and start a new generation. If any record was replayed, a new snapshot is
+     * written.
+     * 
+     * @throws IOException The journal could not be read.
+     */
+    public void recover() throws IOException {
+        Files.createDirectories(directory);
+        List<Long> snapshots = generations(SNAPSHOT_SUFFIX);
+        long first = 0;
+        if (!snapshots.isEmpty()) {
+            first = snapshots.get(snapshots.size() - 1);
+            try (FileChannel channel = FileChannel.open(path(first, SNAPSHOT_SUFFIX), StandardOpenOption.READ)) {
+                loadSnapshot(channel);
+            }
+        }
+        long last = first - 1;
+        long replayedRecords = 0;
+        for (long logGeneration : generations(LOG_SUFFIX)) {
+            if (logGeneration >= first) {
+                replayedRecords += replayLog(path(logGeneration, LOG_SUFFIX));
+            }
+            last = Math.max(last, logGeneration);
+        }
+        replayed();
+        final Lock lock = lock();
+        lock.lock();
+        try {
+            generation = last + 1;
+            openLog();
+        } finally {
+            lock.unlock();
+        }
+        if (replayedRecords > 0) {
+            snapshot();
+        } else {
+            deleteLogsBefore(generation);
+        }
+    }
+
+    /**
+     * Replay the records of a log.
+     * 
+     * @param file The log file.
+     * @return The number of replayed records.
+     * @throws IOException The log could not be read.
+     */
+    private long replayLog(Path file) throws IOException {
+        long replayedRecords = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size == 0) {
+                return replayedRecords;
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            CRC32C checksum = new CRC32C();
+            while (mapped.remaining() >= HEADER_LENGTH) {
+                final int length = mapped.getInt();
+                final int expected = mapped.getInt();
+                if (length < 0 || length > mapped.remaining()) {
+                    LOGGER.warning("Torn record at " + (mapped.position() - HEADER_LENGTH) + " of " + file);
+                    return replayedRecords;
+                }
+                ByteBuffer record = mapped.slice();
+                record.limit(length);
+                checksum.reset();
+                checksum.update(record.duplicate());
+                if ((int) checksum.getValue() != expected) {
+                    LOGGER.warning("Corrupted record at " + (mapped.position() - HEADER_LENGTH) + " of " + file);
+                    return replayedRecords;
+                }
+                replay(record);
+                replayedRecords++;
+                mapped.position(mapped.position() + length);
+            }
+        }
+        return replayedRecords;
+    }
+
+    /**
+     * Write a snapshot of the current state. The log is rotated, and the logs
+     * and the snapshots preceding the written snapshot are deleted.
+     * 
+     * @throws IOException The snapshot could not be written.
+     */
+    public void snapshot() throws IOException {
+        snapshotLock.lock();
+        try {
+            takeSnapshot(false);
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Write a snapshot of the current state, if any record was committed
+     * after the latest snapshot.
+     * 
+     * @return True, if a snapshot was written.
+     * @throws IOException The snapshot could not be written.
+     * @see #snapshot()
+     */
+    public boolean snapshotIfChanged() throws IOException {
+        snapshotLock.lock();
+        try {
+            return takeSnapshot(true);
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Write a snapshot holding the lock of the snapshot writers.
+     * 
+     * @param ifChanged Is the snapshot skipped, if the log is empty.
+     * @return True, if a snapshot was written.
+     * @throws IOException The snapshot could not be written.
+     */
+    private boolean takeSnapshot(boolean ifChanged) throws IOException {
+        final long snapshotGeneration;
+        final S state;
+        final Lock lock = lock();
+        lock.lock();
+        try {
+            if (log == null) {
+                throw new IOException("The journal " + name + " is closed");
+            }
+            if (ifChanged && logSize == 0 && records.position() == 0) {
+                return false;
+            }
+            commit();
+            log.close();
+            generation++;
+            openLog();
+            snapshotGeneration = generation;
+            state = capture();
+        } finally {
+            lock.unlock();
+        }
+        Path temporary = path(snapshotGeneration, SNAPSHOT_SUFFIX + TEMPORARY_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeSnapshot(state, channel);
+            channel.force(true);
+        }
+        Files.move(temporary, path(snapshotGeneration, SNAPSHOT_SUFFIX), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory();
+        deleteLogsBefore(snapshotGeneration);
+        for (long older : generations(SNAPSHOT_SUFFIX)) {
+            if (older < snapshotGeneration) {
+                Files.deleteIfExists(path(older, SNAPSHOT_SUFFIX));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Delete the logs preceding a generation.
+     * 
+     * @param first The first retained generation.
+     * @throws IOException The logs could not be deleted.
+     */
+    private void deleteLogsBefore(long first) throws IOException {
+        for (long older : generations(LOG_SUFFIX)) {
+            if (older < first) {
+                Files.deleteIfExists(path(older, LOG_SUFFIX));
+            }
+        }
+    }
+
+    /**
+     * Open the log of the current generation.
+     * 
+     * @throws IOException The log could not be opened.
+     */
+    private void openLog() throws IOException {
+        log = FileChannel.open(path(generation, LOG_SUFFIX), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        logSize = log.size();
+        log.position(logSize);
+        syncDirectory();
+    }
+
+    /**
+     * Force the directory entries to the storage device. Not all platforms
+     * allow opening a directory, in which case the entries are not forced.
+     */
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not sync the directory " + directory, e);
+        }
+    }
+
+    private Path path(long fileGeneration, String suffix) {
+        return directory.resolve(name + "-" + fileGeneration + suffix);
+    }
+
+    /**
+     * Get the generations of the journal files.
+     * 
+     * @param suffix The suffix of the files.
+     * @return The generations in ascending order.
+     * @throws IOException The directory could not be read.
+     */
+    private List<Long> generations(String suffix) throws IOException {
+        List<Long> result = new ArrayList<>();
+        final String prefix = name + "-";
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                try {
+                    result.add(Long.parseLong(fileName.substring(prefix.length(), fileName.length() - suffix.length())));
+                } catch (NumberFormatException e) {
+                    // Not a journal file.
+                }
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        final Lock lock = lock();
+        lock.lock();
+        try {
+            if (log != null) {
+                commit();
+                log.close();
+                log = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
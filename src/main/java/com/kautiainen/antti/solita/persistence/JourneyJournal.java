@@ -0,0 +1,253 @@
+package com.kautiainen.antti.solita.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Lock;
+
+import com.kautiainen.antti.solita.storage.JourneyStore;
+
+/**
+ * Journal of the journey store.
+ * 
+ * The snapshot consists of a header and the column blocks of the live rows.
+ * The header has the magic number, the format version, the number of rows and
+ * the largest identifier given to a journey. The largest identifier is kept,
+ * so the identifiers of the removed journeys are not reused after recovery.
+ * 
+ * The blocks of the identifiers, the stations, the distances and the durations
+ * hold an integer per row, and the blocks of the departure and the return
+ * times a long per row. The blocks are read back in bulk from the memory
+ * mapped snapshot.
+ */
+public class JourneyJournal extends AbstractJournal<JourneyJournal.State> implements JourneyStore.Journal {
+
+    private static final int MAGIC = 0x4A524E59;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_LENGTH = 16;
+
+    private static final byte PUT = 1;
+
+    private static final byte REMOVE = 2;
+
+    private static final int PUT_LENGTH = 1 + 5 * Integer.BYTES + 2 * Long.BYTES;
+
+    private static final int REMOVE_LENGTH = 1 + Integer.BYTES;
+
+    /**
+     * The number of rows written to the snapshot at once.
+     */
+    private static final int CHUNK_ROWS = 8192;
+
+    /**
+     * The maximal number of replayed journeys restored at once.
+     */
+    private static final int REPLAY_BATCH = 65536;
+
+    /**
+     * The captured state of the store.
+     */
+    static final class State {
+        private final JourneyStore.Columns columns;
+        private final int lastIdentifier;
+
+        State(JourneyStore.Columns columns, int lastIdentifier) {
+            this.columns = columns;
+            this.lastIdentifier = lastIdentifier;
+        }
+    }
+
+    private final JourneyStore store;
+
+    /**
+     * The replayed journeys not yet restored.
+     */
+    private int replayCount = 0;
+    private int[] replayIds = new int[0];
+    private int[] replayDepartureStations = new int[0];
+    private int[] replayReturnStations = new int[0];
+    private int[] replayDistances = new int[0];
+    private int[] replayDurations = new int[0];
+    private long[] replayDepartureTimes = new long[0];
+    private long[] replayReturnTimes = new long[0];
+
+    /**
+     * Create a new journal of a journey store.
+     * 
+     * @param store             The journaled store.
+     * @param directory         The directory of the journal files.
+     * @param snapshotThreshold The log size in bytes triggering a snapshot.
+     * @param sync              Are the committed records forced to the storage
+     *                          device.
+     * @param snapshotExecutor  The executor writing the snapshots.
+     */
+    public JourneyJournal(JourneyStore store, Path directory, long snapshotThreshold, boolean sync,
+            Executor snapshotExecutor) {
+        super(directory, "journeys", snapshotThreshold, sync, snapshotExecutor);
+        this.store = store;
+    }
+
+    @Override
+    public void put(JourneyStore.Columns columns, int row) {
+        ByteBuffer record = begin(PUT_LENGTH);
+        record.put(PUT);
+        record.putInt(columns.getId(row));
+        record.putInt(columns.getDepartureStation(row));
+        record.putInt(columns.getReturnStation(row));
+        record.putInt(columns.getDistance(row));
+        record.putInt(columns.getDuration(row));
+        record.putLong(columns.getDepartureTime(row));
+        record.putLong(columns.getReturnTime(row));
+        end();
+    }
+
+    @Override
+    public void remove(int id) {
+        ByteBuffer record = begin(REMOVE_LENGTH);
+        record.put(REMOVE);
+        record.putInt(id);
+        end();
+    }
+
+    @Override
+    protected Lock lock() {
+        return store.getLock();
+    }
+
+    @Override
+    protected State capture() {
+        return new State(store.getColumns().freeze(), store.getLastIdentifier());
+    }
+
+    @Override
+    protected void writeSnapshot(State state, FileChannel channel) throws IOException {
+        final JourneyStore.Columns columns = state.columns;
+        int count = 0;
+        for (int row = columns.nextRow(0); row < columns.size(); row = columns.nextRow(row + 1)) {
+            count++;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_ROWS * Long.BYTES);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(state.lastIdentifier);
+        write(buffer, channel);
+        for (int block = 0; block < 7; block++) {
+            for (int row = columns.nextRow(0); row < columns.size(); row = columns.nextRow(row + 1)) {
+                if (buffer.remaining() < Long.BYTES) {
+                    write(buffer, channel);
+                }
+                switch (block) {
+                case 0:
+                    buffer.putInt(columns.getId(row));
+                    break;
+                case 1:
+                    buffer.putInt(columns.getDepartureStation(row));
+                    break;
+                case 2:
+                    buffer.putInt(columns.getReturnStation(row));
+                    break;
+                case 3:
+                    buffer.putInt(columns.getDistance(row));
+                    break;
+                case 4:
+                    buffer.putInt(columns.getDuration(row));
+                    break;
+                case 5:
+                    buffer.putLong(columns.getDepartureTime(row));
+                    break;
+                default:
+                    buffer.putLong(columns.getReturnTime(row));
+                }
+            }
+        }
+        write(buffer, channel);
+    }
+
+    private static void write(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    protected void loadSnapshot(FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_LENGTH) {
+            throw new IOException("Invalid journey snapshot");
+        }
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_LENGTH);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Invalid journey snapshot");
+        }
+        final int count = header.getInt();
+        if (channel.size() != HEADER_LENGTH + (long) count * (5 * Integer.BYTES + 2 * Long.BYTES)) {
+            throw new IOException("Truncated journey snapshot");
+        }
+        store.reserveIdentifiers(header.getInt());
+        long position = HEADER_LENGTH;
+        int[][] ints = new int[5][count];
+        for (int[] block : ints) {
+            channel.map(FileChannel.MapMode.READ_ONLY, position, (long) count * Integer.BYTES).asIntBuffer()
+                    .get(block);
+            position += (long) count * Integer.BYTES;
+        }
+        long[][] longs = new long[2][count];
+        for (long[] block : longs) {
+            channel.map(FileChannel.MapMode.READ_ONLY, position, (long) count * Long.BYTES).asLongBuffer()
+                    .get(block);
+            position += (long) count * Long.BYTES;
+        }
+        store.restore(count, ints[0], ints[1], ints[2], ints[3], ints[4], longs[0], longs[1]);
+    }
+
+    @Override
+    protected void replay(ByteBuffer record) {
+        switch (record.get()) {
+        case PUT:
+            if (replayCount == replayIds.length) {
+                int capacity = Math.max(1024, replayCount * 2);
+                replayIds = Arrays.copyOf(replayIds, capacity);
+                replayDepartureStations = Arrays.copyOf(replayDepartureStations, capacity);
+                replayReturnStations = Arrays.copyOf(replayReturnStations, capacity);
+                replayDistances = Arrays.copyOf(replayDistances, capacity);
+                replayDurations = Arrays.copyOf(replayDurations, capacity);
+                replayDepartureTimes = Arrays.copyOf(replayDepartureTimes, capacity);
+                replayReturnTimes = Arrays.copyOf(replayReturnTimes, capacity);
+            }
+            replayIds[replayCount] = record.getInt();
+            replayDepartureStations[replayCount] = record.getInt();
+            replayReturnStations[replayCount] = record.getInt();
+            replayDistances[replayCount] = record.getInt();
+            replayDurations[replayCount] = record.getInt();
+            replayDepartureTimes[replayCount] = record.getLong();
+            replayReturnTimes[replayCount] = record.getLong();
+            replayCount++;
+            if (replayCount == REPLAY_BATCH) {
+                replayed();
+            }
+            break;
+        case REMOVE:
+            // The earlier journeys are restored before the removal.
+            replayed();
+            final int id = record.getInt();
+            store.reserveIdentifiers(id);
+            store.remove(id);
+            break;
+        default:
+            throw new IllegalStateException("Unknown journey record");
+        }
+    }
+
+    @Override
+    protected void replayed() {
+        if (replayCount > 0) {
+            store.restore(replayCount, replayIds, replayDepartureStations, replayReturnStations, replayDistances,
+                    replayDurations, replayDepartureTimes, replayReturnTimes);
+            replayCount = 0;
+        }
+    }
+}
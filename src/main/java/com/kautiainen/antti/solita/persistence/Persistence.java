@@ -0,0 +1,139 @@
+package com.kautiainen.antti.solita.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.kautiainen.antti.solita.storage.JourneyStore;
+import com.kautiainen.antti.solita.storage.StationRegistry;
+
+/**
+ * Local persistence of the stations and the journeys.
+ * 
+ * The stations and the journeys are recovered from their journals, after
+ * which every committed change is journaled before it is published. The
+ * snapshots of both journals are written by a single background thread, once
+ * a log exceeds the snapshot threshold and, if scheduled, periodically. The
+ * changes after the latest snapshots are snapshotted when the persistence is
+ * closed, so the next recovery does not replay them.
+ */
+public class Persistence implements Closeable {
+
+    /**
+     * The default log size in bytes triggering a snapshot.
+     */
+    public static final long DEFAULT_SNAPSHOT_THRESHOLD = 64L * 1024 * 1024;
+
+    private final StationRegistry stations;
+
+    private final JourneyStore journeys;
+
+    private final StationJournal stationJournal;
+
+    private final JourneyJournal journeyJournal;
+
+    /**
+     * The time the closing waits for a snapshot being written in seconds.
+     */
+    private static final long CLOSE_WAIT_SECONDS = 60;
+
+    private static final Logger LOGGER = Logger.getLogger(Persistence.class.getName());
+
+    private final ScheduledExecutorService snapshotExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "snapshot-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Create a new persistence of the stations and the journeys.
+     * 
+     * @param directory         The directory of the journal files.
+     * @param stations          The persisted stations.
+     * @param journeys          The persisted journeys.
+     * @param snapshotThreshold The log size in bytes triggering a snapshot.
+     * @param sync              Are the committed changes forced to the storage
+     *                          device.
+     */
+    public Persistence(Path directory, StationRegistry stations, JourneyStore journeys, long snapshotThreshold,
+            boolean sync) {
+        this.stations = stations;
+        this.journeys = journeys;
+        this.stationJournal = new StationJournal(stations, directory, snapshotThreshold, sync, snapshotExecutor);
+        this.journeyJournal = new JourneyJournal(journeys, directory, snapshotThreshold, sync, snapshotExecutor);
+    }
+
+    /**
+     * Recover the stations and the journeys, and start journaling their
+     * changes.
+     * 
+     * @throws IOException The journals could not be read.
+     */
+    public void recover() throws IOException {
+        stationJournal.recover();
+        journeyJournal.recover();
+        stations.setJournal(stationJournal);
+        journeys.setJournal(journeyJournal);
+    }
+
+    /**
+     * Write snapshots of the stations and the journeys.
+     * 
+     * @throws IOException The snapshots could not be written.
+     */
+    public void snapshot() throws IOException {
+        stationJournal.snapshot();
+        journeyJournal.snapshot();
+    }
+
+    /**
+     * Write the snapshots of the changed journals periodically.
+     * 
+     * @param interval The time between the snapshots.
+     * @param unit     The unit of the interval.
+     */
+    public void scheduleSnapshots(long interval, TimeUnit unit) {
+        snapshotExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                stationJournal.snapshotIfChanged();
+                journeyJournal.snapshotIfChanged();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Could not write the periodic snapshots", e);
+            }
+        }, interval, interval, unit);
+    }
+
+    /**
+     * Stop journaling. The snapshot being written in the background is
+     * completed, and the changes after the latest snapshots are snapshotted
+     * before the journals are closed.
+     * 
+     * @throws IOException The journals could not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        snapshotExecutor.shutdown();
+        try {
+            snapshotExecutor.awaitTermination(CLOSE_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            stationJournal.snapshotIfChanged();
+            journeyJournal.snapshotIfChanged();
+        } finally {
+            stations.setJournal(null);
+            journeys.setJournal(null);
+            try {
+                stationJournal.close();
+            } finally {
+                journeyJournal.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.kautiainen.antti.solita.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Lock;
+
+import com.kautiainen.antti.solita.model.Station;
+import com.kautiainen.antti.solita.model.StationNames;
+import com.kautiainen.antti.solita.storage.StationRegistry;
+
+/**
+ * Journal of the station registry.
+ * 
+ * A station is stored as its identifier followed by its name and language as
+ * length prefixed UTF-8 strings, its address, its capacity, and its latitude
+ * and longitude, and the number of its translated names followed by the
+ * language and the name of each translation. An undefined string has negative
+ * length, an undefined capacity is {@link Integer#MIN_VALUE}, and an undefined
+ * coordinate is NaN. The snapshot consists of the magic number, the format
+ * version, the number of stations and the stations.
+ */
+public class StationJournal extends AbstractJournal<List<Station>> implements StationRegistry.Journal {
+
+    private static final int MAGIC = 0x5354414E;
+
+    private static final int VERSION = 1;
+
+    private static final int UNDEFINED_CAPACITY = Integer.MIN_VALUE;
+
+    private static final byte PUT = 1;
+
+    private static final byte REMOVE = 2;
+
+    private final StationRegistry registry;
+
+    /**
+     * Create a new journal of a station registry.
+     * 
+     * @param registry          The journaled registry.
+     * @param directory         The directory of the journal files.
+     * @param snapshotThreshold The log size in bytes triggering a snapshot.
+     * @param sync              Are the committed records forced to the storage
+     *                          device.
+     * @param snapshotExecutor  The executor writing the snapshots.
+     */
+    public StationJournal(StationRegistry registry, Path directory, long snapshotThreshold, boolean sync,
+            Executor snapshotExecutor) {
+        super(directory, "stations", snapshotThreshold, sync, snapshotExecutor);
+        this.registry = registry;
+    }
+
+    @Override
+    public void put(Station station) {
+        byte[][] strings = encode(station);
+        ByteBuffer record = begin(1 + length(strings));
+        record.put(PUT);
+        writeStation(record, station, strings);
+        end();
+    }
+
+    @Override
+    public void remove(int id) {
+        ByteBuffer record = begin(1 + Integer.BYTES);
+        record.put(REMOVE);
+        record.putInt(id);
+        end();
+    }
+
+    @Override
+    protected Lock lock() {
+        return registry.getLock();
+    }
+
+    @Override
+    protected List<Station> capture() {
+        return registry.snapshot().getStations();
+    }
+
+    @Override
+    protected void writeSnapshot(List<Station> stations, FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(65536);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(stations.size());
+        for (Station station : stations) {
+            byte[][] strings = encode(station);
+            int length = length(strings);
+            if (buffer.remaining() < length) {
+                write(buffer, channel);
+                if (buffer.capacity() < length) {
+                    buffer = ByteBuffer.allocate(length);
+                }
+            }
+            writeStation(buffer, station, strings);
+        }
+        write(buffer, channel);
+    }
+
+    private static void write(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    protected void loadSnapshot(FileChannel channel) throws IOException {
+        ByteBuffer snapshot = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (snapshot.remaining() < 3 * Integer.BYTES || snapshot.getInt() != MAGIC) {
+            throw new IOException("Invalid station snapshot");
+        }
+        if (snapshot.getInt() != VERSION) {
+            throw new IOException("Invalid station snapshot");
+        }
+        final int count = snapshot.getInt();
+        registry.getLock().lock();
+        try {
+            for (int i = 0; i < count; i++) {
+                registry.put(readStation(snapshot));
+            }
+            registry.commit();
+        } finally {
+            registry.getLock().unlock();
+        }
+    }
+
+    @Override
+    protected void replay(ByteBuffer record) {
+        registry.getLock().lock();
+        try {
+            switch (record.get()) {
+            case PUT:
+                registry.put(readStation(record));
+                break;
+            case REMOVE:
+                registry.remove(record.getInt());
+                break;
+            default:
+                throw new IllegalStateException("Unknown station record");
+            }
+        } finally {
+            registry.getLock().unlock();
+        }
+    }
+
+    @Override
+    protected void replayed() {
+        registry.commit();
+    }
+
+    /**
+     * Write a station.
+     * 
+     * @param buffer  The buffer.
+     * @param station The station.
+     * @param strings The encoded strings of the station.
+     */
+    private static void writeStation(ByteBuffer buffer, Station station, byte[][] strings) {
+        buffer.putInt(station.getId());
+        writeString(buffer, strings[0]);
+        writeString(buffer, strings[1]);
+        writeString(buffer, strings[2]);
+        buffer.putInt(station.getCapacity() == null ? UNDEFINED_CAPACITY : station.getCapacity());
+        buffer.putDouble(station.hasLocation() ? station.getLatitude() : Double.NaN);
+        buffer.putDouble(station.hasLocation() ? station.getLongitude() : Double.NaN);
+        buffer.putInt((strings.length - 3) / 2);
+        for (int i = 3; i < strings.length; i++) {
+            writeString(buffer, strings[i]);
+        }
+    }
+
+    /**
+     * Read a station.
+     * 
+     * @param buffer The buffer at the start of the station.
+     * @return The station.
+     */
+    private static Station readStation(ByteBuffer buffer) {
+        final int id = buffer.getInt();
+        final String name = readString(buffer);
+        final Station result = new Station(id, name, readString(buffer));
+        result.setAddress(readString(buffer));
+        final int capacity = buffer.getInt();
+        result.setCapacity(capacity == UNDEFINED_CAPACITY ? null : capacity);
+        final double latitude = buffer.getDouble();
+        final double longitude = buffer.getDouble();
+        if (!Double.isNaN(latitude) && !Double.isNaN(longitude)) {
+            result.setLocation(latitude, longitude);
+        }
+        StationNames names = StationNames.EMPTY;
+        for (int count = buffer.getInt(); count > 0; count--) {
+            final String language = readString(buffer);
+            names = names.with(language, readString(buffer));
+        }
+        result.setNames(names);
+        return result;
+    }
+
+    /**
+     * Encode the strings of a station.
+     * 
+     * @param station The station.
+     * @return The encoded name, language and address followed by the encoded
+     *         languages and names of the translations.
+     */
+    private static byte[][] encode(Station station) {
+        final StationNames names = station.getNames();
+        byte[][] result = new byte[3 + 2 * names.size()][];
+        result[0] = encode(station.getName());
+        result[1] = encode(station.getLang());
+        result[2] = encode(station.getAddress());
+        for (int i = 0; i < names.size(); i++) {
+            result[3 + 2 * i] = encode(names.getLanguage(i));
+            result[4 + 2 * i] = encode(names.getName(i));
+        }
+        return result;
+    }
+
+    private static byte[] encode(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+
+    /**
+     * Get the stored length of a station.
+     * 
+     * @param strings The encoded strings of the station.
+     * @return The length in bytes.
+     */
+    private static int length(byte[][] strings) {
+        int result = 3 * Integer.BYTES + 2 * Double.BYTES;
+        for (byte[] value : strings) {
+            result += Integer.BYTES + length(value);
+        }
+        return result;
+    }
+
+    private static void writeString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(value.length);
+            buffer.put(value);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
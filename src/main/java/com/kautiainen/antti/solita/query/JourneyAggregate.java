@@ -0,0 +1,145 @@
+package com.kautiainen.antti.solita.query;
+
+import com.kautiainen.antti.solita.storage.JourneyStore;
+import com.kautiainen.antti.solita.storage.JourneyStore.Columns;
+
+/**
+ * The aggregate of the matching journeys of a query: the number of the
+ * journeys, and the average, the smallest and the largest distance and
+ * duration of the journeys with a distance and a duration.
+ * 
+ * An aggregate is accumulated by a single thread, and the aggregates of the
+ * partitions of a scan are merged into the aggregate of the scan.
+ */
+public class JourneyAggregate {
+
+    private long journeys = 0;
+
+    private long distances = 0;
+
+    private long distanceSum = 0;
+
+    private int minDistance = Integer.MAX_VALUE;
+
+    private int maxDistance = Integer.MIN_VALUE;
+
+    private long durations = 0;
+
+    private long durationSum = 0;
+
+    private int minDuration = Integer.MAX_VALUE;
+
+    private int maxDuration = Integer.MIN_VALUE;
+
+    /**
+     * Add a journey.
+     * 
+     * @param columns The columns.
+     * @param row     The row of the journey.
+     */
+    void add(Columns columns, int row) {
+        journeys++;
+        final int distance = columns.getDistance(row);
+        if (distance != JourneyStore.MISSING) {
+            distances++;
+            distanceSum += distance;
+            minDistance = Math.min(minDistance, distance);
+            maxDistance = Math.max(maxDistance, distance);
+        }
+        final int duration = columns.getDuration(row);
+        if (duration != JourneyStore.MISSING) {
+            durations++;
+            durationSum += duration;
+            minDuration = Math.min(minDuration, duration);
+            maxDuration = Math.max(maxDuration, duration);
+        }
+    }
+
+    /**
+     * Add the journeys of another aggregate.
+     * 
+     * @param other The other aggregate.
+     * @return This aggregate.
+     */
+    JourneyAggregate merge(JourneyAggregate other) {
+        journeys += other.journeys;
+        distances += other.distances;
+        distanceSum += other.distanceSum;
+        minDistance = Math.min(minDistance, other.minDistance);
+        maxDistance = Math.max(maxDistance, other.maxDistance);
+        durations += other.durations;
+        durationSum += other.durationSum;
+        minDuration = Math.min(minDuration, other.minDuration);
+        maxDuration = Math.max(maxDuration, other.maxDuration);
+        return this;
+    }
+
+    /**
+     * Get the number of the journeys.
+     * 
+     * @return The number of the matching journeys.
+     */
+    public long getJourneys() {
+        return journeys;
+    }
+
+    /**
+     * Get the average distance.
+     * 
+     * @return The average distance in metres, or an undefined value, if no
+     *         journey has a distance.
+     */
+    public Double getAverageDistance() {
+        return distances == 0 ? null : (double) distanceSum / distances;
+    }
+
+    /**
+     * Get the smallest distance.
+     * 
+     * @return The smallest distance in metres, or an undefined value, if no
+     *         journey has a distance.
+     */
+    public Integer getMinDistance() {
+        return distances == 0 ? null : minDistance;
+    }
+
+    /**
+     * Get the largest distance.
+     * 
+     * @return The largest distance in metres, or an undefined value, if no
+     *         journey has a distance.
+     */
+    public Integer getMaxDistance() {
+        return distances == 0 ? null : maxDistance;
+    }
+
+    /**
+     * Get the average duration.
+     * 
+     * @return The average duration in seconds, or an undefined value, if no
+     *         journey has a duration.
+     */
+    public Double getAverageDuration() {
+        return durations == 0 ? null : (double) durationSum / durations;
+    }
+
+    /**
+     * Get the smallest duration.
+     * 
+     * @return The smallest duration in seconds, or an undefined value, if no
+     *         journey has a duration.
+     */
+    public Integer getMinDuration() {
+        return durations == 0 ? null : minDuration;
+    }
+
+    /**
+     * Get the largest duration.
+     * 
+     * @return The largest duration in seconds, or an undefined value, if no
+     *         journey has a duration.
+     */
+    public Integer getMaxDuration() {
+        return durations == 0 ? null : maxDuration;
+    }
+}
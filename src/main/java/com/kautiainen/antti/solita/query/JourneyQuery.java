@@ -0,0 +1,277 @@
+package com.kautiainen.antti.solita.query;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+import org.restexpress.exception.BadRequestException;
+
+import com.kautiainen.antti.solita.storage.JourneyStore;
+import com.kautiainen.antti.solita.storage.JourneyStore.Column;
+import com.kautiainen.antti.solita.storage.JourneyStore.Columns;
+
+/**
+ * A query of journeys filtering the journeys by the ranges of their fields and
+ * sorting them by a field.
+ * 
+ * The filter consists of comma separated terms <code>field=value</code> or
+ * <code>field=min..max</code>, where either bound of a range may be left out.
+ * The bounds are inclusive. The sort is a field name, which is prefixed with
+ * <code>-</code> for the descending order. The fields are
+ * <code>departureStation</code>, <code>returnStation</code>,
+ * <code>distance</code>, <code>duration</code>, <code>departureTime</code>
+ * and <code>returnTime</code>. The times are ISO local date times.
+ * 
+ * A journey without a value of a filtered field does not match the filter.
+ */
+public class JourneyQuery {
+
+    /**
+     * The queried fields.
+     */
+    public static enum Field {
+        DEPARTURE_STATION("departureStation", Column.DEPARTURE_STATION),
+        RETURN_STATION("returnStation", Column.RETURN_STATION),
+        DISTANCE("distance", Column.DISTANCE),
+        DURATION("duration", Column.DURATION),
+        DEPARTURE_TIME("departureTime", Column.DEPARTURE_TIME),
+        RETURN_TIME("returnTime", Column.RETURN_TIME);
+
+        private final String name;
+
+        private final Column column;
+
+        private Field(String name, Column column) {
+            this.name = name;
+            this.column = column;
+        }
+
+        /**
+         * Get the column of the field.
+         * 
+         * @return The column storing the field.
+         */
+        public Column getColumn() {
+            return column;
+        }
+
+        /**
+         * Is the field a time.
+         * 
+         * @return True, if and only if the values of the field are times.
+         */
+        public boolean isTime() {
+            return column == Column.DEPARTURE_TIME || column == Column.RETURN_TIME;
+        }
+
+        /**
+         * Get the field with a name.
+         * 
+         * @param name The name of the field.
+         * @return The field with the name.
+         * @throws BadRequestException There was no such field.
+         */
+        public static Field of(String name) throws BadRequestException {
+            for (Field field : values()) {
+                if (field.name.equals(name)) {
+                    return field;
+                }
+            }
+            throw new BadRequestException("Unknown journey field '" + name + "'");
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * The separator of the terms.
+     */
+    public static final String TERM_SEPARATOR = ",";
+
+    /**
+     * The separator of the range bounds.
+     */
+    public static final String RANGE_SEPARATOR = "..";
+
+    private static final Column[] COLUMNS = Column.values();
+
+    /**
+     * The lower bounds of the columns.
+     */
+    private final long[] min = new long[COLUMNS.length];
+
+    /**
+     * The upper bounds of the columns.
+     */
+    private final long[] max = new long[COLUMNS.length];
+
+    /**
+     * The filtered columns.
+     */
+    private final boolean[] bounded = new boolean[COLUMNS.length];
+
+    private Column sortColumn = null;
+
+    private boolean descending = false;
+
+    /**
+     * Create a query listing all journeys in the stored order.
+     */
+    public JourneyQuery() {
+        Arrays.fill(min, Long.MIN_VALUE);
+        Arrays.fill(max, Long.MAX_VALUE);
+    }
+
+    /**
+     * Parse a query.
+     * 
+     * @param filter The filter, or an undefined value for no filter.
+     * @param sort   The sort field, or an undefined value for the stored order.
+     * @return The parsed query.
+     * @throws BadRequestException The filter or the sort was invalid.
+     */
+    public static JourneyQuery parse(String filter, String sort) throws BadRequestException {
+        JourneyQuery result = new JourneyQuery();
+        if (filter != null && !filter.trim().isEmpty()) {
+            for (String term : filter.split(TERM_SEPARATOR)) {
+                int separator = term.indexOf('=');
+                if (separator < 0) {
+                    throw new BadRequestException("Invalid journey filter term '" + term + "'");
+                }
+                Field field = Field.of(term.substring(0, separator).trim());
+                String value = term.substring(separator + 1).trim();
+                int rangeSeparator = value.indexOf(RANGE_SEPARATOR);
+                if (rangeSeparator < 0) {
+                    long bound = parseValue(field, value);
+                    result.setRange(field, bound, bound);
+                } else {
+                    String lower = value.substring(0, rangeSeparator).trim();
+                    String upper = value.substring(rangeSeparator + RANGE_SEPARATOR.length()).trim();
+                    result.setRange(field, lower.isEmpty() ? Long.MIN_VALUE : parseValue(field, lower),
+                            upper.isEmpty() ? Long.MAX_VALUE : parseValue(field, upper));
+                }
+            }
+        }
+        if (sort != null && !sort.trim().isEmpty()) {
+            String name = sort.trim();
+            boolean descending = name.startsWith("-");
+            result.setSort(Field.of(descending ? name.substring(1) : name), descending);
+        }
+        return result;
+    }
+
+    private static long parseValue(Field field, String value) throws BadRequestException {
+        try {
+            if (field.isTime()) {
+                return LocalDateTime.parse(value).toEpochSecond(ZoneOffset.UTC);
+            } else {
+                return Integer.parseInt(value);
+            }
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new BadRequestException("Invalid value of journey field '" + field + "'", e);
+        }
+    }
+
+    /**
+     * Restrict the values of a field. The field must have a value within the
+     * range.
+     * 
+     * @param field The field.
+     * @param lower The inclusive lower bound.
+     * @param upper The inclusive upper bound.
+     */
+    public void setRange(Field field, long lower, long upper) {
+        final int column = field.getColumn().ordinal();
+        bounded[column] = true;
+        min[column] = Math.max(min[column], lower);
+        max[column] = Math.min(max[column], upper);
+    }
+
+    /**
+     * Set the order of the journeys.
+     * 
+     * @param field      The sort field, or an undefined value for the stored
+     *                   order.
+     * @param descending Is the order descending.
+     */
+    public void setSort(Field field, boolean descending) {
+        this.sortColumn = field == null ? null : field.getColumn();
+        this.descending = descending;
+    }
+
+    /**
+     * Is a column filtered.
+     * 
+     * @param column The column.
+     * @return True, if and only if the values of the column are restricted.
+     */
+    public boolean isBounded(Column column) {
+        return bounded[column.ordinal()];
+    }
+
+    /**
+     * Get the lower bound of a column.
+     * 
+     * @param column The column.
+     * @return The inclusive lower bound of the column values.
+     */
+    public long getMin(Column column) {
+        return min[column.ordinal()];
+    }
+
+    /**
+     * Get the upper bound of a column.
+     * 
+     * @param column The column.
+     * @return The inclusive upper bound of the column values.
+     */
+    public long getMax(Column column) {
+        return max[column.ordinal()];
+    }
+
+    /**
+     * Get the sort column.
+     * 
+     * @return The column of the sort field, or an undefined value, if the
+     *         journeys are in the stored order.
+     */
+    public Column getSortColumn() {
+        return sortColumn;
+    }
+
+    /**
+     * Is the order descending.
+     * 
+     * @return True, if and only if the journeys are sorted in descending order.
+     */
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * Does a row match the filter.
+     * 
+     * @param columns The columns.
+     * @param row     The row.
+     * @return True, if and only if the row is a journey of the columns matching
+     *         the filter.
+     */
+    public boolean matches(Columns columns, int row) {
+        if (row >= columns.size() || columns.isDeleted(row)) {
+            return false;
+        }
+        for (int i = 0; i < bounded.length; i++) {
+            if (bounded[i]) {
+                long value = columns.getValue(COLUMNS[i], row);
+                if (value == JourneyStore.MISSING_VALUE || value < min[i] || value > max[i]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
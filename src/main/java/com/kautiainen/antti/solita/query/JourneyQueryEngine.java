@@ -0,0 +1,332 @@
+package com.kautiainen.antti.solita.query;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.kautiainen.antti.solita.model.Journey;
+import com.kautiainen.antti.solita.storage.JourneyStore;
+import com.kautiainen.antti.solita.storage.JourneyStore.Column;
+import com.kautiainen.antti.solita.storage.JourneyStore.Columns;
+import com.kautiainen.antti.solita.storage.JourneyStore.Generation;
+import com.kautiainen.antti.solita.storage.PostingLists;
+import com.kautiainen.antti.solita.storage.RangeIndex;
+import com.kautiainen.antti.solita.storage.RowSorter;
+
+/**
+ * Engine evaluating journey queries with the indexes of a journey store.
+ * 
+ * The candidate rows are taken from the most selective index: the posting
+ * list of a station, or the range of a range index. The rows are walked in
+ * order, when the expected number of visited rows is small compared to the
+ * number of candidates: a query sorted by an indexed field walks the range
+ * index, and an unsorted query walks the posting list or all rows. Otherwise
+ * the matching candidates are collected and sorted. The candidates are
+ * collected, and the rows walked without an index are found, by a
+ * {@link JourneyScanner}.
+ * 
+ * The positions of the pages are the positions of the rows in the evaluation
+ * order of the query, and thus a cursor of a query stays valid only while the
+ * journeys are not changed. The positions of the pages walking all rows are
+ * the sequence numbers of the rows, which stay valid as the journeys change.
+ * 
+ * The rows and the indexes of a query are read from one
+ * {@link JourneyStore.Generation}, so a concurrent compaction does not move
+ * the rows of the query.
+ */
+public class JourneyQueryEngine {
+
+    /**
+     * The cost of collecting and sorting a candidate relative to the cost of
+     * walking over a row.
+     */
+    private static final int COLLECT_COST = 4;
+
+    private final JourneyStore store;
+
+    private final JourneyScanner scanner;
+
+    /**
+     * Create a new engine scanning the rows sequentially.
+     * 
+     * @param store The queried store.
+     */
+    public JourneyQueryEngine(JourneyStore store) {
+        this(store, new JourneyScanner(null));
+    }
+
+    /**
+     * Create a new engine.
+     * 
+     * @param store   The queried store.
+     * @param scanner The scanner of the rows.
+     */
+    public JourneyQueryEngine(JourneyStore store, JourneyScanner scanner) {
+        this.store = store;
+        this.scanner = scanner;
+    }
+
+    /**
+     * Evaluate a query.
+     * 
+     * @param query  The query.
+     * @param cursor The position from which the journeys are listed.
+     * @param wanted The expected number of listed journeys.
+     * @return The page of the matching journeys.
+     */
+    public Page<Journey> query(JourneyQuery query, long cursor, long wanted) {
+        final Column sortColumn = query.getSortColumn();
+        final Selection selection = new Selection(query);
+        final Columns columns = selection.columns;
+        final Column rangeColumn = selection.rangeColumn;
+
+        if (sortColumn != null && selection.sorted.containsKey(sortColumn)) {
+            // Walking the sort index unless the candidates are selective.
+            int[] rows = selection.sorted.get(sortColumn);
+            int from = 0;
+            int to = rows.length;
+            if (sortColumn == rangeColumn) {
+                from = selection.rangeFrom;
+                to = selection.rangeTo;
+            }
+            if (sortColumn == rangeColumn || isWalked(to - from, selection.estimate, wanted)) {
+                return new RowsPage(cursor, query, columns, rows, from, to, query.isDescending());
+            }
+        } else if (sortColumn == null && selection.postingColumn != null) {
+            // The posting lists are in the stored order.
+            int[] rows = selection.getCandidates();
+            return new RowsPage(cursor, query, columns, rows, 0, rows.length, false);
+        } else if (sortColumn == null && isWalked(columns.size(), selection.estimate, wanted)) {
+            return new ScanPage(cursor, query, columns, scanner, wanted);
+        }
+
+        // Collecting and sorting the matching candidates.
+        final int[] candidates = selection.getCandidates();
+        final int length = candidates == null ? columns.size() : candidates.length;
+        int[] matches = scanner.find(query, columns, candidates, 0, length, Integer.MAX_VALUE);
+        if (sortColumn != null) {
+            long[] keys = new long[matches.length];
+            for (int i = 0; i < matches.length; i++) {
+                keys[i] = columns.getValue(sortColumn, matches[i]);
+            }
+            RowSorter.sort(keys, matches, 0, matches.length);
+        } else if (rangeColumn != null) {
+            Arrays.sort(matches);
+        }
+        return new RowsPage(cursor, query, columns, matches, 0, matches.length,
+                sortColumn != null && query.isDescending());
+    }
+
+    /**
+     * Aggregate the matching journeys of a query. The sort of the query is
+     * ignored.
+     * 
+     * @param query The query.
+     * @return The aggregate of the matching journeys.
+     */
+    public JourneyAggregate aggregate(JourneyQuery query) {
+        final Selection selection = new Selection(query);
+        return scanner.aggregate(query, selection.columns, selection.getCandidates());
+    }
+
+    /**
+     * Is walking over the rows in order cheaper than collecting and sorting the
+     * candidates. The matches are assumed to be evenly spread over the walked
+     * rows.
+     * 
+     * @param length    The number of walked rows.
+     * @param estimate  The number of candidates.
+     * @param wanted    The expected number of listed journeys.
+     * @return True, if and only if the rows should be walked.
+     */
+    private static boolean isWalked(long length, long estimate, long wanted) {
+        double walked = estimate == 0 ? length : Math.min(length, (double) wanted * length / estimate);
+        return walked <= (double) estimate * COLLECT_COST;
+    }
+
+    /**
+     * The candidate source of a query with the fewest rows: the posting list of
+     * a station, the range of a range index, or all rows.
+     */
+    private final class Selection {
+        private final JourneyQuery query;
+        private final Generation generation;
+        private final Map<Column, int[]> sorted = new EnumMap<>(Column.class);
+        private final Columns columns;
+        private long estimate;
+        private Column postingColumn = null;
+        private Column rangeColumn = null;
+        private int rangeFrom = 0;
+        private int rangeTo = 0;
+
+        Selection(JourneyQuery query) {
+            this.query = query;
+            this.generation = store.getGeneration();
+            // The sorted rows are read before the columns, so the columns
+            // contain all sorted rows.
+            final Column sortColumn = query.getSortColumn();
+            for (Column column : Column.values()) {
+                RangeIndex index = generation.getRangeIndex(column);
+                if (index != null && (query.isBounded(column) || column == sortColumn)) {
+                    sorted.put(column, index.getRows());
+                }
+            }
+            columns = generation.getColumns();
+            estimate = columns.size();
+            for (Column column : Column.values()) {
+                PostingLists postings = generation.getPostings(column);
+                if (postings != null && query.isBounded(column) && query.getMin(column) == query.getMax(column)) {
+                    long value = query.getMin(column);
+                    int size = value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? 0
+                            : postings.size((int) value);
+                    if (size < estimate) {
+                        estimate = size;
+                        postingColumn = column;
+                        rangeColumn = null;
+                    }
+                }
+            }
+            for (Map.Entry<Column, int[]> entry : sorted.entrySet()) {
+                Column column = entry.getKey();
+                if (query.isBounded(column)) {
+                    RangeIndex index = generation.getRangeIndex(column);
+                    int from = index.lowerBound(columns, entry.getValue(), query.getMin(column));
+                    int to = index.upperBound(columns, entry.getValue(), query.getMax(column));
+                    if (to - from < estimate) {
+                        estimate = Math.max(0, to - from);
+                        postingColumn = null;
+                        rangeColumn = column;
+                        rangeFrom = from;
+                        rangeTo = Math.max(from, to);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Get the candidate rows.
+         * 
+         * @return The candidate rows, or an undefined value for all rows.
+         */
+        int[] getCandidates() {
+            if (postingColumn != null) {
+                return generation.getPostings(postingColumn).get((int) query.getMin(postingColumn));
+            } else if (rangeColumn != null) {
+                return Arrays.copyOfRange(sorted.get(rangeColumn), rangeFrom, rangeTo);
+            } else {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * The page of the matching rows of a row array. The position is the index
+     * from the start of the walk.
+     */
+    private static final class RowsPage extends Page<Journey> {
+        private final JourneyQuery query;
+        private final Columns columns;
+        private final int[] rows;
+        private final int from;
+        private final int to;
+        private final boolean descending;
+
+        RowsPage(long cursor, JourneyQuery query, Columns columns, int[] rows, int from, int to,
+                boolean descending) {
+            super(cursor);
+            this.query = query;
+            this.columns = columns;
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.descending = descending;
+        }
+
+        private int rowAt(long position) {
+            return rows[descending ? (int) (to - 1 - position) : (int) (from + position)];
+        }
+
+        @Override
+        protected long seek(long position) {
+            for (long i = position; i < to - from; i++) {
+                if (query.matches(columns, rowAt(i))) {
+                    return i;
+                }
+            }
+            return -1L;
+        }
+
+        @Override
+        protected Journey get(long position) {
+            return columns.copyJourney(rowAt(position));
+        }
+    }
+
+    /**
+     * The page of the matching rows of the columns. The position is the
+     * sequence number of the row, so the position stays valid while the rows
+     * are compacted. The matching rows are found by the scanner in batches of
+     * the expected number of listed journeys.
+     */
+    private static final class ScanPage extends Page<Journey> {
+        /**
+         * The maximal number of the rows of a batch.
+         */
+        private static final int MAX_BATCH = 1 << 16;
+
+        private final JourneyQuery query;
+        private final Columns columns;
+        private final JourneyScanner scanner;
+        private final int batch;
+
+        /**
+         * The matching rows of the scanned rows of the current batch.
+         */
+        private int[] matches = new int[0];
+
+        /**
+         * The first scanned row of the current batch.
+         */
+        private int scannedFrom = 0;
+
+        /**
+         * The row after the last scanned row of the current batch.
+         */
+        private int scannedTo = 0;
+
+        ScanPage(long cursor, JourneyQuery query, Columns columns, JourneyScanner scanner, long wanted) {
+            super(cursor);
+            this.query = query;
+            this.columns = columns;
+            this.scanner = scanner;
+            this.batch = (int) Math.max(1, Math.min(wanted, MAX_BATCH));
+        }
+
+        @Override
+        protected long seek(long position) {
+            int row = columns.rowOf(position);
+            while (row < columns.size()) {
+                if (row >= scannedFrom && row < scannedTo) {
+                    int index = Arrays.binarySearch(matches, row);
+                    if (index < 0) {
+                        index = -index - 1;
+                    }
+                    if (index < matches.length) {
+                        return columns.getSequence(matches[index]);
+                    }
+                    row = scannedTo;
+                } else {
+                    scannedFrom = row;
+                    matches = scanner.find(query, columns, null, scannedFrom, columns.size(), batch);
+                    scannedTo = matches.length == batch ? matches[batch - 1] + 1 : columns.size();
+                }
+            }
+            return -1L;
+        }
+
+        @Override
+        protected Journey get(long position) {
+            return columns.copyJourney(columns.rowOf(position));
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.kautiainen.antti.solita.query;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import com.kautiainen.antti.solita.storage.JourneyStore.Columns;
+
+/**
+ * Scanner evaluating the filter of a journey query over the rows of the
+ * columns.
+ * 
+ * The scanned rows are split into partitions, which are scanned by the tasks
+ * of a fork-join pool. A find collects the matching rows of each partition, and
+ * concatenates the results of the partitions in their order. A limited find
+ * stops the partitions after the first partitions hold the limit of matches,
+ * so a page of an unselective query does not scan all rows. An aggregate
+ * aggregates each partition, and merges the aggregates of the partitions.
+ * 
+ * The pool is separate from the executor of the requests, so a long scan does
+ * not hold the request threads. Without a pool the partitions are scanned
+ * sequentially by the calling thread.
+ */
+public class JourneyScanner {
+
+    /**
+     * The default number of the rows of a partition.
+     */
+    public static final int DEFAULT_PARTITION_SIZE = 1 << 16;
+
+    /**
+     * The number of the scanned rows between the checks of a stopped find.
+     */
+    private static final int CHECK_INTERVAL = 1024;
+
+    private final ForkJoinPool pool;
+
+    private final int partitionSize;
+
+    /**
+     * Create a new scanner with the default partition size.
+     * 
+     * @param pool The pool of the scan tasks, or an undefined value for
+     *             sequential scans.
+     */
+    public JourneyScanner(ForkJoinPool pool) {
+        this(pool, DEFAULT_PARTITION_SIZE);
+    }
+
+    /**
+     * Create a new scanner.
+     * 
+     * @param pool          The pool of the scan tasks, or an undefined value
+     *                      for sequential scans.
+     * @param partitionSize The number of the rows of a partition.
+     * @throws IllegalArgumentException The partition size is not positive.
+     */
+    public JourneyScanner(ForkJoinPool pool, int partitionSize) {
+        if (partitionSize <= 0) {
+            throw new IllegalArgumentException("Invalid partition size");
+        }
+        this.pool = pool;
+        this.partitionSize = partitionSize;
+    }
+
+    /**
+     * Get the pool of the scan tasks.
+     * 
+     * @return The pool, or an undefined value, if the scans are sequential.
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Is a scan of the given number of rows split into parallel tasks.
+     * 
+     * @param length The number of the scanned rows.
+     * @return True, if and only if the scan has several partitions and a pool.
+     */
+    private boolean isParallel(int length) {
+        return pool != null && pool.getParallelism() > 1 && length > partitionSize;
+    }
+
+    /**
+     * Find the matching rows.
+     * 
+     * @param query      The query.
+     * @param columns    The columns.
+     * @param candidates The candidate rows, or an undefined value for all rows.
+     * @param from       The index of the first scanned candidate.
+     * @param to         The index after the last scanned candidate.
+     * @param limit      The maximal number of the found rows.
+     * @return The first matching rows in the order of the candidates.
+     */
+    public int[] find(JourneyQuery query, Columns columns, int[] candidates, int from, int to, int limit) {
+        final int length = Math.max(0, to - from);
+        if (limit <= 0 || length == 0) {
+            return new int[0];
+        }
+        if (!isParallel(length)) {
+            return scan(query, columns, candidates, from, to, limit, null, 0);
+        }
+        Find find = new Find(query, columns, candidates, from, to, limit,
+                (int) (((long) length + partitionSize - 1) / partitionSize));
+        pool.invoke(find.new Partitions(0, find.results.length));
+        return find.result();
+    }
+
+    /**
+     * Aggregate the matching rows.
+     * 
+     * @param query      The query.
+     * @param columns    The columns.
+     * @param candidates The candidate rows, or an undefined value for all rows.
+     * @return The aggregate of the matching rows.
+     */
+    public JourneyAggregate aggregate(JourneyQuery query, Columns columns, int[] candidates) {
+        final int length = candidates == null ? columns.size() : candidates.length;
+        if (!isParallel(length)) {
+            return aggregate(query, columns, candidates, 0, length);
+        }
+        return pool.invoke(new Aggregate(query, columns, candidates, 0, length));
+    }
+
+    /**
+     * Scan the matching rows of a range of candidates.
+     * 
+     * @param query      The query.
+     * @param columns    The columns.
+     * @param candidates The candidate rows, or an undefined value for all rows.
+     * @param from       The index of the first scanned candidate.
+     * @param to         The index after the last scanned candidate.
+     * @param limit      The maximal number of the found rows.
+     * @param find       The find stopping the scan, or an undefined value.
+     * @param partition  The partition of the scan in the find.
+     * @return The matching rows, or an undefined value, if the find stopped the
+     *         scan.
+     */
+    private static int[] scan(JourneyQuery query, Columns columns, int[] candidates, int from, int to,
+            int limit, Find find, int partition) {
+        int[] result = new int[Math.min(Math.min(to - from, limit), 1024)];
+        int size = 0;
+        for (int i = from; i < to && size < limit; i++) {
+            if (find != null && (i - from) % CHECK_INTERVAL == 0 && find.isStopped(partition)) {
+                return null;
+            }
+            int row = candidates == null ? i : candidates[i];
+            if (query.matches(columns, row)) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, (int) Math.min(Math.min(to - from, limit), size * 2L));
+                }
+                result[size++] = row;
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    private static JourneyAggregate aggregate(JourneyQuery query, Columns columns, int[] candidates, int from,
+            int to) {
+        JourneyAggregate result = new JourneyAggregate();
+        for (int i = from; i < to; i++) {
+            int row = candidates == null ? i : candidates[i];
+            if (query.matches(columns, row)) {
+                result.add(columns, row);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A parallel find. The results of the partitions are recorded as the
+     * partitions complete, and once the completed partitions from the first
+     * partition hold the limit of matches, the later partitions are stopped.
+     */
+    private final class Find {
+        private final JourneyQuery query;
+        private final Columns columns;
+        private final int[] candidates;
+        private final int from;
+        private final int to;
+        private final int limit;
+
+        /**
+         * The matching rows of the completed partitions.
+         */
+        private final int[][] results;
+
+        /**
+         * The number of the completed partitions from the first partition.
+         */
+        private int completed = 0;
+
+        /**
+         * The number of the matches of the completed partitions from the first
+         * partition.
+         */
+        private long found = 0;
+
+        /**
+         * The first partition, whose matches are not needed.
+         */
+        private volatile int cutoff;
+
+        Find(JourneyQuery query, Columns columns, int[] candidates, int from, int to, int limit,
+                int partitions) {
+            this.query = query;
+            this.columns = columns;
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+            this.limit = limit;
+            this.results = new int[partitions][];
+            this.cutoff = partitions;
+        }
+
+        boolean isStopped(int partition) {
+            return partition >= cutoff;
+        }
+
+        void scan(int partition) {
+            if (isStopped(partition)) {
+                return;
+            }
+            final int start = from + partition * partitionSize;
+            final int end = (int) Math.min(to, (long) start + partitionSize);
+            int[] rows = JourneyScanner.scan(query, columns, candidates, start, end, limit, this, partition);
+            if (rows != null) {
+                complete(partition, rows);
+            }
+        }
+
+        private synchronized void complete(int partition, int[] rows) {
+            results[partition] = rows;
+            while (completed < cutoff && results[completed] != null) {
+                found += results[completed].length;
+                completed++;
+                if (found >= limit) {
+                    cutoff = completed;
+                }
+            }
+        }
+
+        synchronized int[] result() {
+            int[] result = new int[(int) Math.min(found, limit)];
+            int size = 0;
+            for (int i = 0; i < completed && size < result.length; i++) {
+                int count = Math.min(results[i].length, result.length - size);
+                System.arraycopy(results[i], 0, result, size, count);
+                size += count;
+            }
+            return result;
+        }
+
+        /**
+         * The task scanning a range of partitions.
+         */
+        private final class Partitions extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+            private final int first;
+            private final int last;
+
+            Partitions(int first, int last) {
+                this.first = first;
+                this.last = last;
+            }
+
+            @Override
+            protected void compute() {
+                if (last - first == 1) {
+                    scan(first);
+                } else if (!isStopped(first)) {
+                    int middle = (first + last) >>> 1;
+                    invokeAll(new Partitions(first, middle), new Partitions(middle, last));
+                }
+            }
+        }
+    }
+
+    /**
+     * The task aggregating a range of candidates.
+     */
+    private final class Aggregate extends RecursiveTask<JourneyAggregate> {
+        private static final long serialVersionUID = 1L;
+        private final JourneyQuery query;
+        private final Columns columns;
+        private final int[] candidates;
+        private final int from;
+        private final int to;
+
+        Aggregate(JourneyQuery query, Columns columns, int[] candidates, int from, int to) {
+            this.query = query;
+            this.columns = columns;
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected JourneyAggregate compute() {
+            if (to - from <= partitionSize) {
+                return aggregate(query, columns, candidates, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            Aggregate second = new Aggregate(query, columns, candidates, middle, to);
+            second.fork();
+            JourneyAggregate result = new Aggregate(query, columns, candidates, from, middle).compute();
+            return result.merge(second.join());
+        }
+    }
+}
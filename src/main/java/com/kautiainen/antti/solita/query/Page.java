@@ -0,0 +1,144 @@
+package com.kautiainen.antti.solita.query;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A page of a collection iterating the elements from a position.
+ * 
+ * The positions are defined by the collection, and the positions of the
+ * elements only have to be increasing. The position after the last iterated
+ * element is the cursor of the next page.
+ * 
+ * @param <T> The type of the elements.
+ */
+public abstract class Page<T> implements Iterator<T> {
+
+    /**
+     * The position of the next element, or a negative value, if the collection
+     * has no more elements.
+     */
+    private long position;
+
+    /**
+     * The number of elements the page may still iterate.
+     */
+    private int remaining;
+
+    /**
+     * Has the first element been sought.
+     */
+    private boolean started = false;
+
+    /**
+     * Create a new unlimited page.
+     * 
+     * @param start The position from which the elements are searched.
+     */
+    protected Page(long start) {
+        this.position = start;
+        this.remaining = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Seek the first element. The first element is sought on the first access,
+     * as the subclass is not initialized during the construction.
+     */
+    private void start() {
+        if (!started) {
+            started = true;
+            position = seek(position);
+        }
+    }
+
+    /**
+     * Set the maximal number of the remaining elements of the page.
+     * 
+     * @param limit The maximal number of elements.
+     */
+    void setLimit(int limit) {
+        this.remaining = limit;
+    }
+
+    /**
+     * Skip elements without iterating them.
+     * 
+     * @param count The number of skipped elements.
+     */
+    void skip(long count) {
+        start();
+        for (long i = 0; i < count && position >= 0; i++) {
+            position = seek(position + 1);
+        }
+    }
+
+    /**
+     * Find the position of the first element at or after a position.
+     * 
+     * @param position The position.
+     * @return The position of the element, or a negative value, if there is no
+     *         such element.
+     */
+    protected abstract long seek(long position);
+
+    /**
+     * Get the element at a position.
+     * 
+     * @param position The position of an element.
+     * @return The element at the position.
+     */
+    protected abstract T get(long position);
+
+    @Override
+    public boolean hasNext() {
+        start();
+        return remaining > 0 && position >= 0;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T result = get(position);
+        position = seek(position + 1);
+        remaining--;
+        return result;
+    }
+
+    /**
+     * Does the collection have elements after the page.
+     * 
+     * @return True, if and only if an element follows the iterated elements.
+     */
+    public boolean hasMore() {
+        start();
+        return position >= 0;
+    }
+
+    /**
+     * Get the position of the element following the iterated elements.
+     * 
+     * @return The position of the next element, or a negative value, if there
+     *         is no next element.
+     */
+    public long getPosition() {
+        start();
+        return position;
+    }
+
+    /**
+     * Collect the remaining elements of the page.
+     * 
+     * @return The list of the remaining elements.
+     */
+    public List<T> toList() {
+        List<T> result = new ArrayList<>();
+        while (hasNext()) {
+            result.add(next());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,259 @@
+package com.kautiainen.antti.solita.query;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+import org.restexpress.Request;
+import org.restexpress.Response;
+import org.restexpress.exception.BadRequestException;
+
+import com.kautiainen.antti.solita.serialization.BinarySerializationProcessor;
+import com.kautiainen.antti.solita.serialization.JsonArrayWriter;
+
+/**
+ * The page of a collection requested by the client.
+ * 
+ * The page has at most the number of elements given with the {@value #LIMIT}
+ * parameter. The page starts either from an offset given with the
+ * {@value #OFFSET} parameter, or from an opaque cursor given
+ * with the {@value #CURSOR} parameter. The cursor is returned to the client in
+ * the {@value #NEXT_CURSOR_HEADER} header of the previous page. The position
+ * of a cursor is interpreted by the collection issuing it, and the cursor of
+ * one collection is not accepted by another collection.
+ */
+public class PageRequest {
+
+    /**
+     * The parameter of the cursor.
+     */
+    public static final String CURSOR = "cursor";
+
+    /**
+     * The parameter requesting the streaming of the page.
+     */
+    public static final String STREAM = "stream";
+
+    /**
+     * The parameter requesting the elements of a JSON page as tuples of their
+     * field values.
+     */
+    public static final String TUPLES = "tuples";
+
+    /**
+     * The parameter of the maximal number of elements.
+     */
+    public static final String LIMIT = "limit";
+
+    /**
+     * The parameter of the number of skipped elements.
+     */
+    public static final String OFFSET = "offset";
+
+    /**
+     * The header of the cursor of the next page.
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    /**
+     * The limit of an unlimited page.
+     */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private final String collection;
+
+    private final long cursor;
+
+    private final long offset;
+
+    private final int limit;
+
+    private final boolean stream;
+
+    private final boolean tuples;
+
+    private PageRequest(String collection, long cursor, long offset, int limit, boolean stream, boolean tuples) {
+        this.collection = collection;
+        this.cursor = cursor;
+        this.offset = offset;
+        this.limit = limit;
+        this.stream = stream;
+        this.tuples = tuples;
+    }
+
+    /**
+     * Parse the page from a request.
+     * 
+     * @param request      The request.
+     * @param collection   The name of the collection whose cursors are accepted.
+     * @param defaultLimit The limit of an unstreamed page without a limit. A
+     *                     streamed page is unlimited by default.
+     * @return The requested page.
+     * @throws BadRequestException The page parameters were invalid.
+     */
+    public static PageRequest parseFrom(Request request, String collection, int defaultLimit)
+            throws BadRequestException {
+        final boolean stream = Boolean.parseBoolean(request.getHeader(STREAM));
+        final boolean tuples = Boolean.parseBoolean(request.getHeader(TUPLES));
+        final long limit = parseParameter(request, LIMIT, stream ? UNLIMITED : defaultLimit);
+        final long offset = parseParameter(request, OFFSET, -1L);
+        final String cursor = request.getHeader(CURSOR);
+        if (limit <= 0 || limit > UNLIMITED) {
+            throw new BadRequestException("Invalid '" + LIMIT + "' parameter");
+        } else if (cursor == null || cursor.isEmpty()) {
+            return new PageRequest(collection, 0L, Math.max(offset, 0L), (int) limit, stream, tuples);
+        } else if (offset >= 0) {
+            throw new BadRequestException("Both cursor and offset given");
+        } else {
+            return new PageRequest(collection, decode(collection, cursor), 0L, (int) limit, stream, tuples);
+        }
+    }
+
+    /**
+     * Parse a non-negative parameter.
+     * 
+     * @param request      The request.
+     * @param name         The name of the parameter.
+     * @param defaultValue The value of a missing parameter.
+     * @return The value of the parameter.
+     * @throws BadRequestException The parameter was invalid.
+     */
+    private static long parseParameter(Request request, String name, long defaultValue)
+            throws BadRequestException {
+        String value = request.getHeader(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            long result = Long.parseLong(value.trim());
+            if (result >= 0) {
+                return result;
+            }
+        } catch (NumberFormatException nfe) {
+            // The parameter is invalid.
+        }
+        throw new BadRequestException("Invalid '" + name + "' parameter");
+    }
+
+    /**
+     * Encode a cursor.
+     * 
+     * @param collection The collection of the cursor.
+     * @param position   The position of the cursor.
+     * @return The opaque cursor.
+     */
+    public static String encode(String collection, long position) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((collection + ":" + position).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a cursor.
+     * 
+     * @param collection The collection of the cursor.
+     * @param cursor     The opaque cursor.
+     * @return The position of the cursor.
+     * @throws BadRequestException The cursor was invalid or belonged to another
+     *                             collection.
+     */
+    public static long decode(String collection, String cursor) throws BadRequestException {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = value.lastIndexOf(':');
+            if (separator >= 0 && value.substring(0, separator).equals(collection)) {
+                long result = Long.parseLong(value.substring(separator + 1));
+                if (result >= 0) {
+                    return result;
+                }
+            }
+        } catch (IllegalArgumentException iae) {
+            // The cursor is invalid.
+        }
+        throw new BadRequestException("Invalid cursor");
+    }
+
+    /**
+     * Get the position from which the page is searched.
+     * 
+     * @return The position of the cursor, or zero, if the page was requested
+     *         without a cursor.
+     */
+    public long getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Get the number of elements skipped before the page.
+     * 
+     * @return The offset of the page.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Get the maximal number of elements of the page.
+     * 
+     * @return The limit of the page, or {@link #UNLIMITED}.
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Is the page streamed.
+     * 
+     * @return True, if and only if the client requested streaming.
+     */
+    public boolean isStream() {
+        return stream;
+    }
+
+    /**
+     * Are the elements written as tuples.
+     * 
+     * @return True, if and only if the client requested tuples.
+     */
+    public boolean isTuples() {
+        return tuples;
+    }
+
+    /**
+     * Tell the client the cursor of the next page.
+     * 
+     * @param response The response.
+     * @param position The position of the next page.
+     */
+    public void setNextCursor(Response response, long position) {
+        response.addHeader(NEXT_CURSOR_HEADER, encode(collection, position));
+    }
+
+    /**
+     * Respond with a page. A streamed page or a page of tuples in JSON format
+     * and a page in the binary format are written as the response body, and
+     * other pages are returned for serialization.
+     * 
+     * @param <T>      The type of the elements.
+     * @param request  The request.
+     * @param response The response.
+     * @param page     The page starting from the cursor of the request.
+     * @return The elements of the page, or an undefined value, if the page was
+     *         written as the response body.
+     */
+    public <T> List<T> respond(Request request, Response response, Page<T> page) {
+        List<T> result = null;
+        page.skip(offset);
+        page.setLimit(limit);
+        if ((isStream() || isTuples()) && JsonArrayWriter.accepts(request)) {
+            JsonArrayWriter.write(response, page, isTuples());
+        } else if (BinarySerializationProcessor.accepts(request)) {
+            BinarySerializationProcessor.write(response, page);
+        } else {
+            result = page.toList();
+        }
+        if (page.hasMore()) {
+            setNextCursor(response, page.getPosition());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,481 @@
+package com.kautiainen.antti.solita.serialization;
+
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+
+import org.restexpress.Request;
+import org.restexpress.Response;
+import org.restexpress.contenttype.MediaTypeParser;
+import org.restexpress.exception.ServiceException;
+import org.restexpress.serialization.AbstractSerializationProcessor;
+import org.restexpress.serialization.DeserializationException;
+
+import com.kautiainen.antti.solita.exceptions.InvalidFieldsException;
+import com.kautiainen.antti.solita.model.Journey;
+import com.kautiainen.antti.solita.model.Station;
+import com.kautiainen.antti.solita.model.StationNames;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Processor of the compact binary format.
+ * 
+ * A document is a sequence of records, and a list is written as the records of
+ * its elements. A record consists of a tag byte, the length of the payload as
+ * an unsigned variable length integer and the payload, so that a reader may
+ * skip the records it does not know. The integers of the payloads are written
+ * as optional zigzag encoded variable length integers, where zero is an
+ * undefined value and any other value is the zigzag encoding of the value plus
+ * one. The strings are written as their UTF-8 length plus one followed by the
+ * UTF-8 bytes, and the times as seconds from the epoch in UTC.
+ * 
+ * A station is written as its identifier, name, language, address, capacity,
+ * latitude and longitude in millionths of a degree, and the number of the
+ * translated names as an unsigned variable length integer followed by the
+ * language and the name of each translation. A reader of a station payload
+ * ending after the language or the location leaves the later fields
+ * undefined. A journey is
+ * written as its identifier, the identifiers of its departure and return
+ * stations, its distance, its duration, its departure time and its return time
+ * relative to the departure time, if the departure time is defined. Any other
+ * value, such as an error, is written as a record of its JSON.
+ */
+public class BinarySerializationProcessor
+extends AbstractSerializationProcessor
+{
+	/**
+	 * The format of the binary documents.
+	 */
+	public static final String FORMAT = "bin";
+
+	/**
+	 * The content type of the binary documents.
+	 */
+	public static final String CONTENT_TYPE = "application/octet-stream";
+
+	/**
+	 * The tag of a record holding a JSON document.
+	 */
+	public static final byte JSON = 0;
+
+	/**
+	 * The tag of a station record.
+	 */
+	public static final byte STATION = 1;
+
+	/**
+	 * The tag of a journey record.
+	 */
+	public static final byte JOURNEY = 2;
+
+	/**
+	 * The largest payload length written with a single byte.
+	 */
+	private static final int SHORT_PAYLOAD = 0x7F;
+
+	/**
+	 * The number of the written units of a degree.
+	 */
+	private static final double MICRODEGREES = 1_000_000;
+
+	/**
+	 * The smallest time read in seconds from the epoch.
+	 */
+	private static final long MIN_SECONDS = LocalDateTime.MIN.toEpochSecond(ZoneOffset.UTC);
+
+	/**
+	 * The largest time read in seconds from the epoch.
+	 */
+	private static final long MAX_SECONDS = LocalDateTime.MAX.toEpochSecond(ZoneOffset.UTC);
+
+	public BinarySerializationProcessor()
+	{
+		super(Arrays.asList(FORMAT), MediaTypeParser.parse(CONTENT_TYPE));
+	}
+
+	/**
+	 * Is the response of the request written in the binary format.
+	 * @param request The request.
+	 * @return True, if and only if the request has the binary format.
+	 */
+	public static boolean accepts(Request request)
+	{
+		return FORMAT.equals(request.getFormat());
+	}
+
+	/**
+	 * Write the elements as the response body. The elements are encoded as
+	 * they are iterated directly into a pooled buffer, which becomes the body
+	 * without serialization.
+	 * @param response The response.
+	 * @param elements The written elements.
+	 * @throws ServiceException The encoding of the elements failed.
+	 */
+	public static void write(Response response, Iterator<?> elements)
+	throws ServiceException
+	{
+		ByteBuf buffer = PooledByteBufAllocator.DEFAULT.directBuffer();
+		try
+		{
+			while (elements.hasNext())
+			{
+				writeRecord(buffer, elements.next());
+			}
+		}
+		catch (RuntimeException e)
+		{
+			buffer.release();
+			throw new ServiceException("Writing the response failed", e);
+		}
+
+		response.setBody(buffer);
+		response.setContentType(CONTENT_TYPE);
+		response.noSerialization();
+	}
+
+	@Override
+	public ByteBuffer serialize(Object value)
+	{
+		ByteBuf buffer = Unpooled.buffer();
+		if (value instanceof Iterable)
+		{
+			for (Object element : (Iterable<?>) value)
+			{
+				writeRecord(buffer, element);
+			}
+		}
+		else if (value instanceof Object[])
+		{
+			for (Object element : (Object[]) value)
+			{
+				writeRecord(buffer, element);
+			}
+		}
+		else if (value != null)
+		{
+			writeRecord(buffer, value);
+		}
+		return buffer.nioBuffer();
+	}
+
+	@Override
+	public <T> T deserialize(String value, Class<T> type)
+	{
+		return deserialize(Unpooled.wrappedBuffer(value.getBytes(StandardCharsets.ISO_8859_1)), type);
+	}
+
+	/**
+	 * Read the records of a document. A station, a journey or a single other
+	 * value is read from a document of one record, and an array or a list from
+	 * a document of any number of records.
+	 */
+	@Override
+	public <T> T deserialize(ByteBuf buffer, Class<T> type)
+	{
+		try
+		{
+			List<Object> records = new ArrayList<>();
+			final boolean multiple = type.isArray() || List.class.isAssignableFrom(type);
+			final Class<?> elementType = type.isArray() ? type.getComponentType() : Object.class;
+			while (buffer.isReadable())
+			{
+				Object record = readRecord(buffer, multiple ? elementType : type);
+				if (record != null)
+				{
+					records.add(record);
+				}
+			}
+
+			if (type.isArray())
+			{
+				Object result = Array.newInstance(elementType, records.size());
+				for (int i = 0; i < records.size(); i++)
+				{
+					Array.set(result, i, elementType.cast(records.get(i)));
+				}
+				return type.cast(result);
+			}
+			else if (List.class.isAssignableFrom(type))
+			{
+				return type.cast(records);
+			}
+			else if (records.size() != 1)
+			{
+				throw new DeserializationException("Expected a single " + type.getSimpleName());
+			}
+			return type.cast(records.get(0));
+		}
+		catch (IndexOutOfBoundsException | IllegalArgumentException | ArithmeticException | DateTimeException
+		    | ClassCastException e)
+		{
+			throw new DeserializationException(e);
+		}
+	}
+
+	// SECTION: WRITING
+
+	private static void writeRecord(ByteBuf buffer, Object value)
+	{
+		final byte tag = value instanceof Journey ? JOURNEY : value instanceof Station ? STATION : JSON;
+		buffer.writeByte(tag);
+		final int lengthIndex = buffer.writerIndex();
+		buffer.writeByte(0);
+		switch (tag)
+		{
+			case JOURNEY:
+				writeJourney(buffer, (Journey) value);
+				break;
+			case STATION:
+				writeStation(buffer, (Station) value);
+				break;
+			default:
+				buffer.writeBytes(SerializationProvider.json().serialize(value));
+		}
+
+		final int length = buffer.writerIndex() - lengthIndex - 1;
+		if (length <= SHORT_PAYLOAD)
+		{
+			buffer.setByte(lengthIndex, length);
+			return;
+		}
+
+		// The payload is moved to make room for the longer length.
+		byte[] payload = new byte[length];
+		buffer.getBytes(lengthIndex + 1, payload);
+		buffer.writerIndex(lengthIndex);
+		writeUnsigned(buffer, length);
+		buffer.writeBytes(payload);
+	}
+
+	private static void writeStation(ByteBuf buffer, Station station)
+	{
+		writeInteger(buffer, station.getId());
+		writeString(buffer, station.getName());
+		writeString(buffer, station.getLang());
+		writeString(buffer, station.getAddress());
+		writeInteger(buffer, station.getCapacity());
+		writeDegrees(buffer, station.getLatitude());
+		writeDegrees(buffer, station.getLongitude());
+		final StationNames names = station.getNames();
+		writeUnsigned(buffer, names.size());
+		for (int i = 0; i < names.size(); i++)
+		{
+			writeString(buffer, names.getLanguage(i));
+			writeString(buffer, names.getName(i));
+		}
+	}
+
+	private static void writeDegrees(ByteBuf buffer, Double value)
+	{
+		writeOptional(buffer, value != null, value == null ? 0 : Math.round(value * MICRODEGREES));
+	}
+
+	private static void writeJourney(ByteBuf buffer, Journey journey)
+	{
+		writeInteger(buffer, journey.getId().orElse(null));
+		writeInteger(buffer, journey.getDepartureStation().map(Station::getId).orElse(null));
+		writeInteger(buffer, journey.getReturnStation().map(Station::getId).orElse(null));
+		writeInteger(buffer, journey.getDistance().orElse(null));
+		writeInteger(buffer, journey.getDuration().orElse(null));
+		final Optional<LocalDateTime> departure = journey.getDepartureTime();
+		final Optional<LocalDateTime> arrival = journey.getReturnTime();
+		final long departureSeconds = departure.isPresent() ? departure.get().toEpochSecond(ZoneOffset.UTC) : 0;
+		writeOptional(buffer, departure.isPresent(), departureSeconds);
+		writeOptional(buffer, arrival.isPresent(),
+		    arrival.isPresent() ? arrival.get().toEpochSecond(ZoneOffset.UTC) - departureSeconds : 0);
+	}
+
+	private static void writeInteger(ByteBuf buffer, Integer value)
+	{
+		writeOptional(buffer, value != null, value == null ? 0 : value);
+	}
+
+	private static void writeOptional(ByteBuf buffer, boolean defined, long value)
+	{
+		writeUnsigned(buffer, defined ? ((value << 1) ^ (value >> 63)) + 1 : 0);
+	}
+
+	private static void writeString(ByteBuf buffer, String value)
+	{
+		if (value == null)
+		{
+			buffer.writeByte(0);
+			return;
+		}
+
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeUnsigned(buffer, bytes.length + 1L);
+		buffer.writeBytes(bytes);
+	}
+
+	private static void writeUnsigned(ByteBuf buffer, long value)
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			buffer.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer.writeByte((int) value);
+	}
+
+	// SECTION: READING
+
+	/**
+	 * Read a record.
+	 * @param buffer The buffer at the start of the record.
+	 * @param type The expected type of the record value.
+	 * @return The value of the record, or an undefined value, if the record
+	 * has an unknown tag.
+	 * @throws InvalidFieldsException The journey of the record was invalid.
+	 */
+	private static Object readRecord(ByteBuf buffer, Class<?> type)
+	throws InvalidFieldsException
+	{
+		final byte tag = buffer.readByte();
+		final ByteBuf payload = buffer.readSlice(readLength(buffer, readUnsigned(buffer)));
+		switch (tag)
+		{
+			case JOURNEY:
+				return readJourney(payload);
+			case STATION:
+				return readStation(payload);
+			case JSON:
+				return SerializationProvider.json().deserialize(payload, type);
+			default:
+				return null;
+		}
+	}
+
+	private static Station readStation(ByteBuf buffer)
+	{
+		final Integer id = readInteger(buffer);
+		final String name = readString(buffer);
+		final Station result = new Station(id, name, readString(buffer));
+		if (buffer.isReadable())
+		{
+			result.setAddress(readString(buffer));
+			result.setCapacity(readInteger(buffer));
+			result.setLocation(readDegrees(buffer), readDegrees(buffer));
+		}
+		if (buffer.isReadable())
+		{
+			StationNames names = StationNames.EMPTY;
+			for (long count = readUnsigned(buffer); count > 0; count--)
+			{
+				final String language = readString(buffer);
+				names = names.with(language, readString(buffer));
+			}
+			result.setNames(names);
+		}
+		return result;
+	}
+
+	private static Double readDegrees(ByteBuf buffer)
+	{
+		Long value = readOptional(buffer);
+		return value == null ? null : value / MICRODEGREES;
+	}
+
+	private static Journey readJourney(ByteBuf buffer)
+	throws InvalidFieldsException
+	{
+		final Integer id = readInteger(buffer);
+		final Integer departureStation = readInteger(buffer);
+		final Integer returnStation = readInteger(buffer);
+		final Integer distance = readInteger(buffer);
+		final Integer duration = readInteger(buffer);
+		final Long departure = readOptional(buffer);
+		final Long arrival = readOptional(buffer);
+		final long departureSeconds = departure == null ? 0 : departure;
+		return new Journey(id, stationOf(departureStation), stationOf(returnStation), distance, duration,
+		    departure == null ? null : timeOf(departureSeconds),
+		    arrival == null ? null : timeOf(Math.addExact(departureSeconds, arrival)));
+	}
+
+	/**
+	 * Get the time of the seconds from the epoch in UTC.
+	 * @param seconds The seconds from the epoch.
+	 * @return The time.
+	 * @throws DeserializationException The seconds were outside the supported
+	 * times.
+	 */
+	private static LocalDateTime timeOf(long seconds)
+	{
+		if (seconds < MIN_SECONDS || seconds > MAX_SECONDS)
+		{
+			throw new DeserializationException("Time out of range: " + seconds);
+		}
+		return LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC);
+	}
+
+	private static Station stationOf(Integer id)
+	{
+		return id == null ? null : new Station(id, null, (String) null);
+	}
+
+	private static Integer readInteger(ByteBuf buffer)
+	{
+		Long value = readOptional(buffer);
+		return value == null ? null : Math.toIntExact(value);
+	}
+
+	private static Long readOptional(ByteBuf buffer)
+	{
+		final long value = readUnsigned(buffer);
+		if (value == 0) return null;
+
+		final long zigzag = value - 1;
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+
+	private static String readString(ByteBuf buffer)
+	{
+		final long length = readUnsigned(buffer);
+		if (length == 0) return null;
+
+		final int size = readLength(buffer, length - 1);
+		final String result = buffer.toString(buffer.readerIndex(), size, StandardCharsets.UTF_8);
+		buffer.skipBytes(size);
+		return result;
+	}
+
+	/**
+	 * Check the length of the bytes following the read position.
+	 * @param buffer The buffer.
+	 * @param length The read length.
+	 * @return The length.
+	 * @throws DeserializationException The length was negative or exceeded the
+	 * readable bytes.
+	 */
+	private static int readLength(ByteBuf buffer, long length)
+	{
+		if (length < 0 || length > buffer.readableBytes())
+		{
+			throw new DeserializationException("Invalid length: " + length);
+		}
+		return (int) length;
+	}
+
+	private static long readUnsigned(ByteBuf buffer)
+	{
+		long result = 0;
+		for (int shift = 0; shift < 64; shift += 7)
+		{
+			final byte b = buffer.readByte();
+			result |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return result;
+		}
+		throw new DeserializationException("Invalid variable length integer");
+	}
+}
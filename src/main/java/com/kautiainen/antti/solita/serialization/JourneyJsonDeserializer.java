@@ -0,0 +1,66 @@
+package com.kautiainen.antti.solita.serialization;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.kautiainen.antti.solita.exceptions.InvalidFieldsException;
+import com.kautiainen.antti.solita.model.Journey;
+import com.kautiainen.antti.solita.model.Station;
+
+/**
+ * Streaming deserializer of the journeys. A journey is given as an object, or
+ * as a tuple of the values in the order of {@link JourneyJsonSerializer#FIELDS}.
+ * The stations are given in any form accepted by
+ * {@link StationJsonDeserializer}.
+ */
+public class JourneyJsonDeserializer
+extends TupleJsonDeserializer<Journey>
+{
+	private final StationJsonDeserializer stations = new StationJsonDeserializer();
+
+	public JourneyJsonDeserializer()
+	{
+		super(Journey.class, JourneyJsonSerializer.FIELDS);
+	}
+
+	@Override
+	protected Object readValue(int index, JsonParser parser, DeserializationContext context)
+	throws IOException
+	{
+		switch (index)
+		{
+			case JourneyJsonSerializer.DEPARTURE_STATION:
+			case JourneyJsonSerializer.RETURN_STATION:
+				return parser.getCurrentToken() == JsonToken.VALUE_NULL ? null
+				    : stations.deserialize(parser, context);
+			case JourneyJsonSerializer.DEPARTURE_TIME:
+			case JourneyJsonSerializer.RETURN_TIME:
+				return readTime(parser, context);
+			default:
+				return readInteger(parser, context);
+		}
+	}
+
+	@Override
+	protected Journey create(Object[] values, DeserializationContext context)
+	throws IOException
+	{
+		try
+		{
+			return new Journey((Integer) values[JourneyJsonSerializer.ID],
+			    (Station) values[JourneyJsonSerializer.DEPARTURE_STATION],
+			    (Station) values[JourneyJsonSerializer.RETURN_STATION],
+			    (Integer) values[JourneyJsonSerializer.DISTANCE],
+			    (Integer) values[JourneyJsonSerializer.DURATION],
+			    (LocalDateTime) values[JourneyJsonSerializer.DEPARTURE_TIME],
+			    (LocalDateTime) values[JourneyJsonSerializer.RETURN_TIME]);
+		}
+		catch (InvalidFieldsException e)
+		{
+			throw context.instantiationException(Journey.class, e);
+		}
+	}
+}
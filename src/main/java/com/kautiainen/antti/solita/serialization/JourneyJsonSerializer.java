@@ -0,0 +1,96 @@
+package com.kautiainen.antti.solita.serialization;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.kautiainen.antti.solita.model.Journey;
+import com.kautiainen.antti.solita.model.Station;
+
+/**
+ * Streaming serializer of the journeys. A journey is written as an object of
+ * its defined fields with the stations as objects, or as a tuple of the values
+ * in the order of {@link #FIELDS} with the stations as their identifiers, if
+ * the tuples are requested with the {@link JsonSerializationProcessor#TUPLES}
+ * attribute. The times are written in ISO format.
+ */
+public class JourneyJsonSerializer
+extends JsonSerializer<Journey>
+{
+	/**
+	 * The names of the fields of a journey in the order of the tuple values.
+	 */
+	static final String[] FIELDS = { "id", "departureStation", "returnStation", "distance", "duration",
+	    "departureTime", "returnTime" };
+
+	static final int ID = 0;
+	static final int DEPARTURE_STATION = 1;
+	static final int RETURN_STATION = 2;
+	static final int DISTANCE = 3;
+	static final int DURATION = 4;
+	static final int DEPARTURE_TIME = 5;
+	static final int RETURN_TIME = 6;
+
+	private final StationJsonSerializer stations = new StationJsonSerializer();
+
+	@Override
+	public void serialize(Journey journey, JsonGenerator generator, SerializerProvider provider)
+	throws IOException
+	{
+		if (JsonSerializationProcessor.isTuples(provider))
+		{
+			generator.writeStartArray();
+			StationJsonSerializer.writeInteger(generator, journey.getId().orElse(null));
+			StationJsonSerializer.writeInteger(generator, journey.getDepartureStation().map(Station::getId).orElse(null));
+			StationJsonSerializer.writeInteger(generator, journey.getReturnStation().map(Station::getId).orElse(null));
+			StationJsonSerializer.writeInteger(generator, journey.getDistance().orElse(null));
+			StationJsonSerializer.writeInteger(generator, journey.getDuration().orElse(null));
+			generator.writeString(journey.getDepartureTime().map(LocalDateTime::toString).orElse(null));
+			generator.writeString(journey.getReturnTime().map(LocalDateTime::toString).orElse(null));
+			generator.writeEndArray();
+			return;
+		}
+
+		generator.writeStartObject();
+		writeInteger(generator, ID, journey.getId());
+		writeStation(generator, provider, DEPARTURE_STATION, journey.getDepartureStation());
+		writeStation(generator, provider, RETURN_STATION, journey.getReturnStation());
+		writeInteger(generator, DISTANCE, journey.getDistance());
+		writeInteger(generator, DURATION, journey.getDuration());
+		writeTime(generator, DEPARTURE_TIME, journey.getDepartureTime());
+		writeTime(generator, RETURN_TIME, journey.getReturnTime());
+		generator.writeEndObject();
+	}
+
+	private static void writeInteger(JsonGenerator generator, int field, Optional<Integer> value)
+	throws IOException
+	{
+		if (value.isPresent())
+		{
+			generator.writeNumberField(FIELDS[field], value.get());
+		}
+	}
+
+	private void writeStation(JsonGenerator generator, SerializerProvider provider, int field,
+	    Optional<Station> station)
+	throws IOException
+	{
+		if (station.isPresent())
+		{
+			generator.writeFieldName(FIELDS[field]);
+			stations.serialize(station.get(), generator, provider);
+		}
+	}
+
+	private static void writeTime(JsonGenerator generator, int field, Optional<LocalDateTime> time)
+	throws IOException
+	{
+		if (time.isPresent())
+		{
+			generator.writeStringField(FIELDS[field], time.get().toString());
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.kautiainen.antti.solita.serialization;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+import org.restexpress.ContentType;
+import org.restexpress.Format;
+import org.restexpress.Request;
+import org.restexpress.Response;
+import org.restexpress.exception.ServiceException;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * Writer of JSON arrays encoding the elements as they are iterated.
+ * 
+ * The elements are encoded directly into a pooled direct buffer which becomes
+ * the response body without serialization, so neither the elements nor an
+ * intermediate serialized copy need to be held in heap at once.
+ */
+public abstract class JsonArrayWriter
+{
+	/**
+	 * Can the response of the request be written as a JSON array.
+	 * @param request The request.
+	 * @return True, if and only if the request has the JSON format.
+	 */
+	public static boolean accepts(Request request)
+	{
+		String format = request.getFormat();
+		return format == null || Format.JSON.equals(format);
+	}
+
+	/**
+	 * Write the elements as the response body.
+	 * @param response The response.
+	 * @param elements The written elements.
+	 * @throws ServiceException The encoding of the elements failed.
+	 */
+	public static void write(Response response, Iterator<?> elements)
+	throws ServiceException
+	{
+		write(response, elements, false);
+	}
+
+	/**
+	 * Write the elements as the response body.
+	 * @param response The response.
+	 * @param elements The written elements.
+	 * @param tuples Are the elements written as tuples of their field values.
+	 * @throws ServiceException The encoding of the elements failed.
+	 */
+	public static void write(Response response, Iterator<?> elements, boolean tuples)
+	throws ServiceException
+	{
+		ObjectMapper mapper = ((JsonSerializationProcessor) SerializationProvider.json()).getMapper();
+		ObjectWriter writer = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+		    .withAttribute(JsonSerializationProcessor.TUPLES, tuples);
+		ByteBuf buffer = PooledByteBufAllocator.DEFAULT.directBuffer();
+
+		try (JsonGenerator generator = mapper.getFactory().createGenerator(
+		    (OutputStream) new ByteBufOutputStream(buffer), JsonEncoding.UTF8))
+		{
+			generator.writeStartArray();
+
+			while (elements.hasNext())
+			{
+				writer.writeValue(generator, elements.next());
+			}
+
+			generator.writeEndArray();
+		}
+		catch (IOException | RuntimeException e)
+		{
+			buffer.release();
+			throw new ServiceException("Writing the response failed", e);
+		}
+
+		response.setBody(buffer);
+		response.setContentType(ContentType.JSON);
+		response.noSerialization();
+	}
+}
@@ -1,15 +1,87 @@
 package com.kautiainen.antti.solita.serialization;
 
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
 import org.restexpress.serialization.json.JacksonJsonProcessor;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import com.kautiainen.antti.solita.model.Journey;
+import com.kautiainen.antti.solita.model.Station;
 
 public class JsonSerializationProcessor
 extends JacksonJsonProcessor
 {
+	/**
+	 * The attribute of a writer requesting the models to be written as tuples
+	 * of their field values instead of objects.
+	 */
+	public static final String TUPLES = "tuples";
+
+	/**
+	 * The mapper of the processor. The mapper is initialized by the super class
+	 * constructor, and thus must not have an initializer.
+	 */
+	private ObjectMapper mapper;
+
 	@Override
     protected void initializeModule(SimpleModule module)
     {
 	    super.initializeModule(module);
+	    // The local times are written in ISO format instead of their fields.
+	    module.addSerializer(LocalDateTime.class, ToStringSerializer.instance);
+	    module.addDeserializer(LocalDateTime.class, new JsonDeserializer<LocalDateTime>()
+	    {
+	    	@Override
+	    	public LocalDateTime deserialize(JsonParser parser, DeserializationContext context)
+	    	throws IOException
+	    	{
+	    		try
+	    		{
+	    			return LocalDateTime.parse(parser.getValueAsString());
+	    		}
+	    		catch (DateTimeParseException e)
+	    		{
+	    			throw context.weirdStringException(parser.getValueAsString(), LocalDateTime.class, e.getMessage());
+	    		}
+	    	}
+	    });
+	    module.addSerializer(Station.class, new StationJsonSerializer());
+	    module.addDeserializer(Station.class, new StationJsonDeserializer());
+	    module.addSerializer(Journey.class, new JourneyJsonSerializer());
+	    module.addDeserializer(Journey.class, new JourneyJsonDeserializer());
     }
+
+	@Override
+	protected void initializeMapper(ObjectMapper mapper)
+	{
+		super.initializeMapper(mapper);
+		this.mapper = mapper;
+	}
+
+	/**
+	 * Get the mapper serializing the values.
+	 * @return The configured object mapper.
+	 */
+	public ObjectMapper getMapper()
+	{
+		return mapper;
+	}
+
+	/**
+	 * Are the models written as tuples.
+	 * @param provider The provider of the written value.
+	 * @return True, if and only if the writer has the {@link #TUPLES} attribute.
+	 */
+	static boolean isTuples(SerializerProvider provider)
+	{
+		return Boolean.TRUE.equals(provider.getAttribute(TUPLES));
+	}
 }
@@ -0,0 +1,432 @@
+package com.kautiainen.antti.solita.serialization;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.restexpress.ContentType;
+import org.restexpress.Format;
+import org.restexpress.Request;
+import org.restexpress.Response;
+import org.restexpress.serialization.SerializationException;
+import org.restexpress.serialization.SerializationProcessor;
+
+import com.kautiainen.antti.solita.caching.ContentEncodings;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * Cache of the serialized bytes of versioned entities.
+ * 
+ * The serialized bytes of an entity are stored in a pooled direct buffer by
+ * the type and the identifier of the entity and the format, together with the
+ * version of the entity. A response of a cached version is written from a
+ * duplicate of the stored buffer without serialization or copying, and a newer
+ * version replaces the stored bytes. The cache is bounded by the total size of
+ * the stored buffers, and the least recently used buffers are evicted and
+ * released first. The buffer of a written response is retained until the
+ * response has been written, so that an evicted buffer is not reused while it
+ * is written.
+ * 
+ * The bodies at least as large as the compression threshold are written with
+ * the content encoding negotiated with the request. The encoded bytes are
+ * stored alongside the serialized bytes of the version, so each version is
+ * compressed only once per encoding, and they count towards the size of the
+ * cache.
+ * 
+ * An entity with several representations, such as a station named in the
+ * preferred languages of the request, is stored by its variant, so that each
+ * representation is serialized once.
+ */
+public class SerializationCache
+{
+	/**
+	 * The default total size of the stored buffers in bytes.
+	 */
+	public static final long DEFAULT_CAPACITY = 64L * 1024 * 1024;
+
+	/**
+	 * The default size of the smallest compressed body in bytes.
+	 */
+	public static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+
+	/**
+	 * The cached formats.
+	 */
+	private static final String[] FORMATS = { Format.JSON, Format.XML, BinarySerializationProcessor.FORMAT };
+
+	private static final String[] CONTENT_TYPES = { ContentType.JSON, ContentType.XML,
+	    BinarySerializationProcessor.CONTENT_TYPE };
+
+	private static final ByteBufAllocator ALLOCATOR = PooledByteBufAllocator.DEFAULT;
+
+	/**
+	 * The key of the serialized bytes of an entity in a format.
+	 */
+	private static final class Key
+	{
+		private final String type;
+		private final long id;
+		private final int format;
+		private final String variant;
+
+		private Key(String type, long id, int format, String variant)
+		{
+			this.type = type;
+			this.id = id;
+			this.format = format;
+			this.variant = variant;
+		}
+
+		@Override
+		public boolean equals(Object other)
+		{
+			if (!(other instanceof Key)) return false;
+
+			Key key = (Key) other;
+			return id == key.id && format == key.format && type.equals(key.type) && variant.equals(key.variant);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return ((type.hashCode() * 31 + Long.hashCode(id)) * 31 + format) * 31 + variant.hashCode();
+		}
+	}
+
+	/**
+	 * The serialized bytes of a version of an entity.
+	 */
+	private static final class Entry
+	{
+		private final long version;
+		private final ByteBuf bytes;
+
+		/**
+		 * The encoded bytes by the index of the encoding, which are stored as
+		 * they are first written.
+		 */
+		private final ByteBuf[] encoded = new ByteBuf[ContentEncodings.count()];
+
+		private Entry(long version, ByteBuf bytes)
+		{
+			this.version = version;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * The entries in the order of their last use. The entries are guarded by
+	 * the cache monitor.
+	 */
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+	private long capacity;
+
+	private long size = 0;
+
+	private volatile int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+
+	/**
+	 * Create a new cache.
+	 * 
+	 * @param capacity The maximal total size of the stored buffers in bytes.
+	 */
+	public SerializationCache(long capacity)
+	{
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Write the serialized bytes of a version of an entity as the body of a
+	 * response. The entity is serialized, if the version is not cached in the
+	 * format of the request. The body is encoded with the content encoding of
+	 * the request, if it is at least as large as the compression threshold.
+	 * 
+	 * @param request  The request.
+	 * @param response The response.
+	 * @param type     The type of the entity.
+	 * @param id       The identifier of the entity within its type.
+	 * @param version  The version of the entity.
+	 * @param entity   The supplier of the version of the entity.
+	 * @return True, if and only if the response was written. The response of
+	 *         an uncached format is not written.
+	 */
+	public boolean write(Request request, Response response, String type, long id, long version,
+	    Supplier<?> entity)
+	{
+		return write(request, response, type, id, version, "", entity);
+	}
+
+	/**
+	 * Write the serialized bytes of a version of a variant of an entity as the
+	 * body of a response. The variants of an entity are cached separately.
+	 * 
+	 * @param request  The request.
+	 * @param response The response.
+	 * @param type     The type of the entity.
+	 * @param id       The identifier of the entity within its type.
+	 * @param version  The version of the entity.
+	 * @param variant  The variant of the entity.
+	 * @param entity   The supplier of the variant of the version of the entity.
+	 * @return True, if and only if the response was written. The response of
+	 *         an uncached format is not written.
+	 */
+	public boolean write(Request request, Response response, String type, long id, long version,
+	    String variant, Supplier<?> entity)
+	{
+		final int format = indexOf(request.getFormat());
+		if (format < 0) return false;
+
+		final Key key = new Key(type, id, format, variant);
+		int encoding = ContentEncodings.negotiate(request);
+		ByteBuf bytes = encoding == ContentEncodings.IDENTITY ? null : getEncoded(key, version, encoding);
+		if (bytes == null)
+		{
+			bytes = get(key, version);
+			if (bytes == null)
+			{
+				bytes = store(key, version, serialize(format, entity.get()));
+			}
+			if (encoding != ContentEncodings.IDENTITY && bytes.readableBytes() >= compressionThreshold)
+			{
+				ByteBuf encoded;
+				try
+				{
+					encoded = ContentEncodings.encode(bytes, encoding);
+				}
+				finally
+				{
+					bytes.release();
+				}
+				bytes = storeEncoded(key, version, encoding, encoded);
+			}
+			else
+			{
+				encoding = ContentEncodings.IDENTITY;
+			}
+		}
+		if (encoding != ContentEncodings.IDENTITY)
+		{
+			response.addHeader(ContentEncodings.CONTENT_ENCODING, ContentEncodings.nameOf(encoding));
+		}
+		response.setBody(bytes);
+		response.setContentType(CONTENT_TYPES[format]);
+		response.noSerialization();
+		return true;
+	}
+
+	/**
+	 * Remove the serialized bytes of an entity in all formats and variants.
+	 * 
+	 * @param type The type of the entity.
+	 * @param id   The identifier of the entity within its type.
+	 */
+	public synchronized void remove(String type, long id)
+	{
+		Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext())
+		{
+			Map.Entry<Key, Entry> entry = iterator.next();
+			if (entry.getKey().id == id && entry.getKey().type.equals(type))
+			{
+				iterator.remove();
+				release(entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Set the maximal total size of the stored buffers. The least recently
+	 * used buffers exceeding the size are evicted.
+	 * 
+	 * @param capacity The maximal total size in bytes.
+	 */
+	public synchronized void setCapacity(long capacity)
+	{
+		this.capacity = capacity;
+		evict();
+	}
+
+	/**
+	 * Set the size of the smallest body written with a content encoding.
+	 * 
+	 * @param compressionThreshold The size in bytes.
+	 */
+	public void setCompressionThreshold(int compressionThreshold)
+	{
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	/**
+	 * Get the total size of the stored buffers.
+	 * 
+	 * @return The size in bytes.
+	 */
+	public synchronized long getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * Get a retained duplicate of the stored bytes of a version.
+	 * 
+	 * @param key     The key of the bytes.
+	 * @param version The version of the entity.
+	 * @return The duplicate, or an undefined value, if the version is not
+	 *         stored.
+	 */
+	private synchronized ByteBuf get(Key key, long version)
+	{
+		Entry entry = entries.get(key);
+		return entry == null || entry.version != version ? null : entry.bytes.duplicate().retain();
+	}
+
+	/**
+	 * Get a retained duplicate of the stored encoded bytes of a version.
+	 * 
+	 * @param key      The key of the bytes.
+	 * @param version  The version of the entity.
+	 * @param encoding The index of the encoding.
+	 * @return The duplicate, or an undefined value, if the version is not
+	 *         stored with the encoding.
+	 */
+	private synchronized ByteBuf getEncoded(Key key, long version, int encoding)
+	{
+		Entry entry = entries.get(key);
+		if (entry == null || entry.version != version || entry.encoded[encoding] == null) return null;
+
+		return entry.encoded[encoding].duplicate().retain();
+	}
+
+	/**
+	 * Store the encoded bytes of a version, if the serialized bytes of the
+	 * version are still stored without the encoded bytes.
+	 * 
+	 * @param key      The key of the bytes.
+	 * @param version  The version of the entity.
+	 * @param encoding The index of the encoding.
+	 * @param encoded  The encoded bytes.
+	 * @return The bytes to write, which are released once written.
+	 */
+	private synchronized ByteBuf storeEncoded(Key key, long version, int encoding, ByteBuf encoded)
+	{
+		Entry entry = entries.get(key);
+		if (entry == null || entry.version != version || entry.encoded[encoding] != null)
+		{
+			return encoded;
+		}
+		entry.encoded[encoding] = encoded;
+		size += encoded.capacity();
+		ByteBuf written = encoded.duplicate().retain();
+		evict();
+		return written;
+	}
+
+	/**
+	 * Store the serialized bytes of a version, unless a newer version is
+	 * stored or the bytes do not fit into the cache.
+	 * 
+	 * @param key     The key of the bytes.
+	 * @param version The version of the entity.
+	 * @param bytes   The serialized bytes.
+	 * @return The bytes to write, which are released once written.
+	 */
+	private synchronized ByteBuf store(Key key, long version, ByteBuf bytes)
+	{
+		Entry current = entries.get(key);
+		if (bytes.capacity() > capacity || (current != null && current.version > version))
+		{
+			return bytes;
+		}
+		if (current != null)
+		{
+			release(current);
+		}
+		entries.put(key, new Entry(version, bytes));
+		size += bytes.capacity();
+		// The written duplicate is retained before the bytes can be evicted.
+		ByteBuf written = bytes.duplicate().retain();
+		evict();
+		return written;
+	}
+
+	/**
+	 * Evict the least recently used entries exceeding the capacity.
+	 */
+	private void evict()
+	{
+		Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+		while (size > capacity && eldest.hasNext())
+		{
+			Entry evicted = eldest.next().getValue();
+			eldest.remove();
+			release(evicted);
+		}
+	}
+
+	private void release(Entry entry)
+	{
+		size -= entry.bytes.capacity();
+		entry.bytes.release();
+		for (ByteBuf encoded : entry.encoded)
+		{
+			if (encoded != null)
+			{
+				size -= encoded.capacity();
+				encoded.release();
+			}
+		}
+	}
+
+	private static int indexOf(String format)
+	{
+		if (format == null) return 0;
+
+		for (int i = 0; i < FORMATS.length; i++)
+		{
+			if (FORMATS[i].equals(format)) return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Serialize an entity into a pooled buffer. The JSON is written directly
+	 * into the buffer, and the bytes of the other formats are copied from the
+	 * serialization processor.
+	 * 
+	 * @param format The index of the format.
+	 * @param entity The serialized entity.
+	 * @return The serialized bytes.
+	 */
+	private static ByteBuf serialize(int format, Object entity)
+	{
+		if (format == 0)
+		{
+			ByteBuf buffer = ALLOCATOR.directBuffer();
+			try (ByteBufOutputStream out = new ByteBufOutputStream(buffer))
+			{
+				((JsonSerializationProcessor) SerializationProvider.json()).getMapper().writeValue(out, entity);
+			}
+			catch (IOException | RuntimeException e)
+			{
+				buffer.release();
+				throw new SerializationException(e);
+			}
+			return buffer.capacity(buffer.writerIndex());
+		}
+
+		SerializationProcessor processor = format == 1 ? SerializationProvider.xml() : SerializationProvider.binary();
+		ByteBuffer serialized = processor.serialize(entity);
+		ByteBuf buffer = ALLOCATOR.directBuffer(serialized.remaining());
+		buffer.writeBytes(serialized);
+		return buffer;
+	}
+}
@@ -12,13 +12,16 @@ extends AbstractSerializationProvider
 
 	private static final SerializationProcessor JSON_SERIALIZER = new JsonSerializationProcessor();
 	private static final SerializationProcessor XML_SERIALIZER = new XmlSerializationProcessor();
+	private static final SerializationProcessor BINARY_SERIALIZER = new BinarySerializationProcessor();
 	private static final ResponseWrapper RESPONSE_WRAPPER = new ErrorResponseWrapper();
+	private static final SerializationCache CACHE = new SerializationCache(SerializationCache.DEFAULT_CAPACITY);
 
 	public SerializationProvider()
     {
 	    super();
 	    add(JSON_SERIALIZER, RESPONSE_WRAPPER, true);
 	    add(XML_SERIALIZER, RESPONSE_WRAPPER);
+	    add(BINARY_SERIALIZER, RESPONSE_WRAPPER);
     }
 
 	public static SerializationProcessor json()
@@ -30,4 +33,19 @@ extends AbstractSerializationProvider
 	{
 		return XML_SERIALIZER;
 	}
+
+	public static SerializationProcessor binary()
+	{
+		return BINARY_SERIALIZER;
+	}
+
+	/**
+	 * Get the cache of the serialized entities.
+	 *
+	 * @return The shared cache of the serialized bytes.
+	 */
+	public static SerializationCache cache()
+	{
+		return CACHE;
+	}
 }
@@ -0,0 +1,98 @@
+package com.kautiainen.antti.solita.serialization;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.kautiainen.antti.solita.model.Station;
+import com.kautiainen.antti.solita.model.StationNames;
+
+/**
+ * Streaming deserializer of the stations. A station is given as an object, as
+ * a tuple of its identifier, name, language, address, capacity, latitude,
+ * longitude and translated names, or as its bare identifier. The translated
+ * names are an object from the languages to the names.
+ */
+public class StationJsonDeserializer
+extends TupleJsonDeserializer<Station>
+{
+	private static final int ID = 0;
+	private static final int NAME = 1;
+	private static final int LANG = 2;
+	private static final int ADDRESS = 3;
+	private static final int CAPACITY = 4;
+	private static final int LATITUDE = 5;
+	private static final int LONGITUDE = 6;
+	private static final int NAMES = 7;
+
+	public StationJsonDeserializer()
+	{
+		super(Station.class, "id", "name", "lang", "address", "capacity", "latitude", "longitude", "names");
+	}
+
+	@Override
+	public Station deserialize(JsonParser parser, DeserializationContext context)
+	throws IOException
+	{
+		if (parser.getCurrentToken() == JsonToken.VALUE_NUMBER_INT)
+		{
+			return new Station(parser.getIntValue(), null, (String) null);
+		}
+
+		return super.deserialize(parser, context);
+	}
+
+	@Override
+	protected Object readValue(int index, JsonParser parser, DeserializationContext context)
+	throws IOException
+	{
+		switch (index)
+		{
+			case ID:
+			case CAPACITY:
+				return readInteger(parser, context);
+			case LATITUDE:
+			case LONGITUDE:
+				return readDouble(parser, context);
+			case NAMES:
+				return readNames(parser, context);
+			default:
+				return readString(parser, context);
+		}
+	}
+
+	@Override
+	protected Station create(Object[] values, DeserializationContext context)
+	{
+		Station result = new Station((Integer) values[ID], (String) values[NAME], (String) values[LANG]);
+		result.setAddress((String) values[ADDRESS]);
+		result.setCapacity((Integer) values[CAPACITY]);
+		result.setLocation((Double) values[LATITUDE], (Double) values[LONGITUDE]);
+		result.setNames((StationNames) values[NAMES]);
+		return result;
+	}
+
+	private static StationNames readNames(JsonParser parser, DeserializationContext context)
+	throws IOException
+	{
+		JsonToken token = parser.getCurrentToken();
+		if (token == JsonToken.VALUE_NULL)
+		{
+			return null;
+		}
+		if (token != JsonToken.START_OBJECT)
+		{
+			throw context.wrongTokenException(parser, JsonToken.START_OBJECT, "Expected names by language");
+		}
+
+		StationNames result = StationNames.EMPTY;
+		while ((token = parser.nextToken()) == JsonToken.FIELD_NAME)
+		{
+			final String language = parser.getCurrentName();
+			parser.nextToken();
+			result = result.with(language, readString(parser, context));
+		}
+		return result;
+	}
+}
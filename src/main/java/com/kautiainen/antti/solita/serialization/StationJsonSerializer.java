@@ -0,0 +1,127 @@
+package com.kautiainen.antti.solita.serialization;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.kautiainen.antti.solita.model.Station;
+import com.kautiainen.antti.solita.model.StationDetails;
+import com.kautiainen.antti.solita.model.StationNames;
+
+/**
+ * Streaming serializer of the stations. A station is written as an object of
+ * its defined fields, or as a tuple of its identifier, name, language,
+ * address, capacity, latitude, longitude and translated names, if the tuples
+ * are requested with the {@link JsonSerializationProcessor#TUPLES} attribute.
+ * The translated names are written as an object from the languages to the
+ * names. The statistics of the station details follow the other fields.
+ */
+public class StationJsonSerializer
+extends JsonSerializer<Station>
+{
+	@Override
+	public void serialize(Station station, JsonGenerator generator, SerializerProvider provider)
+	throws IOException
+	{
+		final Object stats = station instanceof StationDetails ? ((StationDetails) station).getStats() : null;
+		if (JsonSerializationProcessor.isTuples(provider))
+		{
+			generator.writeStartArray();
+			writeInteger(generator, station.getId());
+			generator.writeString(station.getName());
+			generator.writeString(station.getLang());
+			generator.writeString(station.getAddress());
+			writeInteger(generator, station.getCapacity());
+			writeDouble(generator, station.getLatitude());
+			writeDouble(generator, station.getLongitude());
+			writeNames(generator, station.getNames());
+			if (stats != null)
+			{
+				provider.defaultSerializeValue(stats, generator);
+			}
+			generator.writeEndArray();
+			return;
+		}
+
+		generator.writeStartObject();
+		if (station.getId() != null)
+		{
+			generator.writeNumberField("id", station.getId());
+		}
+		if (station.getName() != null)
+		{
+			generator.writeStringField("name", station.getName());
+		}
+		if (station.getLang() != null)
+		{
+			generator.writeStringField("lang", station.getLang());
+		}
+		if (station.getAddress() != null)
+		{
+			generator.writeStringField("address", station.getAddress());
+		}
+		if (station.getCapacity() != null)
+		{
+			generator.writeNumberField("capacity", station.getCapacity());
+		}
+		if (station.hasLocation())
+		{
+			generator.writeNumberField("latitude", station.getLatitude());
+			generator.writeNumberField("longitude", station.getLongitude());
+		}
+		if (station.getNames().size() > 0)
+		{
+			generator.writeFieldName("names");
+			writeNames(generator, station.getNames());
+		}
+		if (stats != null)
+		{
+			provider.defaultSerializeField("stats", stats, generator);
+		}
+		generator.writeEndObject();
+	}
+
+	static void writeInteger(JsonGenerator generator, Integer value)
+	throws IOException
+	{
+		if (value == null)
+		{
+			generator.writeNull();
+		}
+		else
+		{
+			generator.writeNumber(value);
+		}
+	}
+
+	static void writeDouble(JsonGenerator generator, Double value)
+	throws IOException
+	{
+		if (value == null)
+		{
+			generator.writeNull();
+		}
+		else
+		{
+			generator.writeNumber(value);
+		}
+	}
+
+	static void writeNames(JsonGenerator generator, StationNames names)
+	throws IOException
+	{
+		if (names.size() == 0)
+		{
+			generator.writeNull();
+			return;
+		}
+
+		generator.writeStartObject();
+		for (int i = 0; i < names.size(); i++)
+		{
+			generator.writeStringField(names.getLanguage(i), names.getName(i));
+		}
+		generator.writeEndObject();
+	}
+}
@@ -0,0 +1,57 @@
+package com.kautiainen.antti.solita.serialization;
+
+import com.kautiainen.antti.solita.model.StationNames;
+import com.thoughtworks.xstream.converters.Converter;
+import com.thoughtworks.xstream.converters.MarshallingContext;
+import com.thoughtworks.xstream.converters.UnmarshallingContext;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+
+/**
+ * XML converter of the translated station names. The names are written as
+ * name elements with the language as their lang attribute.
+ */
+public class StationNamesXmlConverter
+implements Converter
+{
+	private static final String NAME = "name";
+
+	private static final String LANGUAGE = "lang";
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public boolean canConvert(Class type)
+	{
+		return StationNames.class.equals(type);
+	}
+
+	@Override
+	public void marshal(Object source, HierarchicalStreamWriter writer, MarshallingContext context)
+	{
+		final StationNames names = (StationNames) source;
+		for (int i = 0; i < names.size(); i++)
+		{
+			writer.startNode(NAME);
+			writer.addAttribute(LANGUAGE, names.getLanguage(i));
+			writer.setValue(names.getName(i));
+			writer.endNode();
+		}
+	}
+
+	@Override
+	public Object unmarshal(HierarchicalStreamReader reader, UnmarshallingContext context)
+	{
+		StationNames result = StationNames.EMPTY;
+		while (reader.hasMoreChildren())
+		{
+			reader.moveDown();
+			final String language = reader.getAttribute(LANGUAGE);
+			if (NAME.equals(reader.getNodeName()) && language != null)
+			{
+				result = result.with(language, reader.getValue());
+			}
+			reader.moveUp();
+		}
+		return result;
+	}
+}
@@ -0,0 +1,235 @@
+package com.kautiainen.antti.solita.serialization;
+
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+/**
+ * Streaming deserializer of a model given either as a JSON object or as a JSON
+ * array of its field values in the order of the fields.
+ * 
+ * The unknown fields of an object and the extra values of an array are
+ * skipped, and the missing fields are undefined.
+ * 
+ * @param <T> The type of the deserialized models.
+ */
+public abstract class TupleJsonDeserializer<T>
+extends JsonDeserializer<T>
+{
+	private final Class<T> type;
+
+	private final String[] fields;
+
+	/**
+	 * Create a new deserializer.
+	 * @param type The type of the models.
+	 * @param fields The names of the fields in the order of the tuple values.
+	 */
+	protected TupleJsonDeserializer(Class<T> type, String... fields)
+	{
+		this.type = type;
+		this.fields = fields;
+	}
+
+	@Override
+	public T deserialize(JsonParser parser, DeserializationContext context)
+	throws IOException
+	{
+		final Object[] values = new Object[fields.length];
+		JsonToken token = parser.getCurrentToken();
+		if (token == JsonToken.START_ARRAY)
+		{
+			for (int index = 0; (token = parser.nextToken()) != JsonToken.END_ARRAY; index++)
+			{
+				if (token == null) throw context.mappingException("Unexpected end of " + type.getSimpleName());
+
+				if (index < fields.length)
+				{
+					values[index] = readValue(index, parser, context);
+				}
+				else
+				{
+					parser.skipChildren();
+				}
+			}
+			return create(values, context);
+		}
+
+		if (token == JsonToken.START_OBJECT)
+		{
+			token = parser.nextToken();
+		}
+
+		for (; token == JsonToken.FIELD_NAME; token = parser.nextToken())
+		{
+			final String name = parser.getCurrentName();
+			final int index = indexOf(name);
+			parser.nextToken();
+			if (index < 0)
+			{
+				if (!context.handleUnknownProperty(parser, this, type, name))
+				{
+					context.reportUnknownProperty(type, name, this);
+					parser.skipChildren();
+				}
+			}
+			else
+			{
+				values[index] = readValue(index, parser, context);
+			}
+		}
+
+		if (token != JsonToken.END_OBJECT)
+		{
+			throw context.wrongTokenException(parser, JsonToken.END_OBJECT,
+			    "Expected " + type.getSimpleName() + " object or array");
+		}
+
+		return create(values, context);
+	}
+
+	private int indexOf(String name)
+	{
+		for (int i = 0; i < fields.length; i++)
+		{
+			if (fields[i].equals(name)) return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Read the value of a field. The parser is at the first token of the value,
+	 * and is left at the last token of the value.
+	 * @param index The index of the field.
+	 * @param parser The parser.
+	 * @param context The deserialization context.
+	 * @return The value of the field.
+	 * @throws IOException The value was invalid.
+	 */
+	protected abstract Object readValue(int index, JsonParser parser, DeserializationContext context)
+	throws IOException;
+
+	/**
+	 * Create the model.
+	 * @param values The values of the fields by field index.
+	 * @param context The deserialization context.
+	 * @return The created model.
+	 * @throws IOException The model could not be created from the values.
+	 */
+	protected abstract T create(Object[] values, DeserializationContext context)
+	throws IOException;
+
+	protected static Integer readInteger(JsonParser parser, DeserializationContext context)
+	throws IOException
+	{
+		switch (parser.getCurrentToken())
+		{
+			case VALUE_NULL:
+				return null;
+			case VALUE_NUMBER_INT:
+				return parser.getIntValue();
+			default:
+				throw context.wrongTokenException(parser, JsonToken.VALUE_NUMBER_INT, "Expected an integer");
+		}
+	}
+
+	protected static Double readDouble(JsonParser parser, DeserializationContext context)
+	throws IOException
+	{
+		switch (parser.getCurrentToken())
+		{
+			case VALUE_NULL:
+				return null;
+			case VALUE_NUMBER_INT:
+			case VALUE_NUMBER_FLOAT:
+				return parser.getDoubleValue();
+			default:
+				throw context.wrongTokenException(parser, JsonToken.VALUE_NUMBER_FLOAT, "Expected a number");
+		}
+	}
+
+	protected static String readString(JsonParser parser, DeserializationContext context)
+	throws IOException
+	{
+		switch (parser.getCurrentToken())
+		{
+			case VALUE_NULL:
+				return null;
+			case VALUE_STRING:
+				return parser.getText();
+			default:
+				throw context.wrongTokenException(parser, JsonToken.VALUE_STRING, "Expected a string");
+		}
+	}
+
+	protected static LocalDateTime readTime(JsonParser parser, DeserializationContext context)
+	throws IOException
+	{
+		final String value = readString(parser, context);
+		try
+		{
+			return value == null ? null : parseTime(value);
+		}
+		catch (DateTimeException e)
+		{
+			throw context.weirdStringException(value, LocalDateTime.class, e.getMessage());
+		}
+	}
+
+	/**
+	 * Parse an ISO local date time. The times with minutes or seconds written
+	 * by the serializers are parsed directly, and the other times with the ISO
+	 * formatter.
+	 * @param value The parsed time.
+	 * @return The time.
+	 * @throws DateTimeException The time was invalid.
+	 */
+	static LocalDateTime parseTime(String value)
+	throws DateTimeException
+	{
+		final int length = value.length();
+		if ((length == 16 || (length == 19 && value.charAt(16) == ':')) && value.charAt(4) == '-'
+		    && value.charAt(7) == '-' && value.charAt(10) == 'T' && value.charAt(13) == ':')
+		{
+			final int year = digits(value, 0, 4);
+			final int month = digits(value, 5, 7);
+			final int day = digits(value, 8, 10);
+			final int hour = digits(value, 11, 13);
+			final int minute = digits(value, 14, 16);
+			final int second = length == 19 ? digits(value, 17, 19) : 0;
+			if ((year | month | day | hour | minute | second) >= 0)
+			{
+				return LocalDateTime.of(year, month, day, hour, minute, second);
+			}
+		}
+
+		return LocalDateTime.parse(value);
+	}
+
+	/**
+	 * Parse the decimal digits of a string.
+	 * @param value The string.
+	 * @param start The index of the first digit.
+	 * @param end The index after the last digit.
+	 * @return The value of the digits, or a negative value, if any character
+	 * was not a digit.
+	 */
+	private static int digits(String value, int start, int end)
+	{
+		int result = 0;
+		for (int i = start; i < end; i++)
+		{
+			final int digit = value.charAt(i) - '0';
+			if (digit < 0 || digit > 9) return -1;
+
+			result = result * 10 + digit;
+		}
+		return result;
+	}
+}
@@ -2,12 +2,33 @@ package com.kautiainen.antti.solita.serialization;
 
 import org.restexpress.serialization.xml.XstreamXmlProcessor;
 
+import com.kautiainen.antti.solita.exceptions.InvalidFieldsException;
+import com.kautiainen.antti.solita.importer.ImportJob;
+import com.kautiainen.antti.solita.metrics.RouteMetrics;
+import com.kautiainen.antti.solita.model.Batch;
+import com.kautiainen.antti.solita.model.BatchResult;
+import com.kautiainen.antti.solita.model.StationDetails;
+import com.kautiainen.antti.solita.query.JourneyAggregate;
+import com.kautiainen.antti.solita.statistics.JourneyRollups;
+import com.kautiainen.antti.solita.statistics.StationStatistics;
+
 public class XmlSerializationProcessor
 extends XstreamXmlProcessor
 {
 	public XmlSerializationProcessor()
     {
 	    super();
+	    alias("stationDetails", StationDetails.class);
+	    alias("stationCount", StationStatistics.StationCount.class);
+	    alias("routeMetrics", RouteMetrics.Summary.class);
+	    alias("rollup", JourneyRollups.Rollup.class);
+	    alias("journeyAggregate", JourneyAggregate.class);
+	    alias("stationBatch", Batch.Stations.class);
+	    alias("journeyBatch", Batch.Journeys.class);
+	    alias("batchResult", BatchResult.class);
+	    alias("importJob", ImportJob.class);
+	    alias("fieldError", InvalidFieldsException.FieldError.class);
+	    getXStream().registerConverter(new StationNamesXmlConverter());
 //		alias("element_name", Element.class);
 //		alias("element_name", Element.class);
 //		alias("element_name", Element.class);
@@ -0,0 +1,462 @@
+package com.kautiainen.antti.solita.statistics;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.kautiainen.antti.solita.storage.JourneyStore;
+import com.kautiainen.antti.solita.storage.JourneyStore.Columns;
+
+/**
+ * Rollups of the journeys in time buckets updated incrementally as the
+ * journeys of a journey store change.
+ * 
+ * The journeys of the network are counted in hourly, daily and monthly buckets
+ * by their departure time. The journeys of a station are counted in daily and
+ * monthly buckets by their departure time at the departure station and by
+ * their return time at the return station. A bucket holds the number of the
+ * journeys and the sums of their distances and durations, so the range
+ * queries sum the buckets of the range instead of scanning the journeys. The
+ * journeys without the time are not counted.
+ */
+public class JourneyRollups implements JourneyStore.Listener {
+
+    /**
+     * The length of the buckets.
+     */
+    public static enum Interval {
+        HOUR, DAY, MONTH;
+    }
+
+    /**
+     * The end of the journeys counted for a station.
+     */
+    public static enum Direction {
+        DEPARTURE, RETURN;
+    }
+
+    /**
+     * The aggregate of the journeys of a bucket or a range of buckets.
+     */
+    public static final class Rollup {
+        private final LocalDateTime start;
+
+        private final long journeys;
+
+        private final Double averageDistance;
+
+        private final Double averageDuration;
+
+        public Rollup(LocalDateTime start, long journeys, Double averageDistance, Double averageDuration) {
+            this.start = start;
+            this.journeys = journeys;
+            this.averageDistance = averageDistance;
+            this.averageDuration = averageDuration;
+        }
+
+        /**
+         * Get the start of the bucket.
+         * 
+         * @return The start time of the first bucket of the aggregate.
+         */
+        public LocalDateTime getStart() {
+            return start;
+        }
+
+        /**
+         * Get the number of the journeys.
+         * 
+         * @return The number of the journeys.
+         */
+        public long getJourneys() {
+            return journeys;
+        }
+
+        /**
+         * Get the average distance of the journeys.
+         * 
+         * @return The average distance in metres, or an undefined value, if no
+         *         journey has a distance.
+         */
+        public Double getAverageDistance() {
+            return averageDistance;
+        }
+
+        /**
+         * Get the average duration of the journeys.
+         * 
+         * @return The average duration in seconds, or an undefined value, if no
+         *         journey has a duration.
+         */
+        public Double getAverageDuration() {
+            return averageDuration;
+        }
+    }
+
+    /**
+     * The counters of the buckets of consecutive keys. The counters are stored
+     * in columns indexed by the key relative to the first key of the chunk.
+     */
+    private static final class Chunk {
+        final int[] journeys = new int[CHUNK_SIZE];
+        final int[] distances = new int[CHUNK_SIZE];
+        final long[] distanceSums = new long[CHUNK_SIZE];
+        final int[] durations = new int[CHUNK_SIZE];
+        final long[] durationSums = new long[CHUNK_SIZE];
+    }
+
+    /**
+     * The buckets of an interval in chunks of consecutive keys, so the sparse
+     * keys, such as the times of the misdated journeys, do not need the
+     * buckets between them.
+     */
+    private static final class Buckets {
+        final TreeMap<Long, Chunk> chunks = new TreeMap<>();
+
+        /**
+         * The last changed chunk and its index, which are changed again by the
+         * journeys of the same period without looking up the chunk.
+         */
+        private Chunk lastChunk = null;
+        private long lastIndex = 0;
+
+        /**
+         * Change the counters of a bucket.
+         * 
+         * @param key      The key of the bucket.
+         * @param distance The distance of the journey, or
+         *                 {@link JourneyStore#MISSING}.
+         * @param duration The duration of the journey, or
+         *                 {@link JourneyStore#MISSING}.
+         * @param change   The change of the journey count.
+         */
+        void add(long key, int distance, int duration, int change) {
+            final long chunkIndex = Math.floorDiv(key, CHUNK_SIZE);
+            if (lastChunk == null || lastIndex != chunkIndex) {
+                lastChunk = chunks.computeIfAbsent(chunkIndex, (index) -> new Chunk());
+                lastIndex = chunkIndex;
+            }
+            final Chunk chunk = lastChunk;
+            final int index = Math.floorMod(key, CHUNK_SIZE);
+            chunk.journeys[index] += change;
+            if (distance != JourneyStore.MISSING) {
+                chunk.distances[index] += change;
+                chunk.distanceSums[index] += change * (long) distance;
+            }
+            if (duration != JourneyStore.MISSING) {
+                chunk.durations[index] += change;
+                chunk.durationSums[index] += change * (long) duration;
+            }
+        }
+
+        /**
+         * Visit the buckets with journeys within a range of keys.
+         * 
+         * @param first   The first key.
+         * @param last    The last key.
+         * @param visitor The visitor of the buckets.
+         */
+        void forEach(long first, long last, BucketVisitor visitor) {
+            if (first > last) {
+                return;
+            }
+            final long firstChunk = Math.floorDiv(first, CHUNK_SIZE);
+            final long lastChunk = Math.floorDiv(last, CHUNK_SIZE);
+            for (Map.Entry<Long, Chunk> entry : chunks.subMap(firstChunk, true, lastChunk, true).entrySet()) {
+                final long base = entry.getKey() * CHUNK_SIZE;
+                final Chunk chunk = entry.getValue();
+                final int from = (int) Math.max(0, first - base);
+                final int to = (int) Math.min(CHUNK_SIZE - 1, last - base);
+                for (int index = from; index <= to; index++) {
+                    if (chunk.journeys[index] > 0) {
+                        visitor.visit(base + index, chunk, index);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Visitor of the buckets.
+     */
+    private static interface BucketVisitor {
+        void visit(long key, Chunk chunk, int index);
+    }
+
+    /**
+     * The buckets of the journeys by interval. The buckets are guarded by the
+     * monitor of the series.
+     */
+    private static final class Series {
+        final Buckets[] buckets = new Buckets[Interval.values().length];
+
+        Series(boolean hourly) {
+            for (Interval interval : Interval.values()) {
+                if (hourly || interval != Interval.HOUR) {
+                    buckets[interval.ordinal()] = new Buckets();
+                }
+            }
+        }
+
+        void add(long[] keys, int distance, int duration, int change) {
+            for (int i = 0; i < keys.length; i++) {
+                if (buckets[i] != null) {
+                    buckets[i].add(keys[i], distance, duration, change);
+                }
+            }
+        }
+    }
+
+    /**
+     * The number of the buckets of a chunk.
+     */
+    private static final int CHUNK_SIZE = 64;
+
+    private static final long HOUR_SECONDS = 3600;
+
+    private static final long DAY_SECONDS = 24 * HOUR_SECONDS;
+
+    private final Series network = new Series(true);
+
+    private final Map<Integer, Series> departures = new ConcurrentHashMap<>();
+
+    private final Map<Integer, Series> returns = new ConcurrentHashMap<>();
+
+    /**
+     * Create the rollups of the journeys of a store.
+     * 
+     * @param store The journey store. The rollups start with the journeys in
+     *              the store.
+     */
+    public JourneyRollups(JourneyStore store) {
+        // The writers of the store are excluded until the listener is added.
+        store.getLock().lock();
+        try {
+            Columns columns = store.getColumns();
+            for (int row = 0; row < columns.size(); row++) {
+                if (!columns.isDeleted(row)) {
+                    added(columns, row);
+                }
+            }
+            store.addListener(this);
+        } finally {
+            store.getLock().unlock();
+        }
+    }
+
+    @Override
+    public void added(Columns columns, int row) {
+        update(columns, row, 1);
+    }
+
+    @Override
+    public void removed(Columns columns, int row) {
+        update(columns, row, -1);
+    }
+
+    /**
+     * Update the buckets of a journey.
+     * 
+     * @param columns The columns.
+     * @param row     The row of the journey.
+     * @param change  The change of the journey count.
+     */
+    private void update(Columns columns, int row, int change) {
+        final long departureTime = columns.getDepartureTime(row);
+        final long returnTime = columns.getReturnTime(row);
+        final int departure = columns.getDepartureStation(row);
+        final int destination = columns.getReturnStation(row);
+        final int distance = columns.getDistance(row);
+        final int duration = columns.getDuration(row);
+        if (departureTime != JourneyStore.MISSING_TIME) {
+            final long[] keys = keysOf(departureTime);
+            add(network, keys, distance, duration, change);
+            if (departure != JourneyStore.MISSING) {
+                add(departures.computeIfAbsent(departure, (id) -> new Series(false)), keys, distance, duration,
+                        change);
+            }
+        }
+        if (returnTime != JourneyStore.MISSING_TIME && destination != JourneyStore.MISSING) {
+            add(returns.computeIfAbsent(destination, (id) -> new Series(false)), keysOf(returnTime), distance,
+                    duration, change);
+        }
+    }
+
+    private static void add(Series series, long[] keys, int distance, int duration, int change) {
+        synchronized (series) {
+            series.add(keys, distance, duration, change);
+        }
+    }
+
+    /**
+     * Get the keys of the buckets of a time.
+     *
+     * @param time The time in epoch seconds of the local time.
+     * @return The keys of the buckets by the ordinal of the interval.
+     */
+    private static long[] keysOf(long time) {
+        final Interval[] intervals = Interval.values();
+        long[] result = new long[intervals.length];
+        for (int i = 0; i < intervals.length; i++) {
+            result[i] = keyOf(intervals[i], time);
+        }
+        return result;
+    }
+
+    /**
+     * Get the key of the bucket of a time.
+     * 
+     * @param interval The interval of the buckets.
+     * @param time     The time in epoch seconds of the local time.
+     * @return The number of the intervals from the epoch to the bucket.
+     */
+    private static long keyOf(Interval interval, long time) {
+        switch (interval) {
+        case HOUR:
+            return Math.floorDiv(time, HOUR_SECONDS);
+        case DAY:
+            return Math.floorDiv(time, DAY_SECONDS);
+        default:
+            LocalDate date = LocalDate.ofEpochDay(Math.floorDiv(time, DAY_SECONDS));
+            return date.getYear() * 12L + date.getMonthValue() - 1;
+        }
+    }
+
+    /**
+     * Get the start of a bucket.
+     * 
+     * @param interval The interval of the buckets.
+     * @param key      The key of the bucket.
+     * @return The start time of the bucket.
+     */
+    private static LocalDateTime startOf(Interval interval, long key) {
+        switch (interval) {
+        case HOUR:
+            return LocalDateTime.ofEpochSecond(key * HOUR_SECONDS, 0, ZoneOffset.UTC);
+        case DAY:
+            return LocalDateTime.ofEpochSecond(key * DAY_SECONDS, 0, ZoneOffset.UTC);
+        default:
+            return LocalDate.of((int) Math.floorDiv(key, 12L), (int) Math.floorMod(key, 12L) + 1, 1).atStartOfDay();
+        }
+    }
+
+    /**
+     * Does a series have the buckets of an interval.
+     * 
+     * @param interval The interval.
+     * @param station  The station identifier, or an undefined value for the
+     *                 network.
+     * @return True, if and only if the buckets of the interval are kept.
+     */
+    public static boolean isSupported(Interval interval, Integer station) {
+        return station == null || interval != Interval.HOUR;
+    }
+
+    /**
+     * Get the journeys of the buckets overlapping a range.
+     * 
+     * @param interval  The interval of the buckets.
+     * @param station   The station identifier, or an undefined value for the
+     *                  journeys of the network.
+     * @param direction The end of the journeys counted for the station.
+     * @param from      The start of the range, or an undefined value for the
+     *                  first bucket.
+     * @param to        The exclusive end of the range, or an undefined value
+     *                  for the last bucket.
+     * @return The buckets with journeys in the order of their start.
+     * @throws IllegalArgumentException The buckets of the interval are not
+     *                                  kept for the station.
+     */
+    public List<Rollup> query(Interval interval, Integer station, Direction direction, LocalDateTime from,
+            LocalDateTime to) throws IllegalArgumentException {
+        final List<Rollup> result = new ArrayList<>();
+        final Series series = seriesOf(interval, station, direction);
+        if (series == null) {
+            return result;
+        }
+        final long[] range = rangeOf(interval, from, to);
+        synchronized (series) {
+            series.buckets[interval.ordinal()].forEach(range[0], range[1],
+                    (key, chunk, index) -> result.add(new Rollup(startOf(interval, key), chunk.journeys[index],
+                            average(chunk.distanceSums[index], chunk.distances[index]),
+                            average(chunk.durationSums[index], chunk.durations[index]))));
+        }
+        return result;
+    }
+
+    /**
+     * Get the total of the journeys of the buckets overlapping a range.
+     * 
+     * @param interval  The interval of the buckets.
+     * @param station   The station identifier, or an undefined value for the
+     *                  journeys of the network.
+     * @param direction The end of the journeys counted for the station.
+     * @param from      The start of the range, or an undefined value for the
+     *                  first bucket.
+     * @param to        The exclusive end of the range, or an undefined value
+     *                  for the last bucket.
+     * @return The total of the buckets starting from the first bucket with
+     *         journeys, or from the start of the range, if it has no journeys.
+     * @throws IllegalArgumentException The buckets of the interval are not
+     *                                  kept for the station.
+     */
+    public Rollup total(Interval interval, Integer station, Direction direction, LocalDateTime from,
+            LocalDateTime to) throws IllegalArgumentException {
+        // The first key and the sums of the journeys, distances and durations.
+        final long[] totals = { Long.MIN_VALUE, 0, 0, 0, 0, 0 };
+        final Series series = seriesOf(interval, station, direction);
+        if (series != null) {
+            final long[] range = rangeOf(interval, from, to);
+            synchronized (series) {
+                series.buckets[interval.ordinal()].forEach(range[0], range[1], (key, chunk, index) -> {
+                    if (totals[0] == Long.MIN_VALUE) {
+                        totals[0] = key;
+                    }
+                    totals[1] += chunk.journeys[index];
+                    totals[2] += chunk.distances[index];
+                    totals[3] += chunk.distanceSums[index];
+                    totals[4] += chunk.durations[index];
+                    totals[5] += chunk.durationSums[index];
+                });
+            }
+        }
+        return new Rollup(totals[0] == Long.MIN_VALUE ? from : startOf(interval, totals[0]), totals[1],
+                average(totals[3], totals[2]), average(totals[5], totals[4]));
+    }
+
+    private Series seriesOf(Interval interval, Integer station, Direction direction)
+            throws IllegalArgumentException {
+        if (!isSupported(interval, station)) {
+            throw new IllegalArgumentException("No " + interval + " buckets of stations");
+        }
+        return station == null ? network : (direction == Direction.RETURN ? returns : departures).get(station);
+    }
+
+    /**
+     * Get the keys of the buckets overlapping a range.
+     * 
+     * @param interval The interval of the buckets.
+     * @param from     The start of the range, or an undefined value for no
+     *                 lower bound.
+     * @param to       The exclusive end of the range, or an undefined value for
+     *                 no upper bound.
+     * @return The first and the last key, which is less than the first key, if
+     *         the range is empty.
+     */
+    private static long[] rangeOf(Interval interval, LocalDateTime from, LocalDateTime to) {
+        final long first = from == null ? Long.MIN_VALUE / 2
+                : keyOf(interval, from.toEpochSecond(ZoneOffset.UTC));
+        final long last = to == null ? Long.MAX_VALUE / 2
+                : keyOf(interval, to.toEpochSecond(ZoneOffset.UTC) - 1);
+        return new long[] { first, last };
+    }
+
+    private static Double average(long sum, long count) {
+        return count == 0 ? null : (double) sum / count;
+    }
+}
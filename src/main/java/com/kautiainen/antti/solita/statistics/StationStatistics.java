@@ -0,0 +1,123 @@
+package com.kautiainen.antti.solita.statistics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The statistics of the journeys of a station.
+ */
+public class StationStatistics {
+
+    /**
+     * The number of journeys between a station and another station.
+     */
+    public static class StationCount {
+        private final int station;
+
+        private final long journeys;
+
+        public StationCount(int station, long journeys) {
+            this.station = station;
+            this.journeys = journeys;
+        }
+
+        /**
+         * Get the other station.
+         * 
+         * @return The identifier of the other station.
+         */
+        public int getStation() {
+            return station;
+        }
+
+        /**
+         * Get the number of journeys.
+         * 
+         * @return The number of journeys between the stations.
+         */
+        public long getJourneys() {
+            return journeys;
+        }
+    }
+
+    private final long departures;
+
+    private final long returns;
+
+    private final Double averageDepartureDistance;
+
+    private final Double averageReturnDistance;
+
+    private final List<StationCount> topDestinations;
+
+    private final List<StationCount> topOrigins;
+
+    public StationStatistics(long departures, long returns, Double averageDepartureDistance,
+            Double averageReturnDistance, List<StationCount> topDestinations, List<StationCount> topOrigins) {
+        this.departures = departures;
+        this.returns = returns;
+        this.averageDepartureDistance = averageDepartureDistance;
+        this.averageReturnDistance = averageReturnDistance;
+        this.topDestinations = new ArrayList<>(topDestinations);
+        this.topOrigins = new ArrayList<>(topOrigins);
+    }
+
+    /**
+     * Get the number of journeys starting from the station.
+     * 
+     * @return The number of departures.
+     */
+    public long getDepartures() {
+        return departures;
+    }
+
+    /**
+     * Get the number of journeys ending at the station.
+     * 
+     * @return The number of returns.
+     */
+    public long getReturns() {
+        return returns;
+    }
+
+    /**
+     * Get the average distance of the journeys starting from the station.
+     * 
+     * @return The average distance, or an undefined value, if no departure has
+     *         a distance.
+     */
+    public Double getAverageDepartureDistance() {
+        return averageDepartureDistance;
+    }
+
+    /**
+     * Get the average distance of the journeys ending at the station.
+     * 
+     * @return The average distance, or an undefined value, if no return has a
+     *         distance.
+     */
+    public Double getAverageReturnDistance() {
+        return averageReturnDistance;
+    }
+
+    /**
+     * Get the most common return stations of the journeys starting from the
+     * station.
+     * 
+     * @return The destinations in descending order of journeys.
+     */
+    public List<StationCount> getTopDestinations() {
+        return Collections.unmodifiableList(topDestinations);
+    }
+
+    /**
+     * Get the most common departure stations of the journeys ending at the
+     * station.
+     * 
+     * @return The origins in descending order of journeys.
+     */
+    public List<StationCount> getTopOrigins() {
+        return Collections.unmodifiableList(topOrigins);
+    }
+}
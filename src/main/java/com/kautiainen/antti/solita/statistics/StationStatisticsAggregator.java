@@ -0,0 +1,211 @@
+package com.kautiainen.antti.solita.statistics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.kautiainen.antti.solita.statistics.StationStatistics.StationCount;
+import com.kautiainen.antti.solita.storage.JourneyStore;
+import com.kautiainen.antti.solita.storage.JourneyStore.Columns;
+
+/**
+ * Aggregator of the station statistics updated incrementally as the journeys
+ * of a journey store change.
+ * 
+ * Each update changes the counters of the departure and the return stations
+ * of the journey. The statistics of a station are computed when they are read
+ * after a change, and otherwise read from the cache.
+ */
+public class StationStatisticsAggregator implements JourneyStore.Listener {
+
+    /**
+     * The number of the top destinations and origins.
+     */
+    public static final int TOP_COUNT = 5;
+
+    /**
+     * The counters of a station. The counters are guarded by the monitor of
+     * the counters.
+     */
+    private static final class Counters {
+        long departures = 0;
+        long returns = 0;
+        long departureDistances = 0;
+        long departureDistanceSum = 0;
+        long returnDistances = 0;
+        long returnDistanceSum = 0;
+        final Map<Integer, long[]> destinations = new HashMap<>();
+        final Map<Integer, long[]> origins = new HashMap<>();
+
+        /**
+         * The statistics computed after the last change.
+         */
+        volatile StationStatistics statistics = null;
+    }
+
+    private static final StationStatistics NO_STATISTICS = new StationStatistics(0, 0, null, null,
+            new ArrayList<StationCount>(), new ArrayList<StationCount>());
+
+    private final Map<Integer, Counters> stations = new ConcurrentHashMap<>();
+
+    /**
+     * Create an aggregator of the journeys of a store.
+     * 
+     * @param store The journey store. The aggregator starts with the journeys
+     *              in the store.
+     */
+    public StationStatisticsAggregator(JourneyStore store) {
+        // The writers of the store are excluded until the listener is added.
+        store.getLock().lock();
+        try {
+            Columns columns = store.getColumns();
+            for (int row = 0; row < columns.size(); row++) {
+                if (!columns.isDeleted(row)) {
+                    added(columns, row);
+                }
+            }
+            store.addListener(this);
+        } finally {
+            store.getLock().unlock();
+        }
+    }
+
+    @Override
+    public void added(Columns columns, int row) {
+        update(columns, row, 1);
+    }
+
+    @Override
+    public void removed(Columns columns, int row) {
+        update(columns, row, -1);
+    }
+
+    /**
+     * Update the counters of the stations of a journey.
+     * 
+     * @param columns The columns.
+     * @param row     The row of the journey.
+     * @param change  The change of the journey count.
+     */
+    private void update(Columns columns, int row, int change) {
+        final int departure = columns.getDepartureStation(row);
+        final int destination = columns.getReturnStation(row);
+        final int distance = columns.getDistance(row);
+        if (departure != JourneyStore.MISSING) {
+            Counters counters = stations.computeIfAbsent(departure, (id) -> new Counters());
+            synchronized (counters) {
+                counters.departures += change;
+                if (distance != JourneyStore.MISSING) {
+                    counters.departureDistances += change;
+                    counters.departureDistanceSum += change * (long) distance;
+                }
+                if (destination != JourneyStore.MISSING) {
+                    count(counters.destinations, destination, change);
+                }
+                counters.statistics = null;
+            }
+        }
+        if (destination != JourneyStore.MISSING) {
+            Counters counters = stations.computeIfAbsent(destination, (id) -> new Counters());
+            synchronized (counters) {
+                counters.returns += change;
+                if (distance != JourneyStore.MISSING) {
+                    counters.returnDistances += change;
+                    counters.returnDistanceSum += change * (long) distance;
+                }
+                if (departure != JourneyStore.MISSING) {
+                    count(counters.origins, departure, change);
+                }
+                counters.statistics = null;
+            }
+        }
+    }
+
+    private static void count(Map<Integer, long[]> counts, int station, int change) {
+        long[] count = counts.computeIfAbsent(station, (id) -> new long[1]);
+        count[0] += change;
+        if (count[0] <= 0) {
+            counts.remove(station);
+        }
+    }
+
+    /**
+     * Get the statistics of a station.
+     * 
+     * @param station The station identifier.
+     * @return The statistics of the station.
+     */
+    public StationStatistics getStatistics(int station) {
+        Counters counters = stations.get(station);
+        if (counters == null) {
+            return NO_STATISTICS;
+        }
+        StationStatistics result = counters.statistics;
+        if (result == null) {
+            synchronized (counters) {
+                result = counters.statistics;
+                if (result == null) {
+                    result = new StationStatistics(counters.departures, counters.returns,
+                            average(counters.departureDistanceSum, counters.departureDistances),
+                            average(counters.returnDistanceSum, counters.returnDistances),
+                            top(counters.destinations), top(counters.origins));
+                    counters.statistics = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Is a station referenced by any journey.
+     * 
+     * @param station The station identifier.
+     * @return True, if and only if any journey departs from or returns to the
+     *         station.
+     */
+    public boolean isReferenced(int station) {
+        Counters counters = stations.get(station);
+        if (counters == null) {
+            return false;
+        }
+        synchronized (counters) {
+            return counters.departures + counters.returns > 0;
+        }
+    }
+
+    private static Double average(long sum, long count) {
+        return count == 0 ? null : (double) sum / count;
+    }
+
+    /**
+     * Select the stations with the most journeys.
+     * 
+     * @param counts The journey counts by station.
+     * @return At most {@link #TOP_COUNT} stations in descending order of
+     *         journeys, and the stations with equal journeys in ascending order.
+     */
+    private static List<StationCount> top(Map<Integer, long[]> counts) {
+        List<StationCount> result = new ArrayList<>(TOP_COUNT + 1);
+        for (Map.Entry<Integer, long[]> entry : counts.entrySet()) {
+            StationCount candidate = new StationCount(entry.getKey(), entry.getValue()[0]);
+            int at = result.size();
+            while (at > 0 && precedes(candidate, result.get(at - 1))) {
+                at--;
+            }
+            if (at < TOP_COUNT) {
+                result.add(at, candidate);
+                if (result.size() > TOP_COUNT) {
+                    result.remove(TOP_COUNT);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean precedes(StationCount count, StationCount other) {
+        return count.getJourneys() > other.getJourneys()
+                || (count.getJourneys() == other.getJourneys() && count.getStation() < other.getStation());
+    }
+}
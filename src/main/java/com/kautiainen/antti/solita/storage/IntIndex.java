@@ -0,0 +1,237 @@
+package com.kautiainen.antti.solita.storage;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Primitive open addressing index from integer keys to non-negative integer
+ * values.
+ * 
+ * The index allows one writer at a time, and the writers must be synchronized
+ * by the owner of the index. The readers never lock: the value of a bucket is
+ * always written before its key, and a resized table is published only after
+ * it has been filled.
+ * 
+ * Removed keys leave a tombstone which is reused if the key is added again,
+ * and dropped when the table is rebuilt.
+ */
+public class IntIndex {
+
+    /**
+     * The value of a key without a value.
+     */
+    public static final int MISSING = -1;
+
+    /**
+     * The key of an unused bucket. The key cannot be stored into the index.
+     */
+    private static final int EMPTY_KEY = Integer.MIN_VALUE;
+
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * The buckets of the index.
+     */
+    private static final class Table {
+        final AtomicIntegerArray keys;
+        final AtomicIntegerArray values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new AtomicIntegerArray(capacity);
+            values = new AtomicIntegerArray(capacity);
+            mask = capacity - 1;
+            for (int i = 0; i < capacity; i++) {
+                keys.lazySet(i, EMPTY_KEY);
+                values.lazySet(i, MISSING);
+            }
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+    }
+
+    private volatile Table table;
+
+    /**
+     * The number of keys with a value.
+     */
+    private int size = 0;
+
+    /**
+     * The number of buckets with a key including the tombstones.
+     */
+    private int used = 0;
+
+    /**
+     * Create a new empty index.
+     */
+    public IntIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Create a new empty index.
+     * 
+     * @param expectedSize The expected number of keys.
+     */
+    public IntIndex(int expectedSize) {
+        this.table = new Table(capacityFor(expectedSize));
+    }
+
+    /**
+     * Get the table capacity suitable for a number of keys.
+     * 
+     * @param size The number of keys.
+     * @return The power of two capacity keeping the load below three quarters.
+     */
+    private static int capacityFor(int size) {
+        long required = Math.max(MIN_CAPACITY, (size * 4L) / 3 + 1);
+        if (required > (1 << 30)) {
+            throw new IllegalStateException("Index capacity exceeded");
+        }
+        return Integer.highestOneBit((int) required - 1) << 1;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Get the value of a key.
+     * 
+     * @param key The key.
+     * @return The value of the key, or {@link #MISSING}, if the key has no value.
+     */
+    public int get(int key) {
+        final Table current = table;
+        int bucket = hash(key) & current.mask;
+        while (true) {
+            int stored = current.keys.get(bucket);
+            if (stored == key) {
+                return current.values.get(bucket);
+            } else if (stored == EMPTY_KEY) {
+                return MISSING;
+            }
+            bucket = (bucket + 1) & current.mask;
+        }
+    }
+
+    /**
+     * Does the index contain a value for the key.
+     * 
+     * @param key The key.
+     * @return True, if and only if the key has a value.
+     */
+    public boolean containsKey(int key) {
+        return get(key) != MISSING;
+    }
+
+    /**
+     * Set the value of a key.
+     * 
+     * @param key   The key.
+     * @param value The new value of the key.
+     * @return The previous value of the key, or {@link #MISSING}, if the key had
+     *         no value.
+     * @throws IllegalArgumentException The key or the value was invalid.
+     */
+    public int put(int key, int value) throws IllegalArgumentException {
+        if (key == EMPTY_KEY) {
+            throw new IllegalArgumentException("Invalid key");
+        }
+        if (value < 0) {
+            throw new IllegalArgumentException("Invalid value");
+        }
+        Table current = table;
+        int bucket = hash(key) & current.mask;
+        while (true) {
+            int stored = current.keys.get(bucket);
+            if (stored == key) {
+                int previous = current.values.getAndSet(bucket, value);
+                if (previous == MISSING) {
+                    size++;
+                }
+                return previous;
+            } else if (stored == EMPTY_KEY) {
+                current.values.set(bucket, value);
+                current.keys.set(bucket, key);
+                size++;
+                used++;
+                if (used > (current.capacity() / 4) * 3) {
+                    rebuild(capacityFor(size));
+                }
+                return MISSING;
+            }
+            bucket = (bucket + 1) & current.mask;
+        }
+    }
+
+    /**
+     * Remove the value of a key.
+     * 
+     * @param key The key.
+     * @return The removed value, or {@link #MISSING}, if the key had no value.
+     */
+    public int remove(int key) {
+        Table current = table;
+        int bucket = hash(key) & current.mask;
+        while (true) {
+            int stored = current.keys.get(bucket);
+            if (stored == key) {
+                int previous = current.values.getAndSet(bucket, MISSING);
+                if (previous != MISSING) {
+                    size--;
+                }
+                return previous;
+            } else if (stored == EMPTY_KEY) {
+                return MISSING;
+            }
+            bucket = (bucket + 1) & current.mask;
+        }
+    }
+
+    /**
+     * Rebuild the table without tombstones.
+     * 
+     * @param capacity The capacity of the new table.
+     */
+    private void rebuild(int capacity) {
+        Table current = table;
+        Table result = new Table(capacity);
+        for (int i = 0; i < current.capacity(); i++) {
+            int key = current.keys.get(i);
+            int value = current.values.get(i);
+            if (key != EMPTY_KEY && value != MISSING) {
+                int bucket = hash(key) & result.mask;
+                while (result.keys.get(bucket) != EMPTY_KEY) {
+                    bucket = (bucket + 1) & result.mask;
+                }
+                result.values.lazySet(bucket, value);
+                result.keys.lazySet(bucket, key);
+            }
+        }
+        used = size;
+        // The volatile write publishes the filled table.
+        table = result;
+    }
+
+    /**
+     * Remove all keys.
+     */
+    public void clear() {
+        table = new Table(MIN_CAPACITY);
+        size = 0;
+        used = 0;
+    }
+
+    /**
+     * Get the number of keys with a value.
+     * 
+     * @return The number of keys with a value.
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,1130 @@
+package com.kautiainen.antti.solita.storage;
+
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.kautiainen.antti.solita.exceptions.InvalidFieldsException;
+import com.kautiainen.antti.solita.model.BatchResult;
+import com.kautiainen.antti.solita.model.Journey;
+import com.kautiainen.antti.solita.model.PartialModel;
+import com.kautiainen.antti.solita.model.Station;
+
+/**
+ * Columnar journey storage keeping the journey fields in primitive arrays.
+ * 
+ * Each journey occupies one row of the columns. The rows are only appended:
+ * a removed journey leaves a deleted row, and a replaced journey is appended
+ * as a new row. Thus the row of a journey never moves within a
+ * {@link Generation}, and the journeys read from the store are flyweight
+ * views over their rows.
+ * 
+ * The rows are indexed by station with {@link PostingLists}, and by distance,
+ * duration and departure time with {@link RangeIndex}es. The deleted rows
+ * stay in the indexes until the deleted rows are at least as many as the
+ * stored journeys, when the remaining rows are compacted in order into a new
+ * generation with new indexes. Each row has a sequence number, which is
+ * increasing with the rows and kept by the compaction.
+ * 
+ * The writers hold the lock of the store, which is a {@link ReentrantLock}
+ * instead of a monitor, so a writer waiting for the journal does not pin the
+ * carrier thread of a virtual thread. The readers do not lock, and see the
+ * rows published by the latest completed write.
+ */
+public class JourneyStore {
+
+    /**
+     * The value of a missing integer field.
+     */
+    public static final int MISSING = Integer.MIN_VALUE;
+
+    /**
+     * The value of a missing time field.
+     */
+    public static final long MISSING_TIME = Long.MIN_VALUE;
+
+    /**
+     * The value of a missing field read with {@link Columns#getValue}.
+     */
+    public static final long MISSING_VALUE = Long.MIN_VALUE;
+
+    /**
+     * The queried columns.
+     */
+    public static enum Column {
+        DEPARTURE_STATION, RETURN_STATION, DISTANCE, DURATION, DEPARTURE_TIME, RETURN_TIME
+    }
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * The minimal number of the deleted rows compacted.
+     */
+    private static final int MIN_COMPACTED_ROWS = 1024;
+
+    /**
+     * Listener of the changes of the stored journeys. The listeners are called
+     * by the writer after the changed rows have been published.
+     */
+    public static interface Listener {
+
+        /**
+         * A journey was added.
+         * 
+         * @param columns The columns containing the row.
+         * @param row     The row of the added journey.
+         */
+        void added(Columns columns, int row);
+
+        /**
+         * A journey was removed.
+         * 
+         * @param columns The columns containing the row.
+         * @param row     The deleted row of the removed journey.
+         */
+        void removed(Columns columns, int row);
+    }
+
+    /**
+     * Write-ahead journal of the changes of the stored journeys. The journal
+     * is written by the writer before the changed rows are published, and a
+     * failing journal aborts the change.
+     */
+    public static interface Journal {
+
+        /**
+         * Journal an added or replacing journey.
+         * 
+         * @param columns The columns containing the row.
+         * @param row     The unpublished row of the journey.
+         * @throws UncheckedIOException The journal could not be written.
+         */
+        void put(Columns columns, int row) throws UncheckedIOException;
+
+        /**
+         * Journal a removed journey.
+         * 
+         * @param id The identifier of the removed journey.
+         * @throws UncheckedIOException The journal could not be written.
+         */
+        void remove(int id) throws UncheckedIOException;
+
+        /**
+         * Make the journaled changes durable.
+         * 
+         * @throws UncheckedIOException The journal could not be written.
+         */
+        void commit() throws UncheckedIOException;
+    }
+
+    /**
+     * The columns of the store. The column arrays are shared between the
+     * successive columns objects as long as the capacity suffices, and the
+     * rows below the size of a columns object are never altered except for
+     * the deleted flag.
+     */
+    public static final class Columns {
+        private final int size;
+        private final int[] ids;
+        private final int[] departureStations;
+        private final int[] returnStations;
+        private final int[] distances;
+        private final int[] durations;
+        private final long[] departureTimes;
+        private final long[] returnTimes;
+        private final long[] sequences;
+        private final long[] deleted;
+
+        private Columns(int capacity) {
+            this.size = 0;
+            this.ids = new int[capacity];
+            this.departureStations = new int[capacity];
+            this.returnStations = new int[capacity];
+            this.distances = new int[capacity];
+            this.durations = new int[capacity];
+            this.departureTimes = new long[capacity];
+            this.returnTimes = new long[capacity];
+            this.sequences = new long[capacity];
+            this.deleted = new long[(capacity + 63) >>> 6];
+        }
+
+        private Columns(Columns columns, int size) {
+            this(columns, size, columns.deleted);
+        }
+
+        private Columns(Columns columns, int size, long[] deleted) {
+            this.size = size;
+            this.ids = columns.ids;
+            this.departureStations = columns.departureStations;
+            this.returnStations = columns.returnStations;
+            this.distances = columns.distances;
+            this.durations = columns.durations;
+            this.departureTimes = columns.departureTimes;
+            this.returnTimes = columns.returnTimes;
+            this.sequences = columns.sequences;
+            this.deleted = deleted;
+        }
+
+        private Columns(Columns columns, int size, int capacity) {
+            this.size = size;
+            this.ids = Arrays.copyOf(columns.ids, capacity);
+            this.departureStations = Arrays.copyOf(columns.departureStations, capacity);
+            this.returnStations = Arrays.copyOf(columns.returnStations, capacity);
+            this.distances = Arrays.copyOf(columns.distances, capacity);
+            this.durations = Arrays.copyOf(columns.durations, capacity);
+            this.departureTimes = Arrays.copyOf(columns.departureTimes, capacity);
+            this.returnTimes = Arrays.copyOf(columns.returnTimes, capacity);
+            this.sequences = Arrays.copyOf(columns.sequences, capacity);
+            this.deleted = Arrays.copyOf(columns.deleted, (capacity + 63) >>> 6);
+        }
+
+        private int capacity() {
+            return ids.length;
+        }
+
+        /**
+         * Get columns whose rows are not deleted afterwards. The deleted flags
+         * are copied, and the caller has to hold the writer lock of the store.
+         * 
+         * @return The columns with the current deleted flags.
+         */
+        public Columns freeze() {
+            return new Columns(this, size, Arrays.copyOf(deleted, deleted.length));
+        }
+
+        /**
+         * Get the number of rows including the deleted rows.
+         * 
+         * @return The number of rows.
+         */
+        public int size() {
+            return size;
+        }
+
+        public boolean isDeleted(int row) {
+            return (deleted[row >>> 6] & (1L << row)) != 0;
+        }
+
+        public int getId(int row) {
+            return ids[row];
+        }
+
+        public int getDepartureStation(int row) {
+            return departureStations[row];
+        }
+
+        public int getReturnStation(int row) {
+            return returnStations[row];
+        }
+
+        public int getDistance(int row) {
+            return distances[row];
+        }
+
+        public int getDuration(int row) {
+            return durations[row];
+        }
+
+        /**
+         * Get the departure time of the row.
+         * 
+         * @param row The row.
+         * @return The departure time in epoch seconds of the local time, or
+         *         {@link JourneyStore#MISSING_TIME}.
+         */
+        public long getDepartureTime(int row) {
+            return departureTimes[row];
+        }
+
+        /**
+         * Get the return time of the row.
+         * 
+         * @param row The row.
+         * @return The return time in epoch seconds of the local time, or
+         *         {@link JourneyStore#MISSING_TIME}.
+         */
+        public long getReturnTime(int row) {
+            return returnTimes[row];
+        }
+
+        /**
+         * Get the sequence number of the row. The sequence number changes when
+         * the journey is replaced, but not when the row is compacted.
+         * 
+         * @param row The row.
+         * @return The sequence number of the row.
+         */
+        public long getSequence(int row) {
+            return sequences[row];
+        }
+
+        /**
+         * Find the first row whose sequence number is at least the given
+         * sequence number.
+         * 
+         * @param sequence The sequence number.
+         * @return The found row, or the size, if the sequence numbers of the
+         *         rows are smaller.
+         */
+        public int rowOf(long sequence) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (sequences[middle] < sequence) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Get the value of a column.
+         * 
+         * @param column The column.
+         * @param row    The row.
+         * @return The value of the column, or {@link JourneyStore#MISSING_VALUE}.
+         */
+        public long getValue(Column column, int row) {
+            final int value;
+            switch (column) {
+            case DEPARTURE_STATION:
+                value = departureStations[row];
+                break;
+            case RETURN_STATION:
+                value = returnStations[row];
+                break;
+            case DISTANCE:
+                value = distances[row];
+                break;
+            case DURATION:
+                value = durations[row];
+                break;
+            case DEPARTURE_TIME:
+                return departureTimes[row];
+            case RETURN_TIME:
+                return returnTimes[row];
+            default:
+                throw new IllegalArgumentException("Unknown column " + column);
+            }
+            return value == MISSING ? MISSING_VALUE : value;
+        }
+
+        /**
+         * Find the first row at or after a row which is not deleted.
+         * 
+         * @param row The row.
+         * @return The found row, or the size, if the remaining rows are deleted.
+         */
+        public int nextRow(int row) {
+            while (row < size && isDeleted(row)) {
+                row++;
+            }
+            return row;
+        }
+
+        /**
+         * Get a copy of the journey of the row. Unlike the flyweight view, the
+         * copy holds its values.
+         * 
+         * @param row The row.
+         * @return The journey of the row.
+         */
+        public Journey copyJourney(int row) {
+            return new Journey(getId(row), getJourney(row));
+        }
+
+        /**
+         * Get the journey of the row.
+         * 
+         * @param row The row.
+         * @return The flyweight journey view of the row.
+         */
+        public Journey getJourney(int row) {
+            return new JourneyView(this, row);
+        }
+    }
+
+    /**
+     * The flyweight journey reading its values from a row of the columns.
+     */
+    private static final class JourneyView extends Journey {
+        private final Columns columns;
+        private final int row;
+
+        JourneyView(Columns columns, int row) {
+            super();
+            this.columns = columns;
+            this.row = row;
+        }
+
+        private static Optional<Integer> valueOf(int value) {
+            return value == MISSING ? Optional.empty() : Optional.of(value);
+        }
+
+        private static Optional<Station> stationOf(int id) {
+            return id == MISSING ? Optional.empty() : Optional.of(new Station(id, null, (String) null));
+        }
+
+        private static Optional<LocalDateTime> timeOf(long time) {
+            return time == MISSING_TIME ? Optional.empty()
+                    : Optional.of(LocalDateTime.ofEpochSecond(time, 0, ZoneOffset.UTC));
+        }
+
+        @Override
+        public Optional<Integer> getId() {
+            return valueOf(columns.getId(row));
+        }
+
+        @Override
+        public Optional<Station> getDepartureStation() {
+            return stationOf(columns.getDepartureStation(row));
+        }
+
+        @Override
+        public Optional<Station> getReturnStation() {
+            return stationOf(columns.getReturnStation(row));
+        }
+
+        @Override
+        public Optional<Integer> getDistance() {
+            return valueOf(columns.getDistance(row));
+        }
+
+        @Override
+        public Optional<Integer> getDuration() {
+            return valueOf(columns.getDuration(row));
+        }
+
+        @Override
+        public Optional<LocalDateTime> getDepartureTime() {
+            return timeOf(columns.getDepartureTime(row));
+        }
+
+        @Override
+        public Optional<LocalDateTime> getReturnTime() {
+            return timeOf(columns.getReturnTime(row));
+        }
+    }
+
+    /**
+     * The rows of a generation and their indexes. The rows of a generation
+     * never move, and the compaction moves the rows into a new generation, so
+     * the rows read from the indexes of a generation are rows of its columns.
+     * A reader reading the generation once sees consistent rows and indexes,
+     * while the writers continue in the next generation.
+     */
+    public static final class Generation {
+
+        /**
+         * The published columns.
+         */
+        private volatile Columns columns;
+
+        /**
+         * The index from journey identifier to its row.
+         */
+        private final IntIndex idIndex;
+
+        /**
+         * The posting lists of the rows by station.
+         */
+        private final Map<Column, PostingLists> postings = new EnumMap<>(Column.class);
+
+        /**
+         * The rows sorted by value.
+         */
+        private final Map<Column, RangeIndex> ranges = new EnumMap<>(Column.class);
+
+        private Generation(Columns columns, IntIndex idIndex) {
+            this.columns = columns;
+            this.idIndex = idIndex;
+            postings.put(Column.DEPARTURE_STATION, new PostingLists());
+            postings.put(Column.RETURN_STATION, new PostingLists());
+            for (Column column : Arrays.asList(Column.DISTANCE, Column.DURATION, Column.DEPARTURE_TIME)) {
+                ranges.put(column, new RangeIndex(this, column));
+            }
+        }
+
+        /**
+         * Get the current columns of the generation. The rows of the returned
+         * columns stay valid while the store grows.
+         * 
+         * @return The current columns.
+         */
+        public Columns getColumns() {
+            return columns;
+        }
+
+        /**
+         * Get the row of a journey. The row was indexed after the columns
+         * containing it were published.
+         * 
+         * @param id The journey identifier.
+         * @return The row of the journey, or {@link IntIndex#MISSING}, if no
+         *         such journey exists.
+         */
+        public int getRow(int id) {
+            return idIndex.get(id);
+        }
+
+        /**
+         * Get the posting lists of a column.
+         * 
+         * @param column The column.
+         * @return The posting lists of the rows by the column value, or an
+         *         undefined value, if the column has no posting lists.
+         */
+        public PostingLists getPostings(Column column) {
+            return postings.get(column);
+        }
+
+        /**
+         * Get the range index of a column.
+         * 
+         * @param column The column.
+         * @return The index of the rows sorted by the column value, or an
+         *         undefined value, if the column has no range index.
+         */
+        public RangeIndex getRangeIndex(Column column) {
+            return ranges.get(column);
+        }
+    }
+
+    /**
+     * The current generation.
+     */
+    private volatile Generation generation = new Generation(new Columns(INITIAL_CAPACITY), new IntIndex());
+
+    /**
+     * The listeners of the changes.
+     */
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * The journal of the changes, or an undefined value, if the changes are
+     * not journaled.
+     */
+    private Journal journal = null;
+
+    /**
+     * The lock of the writers.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Create a new empty store.
+     */
+    public JourneyStore() {
+    }
+
+    /**
+     * The largest identifier of the journeys.
+     */
+    private int lastIdentifier = 0;
+
+    /**
+     * The sequence number of the next written row.
+     */
+    private long nextSequence = 0;
+
+    /**
+     * The number of rows which are not deleted.
+     */
+    private volatile int count = 0;
+
+    /**
+     * The version of the journeys incremented by each completed write.
+     */
+    private volatile long version = 0;
+
+    /**
+     * Get the lock of the writers. The holder of the lock sees the journeys
+     * without concurrent changes.
+     * 
+     * @return The lock held by the writers of the store.
+     */
+    public Lock getLock() {
+        return lock;
+    }
+
+    /**
+     * Get the largest identifier given to a journey. The identifiers of the
+     * removed journeys are not reused. Called holding the lock of the store.
+     * 
+     * @return The largest identifier of the added journeys.
+     */
+    public int getLastIdentifier() {
+        return lastIdentifier;
+    }
+
+    /**
+     * Reserve the identifiers up to an identifier, so the new journeys are not
+     * given the identifiers of the removed journeys.
+     * 
+     * @param last The largest reserved identifier.
+     */
+    public void reserveIdentifiers(int last) {
+        lock.lock();
+        try {
+            lastIdentifier = Math.max(lastIdentifier, last);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the current columns. The rows of the returned columns stay valid while
+     * the store grows.
+     * 
+     * @return The current columns.
+     */
+    public Columns getColumns() {
+        return generation.columns;
+    }
+
+    /**
+     * Get the current generation. The rows of its indexes are rows of its
+     * columns.
+     * 
+     * @return The current generation.
+     */
+    public Generation getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Get the number of stored journeys.
+     * 
+     * @return The number of journeys excluding the deleted rows.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Get the version of the journeys. The version is incremented once the
+     * changed journeys have been published and indexed, so the journeys read
+     * after reading the version are at least of the version.
+     * 
+     * @return The version of the journeys.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get a journey.
+     * 
+     * @param id The journey identifier.
+     * @return The journey with given identifier, or an undefined value, if no
+     *         such journey exists.
+     */
+    public Journey get(int id) {
+        final Generation source = generation;
+        int row = source.idIndex.get(id);
+        if (row == IntIndex.MISSING) {
+            return null;
+        }
+        // The row was indexed after the columns containing it were published.
+        Columns current = source.columns;
+        return current.isDeleted(row) ? null : current.getJourney(row);
+    }
+
+    /**
+     * Add a listener of the changes. The listener is not told about the
+     * journeys stored before it was added.
+     * 
+     * @param listener The added listener.
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Set the journal of the changes.
+     * 
+     * @param journal The journal, or an undefined value for no journal.
+     */
+    public void setJournal(Journal journal) {
+        lock.lock();
+        try {
+            this.journal = journal;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add a journey. A journey without identifier is given a new identifier.
+     * 
+     * @param journey The added journey.
+     * @return The added journey.
+     * @throws InvalidFieldsException The journey had a reserved identifier.
+     */
+    public Journey add(Journey journey) throws InvalidFieldsException {
+        lock.lock();
+        try {
+            addAll(Collections.singletonList(journey));
+            Columns current = generation.columns;
+            return current.getJourney(current.size() - 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add journeys. The journeys without identifier are given a new identifier.
+     * Either all or none of the journeys are added.
+     * 
+     * @param journeys The added journeys.
+     * @return The number of added journeys.
+     * @throws InvalidFieldsException Any journey had a reserved identifier.
+     */
+    public int addAll(List<Journey> journeys) throws InvalidFieldsException {
+        lock.lock();
+        try {
+            // Checking the identifiers before adding any journey.
+            Set<Integer> addedIds = new HashSet<>();
+            int lastAddedIdentifier = lastIdentifier;
+            for (Journey journey : journeys) {
+                if (!journey.isNewJourney()) {
+                    final int id = journey.getId().get();
+                    if (generation.idIndex.containsKey(id) || !addedIds.add(id)) {
+                        throw reservedIdentifier();
+                    }
+                    lastAddedIdentifier = Math.max(lastAddedIdentifier, id);
+                }
+            }
+            final int previousIdentifier = lastIdentifier;
+            lastIdentifier = lastAddedIdentifier;
+
+            Columns target = reserve(journeys.size());
+            int row = target.size();
+            try {
+                for (Journey journey : journeys) {
+                    int id = journey.isNewJourney() ? ++lastIdentifier : journey.getId().get();
+                    write(target, row++, id, journey);
+                }
+                if (journal != null) {
+                    for (int i = target.size(); i < row; i++) {
+                        journal.put(target, i);
+                    }
+                    journal.commit();
+                }
+            } catch (RuntimeException e) {
+                // The written rows are not published.
+                lastIdentifier = previousIdentifier;
+                throw e;
+            }
+            publish(target, row);
+            final Columns published = generation.columns;
+            for (int i = target.size(); i < row; i++) {
+                generation.idIndex.put(target.getId(i), i);
+                index(generation, i);
+                for (Listener listener : listeners) {
+                    listener.added(published, i);
+                }
+            }
+            count += journeys.size();
+            version++;
+            return journeys.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replace a journey. The replacing journey is appended as a new row.
+     * 
+     * @param journey The new journey with the identifier of the replaced
+     *                journey.
+     * @return The replaced journey, or an undefined value, if no journey was
+     *         replaced.
+     * @throws InvalidFieldsException The journey had no identifier.
+     */
+    public Journey replace(Journey journey) throws InvalidFieldsException {
+        lock.lock();
+        try {
+            if (journey.isNewJourney()) {
+                throw new InvalidFieldsException("Identifier missing", null,
+                        new InvalidFieldsException.FieldError(Journey.Fields.ID.toString(), "Missing identifier"));
+            }
+            final int id = journey.getId().get();
+            int oldRow = generation.idIndex.get(id);
+            if (oldRow == IntIndex.MISSING) {
+                return null;
+            }
+            Columns target = reserve(1);
+            int row = target.size();
+            write(target, row, id, journey);
+            if (journal != null) {
+                journal.put(target, row);
+                journal.commit();
+            }
+            markDeleted(target, oldRow);
+            publish(target, row + 1);
+            generation.idIndex.put(id, row);
+            index(generation, row);
+            final Columns published = generation.columns;
+            for (Listener listener : listeners) {
+                listener.removed(published, oldRow);
+                listener.added(published, row);
+            }
+            version++;
+            compactIfSparse();
+            return target.getJourney(oldRow);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove a journey.
+     * 
+     * @param id The identifier of the removed journey.
+     * @return The removed journey, or an undefined value, if no journey was
+     *         removed.
+     */
+    public Journey remove(int id) {
+        lock.lock();
+        try {
+            int row = generation.idIndex.get(id);
+            if (row == IntIndex.MISSING) {
+                return null;
+            }
+            if (journal != null) {
+                journal.remove(id);
+                journal.commit();
+            }
+            generation.idIndex.remove(id);
+            Columns current = generation.columns;
+            markDeleted(current, row);
+            count--;
+            publish(current, current.size());
+            for (Listener listener : listeners) {
+                listener.removed(generation.columns, row);
+            }
+            version++;
+            compactIfSparse();
+            return current.getJourney(row);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add, replace and remove journeys at once. The journeys without
+     * identifier are given a new identifier, and the other journeys replace
+     * the journeys with the same identifier, if they exist. The removed
+     * identifiers without a journey are ignored. Either all or none of the
+     * changes are applied, and the changes are journaled and published
+     * together.
+     *
+     * @param upserts The added or replacing journeys.
+     * @param deletes The identifiers of the removed journeys.
+     * @return The result of the changes.
+     * @throws InvalidFieldsException An identifier was changed more than once.
+     */
+    public BatchResult apply(List<Journey> upserts, List<Integer> deletes)
+            throws InvalidFieldsException {
+        lock.lock();
+        try {
+            // Checking the identifiers before changing any journey.
+            Set<Integer> changedIds = new HashSet<>();
+            int lastChangedIdentifier = lastIdentifier;
+            for (Journey journey : upserts) {
+                if (!journey.isNewJourney()) {
+                    final int id = journey.getId().get();
+                    if (!changedIds.add(id)) {
+                        throw reservedIdentifier();
+                    }
+                    lastChangedIdentifier = Math.max(lastChangedIdentifier, id);
+                }
+            }
+            for (Integer id : deletes) {
+                if (!changedIds.add(id)) {
+                    throw reservedIdentifier();
+                }
+            }
+
+            final int previousIdentifier = lastIdentifier;
+            lastIdentifier = lastChangedIdentifier;
+            BatchResult result = new BatchResult();
+            Columns target = reserve(upserts.size());
+            final int first = target.size();
+            final int[] replaced = new int[upserts.size()];
+            int row = first;
+            try {
+                for (Journey journey : upserts) {
+                    int id = journey.isNewJourney() ? ++lastIdentifier : journey.getId().get();
+                    write(target, row, id, journey);
+                    replaced[row - first] = generation.idIndex.get(id);
+                    result.addPut(id, replaced[row - first] != IntIndex.MISSING);
+                    row++;
+                }
+                if (journal != null) {
+                    for (int i = first; i < row; i++) {
+                        journal.put(target, i);
+                    }
+                    for (Integer id : deletes) {
+                        if (generation.idIndex.containsKey(id)) {
+                            journal.remove(id);
+                        }
+                    }
+                    journal.commit();
+                }
+            } catch (RuntimeException e) {
+                // The written rows are not published.
+                lastIdentifier = previousIdentifier;
+                throw e;
+            }
+
+            final int[] deleted = new int[deletes.size()];
+            int deletedCount = 0;
+            for (Integer id : deletes) {
+                int oldRow = generation.idIndex.get(id);
+                if (oldRow != IntIndex.MISSING) {
+                    markDeleted(target, oldRow);
+                    deleted[deletedCount++] = oldRow;
+                    result.addDeleted();
+                }
+            }
+            for (int oldRow : replaced) {
+                if (oldRow != IntIndex.MISSING) {
+                    markDeleted(target, oldRow);
+                }
+            }
+            publish(target, row);
+            final Columns published = generation.columns;
+            for (int i = 0; i < deletedCount; i++) {
+                generation.idIndex.remove(published.getId(deleted[i]));
+                for (Listener listener : listeners) {
+                    listener.removed(published, deleted[i]);
+                }
+            }
+            for (int i = first; i < row; i++) {
+                if (replaced[i - first] != IntIndex.MISSING) {
+                    for (Listener listener : listeners) {
+                        listener.removed(published, replaced[i - first]);
+                    }
+                }
+                generation.idIndex.put(published.getId(i), i);
+                index(generation, i);
+                for (Listener listener : listeners) {
+                    listener.added(published, i);
+                }
+            }
+            count += result.getCreated() - result.getDeleted();
+            version++;
+            compactIfSparse();
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add a published row to the posting lists and the range indexes. The
+     * missing values are not added to the posting lists, and they precede the
+     * other values in the range indexes.
+     * 
+     * @param target The generation of the row.
+     * @param row    The row.
+     */
+    private static void index(Generation target, int row) {
+        final Columns columns = target.columns;
+        for (Map.Entry<Column, PostingLists> entry : target.postings.entrySet()) {
+            long value = columns.getValue(entry.getKey(), row);
+            if (value != MISSING_VALUE) {
+                entry.getValue().add((int) value, row);
+            }
+        }
+        for (RangeIndex index : target.ranges.values()) {
+            index.add(row);
+        }
+    }
+
+    /**
+     * Compact the rows into a new generation, if the deleted rows are at
+     * least as many as the stored journeys. The remaining rows keep their
+     * order and sequence numbers, and the readers of the previous generation
+     * are not affected, as its rows are not altered afterwards. The listeners
+     * are not told, as the journeys do not change.
+     */
+    private void compactIfSparse() {
+        final Columns current = generation.columns;
+        if (current.size() - count < Math.max(MIN_COMPACTED_ROWS, count)) {
+            return;
+        }
+        final Columns target = new Columns(
+                Math.min(Integer.MAX_VALUE - 8, Math.max(INITIAL_CAPACITY, count + (count >>> 1))));
+        int size = 0;
+        for (int row = current.nextRow(0); row < current.size(); row = current.nextRow(row + 1)) {
+            target.ids[size] = current.ids[row];
+            target.departureStations[size] = current.departureStations[row];
+            target.returnStations[size] = current.returnStations[row];
+            target.distances[size] = current.distances[row];
+            target.durations[size] = current.durations[row];
+            target.departureTimes[size] = current.departureTimes[row];
+            target.returnTimes[size] = current.returnTimes[row];
+            target.sequences[size] = current.sequences[row];
+            size++;
+        }
+        final Generation compacted = new Generation(new Columns(target, size), new IntIndex(size));
+        for (int row = 0; row < size; row++) {
+            compacted.idIndex.put(target.ids[row], row);
+            index(compacted, row);
+        }
+        generation = compacted;
+    }
+
+    /**
+     * Restore journeys from their column values. A restored journey replaces
+     * the journey with the same identifier. The restored journeys are not
+     * journaled.
+     * 
+     * @param count             The number of restored journeys.
+     * @param ids               The identifiers.
+     * @param departureStations The departure station identifiers.
+     * @param returnStations    The return station identifiers.
+     * @param distances         The distances.
+     * @param durations         The durations.
+     * @param departureTimes    The departure times in epoch seconds of the
+     *                          local time.
+     * @param returnTimes       The return times in epoch seconds of the local
+     *                          time.
+     */
+    public void restore(int count, int[] ids, int[] departureStations, int[] returnStations,
+            int[] distances, int[] durations, long[] departureTimes, long[] returnTimes) {
+        lock.lock();
+        try {
+            Columns target = reserve(count);
+            final int first = target.size();
+            // The rows replaced by a restored journey including the earlier
+            // restored rows.
+            IntIndex restored = new IntIndex(count);
+            int[] replaced = new int[count];
+            int replacedCount = 0;
+            for (int i = 0; i < count; i++) {
+                final int row = first + i;
+                target.ids[row] = ids[i];
+                target.departureStations[row] = departureStations[i];
+                target.returnStations[row] = returnStations[i];
+                target.distances[row] = distances[i];
+                target.durations[row] = durations[i];
+                target.departureTimes[row] = departureTimes[i];
+                target.returnTimes[row] = returnTimes[i];
+                target.sequences[row] = nextSequence++;
+                int oldRow = restored.put(ids[i], row);
+                if (oldRow == IntIndex.MISSING) {
+                    oldRow = generation.idIndex.get(ids[i]);
+                }
+                if (oldRow != IntIndex.MISSING) {
+                    markDeleted(target, oldRow);
+                    replaced[replacedCount++] = oldRow;
+                }
+                lastIdentifier = Math.max(lastIdentifier, ids[i]);
+            }
+            publish(target, first + count);
+            final Columns published = generation.columns;
+            for (int i = 0; i < replacedCount; i++) {
+                if (replaced[i] < first) {
+                    for (Listener listener : listeners) {
+                        listener.removed(published, replaced[i]);
+                    }
+                }
+            }
+            for (int row = first; row < first + count; row++) {
+                generation.idIndex.put(published.getId(row), row);
+                index(generation, row);
+                if (!published.isDeleted(row)) {
+                    for (Listener listener : listeners) {
+                        listener.added(published, row);
+                    }
+                }
+            }
+            this.count += count - replacedCount;
+            version++;
+            compactIfSparse();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static InvalidFieldsException reservedIdentifier() {
+        return new InvalidFieldsException("Identifier not unique",
+                null,
+                new InvalidFieldsException.FieldError(Journey.Fields.ID.toString(),
+                        "Reserved identifier"));
+    }
+
+    /**
+     * Get the columns with capacity for the added rows.
+     * 
+     * @param added The number of added rows.
+     * @return The columns with sufficient capacity.
+     */
+    private Columns reserve(int added) {
+        Columns current = generation.columns;
+        long required = (long) current.size() + added;
+        if (required <= current.capacity()) {
+            return current;
+        }
+        long capacity = Math.max(required, current.capacity() * 2L);
+        if (capacity > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Journey store capacity exceeded");
+        }
+        return new Columns(current, current.size(), (int) capacity);
+    }
+
+    /**
+     * Publish the columns with a new size.
+     * 
+     * @param target The published columns.
+     * @param size   The new number of rows.
+     */
+    private void publish(Columns target, int size) {
+        generation.columns = new Columns(target, size);
+    }
+
+    private static void markDeleted(Columns target, int row) {
+        target.deleted[row >>> 6] |= (1L << row);
+    }
+
+    private void write(Columns target, int row, int id, Journey journey) {
+        target.ids[row] = id;
+        target.sequences[row] = nextSequence++;
+        target.departureStations[row] = stationId(journey.getDepartureStation());
+        target.returnStations[row] = stationId(journey.getReturnStation());
+        target.distances[row] = journey.getDistance().orElse(MISSING);
+        target.durations[row] = journey.getDuration().orElse(MISSING);
+        target.departureTimes[row] = epochSeconds(journey.getDepartureTime());
+        target.returnTimes[row] = epochSeconds(journey.getReturnTime());
+    }
+
+    private static int stationId(Optional<? extends PartialModel> station) {
+        if (station.isPresent() && station.get() instanceof Station) {
+            Integer id = ((Station) station.get()).getId();
+            return id == null ? MISSING : id;
+        }
+        return MISSING;
+    }
+
+    private static long epochSeconds(Optional<LocalDateTime> time) {
+        return time.isPresent() ? time.get().toEpochSecond(ZoneOffset.UTC) : MISSING_TIME;
+    }
+}
@@ -0,0 +1,97 @@
+package com.kautiainen.antti.solita.storage;
+
+import java.util.Arrays;
+
+/**
+ * Posting lists of the rows with an integer key.
+ * 
+ * The rows are appended in increasing order, so each list is sorted. The
+ * writers must be synchronized by the owner of the lists. The readers never
+ * lock: the rows of a list are written before its size.
+ */
+public class PostingLists {
+
+    /**
+     * The rows of a key.
+     */
+    private static final class Postings {
+        /**
+         * The rows. A reader reading the size before the rows sees rows at
+         * least as recent as the size.
+         */
+        int[] rows = new int[8];
+        volatile int size = 0;
+    }
+
+    private static final int[] NO_ROWS = new int[0];
+
+    /**
+     * The index from a key to its list.
+     */
+    private final IntIndex slots = new IntIndex();
+
+    private volatile Postings[] lists = new Postings[16];
+
+    private int count = 0;
+
+    /**
+     * Add a row to the list of a key.
+     * 
+     * @param key The key.
+     * @param row The row greater than the rows of the key.
+     */
+    public void add(int key, int row) {
+        int slot = slots.get(key);
+        Postings postings;
+        if (slot == IntIndex.MISSING) {
+            Postings[] current = lists;
+            if (count == current.length) {
+                current = Arrays.copyOf(current, count * 2);
+            }
+            postings = new Postings();
+            current[count] = postings;
+            lists = current;
+            // The list is published before its slot.
+            slots.put(key, count++);
+        } else {
+            postings = lists[slot];
+        }
+        int size = postings.size;
+        if (size == postings.rows.length) {
+            postings.rows = Arrays.copyOf(postings.rows, size * 2);
+        }
+        postings.rows[size] = row;
+        postings.size = size + 1;
+    }
+
+    private Postings getPostings(int key) {
+        int slot = slots.get(key);
+        return slot == IntIndex.MISSING ? null : lists[slot];
+    }
+
+    /**
+     * Get the number of rows of a key.
+     * 
+     * @param key The key.
+     * @return The number of rows with the key.
+     */
+    public int size(int key) {
+        Postings postings = getPostings(key);
+        return postings == null ? 0 : postings.size;
+    }
+
+    /**
+     * Get the rows of a key.
+     * 
+     * @param key The key.
+     * @return The sorted rows with the key.
+     */
+    public int[] get(int key) {
+        Postings postings = getPostings(key);
+        if (postings == null) {
+            return NO_ROWS;
+        }
+        int size = postings.size;
+        return Arrays.copyOf(postings.rows, size);
+    }
+}
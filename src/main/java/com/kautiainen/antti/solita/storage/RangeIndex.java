@@ -0,0 +1,162 @@
+package com.kautiainen.antti.solita.storage;
+
+import java.util.Arrays;
+
+import com.kautiainen.antti.solita.storage.JourneyStore.Column;
+import com.kautiainen.antti.solita.storage.JourneyStore.Columns;
+import com.kautiainen.antti.solita.storage.JourneyStore.Generation;
+
+/**
+ * Index of the journey rows sorted by the value of a column.
+ * 
+ * The added rows are collected into an unsorted tail, which is merged into the
+ * sorted rows when the sorted rows are requested. Thus the writes stay cheap,
+ * and a merge costs sorting the tail and copying the sorted rows. The rows
+ * with equal values are sorted by the row.
+ */
+public class RangeIndex {
+
+    private final Generation generation;
+
+    private final Column column;
+
+    /**
+     * The sorted rows.
+     */
+    private volatile int[] rows = new int[0];
+
+    /**
+     * The rows added after the last merge.
+     */
+    private int[] tail = new int[64];
+
+    private volatile int tailSize = 0;
+
+    /**
+     * Create a new empty index.
+     * 
+     * @param generation The generation of the indexed rows.
+     * @param column     The column of the sorting value.
+     */
+    RangeIndex(Generation generation, Column column) {
+        this.generation = generation;
+        this.column = column;
+    }
+
+    /**
+     * Get the column of the sorting value.
+     * 
+     * @return The indexed column.
+     */
+    public Column getColumn() {
+        return column;
+    }
+
+    /**
+     * Add a row. The row must be published before it is added.
+     * 
+     * @param row The added row.
+     */
+    synchronized void add(int row) {
+        if (tailSize == tail.length) {
+            tail = Arrays.copyOf(tail, tailSize * 2);
+        }
+        tail[tailSize++] = row;
+    }
+
+    /**
+     * Get the sorted rows. The returned rows are never altered.
+     * 
+     * @return The rows sorted by the column value.
+     */
+    public int[] getRows() {
+        int[] result = rows;
+        return tailSize == 0 ? result : merge();
+    }
+
+    /**
+     * Merge the tail into the sorted rows.
+     * 
+     * @return The merged rows.
+     */
+    private synchronized int[] merge() {
+        if (tailSize == 0) {
+            return rows;
+        }
+        // The added rows have been published before they were added.
+        final Columns columns = generation.getColumns();
+        final int[] added = Arrays.copyOf(tail, tailSize);
+        final long[] keys = new long[added.length];
+        for (int i = 0; i < added.length; i++) {
+            keys[i] = columns.getValue(column, added[i]);
+        }
+        RowSorter.sort(keys, added, 0, added.length);
+
+        // The added rows follow the sorted rows with equal values, as the
+        // rows are appended in increasing order.
+        final int[] base = rows;
+        final int[] result = new int[base.length + added.length];
+        int from = 0;
+        int to = 0;
+        for (int i = 0; i < added.length; i++) {
+            int at = upperBound(columns, base, from, base.length, keys[i]);
+            System.arraycopy(base, from, result, to, at - from);
+            to += at - from;
+            from = at;
+            result[to++] = added[i];
+        }
+        System.arraycopy(base, from, result, to, base.length - from);
+        rows = result;
+        tailSize = 0;
+        if (tail.length > 1024) {
+            tail = new int[64];
+        }
+        return result;
+    }
+
+    /**
+     * Find the first sorted row whose value is at least the given value.
+     * 
+     * @param columns The columns containing the sorted rows.
+     * @param sorted  The sorted rows.
+     * @param value   The value.
+     * @return The index of the first row whose value is at least the value.
+     */
+    public int lowerBound(Columns columns, int[] sorted, long value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (columns.getValue(column, sorted[middle]) < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Find the first sorted row whose value is greater than the given value.
+     * 
+     * @param columns The columns containing the sorted rows.
+     * @param sorted  The sorted rows.
+     * @param value   The value.
+     * @return The index of the first row whose value is greater than the value.
+     */
+    public int upperBound(Columns columns, int[] sorted, long value) {
+        return upperBound(columns, sorted, 0, sorted.length, value);
+    }
+
+    private int upperBound(Columns columns, int[] sorted, int low, int high, long value) {
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (columns.getValue(column, sorted[middle]) <= value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
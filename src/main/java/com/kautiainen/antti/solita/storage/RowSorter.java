@@ -0,0 +1,89 @@
+package com.kautiainen.antti.solita.storage;
+
+/**
+ * Sorter of rows by their keys without boxing.
+ * 
+ * The rows are sorted by their keys, and the rows with equal keys by the row.
+ */
+public final class RowSorter {
+
+    /**
+     * The length of a range sorted with insertion sort.
+     */
+    private static final int INSERTION_SORT_LENGTH = 16;
+
+    private RowSorter() {
+    }
+
+    /**
+     * Sort rows by their keys.
+     * 
+     * @param keys The keys of the rows. The keys are sorted with the rows.
+     * @param rows The rows.
+     * @param from The first sorted index.
+     * @param to   The index after the last sorted index.
+     */
+    public static void sort(long[] keys, int[] rows, int from, int to) {
+        while (to - from > INSERTION_SORT_LENGTH) {
+            int middle = (from + to) >>> 1;
+            // The median of the first, the middle and the last is the pivot.
+            if (less(keys, rows, middle, from)) {
+                swap(keys, rows, middle, from);
+            }
+            if (less(keys, rows, to - 1, middle)) {
+                swap(keys, rows, to - 1, middle);
+                if (less(keys, rows, middle, from)) {
+                    swap(keys, rows, middle, from);
+                }
+            }
+            final long pivotKey = keys[middle];
+            final int pivotRow = rows[middle];
+            int low = from;
+            int high = to - 1;
+            while (low <= high) {
+                while (compare(keys[low], rows[low], pivotKey, pivotRow) < 0) {
+                    low++;
+                }
+                while (compare(keys[high], rows[high], pivotKey, pivotRow) > 0) {
+                    high--;
+                }
+                if (low <= high) {
+                    swap(keys, rows, low++, high--);
+                }
+            }
+            // Recursing into the shorter part limits the depth of the recursion.
+            if (high - from < to - low) {
+                sort(keys, rows, from, high + 1);
+                from = low;
+            } else {
+                sort(keys, rows, low, to);
+                to = high + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from && less(keys, rows, j, j - 1); j--) {
+                swap(keys, rows, j, j - 1);
+            }
+        }
+    }
+
+    private static int compare(long key, int row, long otherKey, int otherRow) {
+        if (key != otherKey) {
+            return key < otherKey ? -1 : 1;
+        }
+        return Integer.compare(row, otherRow);
+    }
+
+    private static boolean less(long[] keys, int[] rows, int i, int j) {
+        return compare(keys[i], rows[i], keys[j], rows[j]) < 0;
+    }
+
+    private static void swap(long[] keys, int[] rows, int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        int row = rows[i];
+        rows[i] = rows[j];
+        rows[j] = row;
+    }
+}
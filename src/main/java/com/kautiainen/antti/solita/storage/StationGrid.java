@@ -0,0 +1,340 @@
+package com.kautiainen.antti.solita.storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.kautiainen.antti.solita.model.Station;
+
+/**
+ * Immutable uniform grid index of the locations of the stations of a registry
+ * snapshot.
+ * 
+ * The locations are projected on the equirectangular projection at the mean
+ * latitude of the stations, which keeps the distances accurate within a
+ * metropolitan area. The projected plane is divided into square cells holding
+ * a couple of stations on average, and the stations are stored in the order of
+ * their cells, so the stations of a cell are adjacent. The stations without a
+ * location are not indexed.
+ * 
+ * The nearest stations are found by scanning rings of cells around the query
+ * point until the nearest found stations are closer than any unscanned cell.
+ */
+public final class StationGrid {
+
+    /**
+     * The mean radius of the Earth in metres.
+     */
+    public static final double EARTH_RADIUS = 6_371_008.8;
+
+    /**
+     * The mean number of stations in a cell.
+     */
+    private static final int STATIONS_PER_CELL = 2;
+
+    /**
+     * The maximal number of cells on each axis.
+     */
+    private static final int MAX_CELLS = 1024;
+
+    /**
+     * The smallest cell side in metres.
+     */
+    private static final double MIN_CELL_SIZE = 1;
+
+    private final long version;
+
+    /**
+     * The metres of a degree of longitude at the reference latitude.
+     */
+    private final double metresPerLongitude;
+
+    /**
+     * The metres of a degree of latitude.
+     */
+    private final double metresPerLatitude = EARTH_RADIUS * Math.PI / 180;
+
+    /**
+     * The stations in the order of their cells.
+     */
+    private final Station[] stations;
+
+    /**
+     * The projected coordinates of the stations in metres.
+     */
+    private final double[] xs;
+
+    private final double[] ys;
+
+    /**
+     * The index of the first station of each cell in row-major order, followed
+     * by the number of stations.
+     */
+    private final int[] cellStarts;
+
+    private final double minX;
+
+    private final double minY;
+
+    private final double cellSize;
+
+    private final int columns;
+
+    private final int rows;
+
+    /**
+     * Create the index of the stations of a snapshot.
+     * 
+     * @param snapshot The indexed snapshot.
+     */
+    public StationGrid(StationRegistry.Snapshot snapshot) {
+        this.version = snapshot.getVersion();
+        List<Station> located = new ArrayList<>(snapshot.size());
+        double latitudes = 0;
+        for (Station station : snapshot) {
+            if (station.hasLocation()) {
+                located.add(station);
+                latitudes += station.getLatitude();
+            }
+        }
+        final int count = located.size();
+        this.metresPerLongitude = metresPerLatitude
+                * Math.cos(Math.toRadians(count == 0 ? 0 : latitudes / count));
+
+        double[] x = new double[count];
+        double[] y = new double[count];
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            x[i] = projectX(located.get(i).getLongitude());
+            y[i] = projectY(located.get(i).getLatitude());
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        if (count == 0) {
+            minX = minY = maxX = maxY = 0;
+        }
+        final double width = maxX - minX, height = maxY - minY;
+        double cellSize = Math.sqrt(width * height * STATIONS_PER_CELL / Math.max(1, count));
+        cellSize = Math.max(cellSize, Math.max(width, height) / MAX_CELLS);
+        this.cellSize = Math.max(cellSize, MIN_CELL_SIZE);
+        this.minX = minX;
+        this.minY = minY;
+        this.columns = (int) (width / this.cellSize) + 1;
+        this.rows = (int) (height / this.cellSize) + 1;
+
+        // The stations are placed by counting sort of their cells.
+        int[] cells = new int[count];
+        this.cellStarts = new int[columns * rows + 1];
+        for (int i = 0; i < count; i++) {
+            cells[i] = row(y[i]) * columns + column(x[i]);
+            cellStarts[cells[i] + 1]++;
+        }
+        for (int cell = 0; cell < columns * rows; cell++) {
+            cellStarts[cell + 1] += cellStarts[cell];
+        }
+        int[] next = Arrays.copyOf(cellStarts, columns * rows);
+        this.stations = new Station[count];
+        this.xs = new double[count];
+        this.ys = new double[count];
+        for (int i = 0; i < count; i++) {
+            final int position = next[cells[i]]++;
+            stations[position] = located.get(i);
+            xs[position] = x[i];
+            ys[position] = y[i];
+        }
+    }
+
+    /**
+     * Get the version of the indexed snapshot.
+     * 
+     * @return The version of the snapshot.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the number of indexed stations.
+     * 
+     * @return The number of the stations with a location.
+     */
+    public int size() {
+        return stations.length;
+    }
+
+    private double projectX(double longitude) {
+        return longitude * metresPerLongitude;
+    }
+
+    private double projectY(double latitude) {
+        return latitude * metresPerLatitude;
+    }
+
+    private int column(double x) {
+        return (int) Math.floor((x - minX) / cellSize);
+    }
+
+    private int row(double y) {
+        return (int) Math.floor((y - minY) / cellSize);
+    }
+
+    /**
+     * Find the nearest stations of a location.
+     * 
+     * @param latitude  The latitude of the location in degrees.
+     * @param longitude The longitude of the location in degrees.
+     * @param limit     The maximal number of found stations.
+     * @param radius    The maximal distance of the found stations in metres.
+     * @return The found stations in the order of their distance.
+     */
+    public List<Station> nearest(double latitude, double longitude, int limit, double radius) {
+        final double x = projectX(longitude), y = projectY(latitude);
+        final int column = column(x), row = row(y);
+        final Nearest nearest = new Nearest(Math.min(limit, stations.length), radius * radius);
+        // The scan starts from the first ring reaching the grid.
+        final int first = Math.max(0, Math.max(Math.max(-column, column - columns + 1), Math.max(-row, row - rows + 1)));
+        for (int ring = first; nearest.limit > 0; ring++) {
+            final int left = column - ring, right = column + ring;
+            final int bottom = row - ring, top = row + ring;
+            for (int r = Math.max(bottom, 0); r <= Math.min(top, rows - 1); r++) {
+                if (r == bottom || r == top) {
+                    scan(nearest, r, Math.max(left, 0), Math.min(right, columns - 1), x, y);
+                } else {
+                    // The inner rows of the ring have only their first and
+                    // last cells in the ring.
+                    if (left >= 0) {
+                        scan(nearest, r, left, left, x, y);
+                    }
+                    if (right < columns && right != left) {
+                        scan(nearest, r, right, right, x, y);
+                    }
+                }
+            }
+
+            // The unscanned cells are at least as far as the edges of the
+            // scanned block of cells.
+            final double edge = Math.min(Math.min(x - (minX + left * cellSize), minX + (right + 1) * cellSize - x),
+                    Math.min(y - (minY + bottom * cellSize), minY + (top + 1) * cellSize - y));
+            final boolean covered = left <= 0 && bottom <= 0 && right >= columns - 1 && top >= rows - 1;
+            if (covered || edge * edge >= nearest.bound()) {
+                break;
+            }
+        }
+        return nearest.stations();
+    }
+
+    /**
+     * Offer the stations of the cells of a row to the nearest stations.
+     * 
+     * @param nearest The nearest stations.
+     * @param row     The row of the cells.
+     * @param left    The first column of the cells.
+     * @param right   The last column of the cells.
+     * @param x       The projected query x-coordinate.
+     * @param y       The projected query y-coordinate.
+     */
+    private void scan(Nearest nearest, int row, int left, int right, double x, double y) {
+        if (left > right) {
+            return;
+        }
+        for (int i = cellStarts[row * columns + left]; i < cellStarts[row * columns + right + 1]; i++) {
+            final double dx = xs[i] - x, dy = ys[i] - y;
+            nearest.offer(i, dx * dx + dy * dy);
+        }
+    }
+
+    /**
+     * The nearest stations found so far.
+     */
+    private final class Nearest {
+
+        /**
+         * The found stations and their squared distances in ascending order.
+         * The arrays grow up to the limit as the stations are found.
+         */
+        private int[] found;
+
+        private double[] distances;
+
+        private final int limit;
+
+        private final double maxDistance;
+
+        private int count = 0;
+
+        Nearest(int limit, double maxDistance) {
+            this.found = new int[Math.min(limit, 16)];
+            this.distances = new double[found.length];
+            this.limit = limit;
+            this.maxDistance = maxDistance;
+        }
+
+        /**
+         * Get the squared distance beyond which no station is found.
+         * 
+         * @return The squared distance of the farthest found station, if the
+         *         capacity is full, or the squared maximal distance.
+         */
+        double bound() {
+            return count == limit ? distances[count - 1] : maxDistance;
+        }
+
+        void offer(int station, double distance) {
+            if (distance > maxDistance || (count == limit && distance >= distances[count - 1])) {
+                return;
+            }
+            if (count == found.length && count < limit) {
+                found = Arrays.copyOf(found, Math.min(limit, count * 2));
+                distances = Arrays.copyOf(distances, found.length);
+            }
+            int position = count == limit ? count - 1 : count++;
+            while (position > 0 && distances[position - 1] > distance) {
+                found[position] = found[position - 1];
+                distances[position] = distances[position - 1];
+                position--;
+            }
+            found[position] = station;
+            distances[position] = distance;
+        }
+
+        List<Station> stations() {
+            List<Station> result = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                result.add(StationGrid.this.stations[found[i]]);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Find the stations within a bounding box.
+     * 
+     * @param south The southern latitude of the box in degrees.
+     * @param west  The western longitude of the box in degrees.
+     * @param north The northern latitude of the box in degrees.
+     * @param east  The eastern longitude of the box in degrees.
+     * @param limit The maximal number of found stations.
+     * @return The found stations.
+     */
+    public List<Station> within(double south, double west, double north, double east, int limit) {
+        List<Station> result = new ArrayList<>();
+        final int bottom = Math.max(row(projectY(south)), 0), top = Math.min(row(projectY(north)), rows - 1);
+        final int left = Math.max(column(projectX(west)), 0), right = Math.min(column(projectX(east)), columns - 1);
+        for (int r = bottom; r <= top && left <= right; r++) {
+            for (int i = cellStarts[r * columns + left]; i < cellStarts[r * columns + right + 1]; i++) {
+                final Station station = stations[i];
+                final double latitude = station.getLatitude(), longitude = station.getLongitude();
+                if (latitude >= south && latitude <= north && longitude >= west && longitude <= east) {
+                    if (result.size() == limit) {
+                        return result;
+                    }
+                    result.add(station);
+                }
+            }
+        }
+        return result;
+    }
+}
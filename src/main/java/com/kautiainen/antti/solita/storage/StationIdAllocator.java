@@ -0,0 +1,81 @@
+package com.kautiainen.antti.solita.storage;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Allocator of station identifiers.
+ * 
+ * The released identifiers are reused before new identifiers are taken from
+ * above the high-water mark of the allocated and reserved identifiers. All
+ * operations take constant time.
+ */
+public class StationIdAllocator {
+
+    /**
+     * The largest allocated or reserved identifier.
+     */
+    private final AtomicInteger highWaterMark = new AtomicInteger(0);
+
+    /**
+     * The stack of the released identifiers.
+     */
+    private int[] released = new int[16];
+
+    /**
+     * The number of the released identifiers. The count is read without
+     * locking to skip the lock when there is nothing to reuse.
+     */
+    private volatile int releasedCount = 0;
+
+    /**
+     * Allocate an identifier. The caller has to check the identifier is not
+     * used, as a released identifier may have been reserved after its release.
+     * 
+     * @return The allocated identifier.
+     * @throws IllegalStateException All identifiers are allocated.
+     */
+    public int allocate() throws IllegalStateException {
+        if (releasedCount > 0) {
+            synchronized (this) {
+                if (releasedCount > 0) {
+                    int count = releasedCount - 1;
+                    releasedCount = count;
+                    return released[count];
+                }
+            }
+        }
+        int result = highWaterMark.incrementAndGet();
+        if (result <= 0) {
+            throw new IllegalStateException("Station identifiers exhausted");
+        }
+        return result;
+    }
+
+    /**
+     * Reserve an identifier given by the client. The allocated identifiers are
+     * above the reserved identifiers.
+     * 
+     * @param id The reserved identifier.
+     */
+    public void reserve(int id) {
+        highWaterMark.accumulateAndGet(id, Math::max);
+    }
+
+    /**
+     * Release an identifier for reuse.
+     * 
+     * @param id The released identifier.
+     */
+    public synchronized void release(int id) {
+        if (id <= 0 || id > highWaterMark.get()) {
+            return;
+        }
+        int count = releasedCount;
+        if (count == released.length) {
+            released = Arrays.copyOf(released, count * 2);
+        }
+        released[count] = id;
+        releasedCount = count + 1;
+    }
+}
@@ -0,0 +1,395 @@
+package com.kautiainen.antti.solita.storage;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.kautiainen.antti.solita.model.Station;
+
+/**
+ * Search index of the station names.
+ * 
+ * The names are normalized by folding the case and the diacritics, and by
+ * replacing the other characters than letters and digits with single spaces,
+ * so "Töölöntori" matches "toolontori". The prefix matches are found from a
+ * sorted array of the names and the suffixes of the names starting at each
+ * word, and the fuzzy matches from the postings of the trigrams of the names.
+ * The fuzzy matches are ranked by the Dice coefficient of their trigrams with
+ * the query. The names of a station in all languages are indexed, and the
+ * names normalized to the same name are indexed once with their languages.
+ * 
+ * The index is immutable for the readers. The changes of the stations are
+ * applied incrementally by replacing the changed postings, and the readers see
+ * the index before or after the changes.
+ */
+public class StationNameIndex implements StationRegistry.Listener {
+
+    /**
+     * The smallest similarity of a fuzzy match.
+     */
+    public static final double MIN_SIMILARITY = 0.35;
+
+    /**
+     * The ranks of the matches from the best to the worst.
+     */
+    private static final int EXACT = 0, NAME_PREFIX = 1, WORD_PREFIX = 2, FUZZY = 3;
+
+    /**
+     * The indexed name of a station.
+     */
+    private static final class Entry {
+        final Station station;
+
+        /**
+         * The normalized name.
+         */
+        final String name;
+
+        /**
+         * The languages of the name.
+         */
+        final List<String> languages = new ArrayList<>(1);
+
+        /**
+         * The distinct trigrams of the name.
+         */
+        final long[] grams;
+
+        Entry(Station station, String name) {
+            this.station = station;
+            this.name = name;
+            this.grams = trigrams(name);
+        }
+    }
+
+    /**
+     * A key of the prefix search.
+     */
+    private static final class Key implements Comparable<Key> {
+        final String key;
+        final Entry entry;
+
+        Key(String key, Entry entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            return key.compareTo(other.key);
+        }
+    }
+
+    /**
+     * A published state of the index.
+     */
+    private static final class State {
+
+        /**
+         * The entries of the names by station identifier.
+         */
+        final Map<Integer, Entry[]> entries;
+
+        /**
+         * The sorted keys of the prefix search, and the entries of the keys.
+         */
+        final String[] keys;
+
+        final Entry[] keyEntries;
+
+        /**
+         * The entries by their trigrams.
+         */
+        final Map<Long, Entry[]> postings;
+
+        State(Map<Integer, Entry[]> entries, String[] keys, Entry[] keyEntries, Map<Long, Entry[]> postings) {
+            this.entries = entries;
+            this.keys = keys;
+            this.keyEntries = keyEntries;
+            this.postings = postings;
+        }
+    }
+
+    /**
+     * A matching station.
+     */
+    private static final class Match {
+        final Entry entry;
+        int rank;
+        double similarity;
+        int hits;
+
+        Match(Entry entry, int rank) {
+            this.entry = entry;
+            this.rank = rank;
+        }
+    }
+
+    private static final Comparator<Match> RANKING = Comparator.<Match>comparingInt(match -> match.rank)
+            .thenComparing(Comparator.<Match>comparingDouble(match -> match.similarity).reversed())
+            .thenComparingInt(match -> match.entry.name.length())
+            .thenComparing(match -> match.entry.name);
+
+    private volatile State state = new State(new HashMap<>(), new String[0], new Entry[0], new HashMap<>());
+
+    /**
+     * Normalize a name for matching.
+     * 
+     * @param name The name.
+     * @return The name in lower case without diacritics, and with the other
+     *         characters than letters and digits replaced by single spaces.
+     */
+    public static String normalize(String name) {
+        final String decomposed = Normalizer.normalize(name, Normalizer.Form.NFD);
+        StringBuilder result = new StringBuilder(decomposed.length());
+        boolean space = true;
+        for (int i = 0; i < decomposed.length(); i++) {
+            final char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            } else if (Character.isLetterOrDigit(c)) {
+                result.append(Character.toLowerCase(c));
+                space = false;
+            } else if (!space) {
+                result.append(' ');
+                space = true;
+            }
+        }
+        if (space && result.length() > 0) {
+            result.setLength(result.length() - 1);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Get the entries of the names of a station.
+     * 
+     * @param station The station.
+     * @return The entries of the distinct normalized names.
+     */
+    private static Entry[] entriesOf(Station station) {
+        final Map<String, Entry> result = new LinkedHashMap<>();
+        addEntry(result, station, station.getName(), station.getLang());
+        for (int i = 0; i < station.getNames().size(); i++) {
+            addEntry(result, station, station.getNames().getName(i), station.getNames().getLanguage(i));
+        }
+        return result.values().toArray(new Entry[result.size()]);
+    }
+
+    private static void addEntry(Map<String, Entry> entries, Station station, String name, String language) {
+        if (name != null) {
+            Entry entry = entries.computeIfAbsent(normalize(name), key -> new Entry(station, key));
+            if (language != null) {
+                entry.languages.add(language);
+            }
+        }
+    }
+
+    /**
+     * Get the distinct trigrams of a normalized name padded with spaces.
+     * 
+     * @param name The normalized name.
+     * @return The trigrams packed into longs.
+     */
+    private static long[] trigrams(String name) {
+        final String padded = " " + name + " ";
+        Set<Long> result = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            result.add(((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2));
+        }
+        long[] grams = new long[result.size()];
+        int i = 0;
+        for (Long gram : result) {
+            grams[i++] = gram;
+        }
+        return grams;
+    }
+
+    /**
+     * Get the number of indexed stations.
+     * 
+     * @return The number of the stations with a name.
+     */
+    public int size() {
+        return state.entries.size();
+    }
+
+    @Override
+    public void committed(List<Station> removed, List<Station> added) {
+        update(removed, added);
+    }
+
+    /**
+     * Apply the changes of the stations. The entries of the removed stations
+     * are removed by their identifiers before the added stations are indexed.
+     * 
+     * @param removed The removed stations.
+     * @param added   The added stations.
+     */
+    public synchronized void update(List<Station> removed, List<Station> added) {
+        final State current = state;
+        final Map<Integer, Entry[]> entries = new HashMap<>(current.entries);
+        final Set<Entry> dropped = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Station station : removed) {
+            Entry[] stationEntries = station.getId() == null ? null : entries.remove(station.getId());
+            if (stationEntries != null) {
+                dropped.addAll(Arrays.asList(stationEntries));
+            }
+        }
+        final List<Entry> inserted = new ArrayList<>(added.size());
+        for (Station station : added) {
+            if (station.getId() == null) {
+                continue;
+            }
+            Entry[] replaced = entries.remove(station.getId());
+            if (replaced != null) {
+                dropped.addAll(Arrays.asList(replaced));
+            }
+            Entry[] stationEntries = entriesOf(station);
+            if (stationEntries.length > 0) {
+                entries.put(station.getId(), stationEntries);
+                inserted.addAll(Arrays.asList(stationEntries));
+            }
+        }
+        inserted.removeIf(dropped::contains);
+        if (dropped.isEmpty() && inserted.isEmpty()) {
+            return;
+        }
+
+        // Only the postings of the changed trigrams are replaced.
+        final Map<Long, List<Entry>> removedPostings = new HashMap<>();
+        final Map<Long, List<Entry>> addedPostings = new HashMap<>();
+        for (Entry entry : dropped) {
+            for (long gram : entry.grams) {
+                removedPostings.computeIfAbsent(gram, key -> new ArrayList<>()).add(entry);
+            }
+        }
+        for (Entry entry : inserted) {
+            for (long gram : entry.grams) {
+                addedPostings.computeIfAbsent(gram, key -> new ArrayList<>()).add(entry);
+            }
+        }
+        final Map<Long, Entry[]> postings = new HashMap<>(current.postings);
+        Set<Long> changed = new LinkedHashSet<>(removedPostings.keySet());
+        changed.addAll(addedPostings.keySet());
+        for (Long gram : changed) {
+            List<Entry> posting = new ArrayList<>(Arrays.asList(postings.getOrDefault(gram, new Entry[0])));
+            posting.removeAll(removedPostings.getOrDefault(gram, List.of()));
+            posting.addAll(addedPostings.getOrDefault(gram, List.of()));
+            if (posting.isEmpty()) {
+                postings.remove(gram);
+            } else {
+                postings.put(gram, posting.toArray(new Entry[posting.size()]));
+            }
+        }
+
+        // The sorted keys are merged with the sorted keys of the new entries.
+        List<Key> newKeys = new ArrayList<>();
+        for (Entry entry : inserted) {
+            int start = 0;
+            do {
+                newKeys.add(new Key(entry.name.substring(start), entry));
+                start = entry.name.indexOf(' ', start) + 1;
+            } while (start > 0);
+        }
+        Collections.sort(newKeys);
+        final int capacity = current.keys.length + newKeys.size();
+        String[] keys = new String[capacity];
+        Entry[] keyEntries = new Entry[capacity];
+        int size = 0, next = 0;
+        for (int i = 0; i <= current.keys.length; i++) {
+            while (next < newKeys.size()
+                    && (i == current.keys.length || newKeys.get(next).key.compareTo(current.keys[i]) < 0)) {
+                keys[size] = newKeys.get(next).key;
+                keyEntries[size++] = newKeys.get(next++).entry;
+            }
+            if (i < current.keys.length && !dropped.contains(current.keyEntries[i])) {
+                keys[size] = current.keys[i];
+                keyEntries[size++] = current.keyEntries[i];
+            }
+        }
+        state = new State(entries, Arrays.copyOf(keys, size), Arrays.copyOf(keyEntries, size), postings);
+    }
+
+    /**
+     * Search the stations by name. The exact matches are ranked first, then the
+     * names starting with the query, then the names with a word starting with
+     * the query, and then the fuzzy matches by their similarity. The matches of
+     * the same rank are ordered by the length of the name.
+     * 
+     * @param query    The searched name or its prefix.
+     * @param language The language of the names, or an undefined value for any
+     *                 language.
+     * @param limit    The maximal number of found stations.
+     * @return The found stations in the order of the rank of their best
+     *         matching name.
+     */
+    public List<Station> search(String query, String language, int limit) {
+        final State current = state;
+        final String normalized = normalize(query);
+        final Map<Entry, Match> matches = new IdentityHashMap<>();
+        if (normalized.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // The prefix matches.
+        int low = 0, high = current.keys.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (current.keys[middle].compareTo(normalized) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int i = low; i < current.keys.length && current.keys[i].startsWith(normalized); i++) {
+            final Entry entry = current.keyEntries[i];
+            final int rank = entry.name.equals(normalized) ? EXACT
+                    : current.keys[i].length() == entry.name.length() ? NAME_PREFIX : WORD_PREFIX;
+            Match match = matches.get(entry);
+            if (match == null) {
+                matches.put(entry, new Match(entry, rank));
+            } else {
+                match.rank = Math.min(match.rank, rank);
+            }
+        }
+
+        // The fuzzy matches.
+        final long[] grams = trigrams(normalized);
+        for (long gram : grams) {
+            Entry[] posting = current.postings.get(gram);
+            if (posting != null) {
+                for (Entry entry : posting) {
+                    matches.computeIfAbsent(entry, key -> new Match(key, FUZZY)).hits++;
+                }
+            }
+        }
+
+        List<Match> ranked = new ArrayList<>();
+        for (Match match : matches.values()) {
+            match.similarity = 2.0 * match.hits / (grams.length + match.entry.grams.length);
+            if ((match.rank != FUZZY || match.similarity >= MIN_SIMILARITY)
+                    && (language == null || match.entry.languages.contains(language))) {
+                ranked.add(match);
+            }
+        }
+        ranked.sort(RANKING);
+        List<Station> result = new ArrayList<>(Math.min(limit, ranked.size()));
+        Set<Station> found = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < ranked.size() && result.size() < limit; i++) {
+            if (found.add(ranked.get(i).entry.station)) {
+                result.add(ranked.get(i).entry.station);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,719 @@
+package com.kautiainen.antti.solita.storage;
+
+import java.io.UncheckedIOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.WeakHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.kautiainen.antti.solita.model.Station;
+
+/**
+ * Registry publishing versioned snapshots of the stations.
+ * 
+ * The stations are kept in the slots of a table. A new or replacing station
+ * is appended to a new slot, and a removed or replaced station leaves a
+ * tombstone recording the version in which it was removed. The table is
+ * compacted once the tombstones outnumber the stations. A primitive index maps
+ * the station identifiers to their slots.
+ * 
+ * Each added station is given a sequence number greater than the sequence
+ * numbers of the earlier stations. The sequence numbers of the stations are
+ * kept over compaction, and thus stay valid positions of the stations.
+ * 
+ * The names and the languages of the stored stations are interned into a weak
+ * pool of the registry, so the equal names share a single string only while a
+ * station refers to them. The languages of the published stations are counted,
+ * and each snapshot lists the languages of its stations.
+ * 
+ * The readers never lock. A snapshot sees the stations of its version, as the
+ * slots below its size are never altered apart from the removal version.
+ * 
+ * The writer changes are pending until they are committed with
+ * {@link #commit()}, which publishes all of them at once as a new snapshot, or
+ * discarded with {@link #rollback()}. The owner of the registry has to ensure
+ * only one writer has pending changes at a time, for example by holding the
+ * lock of the registry over the changes and their commit. The lock is a
+ * {@link ReentrantLock}, so a writer waiting for the journal does not pin the
+ * carrier thread of a virtual thread. The committed changes are
+ * written to the journal of the registry before they are published, and
+ * passed to the listeners of the registry after they are published.
+ */
+public class StationRegistry {
+
+    /**
+     * The removal version of a slot whose station has not been removed.
+     */
+    private static final long LIVE = Long.MAX_VALUE;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The minimal number of tombstones before the table is compacted.
+     */
+    private static final int MIN_COMPACTED_TOMBSTONES = 64;
+
+    /**
+     * Write-ahead journal of the committed changes of the stations. A failing
+     * journal aborts the commit, and leaves the changes pending.
+     */
+    public static interface Journal {
+
+        /**
+         * Journal an added or replacing station.
+         * 
+         * @param station The station.
+         * @throws UncheckedIOException The journal could not be written.
+         */
+        void put(Station station) throws UncheckedIOException;
+
+        /**
+         * Journal a removed station.
+         * 
+         * @param id The identifier of the removed station.
+         * @throws UncheckedIOException The journal could not be written.
+         */
+        void remove(int id) throws UncheckedIOException;
+
+        /**
+         * Make the journaled changes durable.
+         * 
+         * @throws UncheckedIOException The journal could not be written.
+         */
+        void commit() throws UncheckedIOException;
+    }
+
+    /**
+     * Listener of the published changes of the stations, such as a secondary
+     * index of the stations.
+     */
+    public static interface Listener {
+
+        /**
+         * Receive the changes of a published snapshot. The listener is called
+         * by the committing writer holding the registry lock.
+         * 
+         * @param removed The removed and the replaced stations. A station
+         *                added and replaced by the same changes is included.
+         * @param added   The added and the replacing stations.
+         */
+        void committed(List<Station> removed, List<Station> added);
+    }
+
+    /**
+     * The slots of the stations.
+     */
+    private static final class Table {
+        final Station[] stations;
+        final long[] sequences;
+        final long[] removed;
+        final IntIndex index;
+
+        Table(int capacity, IntIndex index) {
+            this.stations = new Station[capacity];
+            this.sequences = new long[capacity];
+            this.removed = new long[capacity];
+            Arrays.fill(this.removed, LIVE);
+            this.index = index;
+        }
+
+        Table(Table table, int capacity) {
+            this.stations = Arrays.copyOf(table.stations, capacity);
+            this.sequences = Arrays.copyOf(table.sequences, capacity);
+            this.removed = Arrays.copyOf(table.removed, capacity);
+            Arrays.fill(this.removed, table.removed.length, capacity, LIVE);
+            this.index = table.index;
+        }
+
+        int capacity() {
+            return stations.length;
+        }
+    }
+
+    /**
+     * An immutable snapshot of the stations.
+     */
+    public static final class Snapshot implements Iterable<Station> {
+
+        private final long version;
+
+        private final Table table;
+
+        /**
+         * The number of slots of the snapshot.
+         */
+        private final int slots;
+
+        /**
+         * The number of stations of the snapshot.
+         */
+        private final int count;
+
+        /**
+         * The languages of the names of the stations.
+         */
+        private final List<String> languages;
+
+        private Snapshot(long version, Table table, int slots, int count, List<String> languages) {
+            this.version = version;
+            this.table = table;
+            this.slots = slots;
+            this.count = count;
+            this.languages = languages;
+        }
+
+        /**
+         * Get the version of the snapshot. Each published snapshot with changes
+         * has a greater version than its predecessor.
+         * 
+         * @return The version of the snapshot.
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        private boolean isVisible(int slot) {
+            return table.removed[slot] > version;
+        }
+
+        /**
+         * Find the first station at or after a sequence number.
+         * 
+         * @param sequence The sequence number.
+         * @return The sequence number of the found station, or a negative value,
+         *         if there is no such station.
+         */
+        public long seek(long sequence) {
+            int slot = slotOf(sequence);
+            while (slot < slots && !isVisible(slot)) {
+                slot++;
+            }
+            return slot < slots ? table.sequences[slot] : -1L;
+        }
+
+        /**
+         * Get the station with a sequence number.
+         * 
+         * @param sequence The sequence number of a station of the snapshot.
+         * @return The station with the sequence number, or an undefined value,
+         *         if the snapshot has no such station.
+         */
+        public Station getStation(long sequence) {
+            int slot = slotOf(sequence);
+            return slot < slots && table.sequences[slot] == sequence && isVisible(slot) ? table.stations[slot] : null;
+        }
+
+        /**
+         * Find the first slot whose sequence number is at least the given
+         * sequence number.
+         * 
+         * @param sequence The sequence number.
+         * @return The found slot, or the number of slots.
+         */
+        private int slotOf(long sequence) {
+            int low = 0;
+            int high = slots;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (table.sequences[middle] < sequence) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Get the stations of the snapshot.
+         * 
+         * @return The list of the stations in slot order.
+         */
+        public List<Station> getStations() {
+            List<Station> result = new ArrayList<>(count);
+            for (Station station : this) {
+                result.add(station);
+            }
+            return result;
+        }
+
+        @Override
+        public Iterator<Station> iterator() {
+            return new Iterator<Station>() {
+                private int next = seek(0);
+
+                private int seek(int slot) {
+                    while (slot < slots && !isVisible(slot)) {
+                        slot++;
+                    }
+                    return slot;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next < slots;
+                }
+
+                @Override
+                public Station next() {
+                    if (next >= slots) {
+                        throw new NoSuchElementException();
+                    }
+                    Station result = table.stations[next];
+                    next = seek(next + 1);
+                    return result;
+                }
+            };
+        }
+
+        /**
+         * Get the number of stations.
+         * 
+         * @return The number of stations of the snapshot.
+         */
+        public int size() {
+            return count;
+        }
+
+        /**
+         * Get the languages of the station names.
+         * 
+         * @return The unmodifiable list of the languages of the names of the
+         *         stations of the snapshot.
+         */
+        public List<String> getLanguages() {
+            return languages;
+        }
+    }
+
+    /**
+     * The published snapshot.
+     */
+    private volatile Snapshot snapshot = new Snapshot(0, new Table(INITIAL_CAPACITY, new IntIndex()), 0, 0,
+            List.of());
+
+    /**
+     * The table of the writer.
+     */
+    private Table table = snapshot.table;
+
+    /**
+     * The number of slots including the pending slots.
+     */
+    private int slots = 0;
+
+    /**
+     * The number of stations including the pending changes.
+     */
+    private int count = 0;
+
+    /**
+     * The sequence number of the next added station.
+     */
+    private long sequence = 0;
+
+    /**
+     * The pending slots of the changed station identifiers. A removed station
+     * has {@link IntIndex#MISSING} slot.
+     */
+    private final Map<Integer, Integer> pendingSlots = new HashMap<>();
+
+    /**
+     * The slots removed by the pending changes.
+     */
+    private final List<Integer> pendingRemovals = new ArrayList<>();
+
+    /**
+     * The interned names and languages of the stored stations. The strings are
+     * released once no station refers to them.
+     */
+    private final Map<String, WeakReference<String>> pool = new WeakHashMap<>();
+
+    /**
+     * The number of the published stations named in each language.
+     */
+    private final Map<String, Integer> languageCounts = new HashMap<>();
+
+    /**
+     * The journal of the committed changes, or an undefined value, if the
+     * changes are not journaled.
+     */
+    private Journal journal = null;
+
+    /**
+     * The listeners of the published changes.
+     */
+    private final List<Listener> listeners = new ArrayList<>();
+
+    /**
+     * The lock of the writers.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Get the lock of the writers. The writer methods hold the lock, and the
+     * owner of the registry may hold it over a sequence of changes.
+     * 
+     * @return The lock of the registry.
+     */
+    public Lock getLock() {
+        return lock;
+    }
+
+    /**
+     * Set the journal of the committed changes.
+     * 
+     * @param journal The journal, or an undefined value for no journal.
+     */
+    public void setJournal(Journal journal) {
+        lock.lock();
+        try {
+            this.journal = journal;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add a listener of the published changes.
+     * 
+     * @param listener The listener.
+     */
+    public void addListener(Listener listener) {
+        lock.lock();
+        try {
+            listeners.add(listener);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the latest snapshot.
+     * 
+     * @return The latest published snapshot.
+     */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Get a published station.
+     * 
+     * @param id The station identifier.
+     * @return The station with given identifier, or an undefined value, if no
+     *         such station exists.
+     */
+    public Station get(Integer id) {
+        if (id == null) {
+            return null;
+        }
+        Snapshot current = snapshot;
+        while (true) {
+            int slot = current.table.index.get(id);
+            if (slot == IntIndex.MISSING) {
+                return null;
+            } else if (slot < current.slots) {
+                return current.table.stations[slot];
+            }
+            // The index was updated after a newer snapshot was published.
+            current = snapshot;
+        }
+    }
+
+    /**
+     * Get the sequence number of a published station. The sequence number
+     * changes whenever the station is replaced.
+     * 
+     * @param id The station identifier.
+     * @return The sequence number of the station, or a negative value, if no
+     *         such station exists.
+     */
+    public long getSequence(Integer id) {
+        if (id == null) {
+            return -1L;
+        }
+        Snapshot current = snapshot;
+        while (true) {
+            int slot = current.table.index.get(id);
+            if (slot == IntIndex.MISSING) {
+                return -1L;
+            } else if (slot < current.slots) {
+                return current.table.sequences[slot];
+            }
+            // The index was updated after a newer snapshot was published.
+            current = snapshot;
+        }
+    }
+
+    /**
+     * Get the slot of a station including the pending changes.
+     * 
+     * @param id The station identifier.
+     * @return The slot of the station, or {@link IntIndex#MISSING}.
+     */
+    private int getSlot(int id) {
+        Integer pending = pendingSlots.get(id);
+        return pending == null ? table.index.get(id) : pending;
+    }
+
+    /**
+     * Get a station including the pending changes.
+     * 
+     * @param id The station identifier.
+     * @return The station with given identifier, or an undefined value, if no
+     *         such station exists.
+     */
+    public Station getPending(Integer id) {
+        lock.lock();
+        try {
+            if (id == null) {
+                return null;
+            }
+            int slot = getSlot(id);
+            return slot == IntIndex.MISSING ? null : table.stations[slot];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add or replace a station as a pending change. A copy of the station with
+     * interned names and languages is stored.
+     * 
+     * @param station The station with an identifier.
+     * @return The replaced station, or an undefined value, if the station was
+     *         added.
+     * @throws IllegalArgumentException The station had no identifier.
+     */
+    public Station put(Station station) throws IllegalArgumentException {
+        lock.lock();
+        try {
+            if (station == null || station.getId() == null) {
+                throw new IllegalArgumentException("Station without identifier");
+            }
+            final int id = station.getId();
+            Station replaced = removeSlot(getSlot(id));
+            if (slots == table.capacity()) {
+                table = new Table(table, table.capacity() * 2);
+            }
+            table.stations[slots] = intern(station);
+            table.sequences[slots] = sequence++;
+            pendingSlots.put(id, slots);
+            slots++;
+            count++;
+            return replaced;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get a copy of a station with interned names and languages.
+     * 
+     * @param station The station.
+     * @return The interned copy of the station.
+     */
+    private Station intern(Station station) {
+        Station result = new Station(station);
+        result.setName(intern(station.getName()));
+        result.setLang(intern(result.getLang()));
+        result.setNames(station.getNames().intern(this::intern));
+        return result;
+    }
+
+    /**
+     * Intern a name or a language.
+     * 
+     * @param value The string.
+     * @return The interned string equal to the given string, or an undefined
+     *         value, if the string is undefined.
+     */
+    private String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        WeakReference<String> reference = pool.get(value);
+        String result = reference == null ? null : reference.get();
+        if (result == null) {
+            pool.put(value, new WeakReference<>(value));
+            result = value;
+        }
+        return result;
+    }
+
+    /**
+     * Count the languages of a published or an unpublished station.
+     * 
+     * @param station The station.
+     * @param delta   The change of the counts.
+     * @return True, if and only if a language became used or unused.
+     */
+    private boolean countLanguages(Station station, int delta) {
+        boolean changed = false;
+        for (String language : station.getLanguages()) {
+            Integer count = languageCounts.merge(language, delta, Integer::sum);
+            if (count == 0) {
+                languageCounts.remove(language);
+                changed = true;
+            } else if (count == delta) {
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Remove a station as a pending change.
+     * 
+     * @param id The station identifier.
+     * @return The removed station, or an undefined value, if no station was
+     *         removed.
+     */
+    public Station remove(int id) {
+        lock.lock();
+        try {
+            Station removed = removeSlot(getSlot(id));
+            if (removed != null) {
+                pendingSlots.put(id, IntIndex.MISSING);
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Station removeSlot(int slot) {
+        if (slot == IntIndex.MISSING) {
+            return null;
+        }
+        table.removed[slot] = snapshot.getVersion() + 1;
+        pendingRemovals.add(slot);
+        count--;
+        return table.stations[slot];
+    }
+
+    /**
+     * Publish the pending changes.
+     * 
+     * @return The published snapshot.
+     * @throws UncheckedIOException The changes could not be journaled.
+     */
+    public Snapshot commit() throws UncheckedIOException {
+        lock.lock();
+        try {
+            if (pendingSlots.isEmpty()) {
+                return snapshot;
+            }
+            if (journal != null) {
+                for (Map.Entry<Integer, Integer> entry : pendingSlots.entrySet()) {
+                    if (entry.getValue() == IntIndex.MISSING) {
+                        journal.remove(entry.getKey());
+                    } else {
+                        journal.put(table.stations[entry.getValue()]);
+                    }
+                }
+                journal.commit();
+            }
+            final Snapshot published = snapshot;
+            boolean languagesChanged = false;
+            for (Integer slot : pendingRemovals) {
+                if (slot < published.slots) {
+                    languagesChanged |= countLanguages(table.stations[slot], -1);
+                }
+            }
+            for (Integer slot : pendingSlots.values()) {
+                if (slot != IntIndex.MISSING) {
+                    languagesChanged |= countLanguages(table.stations[slot], 1);
+                }
+            }
+            final List<String> languages = languagesChanged ? List.copyOf(languageCounts.keySet())
+                    : published.languages;
+            List<Station> removed = null;
+            List<Station> added = null;
+            if (!listeners.isEmpty()) {
+                removed = new ArrayList<>(pendingRemovals.size());
+                for (Integer slot : pendingRemovals) {
+                    removed.add(table.stations[slot]);
+                }
+                added = new ArrayList<>(pendingSlots.size());
+                for (Integer slot : pendingSlots.values()) {
+                    if (slot != IntIndex.MISSING) {
+                        added.add(table.stations[slot]);
+                    }
+                }
+            }
+            final long version = published.getVersion() + 1;
+            snapshot = new Snapshot(version, table, slots, count, languages);
+            // The index is updated after the publication, so the readers finding
+            // a slot in the index find it in the published snapshot.
+            for (Map.Entry<Integer, Integer> entry : pendingSlots.entrySet()) {
+                if (entry.getValue() == IntIndex.MISSING) {
+                    table.index.remove(entry.getKey());
+                } else {
+                    table.index.put(entry.getKey(), entry.getValue());
+                }
+            }
+            pendingSlots.clear();
+            pendingRemovals.clear();
+            if (slots - count >= Math.max(MIN_COMPACTED_TOMBSTONES, count)) {
+                compact(version);
+            }
+            for (Listener listener : listeners) {
+                listener.committed(removed, added);
+            }
+            return snapshot;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Discard the pending changes.
+     */
+    public void rollback() {
+        lock.lock();
+        try {
+            for (Integer slot : pendingRemovals) {
+                table.removed[slot] = LIVE;
+            }
+            Snapshot current = snapshot;
+            Arrays.fill(table.stations, current.slots, slots, null);
+            slots = current.slots;
+            count = current.count;
+            pendingSlots.clear();
+            pendingRemovals.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Compact the table by dropping the tombstones, and publish the compacted
+     * table without changing the version.
+     * 
+     * @param version The current version.
+     */
+    private void compact(long version) {
+        Table result = new Table(Math.max(INITIAL_CAPACITY, count * 2), new IntIndex(count));
+        int slot = 0;
+        for (int i = 0; i < slots; i++) {
+            if (table.removed[i] == LIVE) {
+                result.stations[slot] = table.stations[i];
+                result.sequences[slot] = table.sequences[i];
+                result.index.put(table.stations[i].getId(), slot);
+                slot++;
+            }
+        }
+        table = result;
+        slots = slot;
+        snapshot = new Snapshot(version, result, slots, count, snapshot.languages);
+    }
+}
@@ -0,0 +1,37 @@
+package com.kautiainen.antti.solita.caching;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.restexpress.Request;
+
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+
+public class EntityTagsTest {
+
+    private static Request request(String uri) {
+        return new Request(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri), null);
+    }
+
+    @Test
+    public void issuesWeakTags() {
+        String tag = EntityTags.of(request("/station/1.json"), 3);
+        assertTrue(tag.startsWith("W/\""));
+        assertTrue(tag.endsWith("\""));
+    }
+
+    @Test
+    public void comparesTagsWeakly() {
+        String tag = EntityTags.of(request("/station/1.json"), 3);
+        String opaque = tag.substring(2);
+        assertTrue(EntityTags.matches(tag, tag));
+        assertTrue(EntityTags.matches("\"other\", " + opaque, tag));
+        assertTrue(EntityTags.matches("*", tag));
+        assertFalse(EntityTags.matches(EntityTags.of(request("/station/1.json"), 4), tag));
+        assertFalse(EntityTags.matches(EntityTags.of(request("/station/1.xml"), 3), tag));
+        assertFalse(EntityTags.matches(null, tag));
+    }
+}
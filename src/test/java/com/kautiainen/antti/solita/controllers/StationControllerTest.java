@@ -0,0 +1,37 @@
+package com.kautiainen.antti.solita.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDateTime;
+
+import org.junit.Test;
+
+import com.kautiainen.antti.solita.model.Journey;
+import com.kautiainen.antti.solita.model.Station;
+import com.kautiainen.antti.solita.statistics.StationStatisticsAggregator;
+import com.kautiainen.antti.solita.storage.JourneyStore;
+
+public class StationControllerTest {
+
+    private static final LocalDateTime DEPARTURE = LocalDateTime.of(2021, 5, 1, 10, 0);
+
+    @Test
+    public void skipsIdentifiersReferencedByJourneys() throws Exception {
+        JourneyStore journeys = new JourneyStore();
+        StationStatisticsAggregator statistics = new StationStatisticsAggregator(journeys);
+        Journey journey = journeys.add(new Journey(null, new Station(1, "A"), new Station(2, "B"), 100, 60,
+                DEPARTURE, DEPARTURE.plusSeconds(60)));
+        assertTrue(statistics.isReferenced(1));
+        assertTrue(statistics.isReferenced(2));
+        assertFalse(statistics.isReferenced(3));
+
+        StationController controller = new StationController(statistics);
+        Station added = controller.addStation(new Station(null, "C"), false);
+        assertEquals(3, (int) added.getId());
+
+        journeys.remove(journey.getId().get());
+        assertFalse(statistics.isReferenced(1));
+    }
+}
@@ -0,0 +1,138 @@
+package com.kautiainen.antti.solita.execution;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+
+public class RequestBodyHandlerTest {
+
+    @Rule
+    public TemporaryFolder spool = new TemporaryFolder();
+
+    private RequestBodies bodies;
+
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp() {
+        bodies = new RequestBodies(16, spool.getRoot().toPath())
+                .spool("/import", null, 64)
+                .limit("/bulk", 32);
+        channel = new EmbeddedChannel(new RequestBodyHandler(bodies),
+                new HttpObjectAggregator(bodies.getMaxAggregatedSize()));
+    }
+
+    private static HttpRequest post(String uri) {
+        HttpRequest result = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, uri);
+        HttpHeaders.setTransferEncodingChunked(result);
+        return result;
+    }
+
+    private static HttpContent content(String text) {
+        return new DefaultHttpContent(Unpooled.copiedBuffer(text, StandardCharsets.UTF_8));
+    }
+
+    private static HttpContent last(String text) {
+        return new DefaultLastHttpContent(Unpooled.copiedBuffer(text, StandardCharsets.UTF_8));
+    }
+
+    private void assertRejected(HttpResponseStatus status) {
+        FullHttpResponse response = (FullHttpResponse) channel.readOutbound();
+        assertNotNull(response);
+        assertEquals(status, response.getStatus());
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    public void aggregatesBodyWithinLimit() {
+        channel.writeInbound(post("/bulk"), content("0123456789"), last("0123456789"));
+        FullHttpRequest request = (FullHttpRequest) channel.readInbound();
+        assertEquals("01234567890123456789", request.content().toString(StandardCharsets.UTF_8));
+        request.release();
+    }
+
+    @Test
+    public void spoolsBodyToFile() throws IOException {
+        channel.writeInbound(post("/import?x=1"), content("a,b\n"), content("1,2\n"), last("3,4\n"));
+        FullHttpRequest request = (FullHttpRequest) channel.readInbound();
+        assertEquals(0, request.content().readableBytes());
+        assertNotNull(request.headers().get(RequestBodies.SPOOLED_BODY));
+        File[] files = spool.getRoot().listFiles();
+        assertEquals(1, files.length);
+        assertEquals("a,b\n1,2\n3,4\n", new String(Files.readAllBytes(files[0].toPath()), StandardCharsets.UTF_8));
+
+        bodies.discard(request);
+        assertEquals(0, spool.getRoot().listFiles().length);
+        request.release();
+    }
+
+    @Test
+    public void removesSpoolHeaderOfClient() {
+        HttpRequest sent = post("/bulk");
+        sent.headers().set(RequestBodies.SPOOLED_BODY, "forged");
+        channel.writeInbound(sent, last("body"));
+        FullHttpRequest request = (FullHttpRequest) channel.readInbound();
+        assertNull(request.headers().get(RequestBodies.SPOOLED_BODY));
+        request.release();
+    }
+
+    @Test
+    public void rejectsContentLengthAboveLimit() {
+        HttpRequest sent = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/other");
+        HttpHeaders.setContentLength(sent, 17);
+        channel.writeInbound(sent);
+        assertRejected(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+        assertNull(channel.readInbound());
+    }
+
+    @Test
+    public void rejectsForwardedBodyAboveLimit() {
+        channel.writeInbound(post("/other"), content("0123456789"), content("0123456789"));
+        assertRejected(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+        assertNull(channel.readInbound());
+    }
+
+    @Test
+    public void rejectsSpooledBodyAboveLimit() {
+        channel.writeInbound(post("/import"), content(new String(new char[40])), content(new String(new char[40])));
+        assertRejected(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+        assertNull(channel.readInbound());
+        assertEquals(0, spool.getRoot().listFiles().length);
+    }
+
+    @Test
+    public void deletesIncompleteSpoolOnClose() {
+        channel.writeInbound(post("/import"), content("a,b\n"));
+        assertEquals(1, spool.getRoot().listFiles().length);
+        channel.close();
+        assertEquals(0, spool.getRoot().listFiles().length);
+        assertTrue(channel.inboundMessages().isEmpty());
+    }
+}
@@ -0,0 +1,199 @@
+package com.kautiainen.antti.solita.execution;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.ReferenceCountUtil;
+
+public class RequestDispatcherTest {
+
+    private final ExecutorService executor = ExecutionMode.VIRTUAL.newExecutor(0);
+
+    @Rule
+    public TemporaryFolder spool = new TemporaryFolder();
+
+    /**
+     * Handler recording the requests and the threads handling them.
+     */
+    @Sharable
+    private static class Recorder extends ChannelInboundHandlerAdapter {
+        final List<String> uris = new CopyOnWriteArrayList<>();
+        final List<Thread> threads = new CopyOnWriteArrayList<>();
+        final CountDownLatch handled;
+
+        Recorder(int count) {
+            handled = new CountDownLatch(count);
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            FullHttpRequest request = (FullHttpRequest) msg;
+            try {
+                if (request.getUri().equals("/slow")) {
+                    Thread.sleep(50);
+                }
+                uris.add(request.getUri());
+                threads.add(Thread.currentThread());
+            } finally {
+                ReferenceCountUtil.release(msg);
+                handled.countDown();
+            }
+        }
+    }
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static FullHttpRequest request(String uri) {
+        return new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+    }
+
+    @Test
+    public void handlesRequestsOfConnectionInOrder() throws InterruptedException {
+        Recorder recorder = new Recorder(3);
+        EmbeddedChannel channel = new EmbeddedChannel(new RequestDispatcher(recorder, executor));
+        channel.writeInbound(request("/slow"));
+        channel.writeInbound(request("/second"));
+        channel.writeInbound(request("/third"));
+        assertTrue(recorder.handled.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("/slow", "/second", "/third"), recorder.uris);
+    }
+
+    @Test
+    public void handlesRequestsOffTheIoThread() throws InterruptedException {
+        Recorder recorder = new Recorder(2);
+        EmbeddedChannel channel = new EmbeddedChannel(new RequestDispatcher(recorder, executor));
+        channel.writeInbound(request("/first"));
+        channel.writeInbound(request("/second"));
+        assertTrue(recorder.handled.await(5, TimeUnit.SECONDS));
+        assertTrue(recorder.threads.get(0).isVirtual());
+        assertNotEquals(Thread.currentThread(), recorder.threads.get(0));
+        assertNotEquals(recorder.threads.get(0), recorder.threads.get(1));
+    }
+
+    @Test
+    public void shedsRequestsAboveMaximumInFlight() throws InterruptedException {
+        LoadShedder shedder = new LoadShedder(1, 3);
+        Recorder recorder = new Recorder(1);
+        EmbeddedChannel channel = new EmbeddedChannel(new RequestDispatcher(recorder, executor, shedder));
+        EmbeddedChannel other = new EmbeddedChannel(new RequestDispatcher(recorder, executor, shedder));
+        channel.writeInbound(request("/slow"));
+        FullHttpRequest shed = request("/shed");
+        other.writeInbound(shed);
+        assertEquals(0, shed.refCnt());
+        FullHttpResponse response = (FullHttpResponse) other.readOutbound();
+        assertEquals(HttpResponseStatus.SERVICE_UNAVAILABLE, response.getStatus());
+        assertEquals("3", response.headers().get(RateLimiter.RETRY_AFTER));
+        assertTrue(recorder.handled.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("/slow"), recorder.uris);
+        for (int i = 0; i < 100 && shedder.getInFlight() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, shedder.getInFlight());
+    }
+
+    @Test
+    public void releasesRejectedRequests() {
+        Recorder recorder = new Recorder(1);
+        EmbeddedChannel channel = new EmbeddedChannel(new RequestDispatcher(recorder, executor));
+        executor.shutdown();
+        FullHttpRequest request = request("/rejected");
+        channel.writeInbound(request);
+        assertEquals(0, request.refCnt());
+        assertEquals(1, recorder.handled.getCount());
+    }
+
+    @Test
+    public void answersRequestsRejectedAfterEarlierRequests() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Recorder recorder = new Recorder(1) {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+                started.countDown();
+                release.await();
+                super.channelRead(ctx, msg);
+            }
+        };
+        EmbeddedChannel channel = new EmbeddedChannel(new RequestDispatcher(recorder, executor));
+        channel.writeInbound(request("/first"));
+        FullHttpRequest rejected = request("/rejected");
+        channel.writeInbound(rejected);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        release.countDown();
+
+        assertTrue(recorder.handled.await(5, TimeUnit.SECONDS));
+        Object response = null;
+        for (int i = 0; i < 100 && (response = channel.readOutbound()) == null; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(HttpResponseStatus.SERVICE_UNAVAILABLE, ((FullHttpResponse) response).getStatus());
+        assertEquals(0, rejected.refCnt());
+        assertEquals(List.of("/first"), recorder.uris);
+    }
+
+    @Test
+    public void rejectsBodyAfterEarlierResponses() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        Recorder recorder = new Recorder(1) {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+                release.await();
+                ctx.writeAndFlush(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+                super.channelRead(ctx, msg);
+            }
+        };
+        RequestBodies bodies = new RequestBodies(16, spool.getRoot().toPath());
+        EmbeddedChannel channel = new EmbeddedChannel(new RequestDispatcher(recorder, executor, null, bodies));
+        channel.writeInbound(request("/first"));
+        HttpRequest large = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/large");
+        HttpHeaders.setContentLength(large, 17);
+        channel.writeInbound(large);
+        assertNull(channel.readOutbound());
+        assertTrue(channel.isOpen());
+
+        release.countDown();
+        assertTrue(recorder.handled.await(5, TimeUnit.SECONDS));
+        List<HttpResponseStatus> statuses = new ArrayList<>();
+        for (int i = 0; i < 100 && statuses.size() < 2; i++) {
+            Object response = channel.readOutbound();
+            if (response == null) {
+                Thread.sleep(10);
+            } else {
+                statuses.add(((FullHttpResponse) response).getStatus());
+            }
+        }
+        assertEquals(List.of(HttpResponseStatus.OK, HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE), statuses);
+    }
+}
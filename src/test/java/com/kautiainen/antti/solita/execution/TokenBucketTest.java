@@ -0,0 +1,64 @@
+package com.kautiainen.antti.solita.execution;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void admitsBurstAndThenWaitsForNextToken() {
+        TokenBucket bucket = new TokenBucket(10, 3);
+        final long now = bucket.getFullTime();
+        assertEquals(0, bucket.tryTake(now));
+        assertEquals(0, bucket.tryTake(now));
+        assertEquals(0, bucket.tryTake(now));
+        assertEquals(SECOND / 10, bucket.tryTake(now));
+        assertFalse(bucket.isFull(now));
+    }
+
+    @Test
+    public void refillsAtRate() {
+        TokenBucket bucket = new TokenBucket(10, 1);
+        final long now = bucket.getFullTime();
+        assertEquals(0, bucket.tryTake(now));
+        assertTrue(bucket.tryTake(now + SECOND / 20) > 0);
+        assertEquals(0, bucket.tryTake(now + SECOND / 10));
+    }
+
+    @Test
+    public void isFullOnceIdle() {
+        TokenBucket bucket = new TokenBucket(2, 2);
+        final long now = bucket.getFullTime();
+        bucket.tryTake(now);
+        bucket.tryTake(now);
+        assertFalse(bucket.isFull(now + SECOND / 2));
+        assertTrue(bucket.isFull(now + SECOND));
+        assertEquals(now + SECOND, bucket.getFullTime());
+    }
+
+    @Test
+    public void doesNotAccumulateTokensAboveBurst() {
+        TokenBucket bucket = new TokenBucket(10, 2);
+        final long later = bucket.getFullTime() + 100 * SECOND;
+        assertEquals(0, bucket.tryTake(later));
+        assertEquals(0, bucket.tryTake(later));
+        assertTrue(bucket.tryTake(later) > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidRate() {
+        new TokenBucket(0, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidBurst() {
+        new TokenBucket(1, 0);
+    }
+}
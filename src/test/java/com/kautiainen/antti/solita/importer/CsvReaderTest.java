@@ -0,0 +1,99 @@
+package com.kautiainen.antti.solita.importer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import org.junit.Test;
+
+public class CsvReaderTest {
+
+    /**
+     * Create a reader with a small chunk, so the rows span several chunks.
+     */
+    private static CsvReader reader(String text) {
+        return new CsvReader(Channels.newChannel(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8))),
+                3);
+    }
+
+    @Test
+    public void readsQuotedFieldsAcrossChunks() throws IOException {
+        CsvReader reader = reader("a,\"b,c\",\"say \"\"hi\"\"\"\r\n\"two\nlines\",,ä\nlast");
+        assertTrue(reader.next());
+        assertEquals(3, reader.getFieldCount());
+        assertEquals("a", reader.getString(0));
+        assertEquals("b,c", reader.getString(1));
+        assertEquals("say \"hi\"", reader.getString(2));
+        assertEquals(1, reader.getLineNumber());
+
+        assertTrue(reader.next());
+        assertEquals("two\nlines", reader.getString(0));
+        assertTrue(reader.isEmpty(1));
+        assertEquals("ä", reader.getString(2));
+        assertTrue(reader.isEmpty(3));
+        assertNull(reader.getString(3));
+
+        assertTrue(reader.next());
+        assertEquals(1, reader.getFieldCount());
+        assertEquals("last", reader.getString(0));
+        assertFalse(reader.next());
+        assertEquals(3, reader.getLineNumber());
+    }
+
+    @Test
+    public void parsesNumbers() throws IOException {
+        CsvReader reader = reader("42,-7,12.5,12.49,+3,1.5e3,x,\n");
+        assertTrue(reader.next());
+        assertEquals(42, reader.getInt(0));
+        assertEquals(-7L, reader.getLong(1));
+        assertEquals(13, reader.getInt(2));
+        assertEquals(12, reader.getInt(3));
+        assertEquals(3, reader.getInt(4));
+        assertEquals(1500.0, reader.getDouble(5), 0.0);
+        for (int index : new int[] { 5, 6, 7, 8 }) {
+            try {
+                reader.getInt(index);
+                fail("Field " + index + " was parsed");
+            } catch (NumberFormatException e) {
+                // The field is not an integer.
+            }
+        }
+    }
+
+    @Test
+    public void rejectsIntegerOutOfRange() throws IOException {
+        CsvReader reader = reader("2147483648\n");
+        assertTrue(reader.next());
+        assertEquals(2147483648L, reader.getLong(0));
+        try {
+            reader.getInt(0);
+            fail("The value out of range was parsed");
+        } catch (NumberFormatException e) {
+            // The value does not fit into an integer.
+        }
+    }
+
+    @Test
+    public void parsesLocalDateTimes() throws IOException {
+        CsvReader reader = reader("2021-05-31T23:57:25,2021-06-01 00:05:46.123,2021-02-30T00:00:00,2021-05-31\n");
+        assertTrue(reader.next());
+        assertEquals(LocalDateTime.of(2021, 5, 31, 23, 57, 25), reader.getLocalDateTime(0));
+        assertEquals(LocalDateTime.of(2021, 6, 1, 0, 5, 46), reader.getLocalDateTime(1));
+        for (int index : new int[] { 2, 3 }) {
+            try {
+                reader.getLocalDateTime(index);
+                fail("Field " + index + " was parsed");
+            } catch (NumberFormatException e) {
+                // The field is not a valid local date time.
+            }
+        }
+    }
+}
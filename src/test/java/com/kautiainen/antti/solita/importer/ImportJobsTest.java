@@ -0,0 +1,86 @@
+package com.kautiainen.antti.solita.importer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class ImportJobsTest {
+
+    /**
+     * Task recording its cancellation.
+     */
+    private static class CancellableTask implements ImportJobs.Task {
+        final AtomicBoolean cancelled = new AtomicBoolean();
+
+        @Override
+        public void run(ImportResult result) {
+            result.addRow();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled.set(true);
+        }
+    }
+
+    @Test
+    public void completesQueuedJobsWithinWait() {
+        ImportJobs jobs = new ImportJobs(1, 4, 16);
+        ImportJob first = jobs.submit("test", result -> Thread.sleep(20));
+        ImportJob second = jobs.submit("test", result -> result.addRow());
+        jobs.shutdown(5, TimeUnit.SECONDS);
+        assertEquals(ImportJob.Status.COMPLETED, first.getStatus());
+        assertEquals(ImportJob.Status.COMPLETED, second.getStatus());
+        assertEquals(1, second.getResult().getRows());
+    }
+
+    @Test
+    public void failsQueuedJobsAfterWait() throws InterruptedException {
+        ImportJobs jobs = new ImportJobs(1, 4, 16);
+        CountDownLatch started = new CountDownLatch(1);
+        ImportJob running = jobs.submit("test", result -> {
+            started.countDown();
+            Thread.sleep(10_000);
+        });
+        CancellableTask task = new CancellableTask();
+        ImportJob queued = jobs.submit("test", task);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        jobs.shutdown(10, TimeUnit.MILLISECONDS);
+        assertEquals(ImportJob.Status.FAILED, queued.getStatus());
+        assertTrue(task.cancelled.get());
+        assertEquals(queued, jobs.get(queued.getId()));
+        for (int i = 0; i < 100 && !running.isFinished(); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(ImportJob.Status.FAILED, running.getStatus());
+    }
+
+    @Test
+    public void cancelsRefusedJobs() throws InterruptedException {
+        ImportJobs jobs = new ImportJobs(1, 1, 16);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            jobs.submit("test", result -> release.await());
+            jobs.submit("test", result -> {
+            });
+            CancellableTask task = new CancellableTask();
+            try {
+                jobs.submit("test", task);
+                fail("The full queue accepted a job");
+            } catch (RejectedExecutionException e) {
+                assertTrue(task.cancelled.get());
+            }
+        } finally {
+            release.countDown();
+            jobs.shutdown();
+        }
+    }
+}
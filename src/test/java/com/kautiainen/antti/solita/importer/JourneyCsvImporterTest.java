@@ -0,0 +1,86 @@
+package com.kautiainen.antti.solita.importer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.kautiainen.antti.solita.exceptions.InvalidFieldsException;
+import com.kautiainen.antti.solita.model.Journey;
+
+public class JourneyCsvImporterTest {
+
+    private static final String HEADER = "Departure,Return,Departure station id,Departure station name,"
+            + "Return station id,Return station name,Covered distance (m),Duration (sec.)\n";
+
+    private static String row(int departure, int distance, int duration) {
+        return "2021-05-31T23:57:25,2021-06-01T00:05:46," + departure + ",\"Laajalahden aukio\",100,Teljäntie,"
+                + distance + "," + duration + "\n";
+    }
+
+    private static ImportResult importText(JourneyCsvImporter importer, String text) throws IOException {
+        return importer.importFrom(Channels.newChannel(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void importsValidRowsInBatches() throws IOException {
+        List<List<Journey>> batches = new ArrayList<>();
+        JourneyCsvImporter importer = new JourneyCsvImporter(batch -> {
+            batches.add(new ArrayList<>(batch));
+            return batch.size();
+        }, new JourneyValidator(10, 10, null, true), 2, true);
+
+        ImportResult result = importText(importer, HEADER + row(1, 2043, 500) + "\n" + row(2, 5, 500)
+                + "not,a,journey\n" + row(3, 1870, 611) + row(1, 2043, 500) + row(4, 100, 100));
+        assertEquals(6, result.getRows());
+        assertEquals(3, result.getImported());
+        assertEquals(3, result.getValidated());
+        assertEquals(3, result.getRejected());
+        assertEquals(List.of("row[2].DISTANCE", "row[3]", "row[5]"),
+                result.getErrors().stream().map(error -> error.fieldName).sorted().toList());
+
+        assertEquals(3, batches.size());
+        assertEquals(1, (int) batches.get(0).get(0).getDepartureStation().get().getId());
+        assertEquals(611, (int) batches.get(1).get(0).getDuration().get());
+        assertEquals(4, (int) batches.get(2).get(0).getDepartureStation().get().getId());
+    }
+
+    @Test
+    public void countsJourneysRefusedBySink() throws IOException {
+        JourneyCsvImporter importer = new JourneyCsvImporter(batch -> batch.size() - 1,
+                new JourneyValidator(10, 10, null, false), 10, false);
+        ImportResult result = importText(importer, row(1, 2043, 500) + row(2, 2043, 500));
+        assertEquals(2, result.getRows());
+        assertEquals(2, result.getValidated());
+        assertEquals(1, result.getImported());
+        assertEquals(1, result.getRejected());
+    }
+
+    @Test
+    public void reportsJourneysRefusedBySink() throws IOException {
+        List<Journey> imported = new ArrayList<>();
+        JourneyCsvImporter importer = new JourneyCsvImporter(batch -> {
+            for (Journey journey : batch) {
+                if (journey.getDepartureStation().get().getId() == 2) {
+                    throw new InvalidFieldsException("Identifier not unique", null,
+                            new InvalidFieldsException.FieldError(Journey.Fields.ID.toString(), "Reserved identifier"));
+                }
+            }
+            imported.addAll(batch);
+            return batch.size();
+        }, new JourneyValidator(10, 10, null, false), 10, false);
+        ImportResult result = importText(importer, row(1, 2043, 500) + row(2, 2043, 500) + row(3, 2043, 500));
+        assertEquals(3, result.getValidated());
+        assertEquals(2, result.getImported());
+        assertEquals(1, result.getRejected());
+        assertEquals(2, imported.size());
+        assertEquals(1, result.getErrors().size());
+        assertEquals("row[2]." + Journey.Fields.ID, result.getErrors().get(0).fieldName);
+    }
+}
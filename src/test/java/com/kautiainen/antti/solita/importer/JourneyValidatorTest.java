@@ -0,0 +1,88 @@
+package com.kautiainen.antti.solita.importer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import com.kautiainen.antti.solita.exceptions.InvalidFieldsException;
+import com.kautiainen.antti.solita.model.Journey;
+import com.kautiainen.antti.solita.model.Station;
+
+public class JourneyValidatorTest {
+
+    private static final LocalDateTime DEPARTURE = LocalDateTime.of(2021, 5, 1, 10, 0);
+
+    private static Journey journey(int departure, int ret, Integer distance, Integer duration) {
+        return new Journey(null, new Station(departure, "A"), new Station(ret, "B"), distance, duration, DEPARTURE,
+                duration == null ? DEPARTURE : DEPARTURE.plusSeconds(duration));
+    }
+
+    @Test
+    public void rejectsDuplicatesWithinBatch() {
+        Function<List<Journey>, ValidationReport<Journey>> stage = new JourneyValidator().newStage();
+        ValidationReport<Journey> report = stage.apply(Arrays.asList(journey(1, 2, 100, 60),
+                journey(1, 2, 100, 60), journey(2, 1, 100, 60)));
+        assertEquals(1, report.getRejected());
+        assertEquals(2, report.getAccepted().size());
+        assertTrue(report.isAccepted(0));
+        assertFalse(report.isAccepted(1));
+        assertTrue(report.isAccepted(2));
+        List<InvalidFieldsException.FieldError> errors = report.getErrors("row", (int index) -> index + 1);
+        assertEquals(1, errors.size());
+        assertEquals("row[2]", errors.get(0).fieldName);
+    }
+
+    @Test
+    public void rejectsDuplicatesAcrossBatchesOfStage() {
+        Function<List<Journey>, ValidationReport<Journey>> stage = new JourneyValidator().newStage();
+        assertEquals(0, stage.apply(Arrays.asList(journey(1, 2, 100, 60))).getRejected());
+        assertEquals(1, stage.apply(Arrays.asList(journey(1, 2, 100, 60))).getRejected());
+        assertEquals(0, new JourneyValidator().newStage().apply(Arrays.asList(journey(1, 2, 100, 60)))
+                .getRejected());
+    }
+
+    @Test
+    public void invalidJourneyDoesNotRejectValidDuplicate() {
+        JourneyValidator validator = new JourneyValidator(10, 10, (int id) -> id == 1 || id == 2, true);
+        ValidationReport<Journey> report = validator.newStage().apply(Arrays.asList(journey(1, 3, 100, 60),
+                journey(1, 2, 100, 60), journey(1, 2, 100, 60)));
+        assertFalse(report.isAccepted(0));
+        assertTrue(report.isAccepted(1));
+        assertFalse(report.isAccepted(2));
+    }
+
+    @Test
+    public void keepsDuplicatesWithoutDetection() {
+        JourneyValidator validator = new JourneyValidator(0, 0, null, false);
+        ValidationReport<Journey> report = validator.newStage().apply(Arrays.asList(journey(1, 2, 100, 60),
+                journey(1, 2, 100, 60)));
+        assertEquals(0, report.getRejected());
+    }
+
+    @Test
+    public void reportsFailedRulesAsFields() {
+        JourneyValidator validator = new JourneyValidator(10, 10, (int id) -> id == 1, false);
+        ValidationReport<Journey> report = validator.newStage().apply(Arrays.asList(journey(1, 2, 5, null), null));
+        assertEquals(2, report.getRejected());
+        List<InvalidFieldsException.FieldError> errors = report.getErrors("row", (int index) -> index);
+        assertEquals(4, errors.size());
+        assertEquals("row[0]." + Journey.Fields.RETURN_STATION, errors.get(0).fieldName);
+        assertEquals("row[0]." + Journey.Fields.DISTANCE, errors.get(1).fieldName);
+        assertEquals("row[0]." + Journey.Fields.DURATION, errors.get(2).fieldName);
+        assertEquals("row[1]", errors.get(3).fieldName);
+    }
+
+    @Test
+    public void singleJourneyIgnoresDuplicates() {
+        JourneyValidator validator = new JourneyValidator();
+        assertTrue(validator.isValid(journey(1, 2, 100, 60)));
+        assertTrue(validator.isValid(journey(1, 2, 100, 60)));
+    }
+}
@@ -0,0 +1,139 @@
+package com.kautiainen.antti.solita.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.kautiainen.antti.solita.exceptions.InvalidFieldsException;
+import com.kautiainen.antti.solita.model.Journey;
+import com.kautiainen.antti.solita.model.Station;
+import com.kautiainen.antti.solita.storage.JourneyStore;
+
+public class JourneyJournalTest {
+
+    private static final LocalDateTime DEPARTURE = LocalDateTime.of(2021, 5, 1, 10, 0);
+
+    @Rule
+    public TemporaryFolder directory = new TemporaryFolder();
+
+    private static Journey journey(int distance) throws InvalidFieldsException {
+        return new Journey(null, new Station(1, "A"), new Station(2, "B"), distance, 60, DEPARTURE,
+                DEPARTURE.plusSeconds(60));
+    }
+
+    /**
+     * Recover a store from the journal files.
+     * 
+     * @return The journal of the recovered store.
+     */
+    private JourneyJournal recover(JourneyStore store) throws IOException {
+        JourneyJournal result = new JourneyJournal(store, directory.getRoot().toPath(), Long.MAX_VALUE, true,
+                Runnable::run);
+        result.recover();
+        store.setJournal(result);
+        return result;
+    }
+
+    private List<Path> logs() throws IOException {
+        try (Stream<Path> files = Files.list(directory.getRoot().toPath())) {
+            return files.filter(file -> file.toString().endsWith(".log")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void recoversJournaledChanges() throws Exception {
+        JourneyStore store = new JourneyStore();
+        JourneyJournal journal = recover(store);
+        store.addAll(Arrays.asList(journey(100), journey(200), journey(300)));
+        store.remove(2);
+        store.replace(new Journey(3, journey(400)));
+        journal.close();
+
+        JourneyStore recovered = new JourneyStore();
+        recover(recovered).close();
+        assertEquals(2, recovered.size());
+        assertEquals(100, (int) recovered.get(1).getDistance().get());
+        assertNull(recovered.get(2));
+        assertEquals(400, (int) recovered.get(3).getDistance().get());
+    }
+
+    @Test
+    public void stopsReplayAtCorruptedRecord() throws Exception {
+        JourneyStore store = new JourneyStore();
+        JourneyJournal journal = recover(store);
+        store.add(journey(100));
+        store.add(journey(200));
+        journal.close();
+
+        List<Path> logs = logs();
+        assertEquals(1, logs.size());
+        try (RandomAccessFile file = new RandomAccessFile(logs.get(0).toFile(), "rw")) {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xff);
+        }
+
+        JourneyStore recovered = new JourneyStore();
+        recover(recovered).close();
+        assertEquals(1, recovered.size());
+        assertNotNull(recovered.get(1));
+        assertNull(recovered.get(2));
+    }
+
+    @Test
+    public void doesNotReuseRemovedIdentifiersAfterReplay() throws Exception {
+        JourneyStore store = new JourneyStore();
+        JourneyJournal journal = recover(store);
+        store.addAll(Arrays.asList(journey(100), journey(200)));
+        store.remove(2);
+        journal.close();
+
+        JourneyStore recovered = new JourneyStore();
+        JourneyJournal recoveredJournal = recover(recovered);
+        assertEquals(3, (int) recovered.add(journey(300)).getId().get());
+        recoveredJournal.close();
+    }
+
+    @Test
+    public void doesNotReuseRemovedIdentifiersAfterSnapshot() throws Exception {
+        JourneyStore store = new JourneyStore();
+        JourneyJournal journal = recover(store);
+        store.addAll(Arrays.asList(journey(100), journey(200)));
+        store.remove(2);
+        journal.snapshot();
+        journal.close();
+        assertEquals(0, Files.size(logs().get(0)));
+
+        JourneyStore recovered = new JourneyStore();
+        JourneyJournal recoveredJournal = recover(recovered);
+        assertEquals(1, recovered.size());
+        assertEquals(3, (int) recovered.add(journey(300)).getId().get());
+        recoveredJournal.close();
+    }
+
+    @Test
+    public void snapshotsOnlyChangedJournal() throws Exception {
+        JourneyStore store = new JourneyStore();
+        JourneyJournal journal = recover(store);
+        assertEquals(false, journal.snapshotIfChanged());
+        store.add(journey(100));
+        assertEquals(true, journal.snapshotIfChanged());
+        assertEquals(false, journal.snapshotIfChanged());
+        journal.close();
+    }
+}
@@ -0,0 +1,68 @@
+package com.kautiainen.antti.solita.query;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.kautiainen.antti.solita.model.Journey;
+import com.kautiainen.antti.solita.model.Station;
+import com.kautiainen.antti.solita.storage.JourneyStore;
+
+public class JourneyQueryEngineTest {
+
+    private static final LocalDateTime DEPARTURE = LocalDateTime.of(2021, 5, 1, 10, 0);
+
+    private static JourneyStore store(int count) throws Exception {
+        JourneyStore result = new JourneyStore();
+        List<Journey> journeys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            journeys.add(new Journey(null, new Station(1 + i % 2, "A"), new Station(2, "B"), i, 60, DEPARTURE,
+                    DEPARTURE.plusSeconds(60)));
+        }
+        result.addAll(journeys);
+        return result;
+    }
+
+    @Test
+    public void cursorOfScanSurvivesCompaction() throws Exception {
+        JourneyStore store = store(3000);
+        JourneyQueryEngine engine = new JourneyQueryEngine(store);
+        JourneyQuery query = JourneyQuery.parse(null, null);
+        Page<Journey> page = engine.query(query, 0, 10);
+        for (int i = 1; i <= 10; i++) {
+            assertEquals(i, (int) page.next().getId().get());
+        }
+        final long cursor = page.getPosition();
+        for (int id = 1; id <= 2000; id++) {
+            if (id != 11 && id != 12) {
+                store.remove(id);
+            }
+        }
+        page = engine.query(query, cursor, 10);
+        assertEquals(11, (int) page.next().getId().get());
+        assertEquals(12, (int) page.next().getId().get());
+        assertEquals(2001, (int) page.next().getId().get());
+    }
+
+    @Test
+    public void queriesIndexesAfterCompaction() throws Exception {
+        JourneyStore store = store(3000);
+        JourneyQueryEngine engine = new JourneyQueryEngine(store);
+        for (int id = 1; id <= 2000; id++) {
+            store.remove(id);
+        }
+        Page<Journey> page = engine.query(JourneyQuery.parse("departureStation=2,distance=2500..2505", "distance"),
+                0, 10);
+        List<Integer> distances = new ArrayList<>();
+        while (page.hasNext()) {
+            Journey journey = page.next();
+            assertEquals(2, (int) journey.getDepartureStation().get().getId());
+            distances.add(journey.getDistance().get());
+        }
+        assertEquals(List.of(2501, 2503, 2505), distances);
+    }
+}
@@ -0,0 +1,101 @@
+package com.kautiainen.antti.solita.query;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.kautiainen.antti.solita.model.Journey;
+import com.kautiainen.antti.solita.model.Station;
+import com.kautiainen.antti.solita.storage.JourneyStore;
+import com.kautiainen.antti.solita.storage.JourneyStore.Columns;
+
+public class JourneyScannerTest {
+
+    private static final LocalDateTime DEPARTURE = LocalDateTime.of(2021, 5, 1, 10, 0);
+
+    private static final int ROWS = 1 << 18;
+
+    private static ForkJoinPool pool;
+
+    private static Columns columns;
+
+    /**
+     * Query counting the rows it has matched.
+     */
+    private static class CountingQuery extends JourneyQuery {
+        final AtomicLong matched = new AtomicLong();
+
+        @Override
+        public boolean matches(Columns columns, int row) {
+            matched.incrementAndGet();
+            return super.matches(columns, row);
+        }
+    }
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        pool = new ForkJoinPool(4);
+        JourneyStore store = new JourneyStore();
+        List<Journey> journeys = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            journeys.add(new Journey(null, new Station(1 + i % 7, "A"), new Station(2, "B"), i % 1000, 60,
+                    DEPARTURE, DEPARTURE.plusSeconds(60)));
+        }
+        store.addAll(journeys);
+        columns = store.getColumns();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void parallelFindMatchesSequentialFind() {
+        JourneyQuery query = JourneyQuery.parse("distance=990..999,departureStation=3", null);
+        int[] sequential = new JourneyScanner(null, 4096).find(query, columns, null, 0, ROWS, Integer.MAX_VALUE);
+        int[] parallel = new JourneyScanner(pool, 4096).find(query, columns, null, 0, ROWS, Integer.MAX_VALUE);
+        assertArrayEquals(sequential, parallel);
+        assertTrue(sequential.length > 0);
+
+        int[] limited = new JourneyScanner(pool, 4096).find(query, columns, null, 0, ROWS, 100);
+        assertEquals(100, limited.length);
+        for (int i = 0; i < limited.length; i++) {
+            assertEquals(sequential[i], limited[i]);
+        }
+    }
+
+    @Test
+    public void limitedFindStopsLaterPartitions() {
+        CountingQuery query = new CountingQuery();
+        int[] found = new JourneyScanner(pool, 4096).find(query, columns, null, 0, ROWS, 10);
+        assertArrayEquals(new int[] { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 }, found);
+        assertTrue("Scanned " + query.matched.get() + " rows", query.matched.get() < ROWS / 4);
+
+        CountingQuery sequential = new CountingQuery();
+        new JourneyScanner(null, 4096).find(sequential, columns, null, 100, ROWS, 10);
+        assertEquals(10, sequential.matched.get());
+    }
+
+    @Test
+    public void parallelAggregateMatchesSequentialAggregate() {
+        JourneyQuery query = JourneyQuery.parse("departureStation=3", null);
+        JourneyAggregate sequential = new JourneyScanner(null, 4096).aggregate(query, columns, null);
+        JourneyAggregate parallel = new JourneyScanner(pool, 4096).aggregate(query, columns, null);
+        assertEquals(sequential.getJourneys(), parallel.getJourneys());
+        assertEquals(sequential.getAverageDistance(), parallel.getAverageDistance(), 1e-9);
+        assertEquals(sequential.getMinDistance(), parallel.getMinDistance());
+        assertEquals(sequential.getMaxDistance(), parallel.getMaxDistance());
+        assertEquals((ROWS + 4) / 7, parallel.getJourneys());
+    }
+}
@@ -0,0 +1,99 @@
+package com.kautiainen.antti.solita.serialization;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDateTime;
+
+import org.junit.Test;
+import org.restexpress.serialization.DeserializationException;
+
+import com.kautiainen.antti.solita.model.Journey;
+import com.kautiainen.antti.solita.model.Station;
+
+import io.netty.buffer.Unpooled;
+
+public class BinarySerializationProcessorTest {
+
+    private final BinarySerializationProcessor processor = new BinarySerializationProcessor();
+
+    private Journey read(int... bytes) {
+        byte[] document = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            document[i] = (byte) bytes[i];
+        }
+        return processor.deserialize(Unpooled.wrappedBuffer(document), Journey.class);
+    }
+
+    private static void writeUnsigned(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Read a journey record of undefined fields and the given departure and
+     * return times as written optional values.
+     */
+    private Journey readTimes(long departure, long arrival) {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        for (int i = 0; i < 5; i++) {
+            payload.write(0);
+        }
+        writeUnsigned(payload, departure);
+        writeUnsigned(payload, arrival);
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        record.write(BinarySerializationProcessor.JOURNEY);
+        writeUnsigned(record, payload.size());
+        record.write(payload.toByteArray(), 0, payload.size());
+        return processor.deserialize(Unpooled.wrappedBuffer(record.toByteArray()), Journey.class);
+    }
+
+    @Test
+    public void readsWrittenJourney() throws Exception {
+        LocalDateTime departure = LocalDateTime.of(2021, 5, 1, 10, 0);
+        Journey journey = new Journey(7, new Station(1, "A"), new Station(2, "B"), 1000, 300, departure,
+                departure.plusSeconds(300));
+        Journey result = processor.deserialize(Unpooled.wrappedBuffer(processor.serialize(journey)), Journey.class);
+        assertEquals(journey.getDepartureTime(), result.getDepartureTime());
+        assertEquals(journey.getReturnTime(), result.getReturnTime());
+        assertEquals(journey.getDistance(), result.getDistance());
+    }
+
+    @Test(expected = DeserializationException.class)
+    public void rejectsTruncatedLength() {
+        read(BinarySerializationProcessor.JOURNEY, 0x80);
+    }
+
+    @Test(expected = DeserializationException.class)
+    public void rejectsLengthAboveInteger() {
+        read(BinarySerializationProcessor.JOURNEY, 0xFF, 0xFF, 0xFF, 0xFF, 0x0F);
+    }
+
+    @Test(expected = DeserializationException.class)
+    public void rejectsLengthBeyondDocument() {
+        read(BinarySerializationProcessor.JOURNEY, 0x10, 0, 0);
+    }
+
+    @Test(expected = DeserializationException.class)
+    public void rejectsOverlongVarint() {
+        read(BinarySerializationProcessor.JOURNEY, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01);
+    }
+
+    @Test(expected = DeserializationException.class)
+    public void rejectsStringBeyondPayload() {
+        read(BinarySerializationProcessor.STATION, 3, 0, 0x7F, 0);
+    }
+
+    @Test(expected = DeserializationException.class)
+    public void rejectsDepartureOutOfRange() {
+        readTimes(Long.MAX_VALUE - 1, 0);
+    }
+
+    @Test(expected = DeserializationException.class)
+    public void rejectsReturnOutOfRange() {
+        readTimes(1, Long.MAX_VALUE - 1);
+    }
+}
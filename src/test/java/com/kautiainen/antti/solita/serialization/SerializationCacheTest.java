@@ -0,0 +1,150 @@
+package com.kautiainen.antti.solita.serialization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import org.restexpress.Request;
+import org.restexpress.Response;
+
+import com.kautiainen.antti.solita.caching.ContentEncodings;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+
+public class SerializationCacheTest {
+
+    private static final String TYPE = "station";
+
+    private final AtomicInteger serialized = new AtomicInteger();
+
+    private static Request request() {
+        return new Request(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/station/1.json"), null);
+    }
+
+    private Supplier<?> entity(String name) {
+        return () -> {
+            serialized.incrementAndGet();
+            return Collections.singletonMap("name", name);
+        };
+    }
+
+    /**
+     * Write a version and return the body of the response, which the caller
+     * releases as the response would be released once written.
+     */
+    private ByteBuf write(SerializationCache cache, long id, long version, String name) {
+        Response response = new Response();
+        assertTrue(cache.write(request(), response, TYPE, id, version, entity(name)));
+        return (ByteBuf) response.getBody();
+    }
+
+    private static String text(ByteBuf body) {
+        return body.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void writesCachedVersionWithoutSerialization() {
+        SerializationCache cache = new SerializationCache(SerializationCache.DEFAULT_CAPACITY);
+        ByteBuf first = write(cache, 1, 1, "Asema");
+        assertEquals(2, first.refCnt());
+        ByteBuf second = write(cache, 1, 1, "Asema");
+        assertEquals(1, serialized.get());
+        assertEquals(text(first), text(second));
+        assertEquals(3, second.refCnt());
+
+        first.release();
+        second.release();
+        assertEquals(1, second.refCnt());
+        assertEquals(second.capacity(), cache.getSize());
+    }
+
+    @Test
+    public void newerVersionReleasesReplacedBytes() {
+        SerializationCache cache = new SerializationCache(SerializationCache.DEFAULT_CAPACITY);
+        ByteBuf old = write(cache, 1, 1, "Asema");
+        old.release();
+        ByteBuf newer = write(cache, 1, 2, "Station");
+        assertEquals(0, old.refCnt());
+        assertTrue(text(newer).contains("Station"));
+        newer.release();
+
+        ByteBuf older = write(cache, 1, 1, "Asema");
+        assertEquals(1, older.refCnt());
+        older.release();
+        assertEquals(0, older.refCnt());
+        ByteBuf current = write(cache, 1, 2, "Station");
+        assertEquals(3, serialized.get());
+        assertEquals(newer.capacity(), cache.getSize());
+        current.release();
+    }
+
+    @Test
+    public void evictedBytesRemainWhileWritten() {
+        SerializationCache cache = new SerializationCache(SerializationCache.DEFAULT_CAPACITY);
+        ByteBuf first = write(cache, 1, 1, "Asema");
+        ByteBuf second = write(cache, 2, 1, "Asema");
+        second.release();
+
+        cache.setCapacity(first.capacity());
+        assertEquals(1, first.refCnt());
+        assertEquals(first.capacity(), cache.getSize());
+        cache.setCapacity(0);
+        assertEquals(0, cache.getSize());
+        assertEquals(0, second.refCnt());
+        assertEquals(1, first.refCnt());
+        assertTrue(text(first).contains("Asema"));
+        first.release();
+        assertEquals(0, first.refCnt());
+    }
+
+    @Test
+    public void removesAllVariants() {
+        SerializationCache cache = new SerializationCache(SerializationCache.DEFAULT_CAPACITY);
+        Response response = new Response();
+        assertTrue(cache.write(request(), response, TYPE, 1, 1, "fi", entity("Asema")));
+        ByteBuf finnish = (ByteBuf) response.getBody();
+        finnish.release();
+        ByteBuf other = write(cache, 2, 1, "Asema");
+        other.release();
+
+        cache.remove(TYPE, 1);
+        assertEquals(0, finnish.refCnt());
+        assertEquals(1, other.refCnt());
+        assertEquals(other.capacity(), cache.getSize());
+    }
+
+    @Test
+    public void storesEncodedBytesOnce() {
+        SerializationCache cache = new SerializationCache(SerializationCache.DEFAULT_CAPACITY);
+        cache.setCompressionThreshold(0);
+        ByteBuf[] bodies = new ByteBuf[2];
+        for (int i = 0; i < bodies.length; i++) {
+            FullHttpRequest sent = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/station/1.json");
+            sent.headers().set(ContentEncodings.ACCEPT_ENCODING, "gzip");
+            Response response = new Response();
+            assertTrue(cache.write(new Request(sent, null), response, TYPE, 1, 1, entity("Asema")));
+            assertEquals("gzip", response.getHeader(ContentEncodings.CONTENT_ENCODING));
+            bodies[i] = (ByteBuf) response.getBody();
+        }
+        assertEquals(1, serialized.get());
+        assertEquals(3, bodies[0].refCnt());
+        bodies[0].release();
+        bodies[1].release();
+
+        ByteBuf identity = write(cache, 1, 1, "Asema");
+        assertEquals(identity.capacity() + bodies[0].capacity(), cache.getSize());
+        cache.remove(TYPE, 1);
+        assertEquals(0, bodies[0].refCnt());
+        assertEquals(1, identity.refCnt());
+        identity.release();
+    }
+}
@@ -0,0 +1,65 @@
+package com.kautiainen.antti.solita.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class IntIndexTest {
+
+    @Test
+    public void putsAndRemovesKeys() {
+        IntIndex index = new IntIndex();
+        assertEquals(IntIndex.MISSING, index.put(5, 10));
+        assertEquals(10, index.put(5, 11));
+        assertEquals(11, index.get(5));
+        assertTrue(index.containsKey(5));
+        assertEquals(IntIndex.MISSING, index.put(-7, 0));
+        assertEquals(0, index.get(-7));
+        assertEquals(2, index.size());
+
+        assertEquals(11, index.remove(5));
+        assertEquals(IntIndex.MISSING, index.remove(5));
+        assertFalse(index.containsKey(5));
+        assertEquals(1, index.size());
+
+        // The tombstone is reused when the key is added again.
+        assertEquals(IntIndex.MISSING, index.put(5, 12));
+        assertEquals(12, index.get(5));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void growsAndDropsTombstones() {
+        IntIndex index = new IntIndex();
+        for (int key = 0; key < 10_000; key++) {
+            index.put(key * 31, key);
+        }
+        for (int key = 0; key < 10_000; key += 2) {
+            index.remove(key * 31);
+        }
+        // Adding new keys rebuilds the table over the tombstones.
+        for (int key = 10_000; key < 20_000; key++) {
+            index.put(key * 31, key);
+        }
+        assertEquals(15_000, index.size());
+        for (int key = 0; key < 20_000; key++) {
+            assertEquals(key < 10_000 && key % 2 == 0 ? IntIndex.MISSING : key, index.get(key * 31));
+        }
+
+        index.clear();
+        assertEquals(0, index.size());
+        assertEquals(IntIndex.MISSING, index.get(31));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeValue() {
+        new IntIndex().put(1, -2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsReservedKey() {
+        new IntIndex().put(Integer.MIN_VALUE, 1);
+    }
+}
@@ -0,0 +1,168 @@
+package com.kautiainen.antti.solita.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.kautiainen.antti.solita.exceptions.InvalidFieldsException;
+import com.kautiainen.antti.solita.model.Journey;
+import com.kautiainen.antti.solita.model.Station;
+
+public class JourneyStoreTest {
+
+    private static final LocalDateTime DEPARTURE = LocalDateTime.of(2021, 5, 1, 10, 0);
+
+    private static Journey journey(int distance) throws InvalidFieldsException {
+        return journey(null, 1, distance);
+    }
+
+    private static Journey journey(Integer id, int departure, int distance) throws InvalidFieldsException {
+        return new Journey(id, new Station(departure, "A"), new Station(2, "B"), distance, 60, DEPARTURE,
+                DEPARTURE.plusSeconds(60));
+    }
+
+    private static List<Journey> journeys(int count) throws InvalidFieldsException {
+        List<Journey> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(journey(null, 1 + i % 2, i));
+        }
+        return result;
+    }
+
+    /**
+     * Journal failing every commit.
+     */
+    private static class FailingJournal implements JourneyStore.Journal {
+
+        @Override
+        public void put(JourneyStore.Columns columns, int row) {
+        }
+
+        @Override
+        public void remove(int id) {
+        }
+
+        @Override
+        public void commit() {
+            throw new UncheckedIOException(new IOException("Disk full"));
+        }
+    }
+
+    @Test
+    public void failedJournalDoesNotConsumeIdentifiers() throws Exception {
+        JourneyStore store = new JourneyStore();
+        store.add(journey(100));
+        store.setJournal(new FailingJournal());
+        try {
+            store.addAll(Arrays.asList(journey(200), journey(300)));
+            fail("The failed journal was ignored");
+        } catch (UncheckedIOException e) {
+            assertEquals(1, store.size());
+            assertNull(store.get(2));
+        }
+        try {
+            store.apply(Arrays.asList(journey(200)), Arrays.asList(1));
+            fail("The failed journal was ignored");
+        } catch (UncheckedIOException e) {
+            assertEquals(1, store.size());
+        }
+        store.setJournal(null);
+        assertEquals(2, (int) store.add(journey(200)).getId().get());
+    }
+
+    @Test
+    public void doesNotReuseRemovedIdentifiers() throws Exception {
+        JourneyStore store = new JourneyStore();
+        store.addAll(Arrays.asList(journey(100), journey(200)));
+        store.remove(2);
+        assertEquals(3, (int) store.add(journey(300)).getId().get());
+        store.reserveIdentifiers(10);
+        assertEquals(11, (int) store.add(journey(400)).getId().get());
+    }
+
+    @Test
+    public void replacesAndRemovesJourneys() throws Exception {
+        JourneyStore store = new JourneyStore();
+        store.addAll(journeys(3));
+        final long sequence = store.getColumns().getSequence(store.getGeneration().getRow(2));
+        assertEquals(1, (int) store.replace(journey(2, 3, 500)).getDistance().get());
+        assertEquals(500, (int) store.get(2).getDistance().get());
+        assertNotEquals(sequence, store.getColumns().getSequence(store.getGeneration().getRow(2)));
+        assertNull(store.replace(journey(9, 3, 500)));
+        assertEquals(2, (int) store.remove(3).getDistance().get());
+        assertNull(store.remove(3));
+        assertNull(store.get(3));
+        assertEquals(2, store.size());
+        // The deleted rows stay in the indexes until the rows are compacted.
+        assertEquals(4, store.getColumns().size());
+        assertEquals(Arrays.asList(0, 2),
+                rowsOf(store.getGeneration().getPostings(JourneyStore.Column.DEPARTURE_STATION).get(1)));
+    }
+
+    @Test
+    public void restoresJourneysReplacingExisting() throws Exception {
+        JourneyStore store = new JourneyStore();
+        store.addAll(journeys(2));
+        store.restore(2, new int[] { 2, 7 }, new int[] { 5, 5 }, new int[] { 6, 6 }, new int[] { 100, 200 },
+                new int[] { 60, 60 }, new long[] { 0, 0 }, new long[] { 60, 60 });
+        assertEquals(3, store.size());
+        assertEquals(5, (int) store.get(2).getDepartureStation().get().getId());
+        assertEquals(200, (int) store.get(7).getDistance().get());
+        assertEquals(8, (int) store.add(journey(300)).getId().get());
+    }
+
+    @Test
+    public void compactsDeletedRows() throws Exception {
+        JourneyStore store = new JourneyStore();
+        store.addAll(journeys(3000));
+        final JourneyStore.Columns before = store.getColumns();
+        final long sequence = before.getSequence(store.getGeneration().getRow(2500));
+        for (int id = 1; id <= 2000; id++) {
+            store.remove(id);
+        }
+        final JourneyStore.Columns after = store.getColumns();
+        assertTrue(after.size() < 2000);
+        assertEquals(1000, store.size());
+        assertEquals(sequence, after.getSequence(store.getGeneration().getRow(2500)));
+        assertEquals(2499, (int) store.get(2500).getDistance().get());
+        assertNull(store.get(1500));
+
+        // The columns read before the compaction are not altered.
+        assertEquals(3000, before.size());
+        assertEquals(2499, before.getDistance(2499));
+
+        JourneyStore.Generation generation = store.getGeneration();
+        for (int row : generation.getPostings(JourneyStore.Column.DEPARTURE_STATION).get(2)) {
+            if (!after.isDeleted(row)) {
+                assertEquals(2, after.getDepartureStation(row));
+            }
+        }
+        int[] sorted = generation.getRangeIndex(JourneyStore.Column.DISTANCE).getRows();
+        for (int i = 1; i < sorted.length; i++) {
+            assertTrue(after.getDistance(sorted[i - 1]) <= after.getDistance(sorted[i]));
+        }
+
+        store.replace(journey(2500, 1, 1));
+        assertEquals(1, (int) store.get(2500).getDistance().get());
+        assertEquals(3001, (int) store.add(journey(5)).getId().get());
+    }
+
+    private static List<Integer> rowsOf(int[] rows) {
+        List<Integer> result = new ArrayList<>();
+        for (int row : rows) {
+            result.add(row);
+        }
+        return result;
+    }
+}
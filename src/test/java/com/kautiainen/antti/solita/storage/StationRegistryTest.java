@@ -0,0 +1,165 @@
+package com.kautiainen.antti.solita.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.kautiainen.antti.solita.model.Station;
+
+public class StationRegistryTest {
+
+    private static List<Integer> idsOf(Iterable<Station> stations) {
+        List<Integer> result = new ArrayList<>();
+        for (Station station : stations) {
+            result.add(station.getId());
+        }
+        return result;
+    }
+
+    @Test
+    public void publishesChangesOnCommit() {
+        StationRegistry registry = new StationRegistry();
+        registry.put(new Station(1, "A"));
+        registry.put(new Station(2, "B"));
+        assertNull(registry.get(1));
+        assertNotNull(registry.getPending(1));
+        assertEquals(0, registry.snapshot().size());
+
+        StationRegistry.Snapshot first = registry.commit();
+        assertEquals(1, first.getVersion());
+        assertEquals(List.of(1, 2), idsOf(first));
+        assertEquals("A", registry.get(1).getName());
+
+        registry.put(new Station(1, "C"));
+        registry.remove(2);
+        StationRegistry.Snapshot second = registry.commit();
+        assertEquals(2, second.getVersion());
+        assertEquals(List.of(1), idsOf(second));
+        assertEquals("C", registry.get(1).getName());
+        assertNull(registry.get(2));
+
+        // The earlier snapshot is not altered by the later changes.
+        assertEquals(List.of(1, 2), idsOf(first));
+        assertEquals(2, first.size());
+        assertSame(second, registry.commit());
+    }
+
+    @Test
+    public void discardsChangesOnRollback() {
+        StationRegistry registry = new StationRegistry();
+        registry.put(new Station(1, "A"));
+        registry.put(new Station(2, "B"));
+        registry.commit();
+
+        registry.put(new Station(1, "C"));
+        registry.remove(2);
+        registry.put(new Station(3, "D"));
+        registry.rollback();
+        assertEquals("A", registry.getPending(1).getName());
+        assertNotNull(registry.getPending(2));
+        assertNull(registry.getPending(3));
+
+        registry.put(new Station(4, "E"));
+        StationRegistry.Snapshot snapshot = registry.commit();
+        assertEquals(List.of(1, 2, 4), idsOf(snapshot));
+        assertEquals("A", registry.get(1).getName());
+    }
+
+    @Test
+    public void failedJournalLeavesChangesPending() {
+        StationRegistry registry = new StationRegistry();
+        registry.put(new Station(1, "A"));
+        registry.commit();
+        registry.setJournal(new StationRegistry.Journal() {
+            @Override
+            public void put(Station station) {
+            }
+
+            @Override
+            public void remove(int id) {
+            }
+
+            @Override
+            public void commit() {
+                throw new UncheckedIOException(new IOException("Disk full"));
+            }
+        });
+        registry.remove(1);
+        try {
+            registry.commit();
+            fail("The failed journal was ignored");
+        } catch (UncheckedIOException e) {
+            assertNotNull(registry.get(1));
+            assertNull(registry.getPending(1));
+        }
+        registry.rollback();
+        assertNotNull(registry.getPending(1));
+        assertEquals(1, registry.snapshot().getVersion());
+    }
+
+    @Test
+    public void compactsTombstonesKeepingSequences() {
+        StationRegistry registry = new StationRegistry();
+        for (int id = 1; id <= 10; id++) {
+            registry.put(new Station(id, "S" + id));
+        }
+        registry.commit();
+        final StationRegistry.Snapshot before = registry.snapshot();
+        final long sequence = registry.getSequence(10);
+        for (int round = 0; round < 100; round++) {
+            registry.put(new Station(1, "R" + round));
+            registry.commit();
+        }
+        StationRegistry.Snapshot after = registry.snapshot();
+        assertEquals(10, after.size());
+        assertEquals("R99", registry.get(1).getName());
+        assertEquals(sequence, registry.getSequence(10));
+        assertEquals("S10", after.getStation(sequence).getName());
+        assertEquals(List.of(2, 3, 4, 5, 6, 7, 8, 9, 10, 1), idsOf(after));
+
+        // The replaced station is skipped by the seek over the sequences.
+        assertTrue(after.seek(0) > 0);
+        assertEquals(registry.getSequence(2), after.seek(0));
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), idsOf(before));
+    }
+
+    @Test
+    public void listsLanguagesOfPublishedStations() {
+        StationRegistry registry = new StationRegistry();
+        Station first = new Station(1, "Kamppi", "fi");
+        first.setName("Sv", "Kampen");
+        first.setName("en", "Kamppi");
+        registry.put(first);
+        registry.put(new Station(2, new String("Kamppi"), "FI"));
+        assertEquals(List.of(), registry.snapshot().getLanguages());
+        registry.commit();
+        assertEquals(List.of("en", "fi", "sv"), sorted(registry.snapshot().getLanguages()));
+        assertEquals("Kampen", registry.get(1).getName("SV"));
+        assertEquals(List.of("en", "sv"), registry.get(1).getNames().getLanguages());
+
+        // The stored stations are interned copies of the put stations.
+        first.setName("de", "Kamppi");
+        assertNull(registry.get(1).getName("de"));
+        assertSame(registry.get(1).getName(), registry.get(2).getName());
+
+        registry.remove(1);
+        registry.commit();
+        assertEquals(List.of("fi"), registry.snapshot().getLanguages());
+    }
+
+    private static List<String> sorted(List<String> values) {
+        List<String> result = new ArrayList<>(values);
+        result.sort(null);
+        return result;
+    }
+}